@@ -0,0 +1,35 @@
+package coin.benchmark;
+
+import java.util.List;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line options, always with the GC
+ * profiler, so every result also reports the bytes allocated per operation.
+ * Unless the matrix implementations are given with -p implementation=..., only
+ * the ones that work on this machine are run, so GPU benchmarks are skipped
+ * on machines without a device.
+ *
+ * Example: java -jar target/benchmarks.jar SampleHistory -p windowSize=20 -t 4
+ *
+ * @author Evan
+ *
+ */
+public class BenchmarkRunner {
+	public static void main( final String[] args ) throws Exception {
+		final CommandLineOptions commandLineOptions = new CommandLineOptions( args );
+		final OptionsBuilder options = new OptionsBuilder();
+		options.parent( commandLineOptions ).addProfiler( GCProfiler.class );
+
+		if ( !commandLineOptions.getParameter( "implementation" ).hasValue() ) {
+			final List<String> available = MatrixDevices.getAvailable();
+			options.param( "implementation", available.toArray( new String[available.size()] ) );
+		}
+
+		new Runner( options.build() ).run();
+	}
+}
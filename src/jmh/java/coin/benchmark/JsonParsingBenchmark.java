@@ -0,0 +1,99 @@
+package coin.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import coin.trader.exchange.DataPointColumns;
+import coin.trader.exchange.poloniex.PoloniexChartData;
+import coin.trader.utilities.Utils;
+
+/**
+ * Cost of parsing a returnChartData response by reading it into a String and
+ * mapping it with Gson, the way it used to be, compared to streaming it into
+ * the columns. The allocation per response is reported by the GC profiler.
+ *
+ * @author Evan
+ *
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class JsonParsingBenchmark {
+	private static final Type LIST_TYPE = new TypeToken<List<StringDataPoint>>() {
+	}.getType();
+
+	@Param( { "10", "2000" } )
+	public int amountOfCandles;
+
+	byte[] body;
+
+	@Setup
+	public void setup() {
+		final StringBuilder sb = new StringBuilder( "[" );
+
+		for ( int i = 0; i < this.amountOfCandles; i++ ) {
+			if ( i > 0 ) {
+				sb.append( ',' );
+			}
+
+			sb.append( "{\"date\":" ).append( 1500000000L + i * 300L );
+			sb.append( ",\"high\":" ).append( 0.071 + i * 0.0001 );
+			sb.append( ",\"low\":" ).append( 0.069 + i * 0.0001 );
+			sb.append( ",\"open\":" ).append( 0.0695 + i * 0.0001 );
+			sb.append( ",\"close\":" ).append( 0.0705 + i * 0.0001 );
+			sb.append( ",\"volume\":" ).append( 12.5 + i );
+			sb.append( ",\"quoteVolume\":" ).append( 178.25 + i );
+			sb.append( ",\"weightedAverage\":" ).append( 0.07 + i * 0.0001 ).append( '}' );
+		}
+
+		this.body = sb.append( ']' ).toString().getBytes( StandardCharsets.UTF_8 );
+	}
+
+	@Benchmark
+	public List<StringDataPoint> stringAndGson() {
+		return Utils.GSON.fromJson( new String( this.body, StandardCharsets.UTF_8 ), JsonParsingBenchmark.LIST_TYPE );
+	}
+
+	@Benchmark
+	public DataPointColumns streaming() throws IOException {
+		final JsonReader reader = new JsonReader( new InputStreamReader( new ByteArrayInputStream( this.body ), StandardCharsets.UTF_8 ) );
+		return PoloniexChartData.parse( reader, this.amountOfCandles ).getColumns();
+	}
+
+	/**
+	 * How the candles were parsed before they were streamed
+	 */
+	public static class StringDataPoint {
+		long date;
+		double high;
+		double low;
+		double open;
+		double close;
+		double volume;
+		double quoteVolume;
+		double weightedAverage;
+	}
+}
@@ -0,0 +1,63 @@
+package coin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import coin.trader.math.LinearRegression;
+
+/**
+ * Cost of adding a sample to the regression, each thread has its own
+ *
+ * @author Evan
+ *
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class LinearRegressionBenchmark {
+	@Param( { "20", "100", "1000", "10000" } )
+	public int windowSize;
+
+	private LinearRegression regression;
+	private long i = 0;
+
+	@Setup
+	public void setup() {
+		this.regression = new LinearRegression( this.windowSize );
+
+		for ( int j = 0; j < this.windowSize; j++ ) {
+			this.nextSample();
+		}
+	}
+
+	private void nextSample() {
+		/* x is the time in milliseconds, like the ticker indicators use */
+		this.regression.addSample( this.i * 1000.0, Prices.get( this.i ) );
+		this.i++;
+	}
+
+	@Benchmark
+	public void addSample() {
+		this.nextSample();
+	}
+
+	@Benchmark
+	public double addSampleAndGetSlope() {
+		this.nextSample();
+		return this.regression.getSlope();
+	}
+}
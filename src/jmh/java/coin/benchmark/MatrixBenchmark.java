@@ -0,0 +1,98 @@
+package coin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import coin.trader.math.Matrix;
+
+/**
+ * Square matrices, to compare the implementations as the size grows. The
+ * implementations that cannot run on this machine are left out by
+ * {@link BenchmarkRunner}.
+ *
+ * @author Evan
+ *
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class MatrixBenchmark {
+	@Param( { "CPU", "GPU_OPEN_CL", "GPU_JCUBLAS", "OFF_HEAP" } )
+	public String implementation;
+
+	@Param( { "64", "256", "1024" } )
+	public int size;
+
+	private Matrix A;
+	private Matrix B;
+
+	@Setup
+	public void setup() {
+		MatrixDevices.select( this.implementation );
+		this.A = MatrixDevices.random( this.size, this.size, 1 );
+		this.B = MatrixDevices.random( this.size, this.size, 2 );
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.A.free();
+		this.B.free();
+	}
+
+	/* Results are read back so the GPU implementations finish the work */
+	private static float consume( final Matrix C ) {
+		final float rv = C.get( 0, 0 );
+		C.free();
+		return rv;
+	}
+
+	@Benchmark
+	public float dot() {
+		return MatrixBenchmark.consume( this.A.dot( this.B ) );
+	}
+
+	@Benchmark
+	public float transpose() {
+		return MatrixBenchmark.consume( this.A.transpose() );
+	}
+
+	@Benchmark
+	public float applySigmoid() {
+		return MatrixBenchmark.consume( this.A.applySigmoid() );
+	}
+
+	@Benchmark
+	public float add() {
+		return MatrixBenchmark.consume( this.A.add( this.B ) );
+	}
+
+	@Benchmark
+	public float subtract() {
+		return MatrixBenchmark.consume( this.A.subtract( this.B ) );
+	}
+
+	@Benchmark
+	public float multiply() {
+		return MatrixBenchmark.consume( this.A.multiply( this.B ) );
+	}
+
+	@Benchmark
+	public float multiplyConstant() {
+		return MatrixBenchmark.consume( this.A.multiply( 0.5f ) );
+	}
+}
@@ -0,0 +1,79 @@
+package coin.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import coin.trader.math.Matrix;
+import coin.trader.math.Matrix.MatrixImplemention;
+
+/**
+ * Finds the matrix implementations that work on this machine, the GPU ones
+ * need their native libraries and a device.
+ *
+ * @author Evan
+ *
+ */
+final class MatrixDevices {
+	private MatrixDevices() {
+	}
+
+	static boolean isAvailable( final MatrixImplemention implementation ) {
+		final MatrixImplemention previous = Matrix.getMatrixCalculationImplementation();
+
+		try {
+			Matrix.setMatrixCalculationImplementation( implementation );
+			final Matrix A = Matrix.create( 2, 2 );
+			A.set( 1, 1, 1.0f );
+			final Matrix B = A.dot( A );
+			final boolean works = B.get( 1, 1 ) == 1.0f;
+			A.free();
+			B.free();
+			return works;
+		}
+		catch ( final Throwable t ) {
+			return false;
+		}
+		finally {
+			Matrix.setMatrixCalculationImplementation( previous );
+		}
+	}
+
+	static List<String> getAvailable() {
+		final List<String> rv = new ArrayList<String>();
+
+		for ( final MatrixImplemention implementation : MatrixImplemention.values() ) {
+			if ( MatrixDevices.isAvailable( implementation ) ) {
+				rv.add( implementation.name() );
+			}
+		}
+
+		return rv;
+	}
+
+	/**
+	 * Selects the implementation for the benchmark, failing it if the
+	 * implementation was asked for on a machine that cannot run it
+	 */
+	static void select( final String implementationName ) {
+		final MatrixImplemention implementation = MatrixImplemention.valueOf( implementationName );
+
+		if ( !MatrixDevices.isAvailable( implementation ) ) {
+			throw new IllegalStateException( implementation + " is not available on this machine." );
+		}
+
+		Matrix.setMatrixCalculationImplementation( implementation );
+	}
+
+	static Matrix random( final int rows, final int cols, final long seed ) {
+		final java.util.Random random = new java.util.Random( seed );
+		final Matrix A = Matrix.create( rows, cols );
+
+		for ( int r = 0; r < rows; r++ ) {
+			for ( int c = 0; c < cols; c++ ) {
+				A.set( r, c, random.nextFloat() );
+			}
+		}
+
+		return A;
+	}
+}
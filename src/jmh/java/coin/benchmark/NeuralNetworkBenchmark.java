@@ -0,0 +1,110 @@
+package coin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import coin.trader.math.Matrix;
+import coin.trader.neuralnetwork.NeuralNetwork;
+
+/**
+ * Training and querying networks shaped like the ones DataPointAnalyzer
+ * builds: 10 inputs per candle, hidden layers half the size of the inputs
+ * and outputs, 2 hidden layers and 2 outputs. 20 and 100 candles are
+ * realistic, 500 is there to see the large shapes. Batches are of
+ * {@link #BATCH_SIZE} samples, like HistoryAnalyzer trains with when a
+ * batch size is set.
+ *
+ * @author Evan
+ *
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class NeuralNetworkBenchmark {
+	/* DataPointAnalyzer.PARAMS_PER_DATA_POINT */
+	private static final int PARAMS_PER_DATA_POINT = 10;
+	private static final int BATCH_SIZE = 32;
+
+	@Param( { "CPU", "GPU_OPEN_CL", "GPU_JCUBLAS", "OFF_HEAP" } )
+	public String implementation;
+
+	@Param( { "20", "100", "500" } )
+	public int dataPoints;
+
+	private NeuralNetwork neuralNetwork;
+	private NeuralNetwork parallelNeuralNetwork;
+	private Matrix input;
+	private Matrix target;
+	private Matrix batchInput;
+	private Matrix batchTarget;
+
+	@Setup
+	public void setup() {
+		MatrixDevices.select( this.implementation );
+
+		final int inputs = this.dataPoints * NeuralNetworkBenchmark.PARAMS_PER_DATA_POINT;
+		this.neuralNetwork = new NeuralNetwork( inputs, (inputs + 2) / 2, 2, 2, NeuralNetwork.DEFAULT_LEARNING_RATE );
+		this.input = MatrixDevices.random( inputs, 1, 3 );
+		this.target = Matrix.create( 2, 1 );
+		this.target.set( 0, 0, NeuralNetwork.MAX_VALUE );
+		this.target.set( 1, 0, NeuralNetwork.MIN_VALUE );
+
+		this.parallelNeuralNetwork = new NeuralNetwork( inputs, (inputs + 2) / 2, 2, 2, NeuralNetwork.DEFAULT_LEARNING_RATE );
+		this.parallelNeuralNetwork.setDataParallel( true );
+		this.batchInput = MatrixDevices.random( inputs, NeuralNetworkBenchmark.BATCH_SIZE, 4 );
+		this.batchTarget = Matrix.create( 2, NeuralNetworkBenchmark.BATCH_SIZE );
+
+		for ( int i = 0; i < NeuralNetworkBenchmark.BATCH_SIZE; i++ ) {
+			this.batchTarget.set( 0, i, i % 2 == 0 ? NeuralNetwork.MAX_VALUE : NeuralNetwork.MIN_VALUE );
+			this.batchTarget.set( 1, i, i % 2 == 0 ? NeuralNetwork.MIN_VALUE : NeuralNetwork.MAX_VALUE );
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.neuralNetwork.free();
+		this.input.free();
+		this.target.free();
+		this.parallelNeuralNetwork.free();
+		this.batchInput.free();
+		this.batchTarget.free();
+	}
+
+	@Benchmark
+	public void train() {
+		this.neuralNetwork.train( this.input, this.target );
+	}
+
+	@Benchmark
+	public void trainBatch() {
+		this.neuralNetwork.train( this.batchInput, this.batchTarget );
+	}
+
+	@Benchmark
+	public void trainBatchDataParallel() {
+		this.parallelNeuralNetwork.train( this.batchInput, this.batchTarget );
+	}
+
+	@Benchmark
+	public float query() {
+		final Matrix output = this.neuralNetwork.query( this.input );
+		final float rv = output.get( 0, 0 );
+		output.free();
+		return rv;
+	}
+}
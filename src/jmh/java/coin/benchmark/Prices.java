@@ -0,0 +1,32 @@
+package coin.benchmark;
+
+import java.util.Random;
+
+/**
+ * Random walk of prices, generated once so the benchmarks only measure the
+ * code under test
+ *
+ * @author Evan
+ *
+ */
+final class Prices {
+	static final int MASK = 4095;
+	private static final double[] PRICES = new double[Prices.MASK + 1];
+
+	static {
+		final Random random = new Random( 42 );
+		double price = 0.07;
+
+		for ( int i = 0; i < Prices.PRICES.length; i++ ) {
+			price *= 1.0 + (random.nextDouble() - 0.5) * 0.002;
+			Prices.PRICES[i] = price;
+		}
+	}
+
+	private Prices() {
+	}
+
+	static double get( final long i ) {
+		return Prices.PRICES[(int) i & Prices.MASK];
+	}
+}
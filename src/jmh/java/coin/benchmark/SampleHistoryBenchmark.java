@@ -0,0 +1,132 @@
+package coin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import coin.trader.math.SampleHistory;
+
+/**
+ * Cost of adding a sample and of each statistic. Every benchmark thread has
+ * its own history, like the indicator of each currency pair, except for the
+ * contended group where readers share the history with the writer.
+ *
+ * @author Evan
+ *
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class SampleHistoryBenchmark {
+	@State( Scope.Thread )
+	public static class History {
+		@Param( { "20", "100", "1000", "10000" } )
+		public int windowSize;
+
+		SampleHistory history;
+		long i = 0;
+
+		@Setup
+		public void setup() {
+			this.history = new SampleHistory( this.windowSize );
+
+			/* Fill the window so the statistics are of real prices */
+			for ( int j = 0; j < this.windowSize; j++ ) {
+				this.history.addSample( Prices.get( this.i++ ) );
+			}
+		}
+	}
+
+	@State( Scope.Group )
+	public static class SharedHistory extends History {
+	}
+
+	@Benchmark
+	public void addSample( final History state ) {
+		state.history.addSample( Prices.get( state.i++ ) );
+	}
+
+	@Benchmark
+	public void addSampleAndReadAll( final History state, final Blackhole blackhole ) {
+		final SampleHistory history = state.history;
+		history.addSample( Prices.get( state.i++ ) );
+
+		blackhole.consume( history.getAverage() );
+		blackhole.consume( history.getStandardDeviation() );
+		blackhole.consume( history.getRSI() );
+		blackhole.consume( history.getMinimum() );
+		blackhole.consume( history.getMaximum() );
+		blackhole.consume( history.getDelta() );
+		blackhole.consume( history.getAverageToOldestRatio() );
+		blackhole.consume( history.getNewestToAverageRatio() );
+		blackhole.consume( history.getNewestToOldestRatio() );
+		blackhole.consume( history.getPeriodicAverage( 1 ) );
+	}
+
+	@Benchmark
+	public double getAverage( final History state ) {
+		return state.history.getAverage();
+	}
+
+	@Benchmark
+	public double getStandardDeviation( final History state ) {
+		return state.history.getStandardDeviation();
+	}
+
+	@Benchmark
+	public double getRSI( final History state ) {
+		return state.history.getRSI();
+	}
+
+	@Benchmark
+	public double getMinimum( final History state ) {
+		return state.history.getMinimum();
+	}
+
+	@Benchmark
+	public double getMaximum( final History state ) {
+		return state.history.getMaximum();
+	}
+
+	@Benchmark
+	public double getPeriodicAverage( final History state ) {
+		return state.history.getPeriodicAverage( 1 );
+	}
+
+	@Benchmark
+	public double getPeriodicAverage4( final History state ) {
+		return state.history.getPeriodicAverage( 4 );
+	}
+
+	/* One thread adds samples while three read them */
+	@Benchmark
+	@Group( "contended" )
+	@GroupThreads( 1 )
+	public void contendedWriter( final SharedHistory state ) {
+		state.history.addSample( Prices.get( state.i++ ) );
+	}
+
+	@Benchmark
+	@Group( "contended" )
+	@GroupThreads( 3 )
+	public void contendedReader( final SharedHistory state, final Blackhole blackhole ) {
+		blackhole.consume( state.history.getStandardDeviation() );
+		blackhole.consume( state.history.getMaximum() );
+		blackhole.consume( state.history.getPeriodicAverage( 1 ) );
+	}
+}
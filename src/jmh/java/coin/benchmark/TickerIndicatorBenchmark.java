@@ -0,0 +1,131 @@
+package coin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import coin.trader.algorithm.TickerIndicator;
+import coin.trader.algorithm.bollinger.BollingerTickerIndictor;
+import coin.trader.algorithm.reaction.ReactionTickerIndicator;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.Ticker;
+import coin.trader.utilities.SimulatedClock;
+
+/**
+ * Per tick cost of one currency pair in each indicator. Run with more threads
+ * to see the cost of many pairs updated at once, each thread has its own
+ * indicators like each pair does.
+ *
+ * @author Evan
+ *
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class TickerIndicatorBenchmark {
+	/* Samples kept by the indicators */
+	@Param( { "20", "100", "1000", "10000" } )
+	public int windowSize;
+
+	private final BenchmarkTicker ticker = new BenchmarkTicker();
+	private final SimulatedClock clock = new SimulatedClock();
+	private TickerIndicator bollinger;
+	private TickerIndicator reaction;
+	private long i = 0;
+
+	@Setup
+	public void setup() {
+		this.bollinger = new BollingerTickerIndictor( this.windowSize );
+
+		/* The reaction indicator keeps 45 seconds of samples */
+		this.reaction = new ReactionTickerIndicator( java.lang.Math.max( 1, this.windowSize / 45 ), this.clock );
+
+		for ( int j = 0; j < this.windowSize; j++ ) {
+			this.tick();
+			this.bollinger.addSample( this.ticker );
+			this.reaction.addSample( this.ticker );
+		}
+	}
+
+	private void tick() {
+		this.ticker.last = Prices.get( this.i );
+		this.clock.setTimeMillis( this.i * 1000 );
+		this.i++;
+	}
+
+	@Benchmark
+	public void bollingerAddSample() {
+		this.tick();
+		this.bollinger.addSample( this.ticker );
+	}
+
+	@Benchmark
+	public void bollingerTick( final Blackhole blackhole ) {
+		this.tick();
+		this.bollinger.addSample( this.ticker );
+		blackhole.consume( this.bollinger.shouldBuy() );
+		blackhole.consume( this.bollinger.getCandidacyWeight() );
+	}
+
+	@Benchmark
+	public void reactionAddSample() {
+		this.tick();
+		this.reaction.addSample( this.ticker );
+	}
+
+	@Benchmark
+	public void reactionTick( final Blackhole blackhole ) {
+		this.tick();
+		this.reaction.addSample( this.ticker );
+		blackhole.consume( this.reaction.shouldBuy() );
+		blackhole.consume( this.reaction.getCandidacyWeight() );
+	}
+
+	private static class BenchmarkTicker implements Ticker {
+		private double last = 0;
+
+		@Override
+		public CurrencyPair getCurrencyPair() {
+			return null;
+		}
+
+		@Override
+		public double getLast() {
+			return this.last;
+		}
+
+		@Override
+		public double getAsk() {
+			return this.last * 1.001;
+		}
+
+		@Override
+		public double getBid() {
+			return this.last * 0.999;
+		}
+
+		@Override
+		public double getBaseVolume() {
+			return 1000.0;
+		}
+
+		@Override
+		public double getQuoteVolume() {
+			return 1000.0 / this.last;
+		}
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * 
+ */
+/**
+ * @author Evan
+ *
+ */
+package coin.benchmark;
\ No newline at end of file
@@ -22,6 +22,8 @@ public class Info {
 	public static final String DIRECTORY_PATH = System.getProperty( "user.home" ) + File.separator + "CoinTraderBot" + File.separator;
 	public static final String CONFIG_PATH = Info.DIRECTORY_PATH + "config.json";
 	public static final String LOG_PATH = Info.DIRECTORY_PATH + "CoinTraderBot.log";
+	public static final String TICK_STORE_PATH = Info.DIRECTORY_PATH + "ticks" + File.separator;
+	public static final String CANDLE_CACHE_PATH = Info.DIRECTORY_PATH + "candles" + File.separator;
 
 	public static void print() {
 		Info.LOGGER.info( Info.PROGRAM_NAME );
@@ -29,6 +31,8 @@ public class Info {
 		Info.LOGGER.config( "Default directory: " + Info.DIRECTORY_PATH );
 		Info.LOGGER.config( "Configuration Path: " + Info.CONFIG_PATH );
 		Info.LOGGER.config( "Log Path: " + Info.LOG_PATH );
+		Info.LOGGER.config( "Tick Store Path: " + Info.TICK_STORE_PATH );
+		Info.LOGGER.config( "Candle Cache Path: " + Info.CANDLE_CACHE_PATH );
 		Info.LOGGER.config( "Configuration Settings:" );
 		Config.print();
 
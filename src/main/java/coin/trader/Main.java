@@ -9,8 +9,10 @@ import com.trader.powerball.Drawing;
 import com.trader.powerball.PowerballHistory;
 import com.trader.powerball.PowerballHistoryAnalyzerNN;
 
+import coin.trader.algorithm.MarketDataBus;
 import coin.trader.chart.ChartAnalyzer;
 import coin.trader.config.ConfigFile;
+import coin.trader.connection.HTTPRequest;
 import coin.trader.exchange.poloniex.PoloniexCurrencyPair;
 import coin.trader.exchange.poloniex.PoloniexExchange;
 import coin.trader.logger.Logger;
@@ -83,6 +85,14 @@ public class Main {
 			public void run() {
 				Main.LOGGER.info( "Shutting down..." );
 
+				/* Request latencies */
+				HTTPRequest.logLatencies();
+
+				/* Tick Stores */
+				Main.LOGGER.info( "Tick stores closing..." );
+				MarketDataBus.closeTickStores();
+				Main.LOGGER.info( "Tick stores closed" );
+
 				/* JCublas */
 				Main.LOGGER.info( "JCublas shutting down..." );
 				MatrixJCublas.shutdownJCublas();
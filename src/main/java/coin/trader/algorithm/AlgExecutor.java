@@ -4,17 +4,16 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import coin.trader.algorithm.SampleListenerManager.SampleListener;
+import coin.trader.algorithm.order.ManagedOrder;
+import coin.trader.algorithm.order.OrderManager;
+import coin.trader.algorithm.order.OrderState;
+import coin.trader.concurrency.ResourceManager;
 import coin.trader.exchange.Balance;
 import coin.trader.exchange.Balances;
-import coin.trader.exchange.BuyOrder;
-import coin.trader.exchange.CancelOrder;
 import coin.trader.exchange.CurrencyPair;
 import coin.trader.exchange.Exchange;
-import coin.trader.exchange.OpenOrder;
-import coin.trader.exchange.SellOrder;
 import coin.trader.exchange.Trade;
 import coin.trader.exchange.TradeStatistic;
 import coin.trader.logger.Logger;
@@ -24,8 +23,9 @@ import coin.trader.utilities.Callback.Return;
 /**
  * @author Evan
  */
-public class AlgExecutor extends Thread {
+public class AlgExecutor implements Runnable {
 	private static final Logger LOGGER = new Logger( AlgExecutor.class.getSimpleName(), Logger.Level.DEBUG );
+	/* How long an order can stay open without anything filled, in seconds */
 	private static final int RETRY_TIME_PERIOD = 2;
 
 	/* Algorithm */
@@ -33,13 +33,32 @@ public class AlgExecutor extends Thread {
 	protected final TickerIndicatorFactory tickerIndicatorFactory;
 
 	protected final Exchange exchange;
+	protected final OrderManager orderManager;
 
 	protected Balances balances = null;
 
+	/* Runs the logic loop, a virtual thread when they are used */
+	private final Thread thread;
+
 	public AlgExecutor( final Exchange exchange, final TickerIndicatorFactory tickerIndicatorFactory ) {
 		this.exchange = exchange;
+		this.orderManager = OrderManager.getInstance( exchange );
 		this.tickerIndicatorFactory = tickerIndicatorFactory;
 		this.tickerMonitorThread = tickerIndicatorFactory.getTickerMonitorThread( exchange );
+		this.thread = ResourceManager.newThread( this, this.getClass().getSimpleName() + " " + exchange.getName() );
+	}
+
+	public void start() {
+		if ( !this.thread.isAlive() ) {
+			this.thread.start();
+		}
+	}
+
+	/**
+	 * Interrupts the logic loop
+	 */
+	public void interrupt() {
+		this.thread.interrupt();
 	}
 
 	@Override
@@ -251,110 +270,32 @@ public class AlgExecutor extends Thread {
 		/* Loop until we got the buy or should opt out */
 		while ( true ) {
 			/* Place the order for everything that we got */
-			final CountDownLatch placeBuyOrderLatch = new CountDownLatch( 1 );
 			final double rate = tickerIndicator.getTicker().getLast();
 			final double quantity = (this.balances.getBalance( currencyPair.getBase() ).getAmount() / rate) / (1.0 + this.exchange.getFee());
-			final BuyOrder[] buyOrderRef = new BuyOrder[1];
 
 			AlgExecutor.LOGGER.debug( this.formatLog( "Placing buy order [currency pair, quantity, rate] = [ " + currencyPair + ", " + quantity + ", " + rate + " ]" ) );
-			AlgExecutor.this.exchange.placeBuyOrder( currencyPair, quantity, rate, new Return<BuyOrder>() {
-				@Override
-				public void succeeded( final BuyOrder buyOrder ) {
-					if ( buyOrder.isPlaced() ) {
-						buyOrderRef[0] = buyOrder;
-						placeBuyOrderLatch.countDown();
-					}
-					else {
-						AlgExecutor.this.exchange.placeBuyOrder( currencyPair, quantity, rate, this );
-					}
-				}
+			final ManagedOrder order = this.orderManager.placeBuyOrder( currencyPair, quantity, rate, AlgExecutor.RETRY_TIME_PERIOD * 1000 );
 
-				@Override
-				public void error( final Throwable t ) {
-					AlgExecutor.this.interrupt();
-				}
-			} );
+			/* Wait for the order to complete */
+			final OrderState state = this.awaitOrder( order );
 
-			try {
-				/* Wait until we have placed the order */
-				placeBuyOrderLatch.await();
+			if ( state == OrderState.FILLED ) {
+				return new Trade( currencyPair, rate, quantity, this.exchange.getFee() );
 			}
-			catch ( final Throwable t ) {
-
+			else if ( state != OrderState.CANCELED ) {
+				AlgExecutor.LOGGER.debug( this.formatLog( "Buy order " + order + " did not complete, opting out of buying" ) );
 				return null;
 			}
 
-			/* Wait for the order to complete */
-			final CountDownLatch watchBuyOrderLatch = new CountDownLatch( 1 );
-			final Trade buyOrder[] = new Trade[1];
-
-			AlgExecutor.LOGGER.debug( this.formatLog( "Buy order placed. Waiting for buy order to fill..." ) );
-			this.exchange.getOpenOrder( buyOrderRef[0].getID(), new Return<OpenOrder>() {
-				final AtomicInteger retryCounter = new AtomicInteger( AlgExecutor.this.exchange.getRequestsPerSecondLimit() * AlgExecutor.RETRY_TIME_PERIOD );
-
-				@Override
-				public void succeeded( final OpenOrder openOrder ) {
-					if ( openOrder.isClosed() ) {
-						buyOrder[0] = new Trade( currencyPair, rate, quantity, AlgExecutor.this.exchange.getFee() );
-						watchBuyOrderLatch.countDown();
-					}
-					else {
-						if ( this.retryCounter.decrementAndGet() <= 0 && !openOrder.isPartiallyFilled() ) {
-							AlgExecutor.LOGGER.debug( AlgExecutor.this.formatLog( "Buy order timeout occured, canceling order" ) );
-							AlgExecutor.this.exchange.cancelOpenOrder( buyOrderRef[0].getID(), new Return<CancelOrder>() {
-								@Override
-								public void succeeded( final CancelOrder cancelOrder ) {
-									/*
-									 * TODO( EMU ): Should add more logic to not
-									 * stall
-									 */
-									if ( tickerIndicator.shouldBuy() ) {
-										/*
-										 * Let the logic thread loop again and
-										 * try to buy
-										 */
-										AlgExecutor.LOGGER.debug( AlgExecutor.this.formatLog( "Buy indicator still suggests buy, trying to buy again" ) );
-										watchBuyOrderLatch.countDown();
-									}
-									else {
-										/*
-										 * Let the logic loop opt out of this
-										 * buy
-										 */
-										AlgExecutor.LOGGER.debug( AlgExecutor.this.formatLog( "Buy indicator does not suggest buying, opting out of buying" ) );
-										AlgExecutor.this.interrupt();
-									}
-								}
-
-								@Override
-								public void error( final Throwable t ) {
-									buyOrder[0] = new Trade( currencyPair, rate, quantity, AlgExecutor.this.exchange.getFee() );
-								}
-							} );
-						}
-						else {
-							AlgExecutor.this.exchange.getOpenOrder( buyOrderRef[0].getID(), this );
-						}
-					}
-				}
-
-				@Override
-				public void error( final Throwable t ) {
-					AlgExecutor.this.exchange.getOpenOrder( buyOrderRef[0].getID(), this );
-				}
-			} );
-
-			try {
-				/* Wait until the order has been completed */
-				watchBuyOrderLatch.await();
+			/* TODO( EMU ): Should add more logic to not stall */
+			if ( tickerIndicator.shouldBuy() ) {
+				/* Loop again and try to buy */
+				AlgExecutor.LOGGER.debug( this.formatLog( "Buy indicator still suggests buy, trying to buy again" ) );
 			}
-			catch ( final Throwable t ) {
+			else {
+				AlgExecutor.LOGGER.debug( this.formatLog( "Buy indicator does not suggest buying, opting out of buying" ) );
 				return null;
 			}
-
-			if ( buyOrder[0] != null ) {
-				return buyOrder[0];
-			}
 		}
 	}
 
@@ -391,92 +332,36 @@ public class AlgExecutor extends Thread {
 			}
 
 			/* Execute the Sell */
-			final CountDownLatch sellPlacedLatch = new CountDownLatch( 1 );
 			final double rate = tickerIndicator.getTicker().getLast();
 			final double quantity = (buyOrder.getQuantity()) / (1.0 + this.exchange.getFee());
-			final SellOrder[] sellOrderRef = new SellOrder[1];
 
 			AlgExecutor.LOGGER.debug( this.formatLog( "Placing sell order [currency pair, quantity, rate] = [ " + currencyPair + ", " + quantity + ", " + rate + " ]" ) );
-			this.exchange.placeSellOrder( currencyPair, quantity, rate, new Return<SellOrder>() {
-				@Override
-				public void succeeded( final SellOrder sellOrder ) {
-					if ( sellOrder.isPlaced() ) {
-						sellOrderRef[0] = sellOrder;
-						sellPlacedLatch.countDown();
-					}
-					else {
-						AlgExecutor.this.exchange.placeSellOrder( currencyPair, quantity, rate, this );
-					}
-				}
-
-				@Override
-				public void error( final Throwable t ) {
-					AlgExecutor.this.exchange.placeSellOrder( currencyPair, quantity, rate, this );
-				}
-			} );
-
-			try {
-				/* Wait for sell signal */
-				sellPlacedLatch.await();
-			}
-			catch ( final Throwable t ) {
-			}
+			final ManagedOrder order = this.orderManager.placeSellOrder( currencyPair, quantity, rate, AlgExecutor.RETRY_TIME_PERIOD * 1000 );
 
 			/* Wait for the order to complete */
-			AlgExecutor.LOGGER.debug( this.formatLog( "Sell order placed. Waiting for sell order to fill..." ) );
-			final CountDownLatch watchSellOrderLatch = new CountDownLatch( 1 );
-			final Trade sellOrder[] = new Trade[1];
-			this.exchange.getOpenOrder( sellOrderRef[0].getID(), new Return<OpenOrder>() {
-				final AtomicInteger retryCounter = new AtomicInteger( AlgExecutor.this.exchange.getRequestsPerSecondLimit() * AlgExecutor.RETRY_TIME_PERIOD );
-
-				@Override
-				public void succeeded( final OpenOrder openOrder ) {
-					if ( openOrder.isClosed() ) {
-						sellOrder[0] = new Trade( currencyPair, rate, quantity, AlgExecutor.this.exchange.getFee() );
-						watchSellOrderLatch.countDown();
-					}
-					else {
-						if ( this.retryCounter.decrementAndGet() <= 0 && !openOrder.isPartiallyFilled() ) {
-							AlgExecutor.LOGGER.debug( AlgExecutor.this.formatLog( "Sell order timeout occured, canceling order" ) );
-							AlgExecutor.this.exchange.cancelOpenOrder( sellOrderRef[0].getID(), new Return<CancelOrder>() {
-								@Override
-								public void succeeded( final CancelOrder cancelOrder ) {
-									/*
-									 * TODO( EMU ): Should add more logic to not
-									 * stall
-									 */
-									AlgExecutor.LOGGER.debug( AlgExecutor.this.formatLog( "Retrying sell order with different rate" ) );
-									watchSellOrderLatch.countDown();
-								}
-
-								@Override
-								public void error( final Throwable t ) {
-									sellOrder[0] = new Trade( currencyPair, rate, quantity, AlgExecutor.this.exchange.getFee() );
-								}
-							} );
-						}
-						else {
-							AlgExecutor.this.exchange.getOpenOrder( sellOrderRef[0].getID(), this );
-						}
-					}
-				}
+			if ( this.awaitOrder( order ) == OrderState.FILLED ) {
+				return new Trade( currencyPair, rate, quantity, this.exchange.getFee() );
+			}
 
-				@Override
-				public void error( final Throwable t ) {
-					AlgExecutor.this.exchange.getOpenOrder( sellOrderRef[0].getID(), this );
-				}
-			} );
+			/* TODO( EMU ): Should add more logic to not stall */
+			AlgExecutor.LOGGER.debug( this.formatLog( "Sell order " + order + " did not fill, retrying sell order with different rate" ) );
+		}
+	}
 
-			try {
-				/* Wait until the order has been completed */
-				watchSellOrderLatch.await();
-			}
-			catch ( final Throwable t ) {
-			}
+	/**
+	 * Waits for the order to be done, canceling it when interrupted
+	 * 
+	 * @return The state the order ended in, null if interrupted
+	 */
+	private OrderState awaitOrder( final ManagedOrder order ) {
+		AlgExecutor.LOGGER.debug( this.formatLog( "Order placed. Waiting for order to fill..." ) );
 
-			if ( sellOrder[0] != null ) {
-				return sellOrder[0];
-			}
+		try {
+			return order.getCompletion().get().getState();
+		}
+		catch ( final Throwable t ) {
+			this.orderManager.cancel( order );
+			return null;
 		}
 	}
 
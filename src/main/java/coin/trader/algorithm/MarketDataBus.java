@@ -0,0 +1,211 @@
+package coin.trader.algorithm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import coin.trader.Info;
+import coin.trader.concurrency.ResourceManager;
+import coin.trader.config.Config;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.Exchange;
+import coin.trader.exchange.Ticker;
+import coin.trader.exchange.TickerSnapshot;
+import coin.trader.logger.Logger;
+import coin.trader.storage.TickStore;
+import coin.trader.utilities.Callback.Return;
+
+/**
+ * Polls the tickers of an exchange once for every strategy running on it. Each
+ * poll is stored in one {@link TickerSnapshot} and handed to every subscriber,
+ * so adding a strategy does not add requests to the exchange.
+ *
+ * The bus polls on its own thread while it has subscribers. The snapshot is
+ * reused for every poll, the next poll only starts after every subscriber
+ * returns, so a subscriber must not keep the snapshot past its call.
+ * Subscribers are called one after another.
+ *
+ * The shared bus of an exchange records every poll to a {@link TickStore}
+ * under {@link Info#TICK_STORE_PATH} unless
+ * {@link Config.StorageConfig#RECORD_TICKS} is off.
+ *
+ * @author Evan
+ *
+ */
+public class MarketDataBus {
+	private static final Logger LOGGER = new Logger( MarketDataBus.class.getSimpleName() );
+	private static final Map<Exchange, MarketDataBus> INSTANCES = new HashMap<Exchange, MarketDataBus>();
+
+	private final Exchange exchange;
+	private final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+	private final TickerSnapshot snapshot = new TickerSnapshot();
+	private volatile TickStore tickStore = null;
+
+	/* Guarded by subscribers */
+	private Thread pollThread = null;
+
+	public MarketDataBus( final Exchange exchange ) {
+		this.exchange = exchange;
+	}
+
+	/**
+	 * @return The bus every strategy on the exchange shares, recording its
+	 *         polls if enabled
+	 */
+	public static MarketDataBus getInstance( final Exchange exchange ) {
+		synchronized ( MarketDataBus.INSTANCES ) {
+			MarketDataBus bus = MarketDataBus.INSTANCES.get( exchange );
+
+			if ( bus == null ) {
+				bus = new MarketDataBus( exchange );
+
+				if ( Config.StorageConfig.RECORD_TICKS.getValue().booleanValue() ) {
+					final File directory = new File( Info.TICK_STORE_PATH + exchange.getName() );
+
+					try {
+						bus.setTickStore( new TickStore( directory ) );
+					}
+					catch ( final IOException e ) {
+						MarketDataBus.LOGGER.error( "Could not open tick store " + directory + ", ticks will not be recorded", e );
+					}
+				}
+
+				MarketDataBus.INSTANCES.put( exchange, bus );
+			}
+
+			return bus;
+		}
+	}
+
+	/**
+	 * Stops recording and closes the tick store of every shared bus
+	 */
+	public static void closeTickStores() {
+		synchronized ( MarketDataBus.INSTANCES ) {
+			for ( final MarketDataBus bus : MarketDataBus.INSTANCES.values() ) {
+				final TickStore tickStore = bus.tickStore;
+				bus.setTickStore( null );
+
+				if ( tickStore != null ) {
+					tickStore.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a subscriber, polling starts with the first one
+	 *
+	 * @param subscriber
+	 */
+	public void subscribe( final Subscriber subscriber ) {
+		synchronized ( this.subscribers ) {
+			this.subscribers.add( subscriber );
+
+			if ( this.pollThread == null ) {
+				this.pollThread = ResourceManager.newThread( new Runnable() {
+					@Override
+					public void run() {
+						MarketDataBus.this.poll();
+					}
+				}, MarketDataBus.class.getSimpleName() + " " + this.exchange.getName() );
+				this.pollThread.start();
+			}
+		}
+	}
+
+	/**
+	 * Removes a subscriber, polling stops after the poll in progress once
+	 * there are none left
+	 *
+	 * @param subscriber
+	 */
+	public void unsubscribe( final Subscriber subscriber ) {
+		this.subscribers.remove( subscriber );
+	}
+
+	/**
+	 * Records every snapshot the bus polls to the store, so it can be replayed
+	 * later. Pass null to stop recording.
+	 *
+	 * @param tickStore
+	 */
+	public void setTickStore( final TickStore tickStore ) {
+		this.tickStore = tickStore;
+	}
+
+	private void poll() {
+		while ( true ) {
+			synchronized ( this.subscribers ) {
+				if ( this.subscribers.isEmpty() ) {
+					this.pollThread = null;
+					return;
+				}
+			}
+
+			final CountDownLatch latch = new CountDownLatch( 1 );
+			this.exchange.getTickers( new Return<Map<CurrencyPair, Ticker>>() {
+				@Override
+				public void succeeded( final Map<CurrencyPair, Ticker> tickers ) {
+					try {
+						MarketDataBus.this.publish( System.currentTimeMillis(), tickers );
+					}
+					finally {
+						latch.countDown();
+					}
+				}
+
+				@Override
+				public void error( final Throwable t ) {
+					latch.countDown();
+				}
+			} );
+
+			try {
+				/* Wait for ticker to return */
+				latch.await();
+			}
+			catch ( final Throwable t ) {
+			}
+		}
+	}
+
+	/**
+	 * Records the tickers of a poll and hands them to every subscriber. Only
+	 * one thread may publish at a time.
+	 *
+	 * @param timestamp
+	 * @param tickers
+	 */
+	public void publish( final long timestamp, final Map<CurrencyPair, Ticker> tickers ) {
+		/* Record the snapshot */
+		final TickStore tickStore = this.tickStore;
+		if ( tickStore != null ) {
+			try {
+				tickStore.append( timestamp, tickers );
+			}
+			catch ( final Throwable t ) {
+				MarketDataBus.LOGGER.warn( "Could not record ticker snapshot", t );
+			}
+		}
+
+		this.snapshot.update( timestamp, tickers );
+
+		for ( final Subscriber subscriber : this.subscribers ) {
+			try {
+				subscriber.onSnapshot( this.snapshot );
+			}
+			catch ( final Throwable t ) {
+				MarketDataBus.LOGGER.warn( "Subscriber failed on ticker snapshot", t );
+			}
+		}
+	}
+
+	public static interface Subscriber {
+		public void onSnapshot( final TickerSnapshot snapshot );
+	}
+}
@@ -1,42 +1,228 @@
 package coin.trader.algorithm;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+import coin.trader.concurrency.ResourceManager;
 import coin.trader.logger.Logger;
 
 /**
  * This class is used to broadcast after adding a new sample
- * 
+ *
+ * A manager created with a ring buffer calls each listener on a thread of its
+ * own, with its own {@link SampleRingBuffer.Consumer}, at its own pace.
+ * Broadcasting only publishes the sample into the ring, so a slow listener
+ * never holds up the thread adding the samples, nor the other listeners. If a
+ * listener falls more than the ring behind, the oldest samples are skipped
+ * for it. A manager created without one calls its listeners on the thread
+ * broadcasting, which backtests rely on.
+ *
+ * A listener added gets the samples broadcast from then on. A listener
+ * removed is not called again, so it can remove itself while it is being
+ * called.
+ *
  * @author Evan
  *
  */
 public class SampleListenerManager {
 	private static final Logger LOGGER = new Logger( SampleListenerManager.class.getSimpleName() );
-	private final List<SampleListener> listeners = new CopyOnWriteArrayList<SampleListener>();
 
+	/* Without a ring, only touched by the thread broadcasting */
+	private final List<SampleListener> listeners = new ArrayList<SampleListener>();
+	private final Queue<Change> changes = new ConcurrentLinkedQueue<Change>();
+
+	private final String name;
+	private final SampleRingBuffer ring;
+
+	/* With a ring, guarded by this */
+	private final List<Delivery> deliveries = new ArrayList<Delivery>();
+
+	/**
+	 * Calls the listeners on the thread broadcasting
+	 */
 	public SampleListenerManager() {
+		this.name = null;
+		this.ring = null;
+	}
 
+	/**
+	 * Calls each listener on a thread of its own, which starts when the
+	 * listener is added
+	 *
+	 * @param name
+	 *            - Name of the threads calling the listeners
+	 * @param capacity
+	 *            - Samples the listeners can fall behind before samples are
+	 *            skipped, must be a power of two
+	 */
+	public SampleListenerManager( final String name, final int capacity ) {
+		this.name = name;
+		this.ring = new SampleRingBuffer( capacity );
 	}
 
 	public void addSampleListener( final SampleListener listener ) {
-		this.listeners.add( listener );
+		if ( this.ring == null ) {
+			this.changes.add( new Change( listener, true ) );
+		}
+		else {
+			this.start( listener );
+		}
 	}
 
 	public void removeSampleListener( final SampleListener listener ) {
-		this.listeners.remove( listener );
+		if ( this.ring == null ) {
+			this.changes.add( new Change( listener, false ) );
+		}
+		else {
+			this.stop( listener );
+		}
 	}
 
+	/**
+	 * Hands the updated indicators to the listeners. Only one thread may
+	 * broadcast at a time.
+	 *
+	 * @param tickers
+	 *            - Copied, so it can be reused once this returns
+	 */
 	public void broadcast( final List<TickerIndicator> tickers ) {
-		for ( final SampleListener listener : this.listeners ) {
+		if ( this.ring == null ) {
+			this.deliver( tickers );
+		}
+		else {
+			this.ring.publish( System.currentTimeMillis(), tickers );
+		}
+	}
+
+	/**
+	 * @return The amount of samples broadcast that the slowest listener is not
+	 *         done with yet
+	 */
+	public synchronized long getLag() {
+		long lag = 0;
+
+		for ( int i = 0, size = this.deliveries.size(); i < size; i++ ) {
+			lag = java.lang.Math.max( lag, this.deliveries.get( i ).consumer.getLag() );
+		}
+
+		return lag;
+	}
+
+	/**
+	 * @return The amount of samples skipped because the listeners still added
+	 *         fell too far behind, added up over the listeners
+	 */
+	public synchronized long getAmountOfDroppedSamples() {
+		long dropped = 0;
+
+		for ( int i = 0, size = this.deliveries.size(); i < size; i++ ) {
+			dropped += this.deliveries.get( i ).consumer.getAmountOfDropped();
+		}
+
+		return dropped;
+	}
+
+	/**
+	 * Stops the threads calling the listeners once they got the samples
+	 * already broadcast
+	 */
+	public synchronized void shutdown() {
+		for ( int i = 0, size = this.deliveries.size(); i < size; i++ ) {
+			this.deliveries.get( i ).consumer.close();
+		}
+	}
+
+	private synchronized void start( final SampleListener listener ) {
+		/* The listener only gets the samples broadcast from now on */
+		final Delivery delivery = new Delivery( listener, new SampleRingBuffer.Consumer( this.ring ) );
+		this.deliveries.add( delivery );
+
+		final Thread thread = ResourceManager.newThread( delivery, this.name );
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+	private synchronized void stop( final SampleListener listener ) {
+		for ( int i = 0, size = this.deliveries.size(); i < size; i++ ) {
+			final Delivery delivery = this.deliveries.get( i );
+
+			if ( delivery.listener == listener ) {
+				delivery.removed = true;
+				delivery.consumer.close();
+				this.deliveries.remove( i );
+				return;
+			}
+		}
+	}
+
+	private void deliver( final List<TickerIndicator> tickers ) {
+		Change change;
+		while ( (change = this.changes.poll()) != null ) {
+			if ( change.add ) {
+				this.listeners.add( change.listener );
+			}
+			else {
+				this.listeners.remove( change.listener );
+			}
+		}
+
+		for ( int i = 0, size = this.listeners.size(); i < size; i++ ) {
 			try {
-				listener.onNewSample( tickers );
+				this.listeners.get( i ).onNewSample( tickers );
 			}
 			catch ( final Throwable t ) {
+				SampleListenerManager.LOGGER.warn( "Sample listener failed", t );
 			}
 		}
 	}
 
+	/**
+	 * Calls one listener with the samples its consumer reads from the ring. A
+	 * failing listener is logged and gets the next sample.
+	 */
+	private static class Delivery implements Runnable {
+		private final SampleListener listener;
+		private final SampleRingBuffer.Consumer consumer;
+		private volatile boolean removed = false;
+
+		private Delivery( final SampleListener listener, final SampleRingBuffer.Consumer consumer ) {
+			this.listener = listener;
+			this.consumer = consumer;
+		}
+
+		@Override
+		public void run() {
+			while ( true ) {
+				try {
+					if ( !this.consumer.next() || this.removed ) {
+						return;
+					}
+
+					this.listener.onNewSample( this.consumer.getIndicators() );
+				}
+				catch ( final InterruptedException e ) {
+					SampleListenerManager.LOGGER.warn( "Interrupted while waiting for samples", e );
+					return;
+				}
+				catch ( final Throwable t ) {
+					SampleListenerManager.LOGGER.warn( "Sample listener failed", t );
+				}
+			}
+		}
+	}
+
+	private static class Change {
+		private final SampleListener listener;
+		private final boolean add;
+
+		private Change( final SampleListener listener, final boolean add ) {
+			this.listener = listener;
+			this.add = add;
+		}
+	}
+
 	public static interface SampleListener {
 		public void onNewSample( final List<TickerIndicator> indicators );
 	}
@@ -0,0 +1,292 @@
+package coin.trader.algorithm;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import coin.trader.utilities.Utils;
+
+/**
+ * Ring of preallocated sample events, written by one thread and read by any
+ * amount of {@link Consumer}s, each at its own pace.
+ *
+ * Publishing never waits for the consumers. A consumer that falls more than
+ * the capacity of the ring behind skips to the oldest event still in the
+ * ring, and counts the events it missed. The indicators of an event are live,
+ * an event records which indicators were updated by a poll, not their values
+ * at the time, so a consumer that skips ahead still sees the latest state.
+ * Indicators guard their state with a lock, and the ticker each one keeps is
+ * a copy of its poll, so reading them while the next poll updates them is
+ * safe.
+ *
+ * After the first events, publishing and consuming allocate nothing.
+ *
+ * @author Evan
+ *
+ */
+public class SampleRingBuffer {
+	private final Slot[] slots;
+	private final int mask;
+
+	/* Sequence of the last published event, and of the event being written */
+	private final AtomicLong cursor = new AtomicLong( -1 );
+	private final AtomicLong claimed = new AtomicLong( -1 );
+
+	/* Consumers waiting for an event */
+	private final Object lock = new Object();
+	private final AtomicInteger waiters = new AtomicInteger( 0 );
+
+	/**
+	 * @param capacity
+	 *            - Must be a power of two
+	 */
+	public SampleRingBuffer( final int capacity ) {
+		Utils.ASSERT( capacity > 0 && (capacity & (capacity - 1)) == 0, "The capacity must be a power of two." );
+
+		this.slots = new Slot[capacity];
+		this.mask = capacity - 1;
+
+		for ( int i = 0; i < capacity; i++ ) {
+			this.slots[i] = new Slot();
+		}
+	}
+
+	public int getCapacity() {
+		return this.slots.length;
+	}
+
+	/**
+	 * @return The sequence of the last published event, -1 before the first
+	 */
+	public long getCursor() {
+		return this.cursor.get();
+	}
+
+	/**
+	 * Copies the indicators into the next slot and publishes it. Only one
+	 * thread may publish.
+	 *
+	 * @param timestamp
+	 * @param indicators
+	 */
+	public void publish( final long timestamp, final List<TickerIndicator> indicators ) {
+		final long sequence = this.cursor.get() + 1;
+
+		/* Consumers copying the slot being overwritten will see they were lapped */
+		this.claimed.set( sequence );
+
+		final Slot slot = this.slots[(int) (sequence & this.mask)];
+		slot.set( timestamp, indicators );
+
+		this.cursor.set( sequence );
+
+		if ( this.waiters.get() > 0 ) {
+			synchronized ( this.lock ) {
+				this.lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Wakes every consumer waiting for an event, so they can see they were
+	 * closed
+	 */
+	void wakeUp() {
+		synchronized ( this.lock ) {
+			this.lock.notifyAll();
+		}
+	}
+
+	private static class Slot {
+		private long timestamp;
+		private int size;
+		private TickerIndicator[] indicators = new TickerIndicator[256];
+
+		private void set( final long timestamp, final List<TickerIndicator> indicators ) {
+			final int size = indicators.size();
+
+			if ( size > this.indicators.length ) {
+				this.indicators = Arrays.copyOf( this.indicators, java.lang.Math.max( size, this.indicators.length * 2 ) );
+			}
+
+			for ( int i = 0; i < size; i++ ) {
+				this.indicators[i] = indicators.get( i );
+			}
+
+			/* Drop the references of the last event */
+			Arrays.fill( this.indicators, size, this.size > size ? this.size : size, null );
+
+			this.timestamp = timestamp;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Reads the events of the ring in order. Only one thread may use a
+	 * consumer.
+	 *
+	 * @author Evan
+	 *
+	 */
+	public static class Consumer {
+		private final SampleRingBuffer ring;
+
+		/* Last event copied, and last event handled, which is published */
+		private long read;
+		private final AtomicLong sequence;
+		private final AtomicLong amountOfDropped = new AtomicLong( 0 );
+		private volatile boolean closed = false;
+
+		/* Copy of the current event, only valid until the next one */
+		private long timestamp;
+		private int size;
+		private TickerIndicator[] indicators = new TickerIndicator[256];
+		private final List<TickerIndicator> indicatorsView = new IndicatorList();
+
+		/**
+		 * Starts after the last published event
+		 */
+		public Consumer( final SampleRingBuffer ring ) {
+			this.ring = ring;
+			this.read = ring.getCursor();
+			this.sequence = new AtomicLong( this.read );
+		}
+
+		/**
+		 * Waits for the next event and copies it. The event copied before is
+		 * done being handled.
+		 *
+		 * @return False if the consumer was closed and read every event
+		 *         published before
+		 * @throws InterruptedException
+		 */
+		public boolean next() throws InterruptedException {
+			final SampleRingBuffer ring = this.ring;
+			final int capacity = ring.slots.length;
+
+			this.sequence.set( this.read );
+
+			while ( true ) {
+				long next = this.read + 1;
+				final long available = ring.cursor.get();
+
+				if ( next > available ) {
+					if ( this.closed ) {
+						return false;
+					}
+
+					this.await( next );
+					continue;
+				}
+
+				/* Fell behind by more than the ring, skip to the oldest event */
+				if ( available - next >= capacity ) {
+					final long oldest = available - capacity + 1;
+					this.amountOfDropped.addAndGet( oldest - next );
+					next = oldest;
+				}
+
+				this.copy( ring.slots[(int) (next & ring.mask)] );
+
+				/* The slot was overwritten while it was copied */
+				if ( ring.claimed.get() - next >= capacity ) {
+					this.amountOfDropped.incrementAndGet();
+					this.read = next;
+					continue;
+				}
+
+				this.read = next;
+				return true;
+			}
+		}
+
+		private void copy( final Slot slot ) {
+			final int size = slot.size;
+
+			if ( size > this.indicators.length ) {
+				this.indicators = Arrays.copyOf( this.indicators, java.lang.Math.max( size, this.indicators.length * 2 ) );
+			}
+
+			System.arraycopy( slot.indicators, 0, this.indicators, 0, size );
+			Arrays.fill( this.indicators, size, this.size > size ? this.size : size, null );
+
+			this.timestamp = slot.timestamp;
+			this.size = size;
+		}
+
+		private void await( final long next ) throws InterruptedException {
+			final SampleRingBuffer ring = this.ring;
+			ring.waiters.incrementAndGet();
+
+			try {
+				synchronized ( ring.lock ) {
+					while ( !this.closed && ring.cursor.get() < next ) {
+						ring.lock.wait();
+					}
+				}
+			}
+			finally {
+				ring.waiters.decrementAndGet();
+			}
+		}
+
+		/**
+		 * Stops the consumer once it read the events already published, waking
+		 * it up if it is waiting
+		 */
+		public void close() {
+			this.closed = true;
+			this.ring.wakeUp();
+		}
+
+		/**
+		 * @return Time of the poll of the current event
+		 */
+		public long getTimestamp() {
+			return this.timestamp;
+		}
+
+		/**
+		 * @return The indicators updated by the current event, only valid
+		 *         until the next one
+		 */
+		public List<TickerIndicator> getIndicators() {
+			return this.indicatorsView;
+		}
+
+		/**
+		 * @return The amount of published events this consumer did not handle
+		 *         yet, the event being handled included
+		 */
+		public long getLag() {
+			return java.lang.Math.max( 0, this.ring.getCursor() - this.sequence.get() );
+		}
+
+		/**
+		 * @return The amount of events skipped because the consumer fell too
+		 *         far behind
+		 */
+		public long getAmountOfDropped() {
+			return this.amountOfDropped.get();
+		}
+
+		private class IndicatorList extends AbstractList<TickerIndicator> implements RandomAccess {
+			@Override
+			public TickerIndicator get( final int index ) {
+				if ( index < 0 || index >= Consumer.this.size ) {
+					throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + Consumer.this.size );
+				}
+
+				return Consumer.this.indicators[index];
+			}
+
+			@Override
+			public int size() {
+				return Consumer.this.size;
+			}
+		}
+	}
+}
@@ -1,69 +1,135 @@
 package coin.trader.algorithm;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RecursiveAction;
 
-import coin.trader.exchange.CurrencyPair;
+import coin.trader.concurrency.ResourceManager;
 import coin.trader.exchange.Exchange;
-import coin.trader.exchange.Ticker;
-import coin.trader.utilities.Callback.Return;
+import coin.trader.exchange.TickerSnapshot;
 
 public class TickerLastMonitorThread extends TickerMonitorThread {
+	/* Pairs below which handing them to another thread costs more than it saves */
+	private static final int MIN_PAIRS_PER_TASK = 32;
+
+	/*
+	 * Reused for every poll. Broadcasting copies it, so the listeners never
+	 * see it change.
+	 */
+	private final List<TickerIndicator> indicatorList = new ArrayList<TickerIndicator>( 256 );
+	private final List<TickerIndicator> indicatorListView = Collections.unmodifiableList( this.indicatorList );
+
+	private final MarketDataBus.Subscriber subscriber = new MarketDataBus.Subscriber() {
+		@Override
+		public void onSnapshot( final TickerSnapshot snapshot ) {
+			final List<TickerIndicator> indicatorList = TickerLastMonitorThread.this.indicatorList;
+			indicatorList.clear();
+
+			/* Indicators are created here, so only this thread touches the table */
+			for ( int i = 0, size = snapshot.size(); i < size; i++ ) {
+				indicatorList.add( TickerLastMonitorThread.this.getTickerIndicator( snapshot.getPairID( i ) ) );
+			}
+
+			/* Update sma */
+			TickerLastMonitorThread.addSamples( snapshot, indicatorList );
+
+			/* Broadcast the updates to listeners, they run on their own thread */
+			TickerLastMonitorThread.this.sampleListenerManager.broadcast( TickerLastMonitorThread.this.indicatorListView );
+		}
+	};
+
 	public TickerLastMonitorThread( final Exchange exchange, final TickerIndicatorFactory tickerIndicatorFactory ) {
-		super( exchange, tickerIndicatorFactory );
+		this( exchange, tickerIndicatorFactory, MarketDataBus.getInstance( exchange ) );
+	}
+
+	public TickerLastMonitorThread( final Exchange exchange, final TickerIndicatorFactory tickerIndicatorFactory, final MarketDataBus marketDataBus ) {
+		super( exchange, tickerIndicatorFactory, marketDataBus );
 	}
 
+	/**
+	 * Subscribes to the tickers polled by the market data bus. The updates run
+	 * on the thread that publishes each snapshot, which for a polling bus is
+	 * the light load pool thread that completes its request for the tickers
+	 */
 	@Override
 	public void run() {
-		/* Loop forever */
-		while ( true ) {
-			final CountDownLatch latch = new CountDownLatch( 1 );
-			this.exchange.getTickers( new Return<Map<CurrencyPair, Ticker>>() {
-				@Override
-				public void succeeded( final Map<CurrencyPair, Ticker> tickers ) {
-					try {
-
-						final List<TickerIndicator> indicatorList = new CopyOnWriteArrayList<TickerIndicator>();
-
-						for ( final Entry<CurrencyPair, Ticker> pair : tickers.entrySet() ) {
-							final CurrencyPair key = pair.getKey();
-							TickerIndicator indicator = TickerLastMonitorThread.this.tickerIndicatorMap.get( key );
-
-							if ( indicator == null ) {
-								indicator = TickerLastMonitorThread.this.tickerIndicatorFactory.createTickerIndicator();
-								TickerLastMonitorThread.this.tickerIndicatorMap.put( key, indicator );
-							}
-
-							/* Update sma */
-							indicator.addSample( pair.getValue() );
-							indicatorList.add( indicator );
-						}
-
-						/* Broadcast the updates to listeners */
-						TickerLastMonitorThread.this.sampleListenerManager.broadcast( indicatorList );
-					}
-					catch ( final Throwable t ) {
-					}
-					finally {
-						latch.countDown();
-					}
-				}
-
-				@Override
-				public void error( final Throwable t ) {
-					latch.countDown();
-				}
-			} );
-
-			try {
-				/* Wait for ticker to return */
-				latch.await();
-			}
-			catch ( final Throwable t ) {
+		this.marketDataBus.subscribe( this.subscriber );
+	}
+
+	/**
+	 * Stops updating the indicators
+	 */
+	public void shutdown() {
+		this.marketDataBus.unsubscribe( this.subscriber );
+	}
+
+	/**
+	 * Adds the sample of each pair to its indicator. Every pair has its own
+	 * indicator, so the pairs are split into ranges that are updated on the
+	 * indicator pool at the same time, while this thread waits.
+	 *
+	 * @param snapshot
+	 * @param indicatorList
+	 *            - The indicator of each pair of the snapshot, in the same
+	 *            order
+	 */
+	private static void addSamples( final TickerSnapshot snapshot, final List<TickerIndicator> indicatorList ) {
+		final int size = indicatorList.size();
+
+		if ( size < 2 * TickerLastMonitorThread.MIN_PAIRS_PER_TASK ) {
+			TickerLastMonitorThread.addSamples( snapshot, indicatorList, 0, size );
+			return;
+		}
+
+		/* One range per thread, but never smaller than is worth handing off */
+		final int pairsPerTask = java.lang.Math.max( TickerLastMonitorThread.MIN_PAIRS_PER_TASK,
+				size / ResourceManager.OPTIMAL_NUMBER_OF_THREADS );
+		ResourceManager.invokeIndicatorTask( new AddSamplesTask( snapshot, indicatorList, 0, size, pairsPerTask ) );
+	}
+
+	/**
+	 * Splits its range in halves until it is no larger than the pairs per
+	 * task, then updates it
+	 */
+	private static final class AddSamplesTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final TickerSnapshot snapshot;
+		private final List<TickerIndicator> indicatorList;
+		private final int from;
+		private final int to;
+		private final int pairsPerTask;
+
+		AddSamplesTask( final TickerSnapshot snapshot, final List<TickerIndicator> indicatorList, final int from, final int to,
+				final int pairsPerTask ) {
+			this.snapshot = snapshot;
+			this.indicatorList = indicatorList;
+			this.from = from;
+			this.to = to;
+			this.pairsPerTask = pairsPerTask;
+		}
+
+		@Override
+		protected void compute() {
+			if ( this.to - this.from <= this.pairsPerTask ) {
+				TickerLastMonitorThread.addSamples( this.snapshot, this.indicatorList, this.from, this.to );
+				return;
 			}
+
+			final int middle = (this.from + this.to) >>> 1;
+			RecursiveAction.invokeAll( new AddSamplesTask( this.snapshot, this.indicatorList, this.from, middle, this.pairsPerTask ),
+					new AddSamplesTask( this.snapshot, this.indicatorList, middle, this.to, this.pairsPerTask ) );
+		}
+	}
+
+	/*
+	 * The indicators keep the ticker and the listeners read it on their own
+	 * thread, while the bus reuses the snapshot, so they get a copy
+	 */
+	private static void addSamples( final TickerSnapshot snapshot, final List<TickerIndicator> indicatorList, final int from, final int to ) {
+		for ( int i = from; i < to; i++ ) {
+			indicatorList.get( i ).addSample( snapshot.copyTicker( snapshot.getPairID( i ) ) );
 		}
 	}
 }
@@ -1,11 +1,10 @@
 package coin.trader.algorithm;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
 
-import coin.trader.exchange.CurrencyPair;
 import coin.trader.exchange.Exchange;
 import coin.trader.logger.Logger;
+import coin.trader.storage.TickStore;
 
 /**
  * This thread makes sure our samples never get stale.
@@ -21,13 +20,59 @@ import coin.trader.logger.Logger;
 public abstract class TickerMonitorThread extends Thread {
 	protected static final Logger LOGGER = new Logger( TickerMonitorThread.class.getSimpleName() );
 
-	protected final SampleListenerManager sampleListenerManager = new SampleListenerManager();
-	protected final Map<CurrencyPair, TickerIndicator> tickerIndicatorMap = new ConcurrentHashMap<CurrencyPair, TickerIndicator>( 128 );
+	/* Polls the listeners can fall behind before polls are skipped */
+	private static final int SAMPLE_RING_CAPACITY = 64;
+
+	protected final SampleListenerManager sampleListenerManager = new SampleListenerManager( this.getClass().getSimpleName() + " listeners",
+			TickerMonitorThread.SAMPLE_RING_CAPACITY );
 	protected final Exchange exchange;
 	protected final TickerIndicatorFactory tickerIndicatorFactory;
+	protected final MarketDataBus marketDataBus;
+
+	/* Indexed by currency pair id, only used by the poll in progress */
+	private TickerIndicator[] tickerIndicators = new TickerIndicator[256];
 
 	public TickerMonitorThread( final Exchange exchange, final TickerIndicatorFactory tickerIndicatorFactory ) {
+		this( exchange, tickerIndicatorFactory, MarketDataBus.getInstance( exchange ) );
+	}
+
+	public TickerMonitorThread( final Exchange exchange, final TickerIndicatorFactory tickerIndicatorFactory, final MarketDataBus marketDataBus ) {
 		this.exchange = exchange;
 		this.tickerIndicatorFactory = tickerIndicatorFactory;
+		this.marketDataBus = marketDataBus;
+	}
+
+	public SampleListenerManager getSampleListenerManager() {
+		return this.sampleListenerManager;
+	}
+
+	/**
+	 * @return The indicator of the currency pair, created the first time it
+	 *         is asked for
+	 */
+	protected TickerIndicator getTickerIndicator( final int pairID ) {
+		if ( pairID >= this.tickerIndicators.length ) {
+			this.tickerIndicators = Arrays.copyOf( this.tickerIndicators, java.lang.Math.max( pairID + 1, this.tickerIndicators.length * 2 ) );
+		}
+
+		TickerIndicator indicator = this.tickerIndicators[pairID];
+
+		if ( indicator == null ) {
+			indicator = this.tickerIndicatorFactory.createTickerIndicator();
+			this.tickerIndicators[pairID] = indicator;
+		}
+
+		return indicator;
+	}
+
+	/**
+	 * Records every ticker snapshot of the exchange to the store, so it can be
+	 * replayed later. Pass null to stop recording. Snapshots are recorded once
+	 * by the market data bus, however many strategies share it.
+	 * 
+	 * @param tickStore
+	 */
+	public void setTickStore( final TickStore tickStore ) {
+		this.marketDataBus.setTickStore( tickStore );
 	}
 }
@@ -0,0 +1,115 @@
+package coin.trader.algorithm.backtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import coin.trader.algorithm.SampleListenerManager;
+import coin.trader.algorithm.TickerIndicator;
+import coin.trader.algorithm.TickerIndicatorFactory;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.Ticker;
+import coin.trader.logger.Logger;
+import coin.trader.utilities.SimulatedClock;
+
+/**
+ * Replays a recorded {@link TickerFeed} through the ticker indicators and
+ * broadcasts each snapshot to the sample listeners, the same way
+ * {@link coin.trader.algorithm.TickerLastMonitorThread} does with live
+ * tickers. Nothing waits on the exchange or the wall clock, the clock is
+ * advanced to each snapshot's timestamp, so a replay runs as fast as the
+ * indicators allow and gives the same result every time.
+ * 
+ * The indicator list handed to the listeners is reused between snapshots.
+ * Listeners must copy anything they want to keep.
+ * 
+ * @author Evan
+ *
+ */
+public class BacktestEngine {
+	private static final Logger LOGGER = new Logger( BacktestEngine.class.getSimpleName() );
+
+	private final SampleListenerManager sampleListenerManager = new SampleListenerManager();
+	private final Map<CurrencyPair, TickerIndicator> tickerIndicatorMap = new HashMap<CurrencyPair, TickerIndicator>( 256 );
+	private final List<TickerIndicator> indicatorList = new ArrayList<TickerIndicator>( 256 );
+	private final TickerIndicatorFactory tickerIndicatorFactory;
+	private final SimulatedClock clock;
+	private long amountOfSnapshots = 0;
+	private long amountOfSamples = 0;
+
+	/**
+	 * @param tickerIndicatorFactory
+	 *            - Factory for the indicators, any indicator that needs the
+	 *            time should be created with the same clock
+	 * @param clock
+	 *            - Clock that is moved to each snapshot's timestamp
+	 */
+	public BacktestEngine( final TickerIndicatorFactory tickerIndicatorFactory, final SimulatedClock clock ) {
+		this.tickerIndicatorFactory = tickerIndicatorFactory;
+		this.clock = clock;
+	}
+
+	public SampleListenerManager getSampleListenerManager() {
+		return this.sampleListenerManager;
+	}
+
+	/**
+	 * Replays every remaining snapshot in the feed
+	 * 
+	 * @param feed
+	 * @return The amount of snapshots replayed
+	 * @throws IOException
+	 */
+	public long replay( final TickerFeed feed ) throws IOException {
+		BacktestEngine.LOGGER.info( "Replaying ticker feed with " + this.tickerIndicatorFactory.getAlgorithmName() + " algorithm" );
+		final long startSnapshots = this.amountOfSnapshots;
+
+		while ( feed.next() ) {
+			this.clock.setTimeMillis( feed.getTimestamp() );
+			this.processSnapshot( feed.getTickers() );
+		}
+
+		final long replayed = this.amountOfSnapshots - startSnapshots;
+		BacktestEngine.LOGGER.info( "Replayed " + replayed + " snapshots" );
+
+		return replayed;
+	}
+
+	private void processSnapshot( final Map<CurrencyPair, Ticker> tickers ) {
+		this.indicatorList.clear();
+
+		for ( final Entry<CurrencyPair, Ticker> pair : tickers.entrySet() ) {
+			final CurrencyPair key = pair.getKey();
+			TickerIndicator indicator = this.tickerIndicatorMap.get( key );
+
+			if ( indicator == null ) {
+				indicator = this.tickerIndicatorFactory.createTickerIndicator();
+				this.tickerIndicatorMap.put( key, indicator );
+			}
+
+			indicator.addSample( pair.getValue() );
+			this.indicatorList.add( indicator );
+		}
+
+		this.amountOfSamples += this.indicatorList.size();
+		this.amountOfSnapshots++;
+
+		/* Broadcast the updates to listeners */
+		this.sampleListenerManager.broadcast( this.indicatorList );
+	}
+
+	public long getAmountOfSnapshots() {
+		return this.amountOfSnapshots;
+	}
+
+	public long getAmountOfSamples() {
+		return this.amountOfSamples;
+	}
+
+	public SimulatedClock getClock() {
+		return this.clock;
+	}
+}
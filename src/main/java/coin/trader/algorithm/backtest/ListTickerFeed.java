@@ -0,0 +1,69 @@
+package coin.trader.algorithm.backtest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.Ticker;
+
+/**
+ * In memory ticker feed. Snapshots are copied when added so the caller can
+ * keep reusing its own tickers.
+ * 
+ * @author Evan
+ *
+ */
+public class ListTickerFeed implements TickerFeed {
+	private final List<Long> timestamps = new ArrayList<Long>();
+	private final List<Map<CurrencyPair, Ticker>> snapshots = new ArrayList<Map<CurrencyPair, Ticker>>();
+	private int index = -1;
+
+	public ListTickerFeed() {
+	}
+
+	public void add( final long timestamp, final Map<CurrencyPair, Ticker> tickers ) {
+		final Map<CurrencyPair, Ticker> snapshot = new HashMap<CurrencyPair, Ticker>( tickers.size() * 2 );
+
+		for ( final Map.Entry<CurrencyPair, Ticker> pair : tickers.entrySet() ) {
+			final ReplayTicker ticker = new ReplayTicker( pair.getKey() );
+			ticker.set( pair.getValue() );
+			snapshot.put( pair.getKey(), ticker );
+		}
+
+		this.timestamps.add( timestamp );
+		this.snapshots.add( snapshot );
+	}
+
+	public int size() {
+		return this.snapshots.size();
+	}
+
+	/**
+	 * Moves the feed back to before the first snapshot
+	 */
+	public void rewind() {
+		this.index = -1;
+	}
+
+	@Override
+	public boolean next() {
+		if ( this.index + 1 < this.snapshots.size() ) {
+			this.index++;
+			return true;
+		}
+
+		return false;
+	}
+
+	@Override
+	public long getTimestamp() {
+		return this.timestamps.get( this.index );
+	}
+
+	@Override
+	public Map<CurrencyPair, Ticker> getTickers() {
+		return this.snapshots.get( this.index );
+	}
+}
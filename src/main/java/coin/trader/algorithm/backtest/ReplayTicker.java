@@ -0,0 +1,66 @@
+package coin.trader.algorithm.backtest;
+
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.Ticker;
+
+/**
+ * Mutable ticker used by feeds so a replay does not allocate a new ticker for
+ * every pair on every snapshot.
+ * 
+ * @author Evan
+ *
+ */
+public class ReplayTicker implements Ticker {
+	private final CurrencyPair currencyPair;
+	private double last = 0;
+	private double bid = 0;
+	private double ask = 0;
+	private double baseVolume = 0;
+	private double quoteVolume = 0;
+
+	public ReplayTicker( final CurrencyPair currencyPair ) {
+		this.currencyPair = currencyPair;
+	}
+
+	public void set( final double last, final double bid, final double ask, final double baseVolume, final double quoteVolume ) {
+		this.last = last;
+		this.bid = bid;
+		this.ask = ask;
+		this.baseVolume = baseVolume;
+		this.quoteVolume = quoteVolume;
+	}
+
+	public void set( final Ticker ticker ) {
+		this.set( ticker.getLast(), ticker.getBid(), ticker.getAsk(), ticker.getBaseVolume(), ticker.getQuoteVolume() );
+	}
+
+	@Override
+	public CurrencyPair getCurrencyPair() {
+		return this.currencyPair;
+	}
+
+	@Override
+	public double getLast() {
+		return this.last;
+	}
+
+	@Override
+	public double getAsk() {
+		return this.ask;
+	}
+
+	@Override
+	public double getBid() {
+		return this.bid;
+	}
+
+	@Override
+	public double getBaseVolume() {
+		return this.baseVolume;
+	}
+
+	@Override
+	public double getQuoteVolume() {
+		return this.quoteVolume;
+	}
+}
@@ -0,0 +1,136 @@
+package coin.trader.algorithm.backtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import coin.trader.algorithm.SampleListenerManager.SampleListener;
+import coin.trader.algorithm.TickerIndicator;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.Ticker;
+import coin.trader.exchange.Trade;
+import coin.trader.exchange.Transaction;
+import coin.trader.logger.Logger;
+
+/**
+ * Event driven version of the buy and sell loop in
+ * {@link coin.trader.algorithm.AlgTester}. Instead of blocking a thread on
+ * latches between each step, the trader moves between watching for candidates
+ * and watching for a sell point on every broadcast, filling orders at the last
+ * price of the snapshot.
+ * 
+ * @author Evan
+ *
+ */
+public class SimulatedTrader implements SampleListener {
+	private static final Logger LOGGER = new Logger( SimulatedTrader.class.getSimpleName() );
+	private static final String BASE_CURRENCY = "BTC";
+
+	private final double fee;
+	private final int amountOfWarmupSamples;
+	private final List<Transaction> transactions = new ArrayList<Transaction>();
+	private final double startingWallet;
+	private double wallet;
+	private long amountOfSamples = 0;
+
+	/* The position we are currently holding, null when not holding */
+	private TickerIndicator position = null;
+	private Trade buyTrade = null;
+
+	/**
+	 * @param fee
+	 *            - Fee of the exchange being simulated
+	 * @param amountOfWarmupSamples
+	 *            - Amount of snapshots to ignore before trading, normally
+	 *            {@link coin.trader.algorithm.TickerIndicatorFactory#getAmountOfSamples()}
+	 * @param wallet
+	 *            - Starting amount of the base currency
+	 */
+	public SimulatedTrader( final double fee, final int amountOfWarmupSamples, final double wallet ) {
+		this.fee = fee;
+		this.amountOfWarmupSamples = amountOfWarmupSamples;
+		this.startingWallet = wallet;
+		this.wallet = wallet;
+	}
+
+	@Override
+	public void onNewSample( final List<TickerIndicator> indicators ) {
+		this.amountOfSamples++;
+
+		if ( this.amountOfSamples <= this.amountOfWarmupSamples ) {
+			return;
+		}
+
+		if ( this.position == null ) {
+			this.checkForBuy( indicators );
+		}
+		else {
+			this.checkForSell();
+		}
+	}
+
+	private void checkForBuy( final List<TickerIndicator> indicators ) {
+		TickerIndicator candidate = null;
+		double candidacyWeight = 0;
+
+		for ( int i = 0, len = indicators.size(); i < len; i++ ) {
+			final TickerIndicator indicator = indicators.get( i );
+
+			if ( indicator.shouldBuy() && indicator.getTicker().getCurrencyPair().getBase().getName().equals( SimulatedTrader.BASE_CURRENCY ) ) {
+				final double weight = indicator.getCandidacyWeight();
+				if ( candidate == null || weight > candidacyWeight ) {
+					candidate = indicator;
+					candidacyWeight = weight;
+				}
+			}
+		}
+
+		if ( candidate != null ) {
+			/* Pretend we bought at the last price with all of our money */
+			final Ticker ticker = candidate.getTicker();
+			final double rate = ticker.getLast();
+			final double quantity = (this.wallet / rate) * (1.0 - this.fee);
+
+			this.buyTrade = new Trade( ticker.getCurrencyPair(), rate, quantity, this.fee );
+			this.position = candidate;
+			SimulatedTrader.LOGGER.debug( "Bought " + this.buyTrade );
+		}
+	}
+
+	private void checkForSell() {
+		if ( this.position.shouldSell( this.buyTrade.getRate(), this.fee ) ) {
+			/* Pretend we sold at the last price */
+			final Ticker ticker = this.position.getTicker();
+			final double rate = ticker.getLast();
+			final CurrencyPair currencyPair = ticker.getCurrencyPair();
+			final Trade sellTrade = new Trade( currencyPair, rate, this.buyTrade.getQuantity(), this.fee );
+
+			this.wallet = sellTrade.getQuantity() * rate * (1.0 - this.fee);
+			this.transactions.add( new Transaction( this.buyTrade, sellTrade ) );
+			SimulatedTrader.LOGGER.debug( "Sold " + sellTrade + ", wallet: " + this.wallet );
+
+			this.position = null;
+			this.buyTrade = null;
+		}
+	}
+
+	public boolean isHoldingPosition() {
+		return this.position != null;
+	}
+
+	public double getWallet() {
+		return this.wallet;
+	}
+
+	public double getStartingWallet() {
+		return this.startingWallet;
+	}
+
+	public List<Transaction> getTransactions() {
+		return this.transactions;
+	}
+
+	@Override
+	public String toString() {
+		return "[ transactions: " + this.transactions.size() + ", starting wallet: " + this.startingWallet + ", wallet: " + this.wallet + " ]";
+	}
+}
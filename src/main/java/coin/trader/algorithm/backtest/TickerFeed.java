@@ -0,0 +1,36 @@
+package coin.trader.algorithm.backtest;
+
+import java.io.IOException;
+import java.util.Map;
+
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.Ticker;
+
+/**
+ * A recorded stream of ticker snapshots, in the same shape the exchanges
+ * return them from {@link coin.trader.exchange.Exchange#getTickers}.
+ * Implementations are free to reuse the map and ticker objects between calls
+ * to {@link #next()}, so callers must not hold on to them.
+ * 
+ * @author Evan
+ *
+ */
+public interface TickerFeed {
+	/**
+	 * Advances to the next snapshot
+	 * 
+	 * @return false if there are no more snapshots
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException;
+
+	/**
+	 * @return The time of the current snapshot in milliseconds since epoch
+	 */
+	public long getTimestamp();
+
+	/**
+	 * @return The tickers of the current snapshot
+	 */
+	public Map<CurrencyPair, Ticker> getTickers();
+}
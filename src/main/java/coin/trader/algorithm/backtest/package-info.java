@@ -0,0 +1,8 @@
+/**
+ * 
+ */
+/**
+ * @author Evan
+ *
+ */
+package coin.trader.algorithm.backtest;
\ No newline at end of file
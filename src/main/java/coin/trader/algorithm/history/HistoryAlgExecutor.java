@@ -7,6 +7,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import coin.trader.algorithm.history.HistoryListenerManager.HistoryIndicatorListener;
+import coin.trader.concurrency.ResourceManager;
 import coin.trader.exchange.Balance;
 import coin.trader.exchange.Balances;
 import coin.trader.exchange.BuyOrder;
@@ -24,7 +25,7 @@ import coin.trader.utilities.Callback.Return;
 public class HistoryAlgExecutor {
 	private static final int RETRY_TIME_PERIOD = 2;
 	protected static final Logger LOGGER = new Logger( HistoryAlgExecutor.class.getSimpleName(), Logger.Level.INFO );
-	protected final LogicThread thread = new LogicThread();
+	protected final Thread thread = ResourceManager.newThread( new LogicThread(), HistoryAlgExecutor.class.getSimpleName() );
 	protected final Exchange exchange;
 	protected final HistoryMonitor historyMonitor;
 	protected Balances balances = null;
@@ -367,7 +368,7 @@ public class HistoryAlgExecutor {
 		}
 	}
 
-	private class LogicThread extends Thread {
+	private class LogicThread implements Runnable {
 		@Override
 		public void run() {
 			try {
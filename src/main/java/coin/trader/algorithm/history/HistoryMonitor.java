@@ -3,28 +3,42 @@ package coin.trader.algorithm.history;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.CountDownLatch;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import coin.trader.concurrency.Futures;
+import coin.trader.concurrency.ResourceManager;
 import coin.trader.exchange.ChartData.DataPoint;
 import coin.trader.exchange.CurrencyPair;
 import coin.trader.exchange.Exchange;
 import coin.trader.exchange.Ticker;
 import coin.trader.logger.Logger;
-import coin.trader.utilities.Callback.Return;
+import coin.trader.storage.CandleCache;
 import coin.trader.utilities.Utils;
 
 public class HistoryMonitor {
 	private static final Logger LOGGER = new Logger( HistoryMonitor.class.getSimpleName() );
 	private static final long END = 0x7FFFFFFFFFFFFFFFL;
 
-	private final UpdateThread thread = new UpdateThread();
+	/* In seconds */
+	private static final long CHART_DATA_TIMEOUT = 60;
+	private static final long RETRY_DELAY = 1;
+	private static final int CHART_DATA_ATTEMPTS = 3;
+
+	private final Thread thread = ResourceManager.newThread( new UpdateThread(), HistoryMonitor.class.getSimpleName() );
 	private final Exchange exchange;
+	private final CandleCache candleCache;
 	private final HistoryTickerIndicatorFactory historyIndicatorFactory;
 	private final HistoryListenerManager listenerManager = new HistoryListenerManager();
 
 	public HistoryMonitor( final Exchange exchange, final HistoryTickerIndicatorFactory historyIndicatorFactory ) {
 		this.exchange = exchange;
+		this.candleCache = CandleCache.getInstance( exchange );
 		this.historyIndicatorFactory = historyIndicatorFactory;
 	}
 
@@ -38,7 +52,73 @@ public class HistoryMonitor {
 		return this.listenerManager;
 	}
 
-	private class UpdateThread extends Thread {
+	/**
+	 * Requests the chart data of every pair at once, and runs each indicator
+	 * against it as it comes in. A pair whose chart data cannot be fetched is
+	 * left out of this update.
+	 *
+	 * @return The indicators that should be bought
+	 */
+	private CompletableFuture<List<HistoryTickerIndicator>> analyze( final List<HistoryTickerIndicator> historyTickerIndicators, final Map<CurrencyPair, Ticker> tickers,
+			final long start ) {
+		final int period = this.historyIndicatorFactory.candlePeriod();
+		final List<CompletableFuture<HistoryTickerIndicator>> futures = new ArrayList<CompletableFuture<HistoryTickerIndicator>>( historyTickerIndicators.size() );
+
+		for ( final HistoryTickerIndicator historyTickerIndicator : historyTickerIndicators ) {
+			final CurrencyPair currencyPair = historyTickerIndicator.getCurrencyPair();
+			final Ticker ticker = tickers.get( currencyPair );
+
+			if ( ticker == null ) {
+				continue;
+			}
+
+			final CompletableFuture<List<? extends DataPoint>> chartData = Futures.retry( new Supplier<CompletableFuture<List<? extends DataPoint>>>() {
+				@Override
+				public CompletableFuture<List<? extends DataPoint>> get() {
+					return Futures.withTimeout( HistoryMonitor.this.candleCache.getChartDataAsync( currencyPair, start, HistoryMonitor.END, period ), HistoryMonitor.CHART_DATA_TIMEOUT,
+							TimeUnit.SECONDS );
+				}
+			}, HistoryMonitor.CHART_DATA_ATTEMPTS, HistoryMonitor.RETRY_DELAY, TimeUnit.SECONDS );
+
+			futures.add( chartData.handle( new BiFunction<List<? extends DataPoint>, Throwable, HistoryTickerIndicator>() {
+				@Override
+				public HistoryTickerIndicator apply( final List<? extends DataPoint> dataPoints, final Throwable t ) {
+					if ( t != null ) {
+						HistoryMonitor.LOGGER.warn( "Failed to get chart data of " + currencyPair, t );
+						return null;
+					}
+
+					/* Run HistoryTickerIndicator against it */
+					historyTickerIndicator.anaylize( dataPoints, ticker.getLast() );
+
+					/* Notify if it's a good sell */
+					final double sellWeight = historyTickerIndicator.shouldSell();
+					if ( sellWeight > 0.0 ) {
+						HistoryMonitor.this.listenerManager.notifySellTrigger( historyTickerIndicator );
+					}
+
+					return historyTickerIndicator.shouldBuy() > 0.0 ? historyTickerIndicator : null;
+				}
+			} ) );
+		}
+
+		return Futures.allAsList( futures ).thenApply( new Function<List<HistoryTickerIndicator>, List<HistoryTickerIndicator>>() {
+			@Override
+			public List<HistoryTickerIndicator> apply( final List<HistoryTickerIndicator> results ) {
+				final List<HistoryTickerIndicator> buyList = new ArrayList<HistoryTickerIndicator>();
+
+				for ( final HistoryTickerIndicator historyTickerIndicator : results ) {
+					if ( historyTickerIndicator != null ) {
+						buyList.add( historyTickerIndicator );
+					}
+				}
+
+				return buyList;
+			}
+		} );
+	}
+
+	private class UpdateThread implements Runnable {
 		private UpdateThread() {
 		}
 
@@ -47,111 +127,51 @@ public class HistoryMonitor {
 			try {
 				HistoryMonitor.LOGGER.info( "Starting HistoryMonitor thread" );
 				/* Get all currency pairs */
-				final CountDownLatch currencyPairLatch = new CountDownLatch( 1 );
 				final List<HistoryTickerIndicator> historyTickerIndicators = new ArrayList<HistoryTickerIndicator>();
 
 				HistoryMonitor.LOGGER.debug( "Getting ticker names" );
-				HistoryMonitor.this.exchange.getTickers( new Return<Map<CurrencyPair, Ticker>>() {
-					@Override
-					public void succeeded( final Map<CurrencyPair, Ticker> tickers ) {
-
-						for ( final CurrencyPair currencyPair : tickers.keySet() ) {
-							historyTickerIndicators.add( HistoryMonitor.this.historyIndicatorFactory.createHistoryTickerIndicator( currencyPair ) );
-						}
-
-						currencyPairLatch.countDown();
-					}
-
+				final Map<CurrencyPair, Ticker> allTickers = Futures.retry( new Supplier<CompletableFuture<Map<CurrencyPair, Ticker>>>() {
 					@Override
-					public void error( final Throwable t ) {
-						HistoryMonitor.LOGGER.warn( "", t );
+					public CompletableFuture<Map<CurrencyPair, Ticker>> get() {
+						return HistoryMonitor.this.exchange.getTickersAsync();
 					}
-				} );
+				}, Integer.MAX_VALUE, HistoryMonitor.RETRY_DELAY, TimeUnit.SECONDS ).get();
 
-				currencyPairLatch.await();
+				for ( final CurrencyPair currencyPair : allTickers.keySet() ) {
+					historyTickerIndicators.add( HistoryMonitor.this.historyIndicatorFactory.createHistoryTickerIndicator( currencyPair ) );
+				}
 
 				final long intervalLength = HistoryMonitor.this.historyIndicatorFactory.amountOfCandles() * HistoryMonitor.this.historyIndicatorFactory.candlePeriod();
 
 				while ( true ) {
-					final CountDownLatch latch = new CountDownLatch( 1 );
-
-					/* Get the latest prices */
+					/* Get the latest prices, then the chart data of every pair at once */
 					HistoryMonitor.LOGGER.debug( "Getting ticker prices" );
-					HistoryMonitor.this.exchange.getTickers( new Return<Map<CurrencyPair, Ticker>>() {
-
-						@Override
-						public void succeeded( final Map<CurrencyPair, Ticker> tickers ) {
-							HistoryMonitor.LOGGER.debug( "Getting chart data for all tickers" );
-
-							/*
-							 * Issue requests to get all currency pairs char
-							 * data
-							 */
-							final CountDownLatch chartDataLatch = new CountDownLatch( historyTickerIndicators.size() );
-
-							final long start = Utils.getUnixTimestamp() - intervalLength;
-							final List<HistoryTickerIndicator> buyList = new CopyOnWriteArrayList<HistoryTickerIndicator>();
-
-							for ( final HistoryTickerIndicator historyTickerIndicator : historyTickerIndicators ) {
-								final CurrencyPair currencyPair = historyTickerIndicator.getCurrencyPair();
-								HistoryMonitor.this.exchange.getChartData( currencyPair, start, HistoryMonitor.END, HistoryMonitor.this.historyIndicatorFactory.candlePeriod(),
-										new Return<List<? extends DataPoint>>() {
-											@Override
-											public void succeeded( final List<? extends DataPoint> chartData ) {
-												/*
-												 * On each return, run
-												 * HistoryTickerIndicator
-												 * against it
-												 */
-												historyTickerIndicator.anaylize( chartData, tickers.get( currencyPair ).getLast() );
-
-												if ( historyTickerIndicator.shouldBuy() > 0.0 ) {
-													buyList.add( historyTickerIndicator );
-												}
-
-												/* Notify if it's a good sell */
-												final double sellWeight = historyTickerIndicator.shouldSell();
-												if ( sellWeight > 0.0 ) {
-													HistoryMonitor.this.listenerManager.notifySellTrigger( historyTickerIndicator );
-												}
-
-												chartDataLatch.countDown();
-											}
-
-											@Override
-											public void error( final Throwable t ) {
-												HistoryMonitor.LOGGER.warn( "", t );
-												HistoryMonitor.this.exchange.getChartData( historyTickerIndicator.getCurrencyPair(), start, HistoryMonitor.END,
-														HistoryMonitor.this.historyIndicatorFactory.candlePeriod(), this );
-											}
-										} );
-							}
-
-							try {
-								chartDataLatch.await();
-							}
-							catch ( final InterruptedException e ) {
-							}
-
-							if ( buyList.size() > 0 ) {
-								/* TODO(EMU): Sort these */
-
-								/* Notify the buy triggers */
-								HistoryMonitor.this.listenerManager.notifyBuyTrigger( buyList );
-								HistoryMonitor.LOGGER.debug( "Notified buy triggers" );
-							}
-
-							latch.countDown();
-						}
-
-						@Override
-						public void error( final Throwable t ) {
-							HistoryMonitor.LOGGER.warn( "", t );
-
-						}
-					} );
-
-					latch.await();
+					final CompletableFuture<Void> update = HistoryMonitor.this.exchange.getTickersAsync()
+							.thenCompose( new Function<Map<CurrencyPair, Ticker>, CompletableFuture<List<HistoryTickerIndicator>>>() {
+								@Override
+								public CompletableFuture<List<HistoryTickerIndicator>> apply( final Map<CurrencyPair, Ticker> tickers ) {
+									HistoryMonitor.LOGGER.debug( "Getting chart data for all tickers" );
+									return HistoryMonitor.this.analyze( historyTickerIndicators, tickers, Utils.getUnixTimestamp() - intervalLength );
+								}
+							} ).thenAccept( new Consumer<List<HistoryTickerIndicator>>() {
+								@Override
+								public void accept( final List<HistoryTickerIndicator> buyList ) {
+									if ( buyList.size() > 0 ) {
+										/* TODO(EMU): Sort these */
+
+										/* Notify the buy triggers */
+										HistoryMonitor.this.listenerManager.notifyBuyTrigger( buyList );
+										HistoryMonitor.LOGGER.debug( "Notified buy triggers" );
+									}
+								}
+							} );
+
+					try {
+						update.get();
+					}
+					catch ( final ExecutionException e ) {
+						HistoryMonitor.LOGGER.warn( "", e.getCause() );
+					}
 				}
 
 			}
@@ -0,0 +1,50 @@
+package coin.trader.algorithm.history.neuralnetwork;
+
+import java.util.List;
+
+import coin.trader.algorithm.history.HistoryTickerIndicator;
+import coin.trader.exchange.ChartData.DataPoint;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.neuralnetwork.DataPointAnalyzer;
+import coin.trader.neuralnetwork.OnlineDataPointAnalyzer;
+
+/**
+ * Buys when the network expects the low of the next candle to be higher. The
+ * network keeps training on the candles of the currency pair as they close.
+ *
+ * @author Evan
+ *
+ */
+public class NeuralNetworkHistoryTickerIndicator extends HistoryTickerIndicator {
+	static final int CANDLE_PERIOD = 300;
+	static final int AMOUNT_OF_DATA_POINTS = 20;
+
+	/* Enough candles for the newest windows of an update, and the one still forming */
+	static final int AMOUNT_OF_CANDLES = 2 * NeuralNetworkHistoryTickerIndicator.AMOUNT_OF_DATA_POINTS;
+	static final int STEPS_PER_UPDATE = 4;
+	static final int MAX_WINDOWS_PER_UPDATE = 16;
+
+	private final OnlineDataPointAnalyzer analyzer;
+
+	protected NeuralNetworkHistoryTickerIndicator( final CurrencyPair currencyPair, final DataPointAnalyzer analyzer ) {
+		super( currencyPair );
+		this.analyzer = new OnlineDataPointAnalyzer( analyzer, NeuralNetworkHistoryTickerIndicator.STEPS_PER_UPDATE, NeuralNetworkHistoryTickerIndicator.MAX_WINDOWS_PER_UPDATE );
+	}
+
+	@Override
+	public void anaylize( final List<? extends DataPoint> chartData, final double lastPrice ) {
+		/* Train in the background, the query uses the weights published so far */
+		this.analyzer.addCandles( chartData );
+
+		if ( chartData.size() <= this.analyzer.getNumberOfDataPoints() ) {
+			return;
+		}
+
+		final boolean shouldBuy = this.analyzer.query( chartData );
+
+		synchronized ( this.LOCK ) {
+			this.buyWeight = shouldBuy ? 1.0 : 0.0;
+			this.sellWeight = shouldBuy ? 0.0 : 1.0;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package coin.trader.algorithm.history.neuralnetwork;
+
+import java.io.File;
+import java.io.IOException;
+
+import coin.trader.algorithm.history.HistoryMonitor;
+import coin.trader.algorithm.history.HistoryTickerIndicator;
+import coin.trader.algorithm.history.HistoryTickerIndicatorFactory;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.Exchange;
+import coin.trader.logger.Logger;
+import coin.trader.neuralnetwork.DataPointAnalyzer;
+
+public class NeuralNetworkHistoryTickerIndicatorFactory implements HistoryTickerIndicatorFactory {
+	private static final Logger LOGGER = new Logger( NeuralNetworkHistoryTickerIndicatorFactory.class.getSimpleName() );
+
+	private final File checkpoint;
+
+	public NeuralNetworkHistoryTickerIndicatorFactory() {
+		this( null );
+	}
+
+	/**
+	 * @param checkpoint
+	 *            - Network every currency pair starts from, see
+	 *            {@link DataPointAnalyzer#save(File)}. Can be null.
+	 */
+	public NeuralNetworkHistoryTickerIndicatorFactory( final File checkpoint ) {
+		this.checkpoint = checkpoint;
+	}
+
+	@Override
+	public HistoryTickerIndicator createHistoryTickerIndicator( final CurrencyPair currencyPair ) {
+		DataPointAnalyzer analyzer = null;
+
+		if ( this.checkpoint != null ) {
+			try {
+				analyzer = DataPointAnalyzer.load( this.checkpoint );
+			}
+			catch ( final IOException e ) {
+				NeuralNetworkHistoryTickerIndicatorFactory.LOGGER.warn( "Could not load " + this.checkpoint + ", starting from random weights.", e );
+			}
+		}
+
+		if ( analyzer == null || analyzer.getNumberOfDataPoints() != NeuralNetworkHistoryTickerIndicator.AMOUNT_OF_DATA_POINTS ) {
+			analyzer = new DataPointAnalyzer( NeuralNetworkHistoryTickerIndicator.AMOUNT_OF_DATA_POINTS );
+		}
+
+		return new NeuralNetworkHistoryTickerIndicator( currencyPair, analyzer );
+	}
+
+	@Override
+	public HistoryMonitor createHistoryMonitor( final Exchange exchange ) {
+		return new HistoryMonitor( exchange, this );
+	}
+
+	@Override
+	public int candlePeriod() {
+		return NeuralNetworkHistoryTickerIndicator.CANDLE_PERIOD;
+	}
+
+	@Override
+	public int amountOfCandles() {
+		return NeuralNetworkHistoryTickerIndicator.AMOUNT_OF_CANDLES;
+	}
+
+}
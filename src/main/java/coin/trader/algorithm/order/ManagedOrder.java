@@ -0,0 +1,105 @@
+package coin.trader.algorithm.order;
+
+import java.util.concurrent.CompletableFuture;
+
+import coin.trader.exchange.CurrencyPair;
+
+/**
+ * An order supervised by an {@link OrderManager}. Only the event loop of the
+ * manager changes it, other threads can read its state, or wait for it to be
+ * done through {@link #getCompletion()}.
+ *
+ * @author Evan
+ *
+ */
+public class ManagedOrder {
+	private final Side side;
+	private final CurrencyPair currencyPair;
+	private final double quantity;
+	private final double rate;
+	private final long timeoutMillis;
+	private final CompletableFuture<ManagedOrder> completion = new CompletableFuture<ManagedOrder>();
+
+	private volatile OrderState state = OrderState.PENDING;
+	private volatile String orderID = null;
+
+	/* Only touched by the event loop */
+	int placeAttempts = 0;
+	int lookupAttempts = 0;
+	long deadline = Long.MAX_VALUE;
+	boolean requestInFlight = false;
+	boolean cancelWanted = false;
+	boolean cancelFailed = false;
+
+	ManagedOrder( final Side side, final CurrencyPair currencyPair, final double quantity, final double rate, final long timeoutMillis ) {
+		this.side = side;
+		this.currencyPair = currencyPair;
+		this.quantity = quantity;
+		this.rate = rate;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	public Side getSide() {
+		return this.side;
+	}
+
+	public CurrencyPair getCurrencyPair() {
+		return this.currencyPair;
+	}
+
+	public double getQuantity() {
+		return this.quantity;
+	}
+
+	public double getRate() {
+		return this.rate;
+	}
+
+	/**
+	 * @return How long the order can stay open without anything filled before
+	 *         it is canceled
+	 */
+	public long getTimeoutMillis() {
+		return this.timeoutMillis;
+	}
+
+	public OrderState getState() {
+		return this.state;
+	}
+
+	/**
+	 * @return The id the exchange gave the order, null until it is placed
+	 */
+	public String getOrderID() {
+		return this.orderID;
+	}
+
+	/**
+	 * @return Completes with this order once it is done
+	 */
+	public CompletableFuture<ManagedOrder> getCompletion() {
+		return this.completion;
+	}
+
+	void setOrderID( final String orderID ) {
+		this.orderID = orderID;
+	}
+
+	void setState( final OrderState state ) {
+		this.state = state;
+
+		if ( state.isDone() ) {
+			this.completion.complete( this );
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "[ " + this.side + " " + this.currencyPair + ", quantity: " + this.quantity + ", rate: " + this.rate + ", state: " + this.state + ", id: " + this.orderID + " ]";
+	}
+
+	public static enum Side {
+		BUY,
+		SELL
+	}
+}
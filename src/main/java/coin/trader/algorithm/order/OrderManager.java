@@ -0,0 +1,545 @@
+package coin.trader.algorithm.order;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import coin.trader.algorithm.order.ManagedOrder.Side;
+import coin.trader.concurrency.ResourceManager;
+import coin.trader.exchange.BuyOrder;
+import coin.trader.exchange.CancelOrder;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.Exchange;
+import coin.trader.exchange.OpenOrder;
+import coin.trader.exchange.OpenOrders;
+import coin.trader.exchange.SellOrder;
+import coin.trader.logger.Logger;
+import coin.trader.utilities.Callback.Return;
+import coin.trader.utilities.Clock;
+
+/**
+ * Supervises orders on an exchange from placing them until they are filled,
+ * canceled or could not be placed, see {@link OrderState}.
+ *
+ * Every order is driven by one event loop. Requests to the exchange never
+ * wait, their responses are queued as events and handled on the loop, so no
+ * thread is held per order and the orders need no locking. Once per poll
+ * interval, the loop asks for the status of every open order that has no
+ * request in flight, so polling costs at most one request per open order per
+ * interval, and the exchange monitor can batch them into fewer. An order that
+ * stays open without anything filled past its timeout is canceled. An order
+ * the exchange rejects is placed again, but one whose placement failed without
+ * an answer is first looked for among the open orders, so it is not placed
+ * twice.
+ *
+ * The completion of an order completes on the loop, so work that takes long
+ * after it should be run async.
+ *
+ * @author Evan
+ *
+ */
+public class OrderManager {
+	private static final Logger LOGGER = new Logger( OrderManager.class.getSimpleName() );
+	private static final Map<Exchange, OrderManager> INSTANCES = new HashMap<Exchange, OrderManager>();
+
+	public static final long DEFAULT_POLL_INTERVAL_MILLIS = 1000;
+	public static final int MAX_PLACE_ATTEMPTS = 5;
+
+	private final Exchange exchange;
+	private final long pollIntervalMillis;
+	private final BlockingQueue<Runnable> events = new LinkedBlockingQueue<Runnable>();
+	private final AtomicLong amountOfStatusRequests = new AtomicLong( 0 );
+	private volatile int amountOfActiveOrders = 0;
+	private volatile boolean shutdown = false;
+	private volatile Clock clock = Clock.SYSTEM;
+
+	/* Only touched by the event loop */
+	private final List<ManagedOrder> orders = new ArrayList<ManagedOrder>();
+
+	/* Guarded by this */
+	private Thread thread = null;
+
+	public OrderManager( final Exchange exchange, final long pollIntervalMillis ) {
+		this.exchange = exchange;
+		this.pollIntervalMillis = pollIntervalMillis;
+	}
+
+	/**
+	 * @return The manager every strategy on the exchange shares
+	 */
+	public static OrderManager getInstance( final Exchange exchange ) {
+		synchronized ( OrderManager.INSTANCES ) {
+			OrderManager manager = OrderManager.INSTANCES.get( exchange );
+
+			if ( manager == null ) {
+				manager = new OrderManager( exchange, OrderManager.DEFAULT_POLL_INTERVAL_MILLIS );
+				OrderManager.INSTANCES.put( exchange, manager );
+			}
+
+			return manager;
+		}
+	}
+
+	/**
+	 * Places a buy order and supervises it
+	 *
+	 * @param timeoutMillis
+	 *            - How long it can stay open without anything filled before
+	 *            it is canceled
+	 */
+	public ManagedOrder placeBuyOrder( final CurrencyPair currencyPair, final double quantity, final double rate, final long timeoutMillis ) {
+		return this.submit( new ManagedOrder( Side.BUY, currencyPair, quantity, rate, timeoutMillis ) );
+	}
+
+	/**
+	 * Places a sell order and supervises it
+	 *
+	 * @param timeoutMillis
+	 *            - How long it can stay open without anything filled before
+	 *            it is canceled
+	 */
+	public ManagedOrder placeSellOrder( final CurrencyPair currencyPair, final double quantity, final double rate, final long timeoutMillis ) {
+		return this.submit( new ManagedOrder( Side.SELL, currencyPair, quantity, rate, timeoutMillis ) );
+	}
+
+	/**
+	 * Asks the exchange to cancel the order, once it is placed. Does nothing if
+	 * the order is done.
+	 */
+	public void cancel( final ManagedOrder order ) {
+		this.post( new Runnable() {
+			@Override
+			public void run() {
+				order.cancelWanted = true;
+				OrderManager.this.requestCancel( order );
+			}
+		} );
+	}
+
+	/**
+	 * Sets the clock the poll interval and the order timeouts are measured by.
+	 * Must be set before the first order is placed.
+	 *
+	 * @param clock
+	 */
+	public void setClock( final Clock clock ) {
+		this.clock = clock;
+	}
+
+	/**
+	 * @return The amount of orders that are not done
+	 */
+	public int getAmountOfActiveOrders() {
+		return this.amountOfActiveOrders;
+	}
+
+	/**
+	 * @return The amount of status requests sent to the exchange
+	 */
+	public long getAmountOfStatusRequests() {
+		return this.amountOfStatusRequests.get();
+	}
+
+	/**
+	 * Stops the event loop, orders that are not done are no longer supervised
+	 */
+	public void shutdown() {
+		this.shutdown = true;
+		this.post( new Runnable() {
+			@Override
+			public void run() {
+			}
+		} );
+	}
+
+	private ManagedOrder submit( final ManagedOrder order ) {
+		this.post( new Runnable() {
+			@Override
+			public void run() {
+				OrderManager.this.orders.add( order );
+				OrderManager.this.amountOfActiveOrders = OrderManager.this.orders.size();
+				OrderManager.this.place( order );
+			}
+		} );
+
+		return order;
+	}
+
+	private void post( final Runnable event ) {
+		this.events.add( event );
+		this.start();
+	}
+
+	private synchronized void start() {
+		if ( this.thread != null || this.shutdown ) {
+			return;
+		}
+
+		this.thread = ResourceManager.newThread( new Runnable() {
+			@Override
+			public void run() {
+				OrderManager.this.loop();
+			}
+		}, OrderManager.class.getSimpleName() + " " + this.exchange.getName() );
+		this.thread.setDaemon( true );
+		this.thread.start();
+	}
+
+	private void loop() {
+		long nextPoll = this.clock.currentTimeMillis() + this.pollIntervalMillis;
+
+		while ( !this.shutdown ) {
+			try {
+				/* Never waits longer than an interval, so a simulated clock that was moved forward is noticed */
+				final long waitMillis = java.lang.Math.min( nextPoll - this.clock.currentTimeMillis(), this.pollIntervalMillis );
+				final Runnable event = this.events.poll( java.lang.Math.max( 0, waitMillis ), TimeUnit.MILLISECONDS );
+
+				if ( event != null ) {
+					event.run();
+				}
+
+				/* Events keep coming while orders are open, poll on time anyway */
+				final long now = this.clock.currentTimeMillis();
+				if ( now >= nextPoll ) {
+					this.poll( now );
+					nextPoll = now + this.pollIntervalMillis;
+				}
+			}
+			catch ( final InterruptedException e ) {
+				OrderManager.LOGGER.warn( "Order manager interrupted, orders are no longer supervised", e );
+				return;
+			}
+			catch ( final Throwable t ) {
+				OrderManager.LOGGER.warn( "Order event failed", t );
+			}
+		}
+	}
+
+	/**
+	 * @return A callback that handles the response on the event loop
+	 */
+	private <T> Return<T> onLoop( final Return<T> callback ) {
+		return new Return<T>() {
+			@Override
+			public void succeeded( final T rv ) {
+				OrderManager.this.events.add( new Runnable() {
+					@Override
+					public void run() {
+						callback.succeeded( rv );
+					}
+				} );
+			}
+
+			@Override
+			public void error( final Throwable t ) {
+				OrderManager.this.events.add( new Runnable() {
+					@Override
+					public void run() {
+						callback.error( t );
+					}
+				} );
+			}
+		};
+	}
+
+	private void place( final ManagedOrder order ) {
+		order.placeAttempts++;
+		order.requestInFlight = true;
+
+		if ( order.getSide() == Side.BUY ) {
+			this.exchange.placeBuyOrder( order.getCurrencyPair(), order.getQuantity(), order.getRate(), this.onLoop( new Return<BuyOrder>() {
+				@Override
+				public void succeeded( final BuyOrder buyOrder ) {
+					if ( buyOrder == null ) {
+						OrderManager.this.findPlaced( order, null );
+					}
+					else if ( buyOrder.isPlaced() ) {
+						OrderManager.this.onPlaced( order, buyOrder.getID() );
+					}
+					else {
+						OrderManager.this.onRejected( order, null );
+					}
+				}
+
+				@Override
+				public void error( final Throwable t ) {
+					OrderManager.this.findPlaced( order, t );
+				}
+			} ) );
+		}
+		else {
+			this.exchange.placeSellOrder( order.getCurrencyPair(), order.getQuantity(), order.getRate(), this.onLoop( new Return<SellOrder>() {
+				@Override
+				public void succeeded( final SellOrder sellOrder ) {
+					if ( sellOrder == null ) {
+						OrderManager.this.findPlaced( order, null );
+					}
+					else if ( sellOrder.isPlaced() ) {
+						OrderManager.this.onPlaced( order, sellOrder.getID() );
+					}
+					else {
+						OrderManager.this.onRejected( order, null );
+					}
+				}
+
+				@Override
+				public void error( final Throwable t ) {
+					OrderManager.this.findPlaced( order, t );
+				}
+			} ) );
+		}
+	}
+
+	/**
+	 * The exchange did not place the order, so it can be placed again
+	 */
+	private void onRejected( final ManagedOrder order, final Throwable t ) {
+		order.requestInFlight = false;
+
+		if ( order.cancelWanted ) {
+			this.finish( order, OrderState.CANCELED );
+		}
+		else if ( order.placeAttempts < OrderManager.MAX_PLACE_ATTEMPTS ) {
+			OrderManager.LOGGER.debug( "Placing " + order + " failed, trying again" );
+			this.place( order );
+		}
+		else {
+			OrderManager.LOGGER.warn( "Could not place " + order, t );
+			this.finish( order, OrderState.FAILED );
+		}
+	}
+
+	/**
+	 * The placement failed without an answer, but the exchange may still have
+	 * placed the order. Placing it again could place it twice, so look for it
+	 * among the open orders of the pair first. An order that filled right
+	 * away is no longer open and cannot be found this way.
+	 *
+	 * @param t
+	 *            - Why the placement failed
+	 */
+	private void findPlaced( final ManagedOrder order, final Throwable t ) {
+		order.requestInFlight = true;
+
+		this.exchange.getOpenOrders( order.getCurrencyPair(), this.onLoop( new Return<OpenOrders>() {
+			@Override
+			public void succeeded( final OpenOrders openOrders ) {
+				order.lookupAttempts = 0;
+				final OpenOrder openOrder = OrderManager.this.findUnsupervised( order, openOrders );
+
+				if ( openOrder != null ) {
+					OrderManager.LOGGER.debug( "Found " + order + " open as " + openOrder.getID() + " after placing it failed" );
+					OrderManager.this.onPlaced( order, openOrder.getID() );
+				}
+				else {
+					OrderManager.this.onRejected( order, t );
+				}
+			}
+
+			@Override
+			public void error( final Throwable lookupError ) {
+				if ( ++order.lookupAttempts < OrderManager.MAX_PLACE_ATTEMPTS ) {
+					OrderManager.this.findPlaced( order, t );
+				}
+				else {
+					order.requestInFlight = false;
+					OrderManager.LOGGER.warn( "Could not find out if " + order + " was placed, it may be open on the exchange", lookupError );
+					OrderManager.this.finish( order, OrderState.FAILED );
+				}
+			}
+		} ) );
+	}
+
+	/**
+	 * @return The open order matching the order that no order here supervises,
+	 *         null if there is none
+	 */
+	private OpenOrder findUnsupervised( final ManagedOrder order, final OpenOrders openOrders ) {
+		final List<? extends OpenOrder> list = openOrders == null ? null : openOrders.getOpenOrders();
+		if ( list == null ) {
+			return null;
+		}
+
+		for ( int i = 0, len = list.size(); i < len; i++ ) {
+			final OpenOrder openOrder = list.get( i );
+
+			if ( openOrder.isBuy() == (order.getSide() == Side.BUY) && OrderManager.isSame( openOrder.getQuantity(), order.getQuantity() )
+					&& OrderManager.isSame( openOrder.getRate(), order.getRate() ) && !this.isSupervised( openOrder.getID() ) ) {
+				return openOrder;
+			}
+		}
+
+		return null;
+	}
+
+	private boolean isSupervised( final String orderID ) {
+		for ( int i = 0, size = this.orders.size(); i < size; i++ ) {
+			if ( orderID.equals( this.orders.get( i ).getOrderID() ) ) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Exchanges round quantities and rates to 8 decimals
+	 */
+	private static boolean isSame( final double a, final double b ) {
+		return java.lang.Math.abs( a - b ) <= 1e-8 * java.lang.Math.max( 1.0, java.lang.Math.abs( a ) );
+	}
+
+	private void onPlaced( final ManagedOrder order, final String orderID ) {
+		order.requestInFlight = false;
+		order.setOrderID( orderID );
+		order.deadline = this.clock.currentTimeMillis() + order.getTimeoutMillis();
+		order.setState( OrderState.PLACED );
+
+		if ( order.cancelWanted ) {
+			this.requestCancel( order );
+		}
+	}
+
+	private void poll( final long now ) {
+		for ( int i = 0, size = this.orders.size(); i < size; i++ ) {
+			final ManagedOrder order = this.orders.get( i );
+
+			if ( order.requestInFlight ) {
+				continue;
+			}
+
+			/* A cancel failed, find out if the order closed before trying again */
+			if ( order.cancelFailed ) {
+				this.requestStatus( order );
+				continue;
+			}
+
+			/* Asked for while a request was in flight */
+			if ( order.cancelWanted ) {
+				this.requestCancel( order );
+				continue;
+			}
+
+			switch ( order.getState() ) {
+				case PLACED:
+					if ( now >= order.deadline ) {
+						OrderManager.LOGGER.debug( "Timed out waiting for " + order + " to fill, canceling it" );
+						this.requestCancel( order );
+						break;
+					}
+					this.requestStatus( order );
+					break;
+				case PARTIALLY_FILLED:
+					this.requestStatus( order );
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	private void requestStatus( final ManagedOrder order ) {
+		order.requestInFlight = true;
+		this.amountOfStatusRequests.incrementAndGet();
+
+		this.exchange.getOpenOrder( order.getOrderID(), this.onLoop( new Return<OpenOrder>() {
+			@Override
+			public void succeeded( final OpenOrder openOrder ) {
+				order.requestInFlight = false;
+				final boolean cancelFailed = order.cancelFailed;
+				order.cancelFailed = false;
+
+				/* The state changed while the request was in flight */
+				if ( order.getState() != OrderState.PLACED && order.getState() != OrderState.PARTIALLY_FILLED ) {
+					return;
+				}
+
+				if ( openOrder.isClosed() ) {
+					OrderManager.this.finish( order, OrderState.FILLED );
+				}
+				else if ( openOrder.isPartiallyFilled() ) {
+					order.setState( OrderState.PARTIALLY_FILLED );
+				}
+
+				/* After a failed cancel, the next poll tries again */
+				if ( order.cancelWanted && !cancelFailed && !order.getState().isDone() ) {
+					OrderManager.this.requestCancel( order );
+				}
+			}
+
+			@Override
+			public void error( final Throwable t ) {
+				/* Asked again on the next poll */
+				order.requestInFlight = false;
+			}
+		} ) );
+	}
+
+	private void requestCancel( final ManagedOrder order ) {
+		/* Cancels once placed, or once the request in flight returns */
+		if ( order.getState() != OrderState.PLACED && order.getState() != OrderState.PARTIALLY_FILLED || order.requestInFlight ) {
+			order.cancelWanted = true;
+			return;
+		}
+
+		final OrderState previousState = order.getState();
+		order.requestInFlight = true;
+		order.setState( OrderState.CANCEL_REQUESTED );
+
+		this.exchange.cancelOpenOrder( order.getOrderID(), this.onLoop( new Return<CancelOrder>() {
+			@Override
+			public void succeeded( final CancelOrder cancelOrder ) {
+				order.requestInFlight = false;
+
+				if ( cancelOrder != null && cancelOrder.isCanceled() ) {
+					OrderManager.this.finish( order, OrderState.CANCELED );
+				}
+				else {
+					OrderManager.this.onCancelRefused( order );
+				}
+			}
+
+			/*
+			 * The cancel may not have reached the exchange, so it is still wanted
+			 * and the deadline still passed
+			 */
+			@Override
+			public void error( final Throwable t ) {
+				OrderManager.LOGGER.debug( "Canceling " + order + " failed, trying again", t );
+				order.requestInFlight = false;
+				order.cancelFailed = true;
+				order.setState( previousState );
+			}
+		} ) );
+	}
+
+	/**
+	 * The exchange refused the cancel, the order may have filled before it
+	 * could be canceled, keep polling it to find out
+	 */
+	private void onCancelRefused( final ManagedOrder order ) {
+		order.cancelWanted = false;
+		order.deadline = Long.MAX_VALUE;
+		order.setState( OrderState.PLACED );
+		this.requestStatus( order );
+	}
+
+	private void finish( final ManagedOrder order, final OrderState state ) {
+		final Iterator<ManagedOrder> iterator = this.orders.iterator();
+		while ( iterator.hasNext() ) {
+			if ( iterator.next() == order ) {
+				iterator.remove();
+				break;
+			}
+		}
+
+		this.amountOfActiveOrders = this.orders.size();
+		order.setState( state );
+	}
+}
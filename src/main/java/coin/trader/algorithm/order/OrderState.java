@@ -0,0 +1,36 @@
+package coin.trader.algorithm.order;
+
+/**
+ * States of a {@link ManagedOrder}. An order starts {@link #PENDING}, and
+ * ends in one of the states that are done.
+ *
+ * @author Evan
+ *
+ */
+public enum OrderState {
+	/* Not placed on the exchange yet */
+	PENDING( false ),
+	/* Open on the exchange, nothing filled yet */
+	PLACED( false ),
+	/* Open on the exchange, some of it filled */
+	PARTIALLY_FILLED( false ),
+	/* Asked the exchange to cancel it */
+	CANCEL_REQUESTED( false ),
+	FILLED( true ),
+	CANCELED( true ),
+	/* Could not be placed */
+	FAILED( true );
+
+	private final boolean done;
+
+	private OrderState( final boolean done ) {
+		this.done = done;
+	}
+
+	/**
+	 * @return True if the order will not change anymore
+	 */
+	public boolean isDone() {
+		return this.done;
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * 
+ */
+/**
+ * @author Evan
+ *
+ */
+package coin.trader.algorithm.order;
\ No newline at end of file
@@ -1,9 +1,9 @@
 package coin.trader.algorithm.reaction;
 
-import coin.trader.Info;
 import coin.trader.algorithm.TickerIndicator;
 import coin.trader.exchange.Ticker;
 import coin.trader.math.LinearRegression;
+import coin.trader.utilities.Clock;
 
 /**
  * Class to efficiently record the simple moving average of an sample space.
@@ -19,11 +19,17 @@ public class ReactionTickerIndicator implements TickerIndicator {
 	private Ticker ticker;
 	private final LinearRegression samples;
 	private final IndicatorFlags flags = new IndicatorFlags();
+	private final Clock clock;
 	private double candidacyWeight = 0;
 	private final Object LOCK = new Object();
 
 	public ReactionTickerIndicator( final int requestsPerSecond ) {
+		this( requestsPerSecond, Clock.SYSTEM );
+	}
+
+	public ReactionTickerIndicator( final int requestsPerSecond, final Clock clock ) {
 		this.samples = new LinearRegression( requestsPerSecond * ReactionTickerIndicator.ANALYSIS_INTERVAL_SECONDS );
+		this.clock = clock;
 	}
 
 	/**
@@ -39,7 +45,7 @@ public class ReactionTickerIndicator implements TickerIndicator {
 			this.ticker = ticker;
 
 			/* Ticker close prices */
-			this.samples.addSample( System.currentTimeMillis() - Info.START_TIME_STAMP, this.ticker.getLast() );
+			this.samples.addSample( this.clock.getElapsedTimeMillis(), this.ticker.getLast() );
 
 			/* Candidacy weight */
 			this.candidacyWeight = this.calculateCandidacyWeight();
@@ -5,17 +5,24 @@ import coin.trader.algorithm.TickerIndicatorFactory;
 import coin.trader.algorithm.TickerLastMonitorThread;
 import coin.trader.algorithm.TickerMonitorThread;
 import coin.trader.exchange.Exchange;
+import coin.trader.utilities.Clock;
 
 public class ReactionTickerIndicatorFactory implements TickerIndicatorFactory {
 	private final int requestsPerSecond;
+	private final Clock clock;
 
 	public ReactionTickerIndicatorFactory( final int requestsPerSecond ) {
+		this( requestsPerSecond, Clock.SYSTEM );
+	}
+
+	public ReactionTickerIndicatorFactory( final int requestsPerSecond, final Clock clock ) {
 		this.requestsPerSecond = requestsPerSecond;
+		this.clock = clock;
 	}
 
 	@Override
 	public TickerIndicator createTickerIndicator() {
-		return new ReactionTickerIndicator( this.requestsPerSecond );
+		return new ReactionTickerIndicator( this.requestsPerSecond, this.clock );
 	}
 
 	@Override
@@ -1,30 +1,53 @@
 package coin.trader.chart;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+import coin.trader.concurrency.Futures;
 import coin.trader.exchange.ChartData.DataPoint;
 import coin.trader.exchange.CurrencyPair;
 import coin.trader.exchange.Exchange;
 import coin.trader.logger.Logger;
 import coin.trader.math.SampleHistory;
-import coin.trader.utilities.Callback.Return;
+import coin.trader.storage.CandleCache;
 
 public class ChartAnalyzer {
 	private static final Logger LOGGER = new Logger( ChartAnalyzer.class.getSimpleName() );
+	private static final int ATTEMPTS = 5;
+	/* In seconds */
+	private static final long RETRY_DELAY = 1;
+
 	private final Exchange exchange;
+	private final CandleCache candleCache;
 	private final CurrencyPair currencyPair;
 
 	public ChartAnalyzer( final Exchange exchange, final CurrencyPair currencyPair ) {
 		this.exchange = exchange;
+		this.candleCache = CandleCache.getInstance( exchange );
 		this.currencyPair = currencyPair;
 	}
 
-	public void anaylize( final long start, final long end, final int period ) {
+	/**
+	 * Logs statistics of the chart data, retrying a few times if it cannot be
+	 * fetched
+	 *
+	 * @return Done once the statistics are logged
+	 */
+	public CompletableFuture<Void> anaylize( final long start, final long end, final int period ) {
 		ChartAnalyzer.LOGGER.info( "Start analysis of " + this.currencyPair + " on " + this.exchange + " from " + start + " to " + end + " with period of " + period );
-		this.exchange.getChartData( this.currencyPair, start, end, period, new Return<List<? extends DataPoint>>() {
 
+		return Futures.retry( new Supplier<CompletableFuture<List<? extends DataPoint>>>() {
+			@Override
+			public CompletableFuture<List<? extends DataPoint>> get() {
+				return ChartAnalyzer.this.candleCache.getChartDataAsync( ChartAnalyzer.this.currencyPair, start, end, period );
+			}
+		}, ChartAnalyzer.ATTEMPTS, ChartAnalyzer.RETRY_DELAY, TimeUnit.SECONDS ).thenAccept( new Consumer<List<? extends DataPoint>>() {
 			@Override
-			public void succeeded( final List<? extends DataPoint> rv ) {
+			public void accept( final List<? extends DataPoint> rv ) {
 				final int length = rv.size();
 
 				final SampleHistory lowSH = new SampleHistory( length );
@@ -60,11 +83,11 @@ public class ChartAnalyzer {
 
 				ChartAnalyzer.LOGGER.info( message + ": [" + average + ", " + stdDeviation + ", " + min + ", " + max + ", " + spread + ", " + spreadPercentage + "]" );
 			}
-
+		} ).exceptionally( new Function<Throwable, Void>() {
 			@Override
-			public void error( final Throwable t ) {
-				ChartAnalyzer.LOGGER.warn( "Failed to get chart data, trying again", t );
-				ChartAnalyzer.this.exchange.getChartData( ChartAnalyzer.this.currencyPair, start, end, period, this );
+			public Void apply( final Throwable t ) {
+				ChartAnalyzer.LOGGER.warn( "Failed to get chart data", t );
+				return null;
 			}
 		} );
 	}
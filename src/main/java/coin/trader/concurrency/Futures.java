@@ -0,0 +1,164 @@
+package coin.trader.concurrency;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import coin.trader.utilities.Callback.Return;
+
+/**
+ * Helpers to compose {@link CompletableFuture}s without blocking a thread.
+ * Timeouts and retry delays are run by the scheduler of the
+ * {@link ResourceManager}, so waiting on them costs no thread.
+ *
+ * @author Evan
+ *
+ */
+public final class Futures {
+	private Futures() {
+	}
+
+	/**
+	 * @return A callback completing the future
+	 */
+	public static <T> Return<T> complete( final CompletableFuture<T> future ) {
+		return new Return<T>() {
+			@Override
+			public void succeeded( final T rv ) {
+				future.complete( rv );
+			}
+
+			@Override
+			public void error( final Throwable t ) {
+				future.completeExceptionally( t );
+			}
+		};
+	}
+
+	/**
+	 * Fails the future with a {@link TimeoutException} if it is not done in
+	 * time. The work behind the future is not stopped.
+	 *
+	 * @return The same future
+	 */
+	public static <T> CompletableFuture<T> withTimeout( final CompletableFuture<T> future, final long timeout, final TimeUnit unit ) {
+		if ( future.isDone() ) {
+			return future;
+		}
+
+		final ScheduledFuture<?> timer = ResourceManager.scheduleLightRunnable( new Runnable() {
+			@Override
+			public void run() {
+				future.completeExceptionally( new TimeoutException( "Timed out after " + timeout + " " + unit ) );
+			}
+		}, timeout, unit );
+
+		future.whenComplete( new BiConsumer<T, Throwable>() {
+			@Override
+			public void accept( final T rv, final Throwable t ) {
+				timer.cancel( false );
+			}
+		} );
+
+		return future;
+	}
+
+	/**
+	 * Starts an attempt, and starts another one after the delay each time an
+	 * attempt fails, until one succeeds or every attempt failed
+	 *
+	 * @param attempt
+	 *            - Starts one attempt
+	 * @param attempts
+	 *            - At least 1
+	 * @param delay
+	 *            - Between a failed attempt and the next one
+	 * @return Completes like the last attempt
+	 */
+	public static <T> CompletableFuture<T> retry( final Supplier<CompletableFuture<T>> attempt, final int attempts, final long delay, final TimeUnit unit ) {
+		final CompletableFuture<T> result = new CompletableFuture<T>();
+		Futures.attempt( attempt, attempts, delay, unit, result );
+		return result;
+	}
+
+	private static <T> void attempt( final Supplier<CompletableFuture<T>> attempt, final int attemptsLeft, final long delay, final TimeUnit unit,
+			final CompletableFuture<T> result ) {
+		final CompletableFuture<T> future;
+
+		try {
+			future = attempt.get();
+		}
+		catch ( final Throwable t ) {
+			result.completeExceptionally( t );
+			return;
+		}
+
+		future.whenComplete( new BiConsumer<T, Throwable>() {
+			@Override
+			public void accept( final T rv, final Throwable t ) {
+				if ( t == null ) {
+					result.complete( rv );
+				}
+				else if ( attemptsLeft <= 1 || result.isDone() ) {
+					result.completeExceptionally( t );
+				}
+				else {
+					ResourceManager.scheduleLightRunnable( new Runnable() {
+						@Override
+						public void run() {
+							Futures.attempt( attempt, attemptsLeft - 1, delay, unit, result );
+						}
+					}, delay, unit );
+				}
+			}
+		} );
+	}
+
+	/**
+	 * @return Completes with the results in the same order once every future
+	 *         succeeded, or fails as soon as one of them fails, without
+	 *         waiting for the others
+	 */
+	public static <T> CompletableFuture<List<T>> allAsList( final List<? extends CompletableFuture<? extends T>> futures ) {
+		final CompletableFuture<List<T>> result = new CompletableFuture<List<T>>();
+		final AtomicInteger remaining = new AtomicInteger( futures.size() );
+
+		if ( futures.isEmpty() ) {
+			result.complete( new ArrayList<T>() );
+			return result;
+		}
+
+		for ( final CompletableFuture<? extends T> future : futures ) {
+			future.whenComplete( new BiConsumer<T, Throwable>() {
+				@Override
+				public void accept( final T rv, final Throwable t ) {
+					if ( t != null ) {
+						result.completeExceptionally( t );
+						return;
+					}
+
+					if ( remaining.decrementAndGet() > 0 ) {
+						return;
+					}
+
+					/* Every future succeeded */
+					final List<T> results = new ArrayList<T>( futures.size() );
+
+					for ( final CompletableFuture<? extends T> done : futures ) {
+						results.add( done.join() );
+					}
+
+					result.complete( results );
+				}
+			} );
+		}
+
+		return result;
+	}
+}
@@ -2,7 +2,15 @@ package coin.trader.concurrency;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+import coin.trader.config.Config;
 import coin.trader.logger.Logger;
 
 public class ResourceManager {
@@ -19,8 +27,47 @@ public class ResourceManager {
 	 */
 	private static ExecutorService lightLoadThreadpool = null;
 
+	/**
+	 * Used for blocking IO like exchange requests. Callers bound how many
+	 * tasks they have in flight.
+	 */
+	private static ExecutorService ioThreadpool = null;
+
+	/**
+	 * Used to update the indicators of every pair of a poll at once. Kept apart
+	 * from the heavy load pool, so a poll does not queue behind training.
+	 */
+	private static ForkJoinPool indicatorThreadpool = null;
+
+	/**
+	 * Used to run tasks after a delay, like timeouts and retries. Tasks must
+	 * only hand work to the other pools.
+	 */
+	private static ScheduledExecutorService scheduler = null;
+
+	/**
+	 * Set from {@link Config.ThreadConfig#VIRTUAL_THREADS} when the pools are
+	 * created. The light load and IO pools, and the threads of
+	 * {@link #newThread(Runnable, String)}, are then virtual threads, so
+	 * blocking on a request or a latch does not hold a platform thread. The
+	 * heavy load pool and the scheduler stay platform threads.
+	 */
+	private static boolean virtualThreads = false;
+
+	/**
+	 * Set on the threads of the heavy load pool. Work running on them must not
+	 * wait on more heavy load work, every thread could end up waiting.
+	 */
+	private static final ThreadLocal<Boolean> IS_HEAVY_LOAD_THREAD = new ThreadLocal<Boolean>() {
+		@Override
+		protected Boolean initialValue() {
+			return Boolean.FALSE;
+		}
+	};
+
 	private static void ensureInit() {
-		if ( ResourceManager.heavyLoadThreadpool == null || ResourceManager.lightLoadThreadpool == null ) {
+		if ( ResourceManager.heavyLoadThreadpool == null || ResourceManager.lightLoadThreadpool == null || ResourceManager.ioThreadpool == null
+				|| ResourceManager.indicatorThreadpool == null || ResourceManager.scheduler == null ) {
 			ResourceManager.init();
 		}
 	}
@@ -28,13 +75,93 @@ public class ResourceManager {
 	private static void init() {
 		ResourceManager.LOGGER.config( "Initializing " + ResourceManager.class.getSimpleName() );
 		ResourceManager.LOGGER.config( "Optimal Number of Threads: " + ResourceManager.OPTIMAL_NUMBER_OF_THREADS );
+
+		if ( Config.ThreadConfig.VIRTUAL_THREADS.getValue().booleanValue() ) {
+			if ( VirtualThreads.isSupported() ) {
+				ResourceManager.LOGGER.config( "Using virtual threads" );
+				ResourceManager.virtualThreads = true;
+			}
+			else {
+				ResourceManager.LOGGER.warn( "Virtual threads need Java 21 or newer, using platform threads" );
+			}
+		}
+
 		ResourceManager.LOGGER.config( "Starting Heavy Load Thread Pool with " + ResourceManager.OPTIMAL_NUMBER_OF_THREADS + " threads." );
-		ResourceManager.heavyLoadThreadpool = Executors.newFixedThreadPool( ResourceManager.OPTIMAL_NUMBER_OF_THREADS );
-		ResourceManager.LOGGER.config( "Starting Light Load Thread Pool with " + ResourceManager.OPTIMAL_NUMBER_OF_THREADS * 4 + " threads." );
-		ResourceManager.lightLoadThreadpool = Executors.newFixedThreadPool( ResourceManager.OPTIMAL_NUMBER_OF_THREADS * 4 );
+		ResourceManager.heavyLoadThreadpool = Executors.newFixedThreadPool( ResourceManager.OPTIMAL_NUMBER_OF_THREADS, new ThreadFactory() {
+			private final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+
+			@Override
+			public Thread newThread( final Runnable runnable ) {
+				return this.threadFactory.newThread( new Runnable() {
+					@Override
+					public void run() {
+						ResourceManager.IS_HEAVY_LOAD_THREAD.set( Boolean.TRUE );
+						runnable.run();
+					}
+				} );
+			}
+		} );
+		if ( ResourceManager.virtualThreads ) {
+			ResourceManager.LOGGER.config( "Starting Light Load and IO Thread Pools with a virtual thread per task" );
+			ResourceManager.lightLoadThreadpool = VirtualThreads.newThreadPerTaskExecutor();
+			ResourceManager.ioThreadpool = VirtualThreads.newThreadPerTaskExecutor();
+		}
+		else {
+			ResourceManager.LOGGER.config( "Starting Light Load Thread Pool with " + ResourceManager.OPTIMAL_NUMBER_OF_THREADS * 4 + " threads." );
+			ResourceManager.lightLoadThreadpool = Executors.newFixedThreadPool( ResourceManager.OPTIMAL_NUMBER_OF_THREADS * 4 );
+			ResourceManager.LOGGER.config( "Starting IO Thread Pool" );
+			ResourceManager.ioThreadpool = Executors.newCachedThreadPool();
+		}
+		ResourceManager.LOGGER.config( "Starting Indicator Thread Pool with " + ResourceManager.OPTIMAL_NUMBER_OF_THREADS + " threads." );
+		ResourceManager.indicatorThreadpool = new ForkJoinPool( ResourceManager.OPTIMAL_NUMBER_OF_THREADS );
+		ResourceManager.LOGGER.config( "Starting Scheduler" );
+		final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor( 1, new ThreadFactory() {
+			private final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+
+			@Override
+			public Thread newThread( final Runnable runnable ) {
+				final Thread thread = this.threadFactory.newThread( runnable );
+				thread.setDaemon( true );
+				return thread;
+			}
+		} );
+		/* Timeouts are cancelled far more often than they fire */
+		scheduler.setRemoveOnCancelPolicy( true );
+		ResourceManager.scheduler = scheduler;
 		ResourceManager.LOGGER.config( "Initialized " + ResourceManager.class.getSimpleName() );
 	}
 
+	/**
+	 * @return True if the current thread belongs to the heavy load pool
+	 */
+	public static boolean isHeavyLoadThread() {
+		return ResourceManager.IS_HEAVY_LOAD_THREAD.get().booleanValue();
+	}
+
+	/**
+	 * @return True if the light load and IO pools run on virtual threads
+	 */
+	public static boolean isUsingVirtualThreads() {
+		ResourceManager.ensureInit();
+		return ResourceManager.virtualThreads;
+	}
+
+	/**
+	 * Creates a thread for work that spends most of its time waiting, like the
+	 * logic loop of a strategy. It is a virtual thread when they are used.
+	 *
+	 * @return A thread that is not started yet
+	 */
+	public static Thread newThread( final Runnable runnable, final String name ) {
+		ResourceManager.ensureInit();
+
+		if ( ResourceManager.virtualThreads ) {
+			return VirtualThreads.newThread( runnable, name );
+		}
+
+		return new Thread( runnable, name );
+	}
+
 	public static void sumbitHeavyRunnable( final Runnable Runnable ) {
 		ResourceManager.ensureInit();
 		ResourceManager.heavyLoadThreadpool.submit( Runnable );
@@ -44,4 +171,35 @@ public class ResourceManager {
 		ResourceManager.ensureInit();
 		ResourceManager.lightLoadThreadpool.submit( Runnable );
 	}
+
+	public static void sumbitIORunnable( final Runnable Runnable ) {
+		ResourceManager.ensureInit();
+		ResourceManager.ioThreadpool.submit( Runnable );
+	}
+
+	/**
+	 * Runs the task on the indicator pool and waits for it. The tasks it forks
+	 * run on the same pool.
+	 *
+	 * @return The result of the task
+	 */
+	public static <T> T invokeIndicatorTask( final ForkJoinTask<T> task ) {
+		ResourceManager.ensureInit();
+		return ResourceManager.indicatorThreadpool.invoke( task );
+	}
+
+	/**
+	 * Runs the runnable on the light load pool after the delay
+	 *
+	 * @return Cancels the runnable if it did not run yet
+	 */
+	public static ScheduledFuture<?> scheduleLightRunnable( final Runnable runnable, final long delay, final TimeUnit unit ) {
+		ResourceManager.ensureInit();
+		return ResourceManager.scheduler.schedule( new Runnable() {
+			@Override
+			public void run() {
+				ResourceManager.lightLoadThreadpool.submit( runnable );
+			}
+		}, delay, unit );
+	}
 }
@@ -0,0 +1,113 @@
+package coin.trader.concurrency;
+
+import java.util.concurrent.TimeUnit;
+
+import coin.trader.utilities.Clock;
+import coin.trader.utilities.Utils;
+
+/**
+ * Token bucket rate limiter. Tokens refill at a fixed rate up to the capacity
+ * of the bucket, and each acquire takes one token. When the bucket is empty
+ * the token is reserved ahead of time and the caller waits until it is due, so
+ * the rate does not depend on how long the work done with the token takes.
+ *
+ * @author Evan
+ *
+ */
+public class TokenBucket {
+	private final double tokensPerNano;
+	private final double capacity;
+	private final Clock clock;
+	private double tokens;
+	private long lastRefillNanos;
+
+	/**
+	 * @param tokensPerSecond
+	 *            - Rate the bucket refills at
+	 * @param capacity
+	 *            - Maximum amount of tokens that can be saved up for a burst
+	 */
+	public TokenBucket( final double tokensPerSecond, final double capacity ) {
+		this( tokensPerSecond, capacity, Clock.SYSTEM );
+	}
+
+	/**
+	 * @param tokensPerSecond
+	 *            - Rate the bucket refills at
+	 * @param capacity
+	 *            - Maximum amount of tokens that can be saved up for a burst
+	 * @param clock
+	 *            - Clock the bucket refills and waits by
+	 */
+	public TokenBucket( final double tokensPerSecond, final double capacity, final Clock clock ) {
+		Utils.ASSERT_Param( tokensPerSecond > 0.0, "The rate must be positive." );
+		Utils.ASSERT_Param( capacity >= 1.0, "The capacity must hold at least one token." );
+
+		this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos( 1 );
+		this.capacity = capacity;
+		this.clock = clock;
+		this.tokens = capacity;
+		this.lastRefillNanos = clock.nanoTime();
+	}
+
+	private void refill( final long nowNanos ) {
+		this.tokens = java.lang.Math.min( this.capacity, this.tokens + (nowNanos - this.lastRefillNanos) * this.tokensPerNano );
+		this.lastRefillNanos = nowNanos;
+	}
+
+	/**
+	 * Takes a token, going into debt if there is none
+	 *
+	 * @return The amount of nanoseconds until the token is due
+	 */
+	public synchronized long reserve() {
+		this.refill( this.clock.nanoTime() );
+		this.tokens -= 1.0;
+
+		return this.tokens >= 0.0 ? 0 : (long) java.lang.Math.ceil( -this.tokens / this.tokensPerNano );
+	}
+
+	/**
+	 * @return The amount of nanoseconds until a token is available, without
+	 *         taking it
+	 */
+	public synchronized long getWaitNanos() {
+		this.refill( this.clock.nanoTime() );
+
+		return this.tokens >= 1.0 ? 0 : (long) java.lang.Math.ceil( (1.0 - this.tokens) / this.tokensPerNano );
+	}
+
+	/**
+	 * Takes a token if one is available right now
+	 */
+	public synchronized boolean tryAcquire() {
+		this.refill( this.clock.nanoTime() );
+
+		if ( this.tokens >= 1.0 ) {
+			this.tokens -= 1.0;
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Takes a token, waiting until it is due
+	 */
+	public void acquire() throws InterruptedException {
+		final long waitNanos = this.reserve();
+
+		if ( waitNanos > 0 ) {
+			this.clock.sleepNanos( waitNanos );
+		}
+	}
+
+	/**
+	 * @return The amount of tokens in the bucket, negative if tokens have been
+	 *         reserved ahead of time
+	 */
+	public synchronized double getAvailableTokens() {
+		this.refill( this.clock.nanoTime() );
+		return this.tokens;
+	}
+}
@@ -0,0 +1,79 @@
+package coin.trader.concurrency;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates virtual threads when the JVM running the bot has them. The bot is
+ * built for Java 8, so the methods are looked up by reflection, and
+ * {@link #isSupported()} is false on older JVMs, or on JVMs where they are
+ * still a preview feature that is not enabled.
+ *
+ * @author Evan
+ *
+ */
+final class VirtualThreads {
+	private static final Method OF_VIRTUAL;
+	private static final Method NAME;
+	private static final Method UNSTARTED;
+	private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method unstarted = null;
+		Method newThreadPerTaskExecutor = null;
+
+		try {
+			ofVirtual = Thread.class.getMethod( "ofVirtual" );
+			final Class<?> builder = Class.forName( "java.lang.Thread$Builder" );
+			name = builder.getMethod( "name", String.class );
+			unstarted = builder.getMethod( "unstarted", Runnable.class );
+			newThreadPerTaskExecutor = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+
+			/* Throws while they are a preview feature that is not enabled */
+			ofVirtual.invoke( null );
+		}
+		catch ( final Throwable t ) {
+			ofVirtual = null;
+		}
+
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		UNSTARTED = unstarted;
+		NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+	}
+
+	private VirtualThreads() {
+	}
+
+	static boolean isSupported() {
+		return VirtualThreads.OF_VIRTUAL != null;
+	}
+
+	/**
+	 * @return A virtual thread that is not started yet
+	 */
+	static Thread newThread( final Runnable runnable, final String name ) {
+		try {
+			final Object builder = VirtualThreads.NAME.invoke( VirtualThreads.OF_VIRTUAL.invoke( null ), name );
+			return (Thread) VirtualThreads.UNSTARTED.invoke( builder, runnable );
+		}
+		catch ( final Exception e ) {
+			throw new RuntimeException( "Could not create a virtual thread", e );
+		}
+	}
+
+	/**
+	 * @return An executor that runs each task on a new virtual thread
+	 */
+	static ExecutorService newThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) VirtualThreads.NEW_THREAD_PER_TASK_EXECUTOR.invoke( null );
+		}
+		catch ( final Exception e ) {
+			throw new RuntimeException( "Could not create a virtual thread executor", e );
+		}
+	}
+}
@@ -55,6 +55,30 @@ public class Config implements Serializable {
 		}
 	}
 
+	public static class ThreadConfig implements Serializable {
+		private static final long serialVersionUID = 2719204517382604736L;
+		public static final String NAME = "ThreadConfig";
+		/* Needs Java 21 or newer, ignored otherwise */
+		public static final ConfigItem<Boolean> VIRTUAL_THREADS = new ConfigItem<Boolean>( "VIRTUAL_THREADS", Boolean.FALSE, SecurityLevel.PUBLIC );
+
+		public static void print() {
+			Config.tabbedPrint( ThreadConfig.NAME, 1 );
+			Config.tabbedPrint( ThreadConfig.VIRTUAL_THREADS.toString(), 2 );
+		}
+	}
+
+	public static class StorageConfig implements Serializable {
+		private static final long serialVersionUID = 5302817761398521447L;
+		public static final String NAME = "StorageConfig";
+		/* Records every ticker poll to the tick store of the exchange */
+		public static final ConfigItem<Boolean> RECORD_TICKS = new ConfigItem<Boolean>( "RECORD_TICKS", Boolean.TRUE, SecurityLevel.PUBLIC );
+
+		public static void print() {
+			Config.tabbedPrint( StorageConfig.NAME, 1 );
+			Config.tabbedPrint( StorageConfig.RECORD_TICKS.toString(), 2 );
+		}
+	}
+
 	private static void tabbedPrint( final String str, final int numOfTabs ) {
 		final StringBuilder sb = new StringBuilder();
 		for ( int i = 0; i < numOfTabs; i++ ) {
@@ -67,5 +91,7 @@ public class Config implements Serializable {
 		LoggerConfig.print();
 		BittrexConfig.print();
 		PoloniexConfig.print();
+		ThreadConfig.print();
+		StorageConfig.print();
 	}
 }
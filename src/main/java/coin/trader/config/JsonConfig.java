@@ -36,6 +36,16 @@ public class JsonConfig {
 			/* Poloniex Config */
 			Config.PoloniexConfig.API_KEY_PUBLIC.setValue( jsonConfig.PoloniexConfig.API_KEY_PUBLIC );
 			Config.PoloniexConfig.API_KEY_PRIVATE.setValue( jsonConfig.PoloniexConfig.API_KEY_PRIVATE );
+
+			/* Thread Config, missing from older config files */
+			if ( jsonConfig.ThreadConfig != null ) {
+				Config.ThreadConfig.VIRTUAL_THREADS.setValue( Boolean.valueOf( jsonConfig.ThreadConfig.VIRTUAL_THREADS ) );
+			}
+
+			/* Storage Config, missing from older config files */
+			if ( jsonConfig.StorageConfig != null ) {
+				Config.StorageConfig.RECORD_TICKS.setValue( Boolean.valueOf( jsonConfig.StorageConfig.RECORD_TICKS ) );
+			}
 		}
 		catch ( final Exception e ) {
 			return false;
@@ -49,6 +59,8 @@ public class JsonConfig {
 		JsonLoggerStructure LoggerConfig = new JsonLoggerStructure();
 		BittrexConfigStructure BittrexConfig = new BittrexConfigStructure();
 		PoloniexConfigStructure PoloniexConfig = new PoloniexConfigStructure();
+		ThreadConfigStructure ThreadConfig = new ThreadConfigStructure();
+		StorageConfigStructure StorageConfig = new StorageConfigStructure();
 
 		private class JsonLoggerStructure implements Serializable {
 			private static final long serialVersionUID = 9143294577035907647L;
@@ -68,6 +80,16 @@ public class JsonConfig {
 			String API_KEY_PUBLIC = "";
 			String API_KEY_PRIVATE = "";
 		}
+
+		private class ThreadConfigStructure implements Serializable {
+			private static final long serialVersionUID = -5206480318924710357L;
+			boolean VIRTUAL_THREADS = false;
+		}
+
+		private class StorageConfigStructure implements Serializable {
+			private static final long serialVersionUID = 3842201957613068420L;
+			boolean RECORD_TICKS = true;
+		}
 	}
 
 	static String getTemplateAsString() {
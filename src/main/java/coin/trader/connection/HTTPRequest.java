@@ -1,53 +1,128 @@
 package coin.trader.connection;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 
-import coin.trader.config.Config;
+import com.google.gson.stream.JsonReader;
 
+import coin.trader.concurrency.ResourceManager;
+import coin.trader.config.Config;
+import coin.trader.logger.Logger;
+
+/**
+ * Sends the requests to the exchanges.
+ *
+ * Connections are kept alive and reused by {@link HttpURLConnection}, which
+ * only works if every response is read to the end and closed, so all
+ * responses, including errors, are drained. Responses are requested
+ * compressed. The latency of every request is recorded in a
+ * {@link LatencyHistogram} per endpoint, and the histograms are logged every
+ * few minutes.
+ *
+ * @author Evan
+ *
+ */
 public class HTTPRequest {
-	public static String sendHTTPRequest( final String urlStr ) throws IOException {
-		final URL url = new URL( urlStr );
-		final HttpURLConnection con = (HttpURLConnection) url.openConnection();
+	private static final Logger LOGGER = new Logger( HTTPRequest.class.getSimpleName() );
+	private static final String HMAC_SHA_512 = "HmacSHA512";
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private static final int MAX_IDLE_CONNECTIONS_PER_HOST = 16;
+	private static final int MAX_RETAINED_BUFFER_SIZE = 1 << 20;
+	private static final long REPORT_INTERVAL_MINUTES = 5;
+	private static final ConcurrentHashMap<String, LatencyHistogram> LATENCY_HISTOGRAMS = new ConcurrentHashMap<String, LatencyHistogram>();
+	private static final AtomicBoolean REPORT_SCHEDULED = new AtomicBoolean( false );
+
+	private static final ThreadLocal<byte[]> READ_BUFFER = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[8192];
+		}
+	};
 
-		/* GET */
-		con.setRequestMethod( "GET" );
+	private static final ThreadLocal<ByteArrayOutputStream> RESPONSE_BUFFER = new ThreadLocal<ByteArrayOutputStream>() {
+		@Override
+		protected ByteArrayOutputStream initialValue() {
+			return new ByteArrayOutputStream( 16384 );
+		}
+	};
 
-		/* Add headers */
-		con.setRequestProperty( "User-Agent", "Mozilla/5.0" );
+	/* Mac instances are not thread safe, so each thread keeps its own */
+	private static final ThreadLocal<Signer> SIGNER = new ThreadLocal<Signer>() {
+		@Override
+		protected Signer initialValue() {
+			return new Signer();
+		}
+	};
+
+	static {
+		/*
+		 * The default only keeps 5 idle connections per host, less than the
+		 * amount of requests we have in flight
+		 */
+		if ( System.getProperty( "http.maxConnections" ) == null ) {
+			System.setProperty( "http.maxConnections", Integer.toString( HTTPRequest.MAX_IDLE_CONNECTIONS_PER_HOST ) );
+		}
+	}
 
-		/* Send and wait for response */
-		final int responseCode = con.getResponseCode();
+	public static String sendHTTPRequest( final String urlStr ) throws IOException {
+		final URL url = new URL( urlStr );
+		final long startNanos = System.nanoTime();
+		final HttpURLConnection con = HTTPRequest.openConnection( url, "GET" );
 
-		if ( responseCode == 200 ) {
-			/* Read response */
-			final BufferedReader in = new BufferedReader( new InputStreamReader( con.getInputStream() ) );
-			String inputLine;
-			final StringBuilder response = new StringBuilder();
+		return HTTPRequest.readResponse( con, HTTPRequest.getEndpoint( url, url.getQuery() ), startNanos );
+	}
 
-			while ( (inputLine = in.readLine()) != null ) {
-				response.append( inputLine );
+	/**
+	 * Streams the response into the parser instead of reading it into a String
+	 *
+	 * @return The parsed response, or null if the request failed
+	 */
+	public static <T> T sendHTTPRequest( final String urlStr, final ResponseParser<T> parser ) throws IOException {
+		final URL url = new URL( urlStr );
+		final String endpoint = HTTPRequest.getEndpoint( url, url.getQuery() );
+		final long startNanos = System.nanoTime();
+		final HttpURLConnection con = HTTPRequest.openConnection( url, "GET" );
+
+		try {
+			final InputStream body = HTTPRequest.openBody( con, endpoint );
+			if ( body == null ) {
+				return null;
 			}
 
-			in.close();
-
-			return response.toString();
+			InputStream in = body;
+			try {
+				in = HTTPRequest.decompress( body, con.getContentEncoding() );
+				return parser.parse( new JsonReader( new InputStreamReader( in, StandardCharsets.UTF_8 ) ) );
+			}
+			finally {
+				/* Read anything the parser skipped so the connection can be reused */
+				HTTPRequest.finish( body, in );
+			}
 		}
-		else {
-			return "";
+		finally {
+			HTTPRequest.getLatencyHistogram( endpoint ).record( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startNanos ) );
 		}
 	}
 
 	/**
 	 * For Bittrex
-	 * 
+	 *
 	 * @param urlStr
 	 * @param secretBytes
 	 * @return
@@ -55,110 +130,277 @@ public class HTTPRequest {
 	 */
 	public static String sendHTTPRequestWithHMAC_SHA_512( final String urlStr, final byte[] secretBytes ) throws Exception {
 		final URL url = new URL( urlStr );
-		final HttpURLConnection con = (HttpURLConnection) url.openConnection();
+		final long startNanos = System.nanoTime();
+		final HttpURLConnection con = HTTPRequest.openConnection( url, "GET" );
+
+		/* Add the signature to the headers */
+		con.setRequestProperty( "apisign", HTTPRequest.signHMAC_SHA_512( urlStr, secretBytes ) );
 
-		/* GET */
-		con.setRequestMethod( "GET" );
+		return HTTPRequest.readResponse( con, HTTPRequest.getEndpoint( url, url.getQuery() ), startNanos );
+	}
+
+	/**
+	 * For Poloniex
+	 *
+	 * @param urlStr
+	 * @param secretBytes
+	 * @return
+	 * @throws Exception
+	 */
+	public static String sendHTTPRequestWithHMAC_SHA_512POST( final String urlStr, final String postParams, final byte[] secretBytes ) throws Exception {
+		final URL url = new URL( urlStr );
+		final long startNanos = System.nanoTime();
+		final HttpURLConnection con = HTTPRequest.openConnection( url, "POST" );
+		con.setDoOutput( true );
+
+		/* Add the signature to the headers */
+		con.setRequestProperty( "Key", Config.PoloniexConfig.API_KEY_PUBLIC.getValue() );
+		con.setRequestProperty( "Sign", HTTPRequest.signHMAC_SHA_512( postParams, secretBytes ) );
+
+		/* Write the POST parameters */
+		final byte[] postBytes = postParams.getBytes( StandardCharsets.UTF_8 );
+		con.setFixedLengthStreamingMode( postBytes.length );
+		try ( final OutputStream os = con.getOutputStream() ) {
+			os.write( postBytes );
+		}
+
+		return HTTPRequest.readResponse( con, HTTPRequest.getEndpoint( url, postParams ), startNanos );
+	}
+
+	private static HttpURLConnection openConnection( final URL url, final String method ) throws IOException {
+		final HttpURLConnection con = (HttpURLConnection) url.openConnection();
+		con.setRequestMethod( method );
 
 		/* Add headers */
 		con.setRequestProperty( "User-Agent", "Mozilla/5.0" );
+		con.setRequestProperty( "Accept-Encoding", "gzip, deflate" );
+		con.setRequestProperty( "Connection", "keep-alive" );
 
-		/* Calculate the HMAC_512 hash */
-		final Mac hmac_sha_512 = Mac.getInstance( "HmacSHA512" );
-		final SecretKeySpec keySpec = new SecretKeySpec( secretBytes, "HmacSHA512" );
-		hmac_sha_512.init( keySpec );
-		final byte[] bytes = hmac_sha_512.doFinal( urlStr.getBytes( "UTF-8" ) );
+		return con;
+	}
 
-		/* Convert byte array to a hex string */
-		final StringBuilder sb = new StringBuilder();
-		for ( int i = 0, len = bytes.length; i < len; i++ ) {
-			sb.append( String.format( "%02x", bytes[i] ) );
+	/**
+	 * Sends the request and reads the whole response
+	 *
+	 * @return The response body, or an empty string if the request failed
+	 */
+	private static String readResponse( final HttpURLConnection con, final String endpoint, final long startNanos ) throws IOException {
+		try {
+			final InputStream body = HTTPRequest.openBody( con, endpoint );
+			return body == null ? "" : HTTPRequest.readBody( body, con.getContentEncoding() );
 		}
+		finally {
+			HTTPRequest.getLatencyHistogram( endpoint ).record( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startNanos ) );
+		}
+	}
 
-		/* Add the signature to the headers */
-		con.setRequestProperty( "apisign", sb.toString() );
-
-		/* Send and wait for response */
+	/**
+	 * Sends the request and waits for the response
+	 *
+	 * @return The body as it was sent, or null if the request failed
+	 */
+	private static InputStream openBody( final HttpURLConnection con, final String endpoint ) throws IOException {
 		final int responseCode = con.getResponseCode();
 
 		if ( responseCode == 200 ) {
-			/* Read response */
-			final BufferedReader in = new BufferedReader( new InputStreamReader( con.getInputStream() ) );
-			String inputLine;
-			final StringBuilder response = new StringBuilder();
+			return con.getInputStream();
+		}
+
+		/* The error has to be read too or the connection is not reused */
+		final InputStream errorStream = con.getErrorStream();
+		if ( errorStream != null ) {
+			HTTPRequest.drain( errorStream );
+		}
+
+		HTTPRequest.LOGGER.debug( endpoint + " responded with " + responseCode );
+		return null;
+	}
+
+	private static InputStream decompress( final InputStream inputStream, final String contentEncoding ) throws IOException {
+		if ( "gzip".equalsIgnoreCase( contentEncoding ) ) {
+			return new GZIPInputStream( inputStream );
+		}
+		else if ( "deflate".equalsIgnoreCase( contentEncoding ) ) {
+			return new InflaterInputStream( inputStream );
+		}
+
+		return inputStream;
+	}
+
+	private static String readBody( final InputStream body, final String contentEncoding ) throws IOException {
+		final byte[] readBuffer = HTTPRequest.READ_BUFFER.get();
+		final ByteArrayOutputStream response = HTTPRequest.RESPONSE_BUFFER.get();
+		response.reset();
 
-			while ( (inputLine = in.readLine()) != null ) {
-				response.append( inputLine );
+		InputStream in = body;
+		try {
+			in = HTTPRequest.decompress( body, contentEncoding );
+			int read = in.read( readBuffer );
+
+			while ( read >= 0 ) {
+				response.write( readBuffer, 0, read );
+				read = in.read( readBuffer );
 			}
+		}
+		finally {
+			HTTPRequest.finish( body, in );
+		}
 
-			in.close();
+		final String rv = new String( response.toByteArray(), StandardCharsets.UTF_8 );
+
+		/* Do not hold on to the buffer of an unusually large response */
+		if ( response.size() > HTTPRequest.MAX_RETAINED_BUFFER_SIZE ) {
+			HTTPRequest.RESPONSE_BUFFER.remove();
+		}
 
-			return response.toString();
+		return rv;
+	}
+
+	/**
+	 * Drains the body, then closes the decompressor reading it, which ends its
+	 * inflater and frees the native memory now rather than when it is
+	 * collected
+	 *
+	 * @param in
+	 *            - The decompressor, or the body itself if it was not
+	 *            compressed
+	 */
+	private static void finish( final InputStream body, final InputStream in ) throws IOException {
+		try {
+			HTTPRequest.drain( body );
 		}
-		else {
-			return "";
+		finally {
+			if ( in != body ) {
+				in.close();
+			}
 		}
 	}
 
 	/**
-	 * For Poloniex
-	 * 
-	 * @param urlStr
-	 * @param secretBytes
-	 * @return
-	 * @throws Exception
+	 * Reads the body as it was sent to the end and closes it. A decompressor
+	 * stops at the end of the compressed data, which can be before the end of
+	 * the body, and a body closed before its end closes the connection.
 	 */
-	public static String sendHTTPRequestWithHMAC_SHA_512POST( final String urlStr, final String postParams, final byte[] secretBytes ) throws Exception {
-		final URL url = new URL( urlStr );
-		final HttpURLConnection con = (HttpURLConnection) url.openConnection();
-		con.setDoOutput( true );
+	private static void drain( final InputStream body ) throws IOException {
+		final byte[] readBuffer = HTTPRequest.READ_BUFFER.get();
 
-		/* GET */
-		con.setRequestMethod( "POST" );
+		try {
+			while ( body.read( readBuffer ) >= 0 ) {
+			}
+		}
+		finally {
+			body.close();
+		}
+	}
 
-		/* Add headers */
-		con.setRequestProperty( "User-Agent", "Mozilla/5.0" );
+	/**
+	 * Endpoints are the host and path, plus the command for APIs that put the
+	 * command in the parameters
+	 */
+	private static String getEndpoint( final URL url, final String params ) {
+		final String endpoint = url.getHost() + url.getPath();
 
-		/* Calculate the HMAC_512 hash */
-		final Mac hmac_sha_512 = Mac.getInstance( "HmacSHA512" );
-		final SecretKeySpec keySpec = new SecretKeySpec( secretBytes, "HmacSHA512" );
-		hmac_sha_512.init( keySpec );
-		final byte[] bytes = hmac_sha_512.doFinal( postParams.getBytes( "UTF-8" ) );
+		if ( params != null ) {
+			final int commandIndex = params.startsWith( "command=" ) ? 0 : params.indexOf( "&command=" ) + 1;
 
-		/* Convert byte array to a hex string */
-		final StringBuilder sb = new StringBuilder();
-		for ( int i = 0, len = bytes.length; i < len; i++ ) {
-			sb.append( String.format( "%02x", bytes[i] ) );
+			if ( commandIndex >= 0 && params.startsWith( "command=", commandIndex ) ) {
+				final int end = params.indexOf( '&', commandIndex );
+				return endpoint + "?" + (end < 0 ? params.substring( commandIndex ) : params.substring( commandIndex, end ));
+			}
 		}
 
-		/* Add the signature to the headers */
-		con.setRequestProperty( "Key", Config.PoloniexConfig.API_KEY_PUBLIC.getValue() );
-		con.setRequestProperty( "Sign", sb.toString() );
+		return endpoint;
+	}
 
-		/* Write the POST parameters */
-		try ( final DataOutputStream wr = new DataOutputStream( con.getOutputStream() ) ) {
-			wr.write( postParams.toString().getBytes() );
-		}
+	private static LatencyHistogram getLatencyHistogram( final String endpoint ) {
+		LatencyHistogram histogram = HTTPRequest.LATENCY_HISTOGRAMS.get( endpoint );
 
-		/* Send and wait for response */
-		final int responseCode = con.getResponseCode();
+		if ( histogram == null ) {
+			final LatencyHistogram newHistogram = new LatencyHistogram( endpoint );
+			histogram = HTTPRequest.LATENCY_HISTOGRAMS.putIfAbsent( endpoint, newHistogram );
 
-		if ( responseCode == 200 ) {
-			/* Read response */
-			final BufferedReader in = new BufferedReader( new InputStreamReader( con.getInputStream() ) );
-			String inputLine;
-			final StringBuilder response = new StringBuilder();
+			if ( histogram == null ) {
+				histogram = newHistogram;
+			}
 
-			while ( (inputLine = in.readLine()) != null ) {
-				response.append( inputLine );
+			if ( HTTPRequest.REPORT_SCHEDULED.compareAndSet( false, true ) ) {
+				HTTPRequest.scheduleReport();
 			}
+		}
+
+		return histogram;
+	}
+
+	private static void scheduleReport() {
+		ResourceManager.scheduleLightRunnable( new Runnable() {
+			@Override
+			public void run() {
+				HTTPRequest.logLatencies();
+				HTTPRequest.scheduleReport();
+			}
+		}, HTTPRequest.REPORT_INTERVAL_MINUTES, TimeUnit.MINUTES );
+	}
+
+	/**
+	 * Logs the latency histogram of every endpoint that has been requested
+	 */
+	public static void logLatencies() {
+		for ( final LatencyHistogram latencyHistogram : HTTPRequest.LATENCY_HISTOGRAMS.values() ) {
+			HTTPRequest.LOGGER.info( "Latency of " + latencyHistogram );
+		}
+	}
+
+	/**
+	 * @return The latency histogram of every endpoint that has been requested
+	 */
+	public static Collection<LatencyHistogram> getLatencyHistograms() {
+		return HTTPRequest.LATENCY_HISTOGRAMS.values();
+	}
 
-			in.close();
+	/**
+	 * @return The HMAC-SHA512 of the message as a lower case hex string
+	 */
+	public static String signHMAC_SHA_512( final String message, final byte[] secretBytes ) throws Exception {
+		return HTTPRequest.toHex( HTTPRequest.SIGNER.get().sign( message.getBytes( StandardCharsets.UTF_8 ), secretBytes ) );
+	}
 
-			return response.toString();
+	/**
+	 * @return The bytes as a lower case hex string
+	 */
+	public static String toHex( final byte[] bytes ) {
+		final char[] chars = new char[bytes.length * 2];
+
+		for ( int i = 0, len = bytes.length; i < len; i++ ) {
+			final int b = bytes[i] & 0xFF;
+			chars[i * 2] = HTTPRequest.HEX_DIGITS[b >>> 4];
+			chars[i * 2 + 1] = HTTPRequest.HEX_DIGITS[b & 0x0F];
 		}
-		else {
-			return "";
+
+		return new String( chars );
+	}
+
+	/**
+	 * Mac of a single thread, only initialized again when the secret changes
+	 *
+	 * @author Evan
+	 *
+	 */
+	private static class Signer {
+		private Mac mac = null;
+		private byte[] secretBytes = null;
+
+		private byte[] sign( final byte[] message, final byte[] secretBytes ) throws Exception {
+			if ( this.mac == null ) {
+				this.mac = Mac.getInstance( HTTPRequest.HMAC_SHA_512 );
+			}
+
+			if ( !Arrays.equals( this.secretBytes, secretBytes ) ) {
+				this.mac.init( new SecretKeySpec( secretBytes, HTTPRequest.HMAC_SHA_512 ) );
+				this.secretBytes = secretBytes.clone();
+			}
+
+			/* doFinal resets the Mac for the next message */
+			return this.mac.doFinal( message );
 		}
 	}
 }
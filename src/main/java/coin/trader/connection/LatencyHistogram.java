@@ -0,0 +1,94 @@
+package coin.trader.connection;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of request latencies. Bucket i counts latencies from
+ * 2^(i-1) up to 2^i milliseconds, so percentiles are accurate to within a
+ * factor of two, which is enough to tell a slow endpoint from a fast one.
+ *
+ * @author Evan
+ *
+ */
+public class LatencyHistogram {
+	private static final int AMOUNT_OF_BUCKETS = 20;
+
+	private final String name;
+	private final AtomicLongArray buckets = new AtomicLongArray( LatencyHistogram.AMOUNT_OF_BUCKETS );
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalMillis = new AtomicLong();
+	private final AtomicLong maxMillis = new AtomicLong();
+
+	public LatencyHistogram( final String name ) {
+		this.name = name;
+	}
+
+	private static int bucketOf( final long millis ) {
+		if ( millis <= 0 ) {
+			return 0;
+		}
+
+		return java.lang.Math.min( LatencyHistogram.AMOUNT_OF_BUCKETS - 1, 64 - Long.numberOfLeadingZeros( millis ) );
+	}
+
+	public void record( final long millis ) {
+		this.buckets.incrementAndGet( LatencyHistogram.bucketOf( millis ) );
+		this.count.incrementAndGet();
+		this.totalMillis.addAndGet( millis );
+
+		long max = this.maxMillis.get();
+		while ( millis > max && !this.maxMillis.compareAndSet( max, millis ) ) {
+			max = this.maxMillis.get();
+		}
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public long getCount() {
+		return this.count.get();
+	}
+
+	public double getAverageMillis() {
+		final long count = this.count.get();
+		return count == 0 ? 0.0 : (double) this.totalMillis.get() / count;
+	}
+
+	public long getMaxMillis() {
+		return this.maxMillis.get();
+	}
+
+	/**
+	 * @param percentile
+	 *            - Between 0 and 1
+	 * @return Upper bound in milliseconds of the bucket the percentile falls in
+	 */
+	public long getPercentileMillis( final double percentile ) {
+		final long count = this.count.get();
+
+		if ( count == 0 ) {
+			return 0;
+		}
+
+		final long target = (long) java.lang.Math.ceil( percentile * count );
+		long seen = 0;
+
+		for ( int i = 0; i < LatencyHistogram.AMOUNT_OF_BUCKETS; i++ ) {
+			seen += this.buckets.get( i );
+
+			if ( seen >= target ) {
+				return java.lang.Math.min( 1L << i, this.maxMillis.get() );
+			}
+		}
+
+		return this.maxMillis.get();
+	}
+
+	@Override
+	public String toString() {
+		return this.name + ": [ count: " + this.getCount() + ", average: " + this.getAverageMillis() + " ms, p50: " + this.getPercentileMillis( 0.5 ) + " ms, p99: "
+				+ this.getPercentileMillis( 0.99 ) + " ms, max: " + this.getMaxMillis() + " ms ]";
+	}
+}
@@ -0,0 +1,17 @@
+package coin.trader.connection;
+
+import java.io.IOException;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Parses a response while it is being read from the connection, so the body
+ * never has to be held as a String
+ *
+ * @author Evan
+ *
+ * @param <T>
+ */
+public interface ResponseParser<T> {
+	public T parse( final JsonReader reader ) throws IOException;
+}
@@ -53,6 +53,21 @@ public interface ChartData {
 			this.period = period;
 		}
 
+		@Override
+		public boolean equals( final Object obj ) {
+			if ( !(obj instanceof ChartDataJobArgs) ) {
+				return false;
+			}
+
+			final ChartDataJobArgs jobArgs = (ChartDataJobArgs) obj;
+			return this.currencyPair.equals( jobArgs.currencyPair ) && this.start == jobArgs.start && this.end == jobArgs.end && this.period == jobArgs.period;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((this.currencyPair.hashCode() * 31 + Long.hashCode( this.start )) * 31 + Long.hashCode( this.end )) * 31 + this.period;
+		}
+
 		@Override
 		public String toString() {
 			return "[ currency pair: " + this.currencyPair + ", start: " + this.start + ", end: " + this.end + ", period: " + this.period + " ]";
@@ -22,6 +22,11 @@ public class Currency {
 		return this.name;
 	}
 
+	@Override
+	public int hashCode() {
+		return this.name.hashCode();
+	}
+
 	@Override
 	public boolean equals( final Object obj ) {
 		if ( obj instanceof Currency ) {
@@ -9,6 +9,8 @@ package coin.trader.exchange;
 public class CurrencyPair {
 	protected Currency base;
 	protected Currency quote;
+	private int hashCode = 0;
+	private int id = -1;
 
 	protected CurrencyPair() {
 
@@ -27,9 +29,26 @@ public class CurrencyPair {
 		return this.quote;
 	}
 
+	/**
+	 * @return Dense id of the pair, equal pairs have the same id
+	 * @see CurrencyPairRegistry
+	 */
+	public int getID() {
+		/* Every thread computes the same id, so the race is harmless */
+		if ( this.id < 0 ) {
+			this.id = CurrencyPairRegistry.getID( this );
+		}
+
+		return this.id;
+	}
+
 	@Override
 	public int hashCode() {
-		return (this.base.toString() + this.quote.toString()).hashCode();
+		if ( this.hashCode == 0 ) {
+			this.hashCode = this.base.hashCode() * 31 + this.quote.hashCode();
+		}
+
+		return this.hashCode;
 	}
 
 	@Override
@@ -0,0 +1,78 @@
+package coin.trader.exchange;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import coin.trader.utilities.Utils;
+
+/**
+ * Assigns every currency pair a dense id, starting at 0, in the order the
+ * pairs are first seen. Equal pairs get the same id, whichever exchange they
+ * came from, so per pair state can be kept in arrays indexed by the id
+ * instead of in maps. Ids are only valid for the lifetime of the process.
+ *
+ * @author Evan
+ *
+ */
+public class CurrencyPairRegistry {
+	private static final ConcurrentHashMap<CurrencyPair, Integer> IDS = new ConcurrentHashMap<CurrencyPair, Integer>( 256 );
+	private static final Object LOCK = new Object();
+	private static volatile CurrencyPair[] pairs = new CurrencyPair[256];
+	private static volatile int size = 0;
+
+	private CurrencyPairRegistry() {
+	}
+
+	/**
+	 * @return The id of the pair, registering it if it is new
+	 */
+	public static int getID( final CurrencyPair currencyPair ) {
+		final Integer id = CurrencyPairRegistry.IDS.get( currencyPair );
+
+		if ( id != null ) {
+			return id.intValue();
+		}
+
+		synchronized ( CurrencyPairRegistry.LOCK ) {
+			final Integer existingID = CurrencyPairRegistry.IDS.get( currencyPair );
+
+			if ( existingID != null ) {
+				return existingID.intValue();
+			}
+
+			final int newID = CurrencyPairRegistry.size;
+
+			if ( newID == CurrencyPairRegistry.pairs.length ) {
+				CurrencyPairRegistry.pairs = Arrays.copyOf( CurrencyPairRegistry.pairs, newID * 2 );
+			}
+
+			/*
+			 * Keep a generic copy, the exchange specific subclasses format the
+			 * pair for their own exchange
+			 */
+			final CurrencyPair pair = new CurrencyPair( currencyPair.getBase(), currencyPair.getQuote() );
+			CurrencyPairRegistry.pairs[newID] = pair;
+			CurrencyPairRegistry.IDS.put( pair, Integer.valueOf( newID ) );
+
+			/* Publish the pair before the new size */
+			CurrencyPairRegistry.size = newID + 1;
+
+			return newID;
+		}
+	}
+
+	/**
+	 * @return The pair with the id
+	 */
+	public static CurrencyPair getCurrencyPair( final int id ) {
+		Utils.ASSERT_Param( id >= 0 && id < CurrencyPairRegistry.size, "Unknown currency pair id: " + id );
+		return CurrencyPairRegistry.pairs[id];
+	}
+
+	/**
+	 * @return The amount of registered pairs, every id is below this
+	 */
+	public static int size() {
+		return CurrencyPairRegistry.size;
+	}
+}
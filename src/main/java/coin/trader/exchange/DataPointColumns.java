@@ -0,0 +1,198 @@
+package coin.trader.exchange;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+import coin.trader.exchange.ChartData.DataPoint;
+
+/**
+ * Candles stored as one primitive array per field. Parsers append straight
+ * into the columns, and code that knows about the columns can read them
+ * without creating a {@link DataPoint} per candle. Everything else sees a
+ * list of data points, which are small views into the columns.
+ *
+ * @author Evan
+ *
+ */
+public class DataPointColumns extends AbstractList<DataPoint> implements RandomAccess {
+	private long[] dates;
+	private double[] highs;
+	private double[] lows;
+	private double[] opens;
+	private double[] closes;
+	private double[] volumes;
+	private double[] quoteVolumes;
+	private double[] weightedAverages;
+	private int size = 0;
+
+	public DataPointColumns() {
+		this( 64 );
+	}
+
+	public DataPointColumns( final int capacity ) {
+		this.dates = new long[capacity];
+		this.highs = new double[capacity];
+		this.lows = new double[capacity];
+		this.opens = new double[capacity];
+		this.closes = new double[capacity];
+		this.volumes = new double[capacity];
+		this.quoteVolumes = new double[capacity];
+		this.weightedAverages = new double[capacity];
+	}
+
+	public void add( final long date, final double high, final double low, final double open, final double close, final double volume, final double quoteVolume,
+			final double weightedAverage ) {
+		if ( this.size == this.dates.length ) {
+			this.resize( java.lang.Math.max( 16, this.size * 2 ) );
+		}
+
+		final int i = this.size;
+		this.dates[i] = date;
+		this.highs[i] = high;
+		this.lows[i] = low;
+		this.opens[i] = open;
+		this.closes[i] = close;
+		this.volumes[i] = volume;
+		this.quoteVolumes[i] = quoteVolume;
+		this.weightedAverages[i] = weightedAverage;
+		this.size++;
+		this.modCount++;
+	}
+
+	private void resize( final int capacity ) {
+		this.dates = Arrays.copyOf( this.dates, capacity );
+		this.highs = Arrays.copyOf( this.highs, capacity );
+		this.lows = Arrays.copyOf( this.lows, capacity );
+		this.opens = Arrays.copyOf( this.opens, capacity );
+		this.closes = Arrays.copyOf( this.closes, capacity );
+		this.volumes = Arrays.copyOf( this.volumes, capacity );
+		this.quoteVolumes = Arrays.copyOf( this.quoteVolumes, capacity );
+		this.weightedAverages = Arrays.copyOf( this.weightedAverages, capacity );
+	}
+
+	/**
+	 * Copies a range of the columns
+	 *
+	 * @param from
+	 *            - inclusive
+	 * @param to
+	 *            - exclusive
+	 */
+	public static DataPointColumns copyOf( final long[] dates, final double[] highs, final double[] lows, final double[] opens, final double[] closes,
+			final double[] volumes, final double[] quoteVolumes, final double[] weightedAverages, final int from, final int to ) {
+		final DataPointColumns columns = new DataPointColumns( 0 );
+		columns.dates = Arrays.copyOfRange( dates, from, to );
+		columns.highs = Arrays.copyOfRange( highs, from, to );
+		columns.lows = Arrays.copyOfRange( lows, from, to );
+		columns.opens = Arrays.copyOfRange( opens, from, to );
+		columns.closes = Arrays.copyOfRange( closes, from, to );
+		columns.volumes = Arrays.copyOfRange( volumes, from, to );
+		columns.quoteVolumes = Arrays.copyOfRange( quoteVolumes, from, to );
+		columns.weightedAverages = Arrays.copyOfRange( weightedAverages, from, to );
+		columns.size = to - from;
+		return columns;
+	}
+
+	@Override
+	public DataPoint get( final int index ) {
+		if ( index < 0 || index >= this.size ) {
+			throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + this.size );
+		}
+
+		return new ColumnDataPoint( this, index );
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	public long getDate( final int index ) {
+		return this.dates[index];
+	}
+
+	public double getHigh( final int index ) {
+		return this.highs[index];
+	}
+
+	public double getLow( final int index ) {
+		return this.lows[index];
+	}
+
+	public double getOpen( final int index ) {
+		return this.opens[index];
+	}
+
+	public double getClose( final int index ) {
+		return this.closes[index];
+	}
+
+	public double getVolume( final int index ) {
+		return this.volumes[index];
+	}
+
+	public double getQuoteVolume( final int index ) {
+		return this.quoteVolumes[index];
+	}
+
+	public double getWeightedAverage( final int index ) {
+		return this.weightedAverages[index];
+	}
+
+	/**
+	 * View of a single candle in the columns
+	 *
+	 * @author Evan
+	 *
+	 */
+	private static class ColumnDataPoint implements DataPoint {
+		private final DataPointColumns columns;
+		private final int index;
+
+		private ColumnDataPoint( final DataPointColumns columns, final int index ) {
+			this.columns = columns;
+			this.index = index;
+		}
+
+		@Override
+		public double getDate() {
+			return this.columns.dates[this.index];
+		}
+
+		@Override
+		public double getHigh() {
+			return this.columns.highs[this.index];
+		}
+
+		@Override
+		public double getLow() {
+			return this.columns.lows[this.index];
+		}
+
+		@Override
+		public double getOpen() {
+			return this.columns.opens[this.index];
+		}
+
+		@Override
+		public double getClose() {
+			return this.columns.closes[this.index];
+		}
+
+		@Override
+		public double getVolume() {
+			return this.columns.volumes[this.index];
+		}
+
+		@Override
+		public double getQuoteVolume() {
+			return this.columns.quoteVolumes[this.index];
+		}
+
+		@Override
+		public double getWeightedAverage() {
+			return this.columns.weightedAverages[this.index];
+		}
+	}
+}
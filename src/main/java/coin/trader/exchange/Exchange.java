@@ -1,8 +1,11 @@
 package coin.trader.exchange;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+import coin.trader.concurrency.Futures;
 import coin.trader.exchange.BuyOrder.BuyOrderJobArgs;
 import coin.trader.exchange.CancelOrder.CancelOrderJobArgs;
 import coin.trader.exchange.ChartData.ChartDataJobArgs;
@@ -10,7 +13,6 @@ import coin.trader.exchange.ChartData.DataPoint;
 import coin.trader.exchange.ExchangeMonitor.Job;
 import coin.trader.exchange.ExchangeMonitor.Job.JobArgs;
 import coin.trader.exchange.ExchangeMonitor.Job.JobID;
-import coin.trader.exchange.ExchangeMonitor.Job.JobPriority;
 import coin.trader.exchange.OpenOrder.OpenOrderJobArgs;
 import coin.trader.exchange.OpenOrders.OpenOrdersJobArgs;
 import coin.trader.exchange.OrderBook.OrderBookJobArgs;
@@ -39,12 +41,19 @@ public abstract class Exchange {
 		this.monitor.start();
 	}
 
+	/**
+	 * @return The monitor that schedules the requests of this exchange
+	 */
+	public ExchangeMonitor getMonitor() {
+		return this.monitor;
+	}
+
 	/**
 	 * 
 	 * @param callback
 	 */
 	public final void getTickers( final Return<Map<CurrencyPair, Ticker>> callback ) {
-		final Job<Map<CurrencyPair, Ticker>> job = new Job<Map<CurrencyPair, Ticker>>( JobID.GET_TICKERS, JobPriority.NORMAL, null, callback );
+		final Job<Map<CurrencyPair, Ticker>> job = new Job<Map<CurrencyPair, Ticker>>( JobID.GET_TICKERS, null, callback );
 		this.submitJob( job );
 	}
 
@@ -53,7 +62,7 @@ public abstract class Exchange {
 	 * @param callback
 	 */
 	public final void get24HourVolume( final Return<Volumes> callback ) {
-		final Job<Volumes> job = new Job<Volumes>( JobID.GET_24_HOUR_VOLUME, JobPriority.NORMAL, null, callback );
+		final Job<Volumes> job = new Job<Volumes>( JobID.GET_24_HOUR_VOLUME, null, callback );
 		this.submitJob( job );
 	}
 
@@ -70,43 +79,158 @@ public abstract class Exchange {
 	 */
 	public final void getChartData( final CurrencyPair currencyPair, final long start, final long end, final int period, final Return<List<? extends DataPoint>> callback ) {
 		final JobArgs jobArgs = new ChartDataJobArgs( currencyPair, start, end, period );
-		final Job<List<? extends DataPoint>> job = new Job<List<? extends DataPoint>>( JobID.GET_CHART_DATA, JobPriority.NORMAL, jobArgs, callback );
+		final Job<List<? extends DataPoint>> job = new Job<List<? extends DataPoint>>( JobID.GET_CHART_DATA, jobArgs, callback );
 		this.submitJob( job );
 	}
 
 	public final void getOrderBook( final CurrencyPair currencyPair, final int depth, final Return<OrderBook> callback ) {
-		final Job<OrderBook> job = new Job<OrderBook>( JobID.GET_ORDER_BOOK, JobPriority.NORMAL, new OrderBookJobArgs( currencyPair, depth ), callback );
+		final Job<OrderBook> job = new Job<OrderBook>( JobID.GET_ORDER_BOOK, new OrderBookJobArgs( currencyPair, depth ), callback );
 		this.submitJob( job );
 	}
 
 	public final void getOpenOrder( final String orderID, final Return<OpenOrder> callback ) {
-		final Job<OpenOrder> job = new Job<OpenOrder>( JobID.GET_OPEN_ORDER, JobPriority.NORMAL, new OpenOrderJobArgs( orderID ), callback );
+		final Job<OpenOrder> job = new Job<OpenOrder>( JobID.GET_OPEN_ORDER, new OpenOrderJobArgs( orderID ), callback );
 		this.submitJob( job );
 	}
 
 	public final void getOpenOrders( final CurrencyPair currencyPair, final Return<OpenOrders> callback ) {
-		final Job<OpenOrders> job = new Job<OpenOrders>( JobID.GET_OPEN_ORDERS, JobPriority.NORMAL, new OpenOrdersJobArgs( currencyPair ), callback );
+		final Job<OpenOrders> job = new Job<OpenOrders>( JobID.GET_OPEN_ORDERS, new OpenOrdersJobArgs( currencyPair ), callback );
 		this.submitJob( job );
 	}
 
 	public final void placeBuyOrder( final CurrencyPair currencyPair, final double quantity, final double rate, final Return<BuyOrder> callback ) {
-		final Job<BuyOrder> job = new Job<BuyOrder>( JobID.PLACE_BUY_ORDER, JobPriority.HIGH, new BuyOrderJobArgs( currencyPair, quantity, rate ), callback );
+		final Job<BuyOrder> job = new Job<BuyOrder>( JobID.PLACE_BUY_ORDER, new BuyOrderJobArgs( currencyPair, quantity, rate ), callback );
 		this.submitJob( job );
 	}
 
 	public final void placeSellOrder( final CurrencyPair currencyPair, final double quantity, final double rate, final Return<SellOrder> callback ) {
-		final Job<SellOrder> job = new Job<SellOrder>( JobID.PLACE_SELL_ORDER, JobPriority.HIGH, new SellOrderJobArgs( currencyPair, quantity, rate ), callback );
+		final Job<SellOrder> job = new Job<SellOrder>( JobID.PLACE_SELL_ORDER, new SellOrderJobArgs( currencyPair, quantity, rate ), callback );
 		this.submitJob( job );
 	}
 
 	public final void cancelOpenOrder( final String orderID, final Return<CancelOrder> callback ) {
-		final Job<CancelOrder> job = new Job<CancelOrder>( JobID.CANCEL_ORDER, JobPriority.HIGH, new CancelOrderJobArgs( orderID ), callback );
+		final Job<CancelOrder> job = new Job<CancelOrder>( JobID.CANCEL_ORDER, new CancelOrderJobArgs( orderID ), callback );
 		this.submitJob( job );
 	}
 
 	public final void getBalances( final Return<Balances> callback ) {
-		final Job<Balances> job = new Job<Balances>( JobID.GET_BALANCES, JobPriority.NORMAL, null, callback );
+		final Job<Balances> job = new Job<Balances>( JobID.GET_BALANCES, null, callback );
+		this.submitJob( job );
+	}
+
+	/*
+	 * The below methods submit the same jobs as the methods taking a callback.
+	 * The futures complete on the thread that finished the job, so stages
+	 * that take long should be run async. Combine them with Futures to add
+	 * timeouts and retries.
+	 *
+	 * The overloads taking a deadline fail with a TimeoutException if the
+	 * request could not be sent by then. The deadline is in milliseconds
+	 * since epoch by the clock of the monitor, 0 for the timeout of the class
+	 * of the job.
+	 */
+
+	public final CompletableFuture<Map<CurrencyPair, Ticker>> getTickersAsync() {
+		return this.getTickersAsync( 0 );
+	}
+
+	public final CompletableFuture<Map<CurrencyPair, Ticker>> getTickersAsync( final long deadline ) {
+		return this.submitAsync( JobID.GET_TICKERS, null, deadline );
+	}
+
+	public final CompletableFuture<Volumes> get24HourVolumeAsync() {
+		return this.get24HourVolumeAsync( 0 );
+	}
+
+	public final CompletableFuture<Volumes> get24HourVolumeAsync( final long deadline ) {
+		return this.submitAsync( JobID.GET_24_HOUR_VOLUME, null, deadline );
+	}
+
+	/**
+	 * @see #getChartData(CurrencyPair, long, long, int, Return)
+	 */
+	public final CompletableFuture<List<? extends DataPoint>> getChartDataAsync( final CurrencyPair currencyPair, final long start, final long end, final int period ) {
+		return this.getChartDataAsync( currencyPair, start, end, period, 0 );
+	}
+
+	/**
+	 * @see #getChartData(CurrencyPair, long, long, int, Return)
+	 */
+	public final CompletableFuture<List<? extends DataPoint>> getChartDataAsync( final CurrencyPair currencyPair, final long start, final long end, final int period,
+			final long deadline ) {
+		return this.submitAsync( JobID.GET_CHART_DATA, new ChartDataJobArgs( currencyPair, start, end, period ), deadline );
+	}
+
+	public final CompletableFuture<OrderBook> getOrderBookAsync( final CurrencyPair currencyPair, final int depth ) {
+		return this.getOrderBookAsync( currencyPair, depth, 0 );
+	}
+
+	public final CompletableFuture<OrderBook> getOrderBookAsync( final CurrencyPair currencyPair, final int depth, final long deadline ) {
+		return this.submitAsync( JobID.GET_ORDER_BOOK, new OrderBookJobArgs( currencyPair, depth ), deadline );
+	}
+
+	public final CompletableFuture<OpenOrder> getOpenOrderAsync( final String orderID ) {
+		return this.getOpenOrderAsync( orderID, 0 );
+	}
+
+	public final CompletableFuture<OpenOrder> getOpenOrderAsync( final String orderID, final long deadline ) {
+		return this.submitAsync( JobID.GET_OPEN_ORDER, new OpenOrderJobArgs( orderID ), deadline );
+	}
+
+	public final CompletableFuture<OpenOrders> getOpenOrdersAsync( final CurrencyPair currencyPair ) {
+		return this.getOpenOrdersAsync( currencyPair, 0 );
+	}
+
+	public final CompletableFuture<OpenOrders> getOpenOrdersAsync( final CurrencyPair currencyPair, final long deadline ) {
+		return this.submitAsync( JobID.GET_OPEN_ORDERS, new OpenOrdersJobArgs( currencyPair ), deadline );
+	}
+
+	public final CompletableFuture<BuyOrder> placeBuyOrderAsync( final CurrencyPair currencyPair, final double quantity, final double rate ) {
+		return this.placeBuyOrderAsync( currencyPair, quantity, rate, 0 );
+	}
+
+	/**
+	 * @param deadline
+	 *            - The order is not placed if it could not be sent by then
+	 */
+	public final CompletableFuture<BuyOrder> placeBuyOrderAsync( final CurrencyPair currencyPair, final double quantity, final double rate, final long deadline ) {
+		return this.submitAsync( JobID.PLACE_BUY_ORDER, new BuyOrderJobArgs( currencyPair, quantity, rate ), deadline );
+	}
+
+	public final CompletableFuture<SellOrder> placeSellOrderAsync( final CurrencyPair currencyPair, final double quantity, final double rate ) {
+		return this.placeSellOrderAsync( currencyPair, quantity, rate, 0 );
+	}
+
+	/**
+	 * @param deadline
+	 *            - The order is not placed if it could not be sent by then
+	 */
+	public final CompletableFuture<SellOrder> placeSellOrderAsync( final CurrencyPair currencyPair, final double quantity, final double rate, final long deadline ) {
+		return this.submitAsync( JobID.PLACE_SELL_ORDER, new SellOrderJobArgs( currencyPair, quantity, rate ), deadline );
+	}
+
+	public final CompletableFuture<CancelOrder> cancelOpenOrderAsync( final String orderID ) {
+		return this.cancelOpenOrderAsync( orderID, 0 );
+	}
+
+	public final CompletableFuture<CancelOrder> cancelOpenOrderAsync( final String orderID, final long deadline ) {
+		return this.submitAsync( JobID.CANCEL_ORDER, new CancelOrderJobArgs( orderID ), deadline );
+	}
+
+	public final CompletableFuture<Balances> getBalancesAsync() {
+		return this.getBalancesAsync( 0 );
+	}
+
+	public final CompletableFuture<Balances> getBalancesAsync( final long deadline ) {
+		return this.submitAsync( JobID.GET_BALANCES, null, deadline );
+	}
+
+	private <T> CompletableFuture<T> submitAsync( final JobID jobID, final JobArgs jobArgs, final long deadline ) {
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		final Job<T> job = new Job<T>( jobID, jobArgs, Futures.complete( future ) );
+		job.setDeadline( deadline );
 		this.submitJob( job );
+		return future;
 	}
 
 	/*
@@ -118,17 +242,17 @@ public abstract class Exchange {
 	 */
 
 	public final void getTradeHistory( final CurrencyPair currencyPair, final long start, final long end, final Return<String> callback ) {
-		final Job<String> job = new Job<String>( JobID.GET_TICKERS, JobPriority.NORMAL, null, callback );
+		final Job<String> job = new Job<String>( JobID.GET_TICKERS, null, callback );
 		this.submitJob( job );
 	}
 
 	public final void getCurrencies( final Return<String> callback ) {
-		final Job<String> job = new Job<String>( JobID.GET_TICKERS, JobPriority.NORMAL, null, callback );
+		final Job<String> job = new Job<String>( JobID.GET_TICKERS, null, callback );
 		this.submitJob( job );
 	}
 
 	public final void getLoanOrders( final Currency currency, final Return<String> callback ) {
-		final Job<String> job = new Job<String>( JobID.GET_TICKERS, JobPriority.NORMAL, null, callback );
+		final Job<String> job = new Job<String>( JobID.GET_TICKERS, null, callback );
 		this.submitJob( job );
 	}
 
@@ -156,6 +280,34 @@ public abstract class Exchange {
 
 	protected abstract OpenOrder getOpenOrder( final String orderID ) throws Exception;
 
+	/**
+	 * Looks up several open orders. By default each id is looked up with
+	 * {@link #getOpenOrder(String)}; exchanges that can answer every id with a
+	 * single request override it and {@link #canBatchOpenOrders()}.
+	 *
+	 * @return The open order of each id
+	 */
+	protected Map<String, OpenOrder> getOpenOrders( final List<String> orderIDs ) throws Exception {
+		final Map<String, OpenOrder> openOrders = new HashMap<String, OpenOrder>( orderIDs.size() * 2 );
+
+		for ( final String orderID : orderIDs ) {
+			openOrders.put( orderID, this.getOpenOrder( orderID ) );
+		}
+
+		return openOrders;
+	}
+
+	/**
+	 * Only a hint for the scheduler, {@link #getOpenOrders(List)} works either
+	 * way.
+	 *
+	 * @return True if {@link #getOpenOrders(List)} takes a single request, so
+	 *         queued open order lookups are worth answering together
+	 */
+	public boolean canBatchOpenOrders() {
+		return false;
+	}
+
 	protected abstract BuyOrder placeBuyOrder( final CurrencyPair currencyPair, final double quantity, final double rate ) throws Exception;
 
 	protected abstract SellOrder placeSellOrder( final CurrencyPair currencyPair, final double quantity, final double rate ) throws Exception;
@@ -167,6 +319,14 @@ public abstract class Exchange {
 	/* Information about the exchange */
 	public abstract int getRequestsPerSecondLimit();
 
+	/**
+	 * @return The maximum amount of requests that can be waiting on a
+	 *         response at the same time
+	 */
+	public int getMaxRequestsInFlight() {
+		return this.getRequestsPerSecondLimit();
+	}
+
 	public abstract String getName();
 
 	public abstract double getFee();
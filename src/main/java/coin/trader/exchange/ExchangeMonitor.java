@@ -1,311 +1,728 @@
 package coin.trader.exchange;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 
 import coin.trader.concurrency.ResourceManager;
+import coin.trader.concurrency.TokenBucket;
 import coin.trader.exchange.BuyOrder.BuyOrderJobArgs;
 import coin.trader.exchange.CancelOrder.CancelOrderJobArgs;
 import coin.trader.exchange.ChartData.ChartDataJobArgs;
 import coin.trader.exchange.ChartData.DataPoint;
+import coin.trader.exchange.ExchangeMonitor.Job.JobClass;
+import coin.trader.exchange.ExchangeMonitor.Job.JobID;
 import coin.trader.exchange.OpenOrder.OpenOrderJobArgs;
 import coin.trader.exchange.OpenOrders.OpenOrdersJobArgs;
 import coin.trader.exchange.OrderBook.OrderBookJobArgs;
 import coin.trader.exchange.SellOrder.SellOrderJobArgs;
 import coin.trader.logger.Logger;
 import coin.trader.utilities.Callback.Return;
+import coin.trader.utilities.Clock;
 
 /**
  * This object controls the rate at which requests are sent out based on the
- * exchange. The ExchangeMonitor thread must handle the requests itself.
+ * exchange. Jobs are queued by {@link JobClass} and taken with weighted fair
+ * queueing. The ExchangeMonitor thread takes the next job that has room to be
+ * sent, then a token from a {@link TokenBucket}, and sends it on an IO thread.
+ * The amount of requests waiting on a response at once is bounded, and one of
+ * them is kept for {@link JobClass#ORDER_CRITICAL} jobs so other requests
+ * can not hold up an order.
+ * 
+ * Market data and bulk history jobs fail if they can not be sent within the
+ * timeout of their class, and the statistics of every class are logged every
+ * few minutes.
  * 
  * @author Evan
  *
  */
 public class ExchangeMonitor extends Thread {
 	private static final Logger LOGGER = new Logger( ExchangeMonitor.class.getSimpleName() );
-	protected Queue<Job<?>> normalJobQueue = new ConcurrentLinkedQueue<Job<?>>();
-	protected Queue<Job<?>> highJobQueue = new ConcurrentLinkedQueue<Job<?>>();
+
+	/* Market data is stale and history is not worth waiting for past these */
+	private static final long MARKET_DATA_TIMEOUT_MILLIS = 10 * 1000;
+	private static final long BULK_HISTORY_TIMEOUT_MILLIS = 2 * 60 * 1000;
+
+	/* How often the statistics of the classes are logged */
+	private static final long REPORT_INTERVAL_MINUTES = 5;
+
+	private final JobClassQueue[] queues = new JobClassQueue[JobClass.values().length];
 	private final Exchange exchange;
-	private final Object emptyListLock = new Object();
+	private final Object queueLock = new Object();
+	private int amountOfQueuedJobs = 0;
+	private long amountOfCoalescedJobs = 0;
+
+	/* Jobs that are queued or in flight, by coalescing key */
+	private final Map<Object, Job<?>> pendingJobs = new HashMap<Object, Job<?>>();
+
+	/* Finish tag of the last job taken, the virtual time of the fair queue */
+	private double virtualTime = 0.0;
+
+	/* Requests waiting on a response, and the limits set when the thread starts */
+	private int requestsInFlight = 0;
+	private int nonCriticalRequestsInFlight = 0;
+	private int maxRequestsInFlight = Integer.MAX_VALUE;
+	private int maxNonCriticalRequestsInFlight = Integer.MAX_VALUE;
+
+	private volatile Clock clock = Clock.SYSTEM;
+	private volatile ScheduledFuture<?> report = null;
 
 	public ExchangeMonitor( final Exchange exchange ) {
 		this.exchange = exchange;
+
+		for ( final JobClass jobClass : JobClass.values() ) {
+			this.queues[jobClass.ordinal()] = new JobClassQueue( jobClass );
+		}
+
+		this.queues[JobClass.MARKET_DATA.ordinal()].timeoutMillis = ExchangeMonitor.MARKET_DATA_TIMEOUT_MILLIS;
+		this.queues[JobClass.BULK_HISTORY.ordinal()].timeoutMillis = ExchangeMonitor.BULK_HISTORY_TIMEOUT_MILLIS;
 	}
 
+	/**
+	 * Queues the job in its class. Jobs are taken in order of their finish
+	 * tag, which advances by the inverse of the class weight for every job
+	 * queued in the class, so a backlog in one class does not delay the
+	 * others by more than their share.
+	 */
 	public void submitJob( final Job<?> job ) {
-		switch ( job.priority ) {
-			case NORMAL: {
-				this.normalJobQueue.add( job );
-				break;
+		final JobClassQueue jobClassQueue = this.queues[job.getJobClass().ordinal()];
+
+		synchronized ( this.queueLock ) {
+			if ( job.getJobID().isCoalescable() ) {
+				final Object key = job.getCoalescingKey();
+				final Job<?> pendingJob = this.pendingJobs.get( key );
+
+				if ( pendingJob != null ) {
+					/* An identical request is queued or in flight, share its response */
+					pendingJob.addFollower( job );
+					this.amountOfCoalescedJobs++;
+					return;
+				}
+
+				this.pendingJobs.put( key, job );
+			}
+
+			if ( job.deadline == 0 && jobClassQueue.timeoutMillis > 0 ) {
+				job.deadline = this.clock.currentTimeMillis() + jobClassQueue.timeoutMillis;
 			}
-			case HIGH: {
-				this.highJobQueue.add( job );
-				break;
+
+			job.submitNanos = this.clock.nanoTime();
+			job.finishTag = java.lang.Math.max( this.virtualTime, jobClassQueue.lastFinishTag ) + jobClassQueue.cost;
+			jobClassQueue.lastFinishTag = job.finishTag;
+			jobClassQueue.queue.add( job );
+			this.amountOfQueuedJobs++;
+
+			this.queueLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Takes the job with the lowest finish tag out of the classes that have
+	 * room for another request, and counts it as in flight. Jobs that would be
+	 * past their deadline by the time they are sent are failed instead.
+	 *
+	 * @param sendMillis
+	 *            - Time in milliseconds since epoch the job will be sent at
+	 * @return The next job or null if there was none that could be sent
+	 */
+	private Job<?> getJob( final long sendMillis ) {
+		List<Job<?>> expiredJobs = null;
+		Job<?> job = null;
+
+		synchronized ( this.queueLock ) {
+			while ( job == null ) {
+				final JobClassQueue next = this.getNextQueue();
+				if ( next == null ) {
+					break;
+				}
+
+				final Job<?> head = next.queue.poll();
+				this.amountOfQueuedJobs--;
+				this.virtualTime = head.finishTag;
+
+				if ( head.deadline != 0 && sendMillis > head.deadline ) {
+					next.amountOfExpiredJobs++;
+
+					if ( expiredJobs == null ) {
+						expiredJobs = new ArrayList<Job<?>>();
+					}
+					expiredJobs.add( head );
+				}
+				else {
+					final long waitNanos = this.clock.nanoTime() - head.submitNanos;
+					next.amountOfDispatchedJobs++;
+					next.totalWaitNanos += waitNanos;
+					next.maxWaitNanos = java.lang.Math.max( next.maxWaitNanos, waitNanos );
+					job = head;
+
+					this.requestsInFlight++;
+					if ( job.getJobClass() != JobClass.ORDER_CRITICAL ) {
+						this.nonCriticalRequestsInFlight++;
+					}
+				}
 			}
-			default: {
-				this.normalJobQueue.add( job );
+		}
+
+		if ( expiredJobs != null ) {
+			for ( final Job<?> expiredJob : expiredJobs ) {
+				this.complete( expiredJob );
+				ExchangeMonitor.LOGGER.debug( "Job [ " + expiredJob + " ] passed its deadline before it was sent" );
+				ResourceManager.sumbitLightRunnable( new Runnable() {
+					@Override
+					public void run() {
+						expiredJob.error( new TimeoutException( "Job [ " + expiredJob + " ] passed its deadline before it was sent" ) );
+					}
+				} );
 			}
 		}
 
-		synchronized ( this.emptyListLock ) {
-			this.emptyListLock.notifyAll();
+		return job;
+	}
+
+	/**
+	 * @return The queue with the lowest finish tag at its head out of the
+	 *         classes that have room for another request, or null. Must hold
+	 *         the queue lock.
+	 */
+	private JobClassQueue getNextQueue() {
+		JobClassQueue next = null;
+
+		if ( this.requestsInFlight >= this.maxRequestsInFlight ) {
+			return null;
 		}
+
+		for ( final JobClassQueue jobClassQueue : this.queues ) {
+			final Job<?> head = jobClassQueue.queue.peek();
+
+			if ( head == null ) {
+				continue;
+			}
+
+			/* The last request in flight is kept for orders */
+			if ( jobClassQueue.jobClass != JobClass.ORDER_CRITICAL && this.nonCriticalRequestsInFlight >= this.maxNonCriticalRequestsInFlight ) {
+				continue;
+			}
+
+			if ( next == null || head.finishTag < next.queue.peek().finishTag ) {
+				next = jobClassQueue;
+			}
+		}
+
+		return next;
 	}
 
-	private Job<?> getJob() {
-		Job<?> job = this.highJobQueue.poll();
+	/**
+	 * Called once the request of a job has returned, making room for the
+	 * next
+	 */
+	private void releaseRequest( final Job<?> job ) {
+		synchronized ( this.queueLock ) {
+			this.requestsInFlight--;
+			if ( job.getJobClass() != JobClass.ORDER_CRITICAL ) {
+				this.nonCriticalRequestsInFlight--;
+			}
 
-		if ( job == null ) {
-			job = this.normalJobQueue.poll();
+			this.queueLock.notifyAll();
 		}
+	}
 
-		return job;
+	/**
+	 * Takes every queued job with the id, used to answer them with one request
+	 */
+	private List<Job<?>> takeQueuedJobs( final JobID jobID ) {
+		final List<Job<?>> jobs = new ArrayList<Job<?>>();
+
+		synchronized ( this.queueLock ) {
+			final JobClassQueue jobClassQueue = this.queues[jobID.getJobClass().ordinal()];
+			final Iterator<Job<?>> iterator = jobClassQueue.queue.iterator();
+			final long nowNanos = this.clock.nanoTime();
+
+			while ( iterator.hasNext() ) {
+				final Job<?> job = iterator.next();
+
+				if ( job.getJobID() == jobID ) {
+					iterator.remove();
+					this.amountOfQueuedJobs--;
+					jobClassQueue.amountOfDispatchedJobs++;
+					jobClassQueue.totalWaitNanos += nowNanos - job.submitNanos;
+					jobs.add( job );
+				}
+			}
+		}
+
+		return jobs;
+	}
+
+	/**
+	 * Called once the response of a job is known, later identical jobs are
+	 * sent as a new request
+	 */
+	private void complete( final Job<?> job ) {
+		if ( job.getJobID().isCoalescable() ) {
+			synchronized ( this.queueLock ) {
+				final Object key = job.getCoalescingKey();
+
+				if ( this.pendingJobs.get( key ) == job ) {
+					this.pendingJobs.remove( key );
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The amount of jobs that shared the response of an identical job
+	 *         instead of sending their own request
+	 */
+	public long getAmountOfCoalescedJobs() {
+		synchronized ( this.queueLock ) {
+			return this.amountOfCoalescedJobs;
+		}
+	}
+
+	/**
+	 * Sets the timeout given to jobs of the class that are submitted without a
+	 * deadline
+	 *
+	 * @param jobClass
+	 * @param timeoutMillis
+	 *            - 0 for no timeout
+	 */
+	public void setTimeout( final JobClass jobClass, final long timeoutMillis ) {
+		synchronized ( this.queueLock ) {
+			this.queues[jobClass.ordinal()].timeoutMillis = timeoutMillis;
+		}
+	}
+
+	/**
+	 * Sets the clock deadlines, waits and the rate limit are measured by. Must
+	 * be set before the first job is submitted.
+	 *
+	 * @param clock
+	 */
+	public void setClock( final Clock clock ) {
+		this.clock = clock;
+	}
+
+	/**
+	 * @return The amount of jobs of the class waiting to be sent
+	 */
+	public int getQueueDepth( final JobClass jobClass ) {
+		synchronized ( this.queueLock ) {
+			return this.queues[jobClass.ordinal()].queue.size();
+		}
+	}
+
+	/**
+	 * @return The amount of jobs of the class that have been sent
+	 */
+	public long getAmountOfDispatchedJobs( final JobClass jobClass ) {
+		synchronized ( this.queueLock ) {
+			return this.queues[jobClass.ordinal()].amountOfDispatchedJobs;
+		}
+	}
+
+	/**
+	 * @return The amount of jobs of the class that failed because they passed
+	 *         their deadline while queued
+	 */
+	public long getAmountOfExpiredJobs( final JobClass jobClass ) {
+		synchronized ( this.queueLock ) {
+			return this.queues[jobClass.ordinal()].amountOfExpiredJobs;
+		}
+	}
+
+	/**
+	 * @return The average time in milliseconds sent jobs of the class waited
+	 *         in the queue
+	 */
+	public double getAverageWaitMillis( final JobClass jobClass ) {
+		synchronized ( this.queueLock ) {
+			final JobClassQueue jobClassQueue = this.queues[jobClass.ordinal()];
+			return jobClassQueue.amountOfDispatchedJobs == 0 ? 0.0 : jobClassQueue.totalWaitNanos / 1e6 / jobClassQueue.amountOfDispatchedJobs;
+		}
+	}
+
+	/**
+	 * @return The longest time in milliseconds a sent job of the class waited
+	 *         in the queue
+	 */
+	public double getMaxWaitMillis( final JobClass jobClass ) {
+		synchronized ( this.queueLock ) {
+			return this.queues[jobClass.ordinal()].maxWaitNanos / 1e6;
+		}
+	}
+
+	/**
+	 * Logs the statistics of every class, then schedules the next report
+	 */
+	private void report() {
+		final StringBuilder sb = new StringBuilder( "Requests of " + this.exchange.getName() + ":" );
+
+		synchronized ( this.queueLock ) {
+			for ( final JobClassQueue jobClassQueue : this.queues ) {
+				final double averageWaitMillis = jobClassQueue.amountOfDispatchedJobs == 0 ? 0.0
+						: jobClassQueue.totalWaitNanos / 1e6 / jobClassQueue.amountOfDispatchedJobs;
+
+				sb.append( " " ).append( jobClassQueue.jobClass ).append( " [ queued " ).append( jobClassQueue.queue.size() );
+				sb.append( ", sent " ).append( jobClassQueue.amountOfDispatchedJobs ).append( ", expired " ).append( jobClassQueue.amountOfExpiredJobs );
+				sb.append( ", average wait " ).append( String.format( "%.1f", averageWaitMillis ) ).append( " ms" );
+				sb.append( ", max wait " ).append( String.format( "%.1f", jobClassQueue.maxWaitNanos / 1e6 ) ).append( " ms ]" );
+			}
+
+			sb.append( " coalesced " ).append( this.amountOfCoalescedJobs );
+		}
+
+		ExchangeMonitor.LOGGER.info( sb.toString() );
+		this.scheduleReport();
+	}
+
+	private void scheduleReport() {
+		if ( this.isInterrupted() || !this.isAlive() ) {
+			return;
+		}
+
+		this.report = ResourceManager.scheduleLightRunnable( new Runnable() {
+			@Override
+			public void run() {
+				ExchangeMonitor.this.report();
+			}
+		}, ExchangeMonitor.REPORT_INTERVAL_MINUTES, TimeUnit.MINUTES );
 	}
 
 	@Override
 	public void run() {
-		final long interval = 1000 / this.exchange.getRequestsPerSecondLimit();
-		ExchangeMonitor.LOGGER.config( "Starting ExchangeMontior thread for " + this.exchange.getName() + " with interval of " + interval + " ms" );
-		while ( true ) {
-			/* Start timestamp */
-			final long startTS = System.currentTimeMillis();
-
+		try {
 			/*
-			 * Performance enhancement, if there is nothing in the list, suspend
-			 * the thread until an element is added.
+			 * The exchange is still being constructed when this thread starts,
+			 * so wait for the first job before asking it for its limits
 			 */
-			synchronized ( this.emptyListLock ) {
-				while ( this.normalJobQueue.isEmpty() ) {
-					try {
-						this.emptyListLock.wait();
-					}
-					catch ( final InterruptedException e ) {
-					}
-				}
+			this.waitForJob();
+
+			final int requestsPerSecond = this.exchange.getRequestsPerSecondLimit();
+			final int maxRequestsInFlight = this.exchange.getMaxRequestsInFlight();
+			final TokenBucket tokenBucket = new TokenBucket( requestsPerSecond, 1.0, this.clock );
+			ExchangeMonitor.LOGGER.config( "Starting ExchangeMontior thread for " + this.exchange.getName() + " with a limit of " + requestsPerSecond + " requests per second and "
+					+ maxRequestsInFlight + " requests in flight" );
+
+			synchronized ( this.queueLock ) {
+				this.maxRequestsInFlight = maxRequestsInFlight;
+				this.maxNonCriticalRequestsInFlight = maxRequestsInFlight > 1 ? maxRequestsInFlight - 1 : maxRequestsInFlight;
 			}
 
-			/* Execute Job */
-			final Job<?> job = this.getJob();
-			if ( job != null ) {
-				try {
-					Runnable workTask = null;
-					ExchangeMonitor.LOGGER.trace( "Executing job [ " + job + " ] for " + ExchangeMonitor.this.exchange.getClass().getSimpleName() );
-					switch ( job.getJobID() ) {
-						case GET_TICKERS: {
-							final Map<CurrencyPair, Ticker> tickers = ExchangeMonitor.this.exchange.getTickers();
-							workTask = new Runnable() {
-								@Override
-								@SuppressWarnings( "unchecked" )
-								public void run() {
-									try {
-										((Job<Map<CurrencyPair, Ticker>>) job).callback.succeeded( tickers );
-									}
-									catch ( final Throwable t ) {
-										ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
-									}
-								}
-							};
-							break;
-						}
-						case GET_24_HOUR_VOLUME: {
-							final Volumes tickers = ExchangeMonitor.this.exchange.get24HourVolume();
-							workTask = new Runnable() {
-
-								@Override
-								@SuppressWarnings( "unchecked" )
-								public void run() {
-									try {
-										((Job<Volumes>) job).callback.succeeded( tickers );
-									}
-									catch ( final Throwable t ) {
-										ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
-									}
-								}
-							};
-							break;
+			this.scheduleReport();
+
+			while ( true ) {
+				this.waitForJob();
+
+				/*
+				 * The job is chosen before the token is taken, so no token is
+				 * spent when every job had expired. Tokens are taken when a
+				 * request is sent, not when it returns, so slow responses do
+				 * not use up the rate limit.
+				 */
+				final long sendMillis = this.clock.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis( tokenBucket.getWaitNanos() );
+				final Job<?> job = this.getJob( sendMillis );
+				if ( job == null ) {
+					continue;
+				}
+
+				tokenBucket.acquire();
+
+				ResourceManager.sumbitIORunnable( new Runnable() {
+					@Override
+					public void run() {
+						try {
+							ExchangeMonitor.this.execute( job );
 						}
-						case GET_ORDER_BOOK: {
-							final OrderBookJobArgs jobArgs = (OrderBookJobArgs) job.getJobArgs();
-							final OrderBook orderBook = ExchangeMonitor.this.exchange.getOrderBook( jobArgs.currencyPair, jobArgs.depth );
-							workTask = new Runnable() {
-								@Override
-								@SuppressWarnings( "unchecked" )
-								public void run() {
-									try {
-										((Job<OrderBook>) job).callback.succeeded( orderBook );
-									}
-									catch ( final Throwable t ) {
-										ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
-									}
-								}
-							};
-							break;
+						finally {
+							ExchangeMonitor.this.releaseRequest( job );
 						}
-						case GET_TRADE_HISTORY: {
-							/* TODO( EMU ): Implement */
-							break;
+					}
+				} );
+			}
+		}
+		catch ( final InterruptedException e ) {
+			final ScheduledFuture<?> report = this.report;
+			if ( report != null ) {
+				report.cancel( false );
+			}
+
+			ExchangeMonitor.LOGGER.config( "Stopping ExchangeMontior thread for " + this.exchange.getName() );
+		}
+	}
+
+	/**
+	 * Suspends the thread until there is a job in one of the queues that has
+	 * room for another request
+	 */
+	private void waitForJob() throws InterruptedException {
+		synchronized ( this.queueLock ) {
+			while ( this.getNextQueue() == null ) {
+				this.queueLock.wait();
+			}
+		}
+	}
+
+	/**
+	 * Sends the request of the job and hands the response to the job's
+	 * callback on a light thread
+	 */
+	private void execute( final Job<?> job ) {
+		try {
+			Runnable workTask = null;
+			ExchangeMonitor.LOGGER.trace( "Executing job [ " + job + " ] for " + ExchangeMonitor.this.exchange.getClass().getSimpleName() );
+			switch ( job.getJobID() ) {
+				case GET_TICKERS: {
+					final Map<CurrencyPair, Ticker> tickers = ExchangeMonitor.this.exchange.getTickers();
+					workTask = new Runnable() {
+						@Override
+						@SuppressWarnings( "unchecked" )
+						public void run() {
+							try {
+								((Job<Map<CurrencyPair, Ticker>>) job).succeeded( tickers );
+							}
+							catch ( final Throwable t ) {
+								ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
+							}
 						}
-						case GET_CHART_DATA: {
-							final ChartDataJobArgs jobArgs = (ChartDataJobArgs) job.getJobArgs();
-							final List<? extends DataPoint> chartData = ExchangeMonitor.this.exchange.getChartData( jobArgs.currencyPair, jobArgs.start, jobArgs.end,
-									jobArgs.period );
-							workTask = new Runnable() {
-								@Override
-								@SuppressWarnings( "unchecked" )
-								public void run() {
-									try {
-										((Job<List<? extends DataPoint>>) job).callback.succeeded( chartData );
-									}
-									catch ( final Throwable t ) {
-										ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
-									}
-								}
-							};
-							break;
+					};
+					break;
+				}
+				case GET_24_HOUR_VOLUME: {
+					final Volumes tickers = ExchangeMonitor.this.exchange.get24HourVolume();
+					workTask = new Runnable() {
+
+						@Override
+						@SuppressWarnings( "unchecked" )
+						public void run() {
+							try {
+								((Job<Volumes>) job).succeeded( tickers );
+							}
+							catch ( final Throwable t ) {
+								ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
+							}
 						}
-						case GET_CURRENCIES: {
-							/* TODO( EMU ): Implement */
-							break;
+					};
+					break;
+				}
+				case GET_ORDER_BOOK: {
+					final OrderBookJobArgs jobArgs = (OrderBookJobArgs) job.getJobArgs();
+					final OrderBook orderBook = ExchangeMonitor.this.exchange.getOrderBook( jobArgs.currencyPair, jobArgs.depth );
+					workTask = new Runnable() {
+						@Override
+						@SuppressWarnings( "unchecked" )
+						public void run() {
+							try {
+								((Job<OrderBook>) job).succeeded( orderBook );
+							}
+							catch ( final Throwable t ) {
+								ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
+							}
 						}
-						case GET_LOAN_ORDERS: {
-							/* TODO( EMU ): Implement */
-							break;
+					};
+					break;
+				}
+				case GET_TRADE_HISTORY: {
+					/* TODO( EMU ): Implement */
+					break;
+				}
+				case GET_CHART_DATA: {
+					final ChartDataJobArgs jobArgs = (ChartDataJobArgs) job.getJobArgs();
+					final List<? extends DataPoint> chartData = ExchangeMonitor.this.exchange.getChartData( jobArgs.currencyPair, jobArgs.start, jobArgs.end,
+							jobArgs.period );
+					workTask = new Runnable() {
+						@Override
+						@SuppressWarnings( "unchecked" )
+						public void run() {
+							try {
+								((Job<List<? extends DataPoint>>) job).succeeded( chartData );
+							}
+							catch ( final Throwable t ) {
+								ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
+							}
 						}
-						case GET_OPEN_ORDER: {
-							final OpenOrderJobArgs jobArgs = (OpenOrderJobArgs) job.getJobArgs();
-							final OpenOrder openOrder = ExchangeMonitor.this.exchange.getOpenOrder( jobArgs.orderID );
-							workTask = new Runnable() {
-								@Override
-								@SuppressWarnings( "unchecked" )
-								public void run() {
-									try {
-										((Job<OpenOrder>) job).callback.succeeded( openOrder );
-									}
-									catch ( final Throwable t ) {
-										ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
-									}
+					};
+					break;
+				}
+				case GET_CURRENCIES: {
+					/* TODO( EMU ): Implement */
+					break;
+				}
+				case GET_LOAN_ORDERS: {
+					/* TODO( EMU ): Implement */
+					break;
+				}
+				case GET_OPEN_ORDER: {
+					if ( !ExchangeMonitor.this.exchange.canBatchOpenOrders() ) {
+						final OpenOrderJobArgs jobArgs = (OpenOrderJobArgs) job.getJobArgs();
+						final OpenOrder openOrder = ExchangeMonitor.this.exchange.getOpenOrder( jobArgs.orderID );
+						workTask = new Runnable() {
+							@Override
+							@SuppressWarnings( "unchecked" )
+							public void run() {
+								try {
+									((Job<OpenOrder>) job).succeeded( openOrder );
 								}
-							};
-							break;
+								catch ( final Throwable t ) {
+									ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
+								}
+							}
+						};
+						break;
+					}
+
+					/* Every queued open order job is answered by the same request */
+					final List<Job<?>> batch = this.takeQueuedJobs( JobID.GET_OPEN_ORDER );
+					batch.add( 0, job );
+
+					final List<String> orderIDs = new ArrayList<String>( batch.size() );
+					for ( final Job<?> batchJob : batch ) {
+						orderIDs.add( ((OpenOrderJobArgs) batchJob.getJobArgs()).orderID );
+					}
+
+					final Map<String, OpenOrder> openOrders;
+					try {
+						openOrders = ExchangeMonitor.this.exchange.getOpenOrders( orderIDs );
+					}
+					catch ( final Exception e ) {
+						for ( int i = 1; i < batch.size(); i++ ) {
+							this.complete( batch.get( i ) );
+							batch.get( i ).error( e );
 						}
-						case GET_OPEN_ORDERS: {
-							final OpenOrdersJobArgs jobArgs = (OpenOrdersJobArgs) job.getJobArgs();
-							final OpenOrders openOrders = ExchangeMonitor.this.exchange.getOpenOrders( jobArgs.currencyPair );
-							workTask = new Runnable() {
-								@Override
-								@SuppressWarnings( "unchecked" )
-								public void run() {
-									try {
-										((Job<OpenOrders>) job).callback.succeeded( openOrders );
-									}
-									catch ( final Throwable t ) {
-										ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
-									}
+						throw e;
+					}
 
+					for ( int i = 1; i < batch.size(); i++ ) {
+						this.complete( batch.get( i ) );
+					}
+
+					workTask = new Runnable() {
+						@Override
+						@SuppressWarnings( "unchecked" )
+						public void run() {
+							for ( int i = 0; i < batch.size(); i++ ) {
+								try {
+									((Job<OpenOrder>) batch.get( i )).succeeded( openOrders.get( orderIDs.get( i ) ) );
 								}
-							};
-							break;
-						}
-						case PLACE_BUY_ORDER: {
-							final BuyOrderJobArgs jobArgs = (BuyOrderJobArgs) job.getJobArgs();
-							final BuyOrder buyOrder = ExchangeMonitor.this.exchange.placeBuyOrder( jobArgs.currencyPair, jobArgs.quantity, jobArgs.rate );
-							workTask = new Runnable() {
-								@Override
-								@SuppressWarnings( "unchecked" )
-								public void run() {
-									try {
-										((Job<BuyOrder>) job).callback.succeeded( buyOrder );
-									}
-									catch ( final Throwable t ) {
-										ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
-									}
+								catch ( final Throwable t ) {
+									ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
 								}
-							};
-							break;
+							}
 						}
-						case PLACE_SELL_ORDER: {
-							final SellOrderJobArgs jobArgs = (SellOrderJobArgs) job.getJobArgs();
-							final SellOrder sellOrder = ExchangeMonitor.this.exchange.placeSellOrder( jobArgs.currencyPair, jobArgs.quantity, jobArgs.rate );
-							workTask = new Runnable() {
-								@Override
-								@SuppressWarnings( "unchecked" )
-								public void run() {
-									try {
-										((Job<SellOrder>) job).callback.succeeded( sellOrder );
-									}
-									catch ( final Throwable t ) {
-										ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
-									}
-								}
-							};
-							break;
+					};
+					break;
+				}
+				case GET_OPEN_ORDERS: {
+					final OpenOrdersJobArgs jobArgs = (OpenOrdersJobArgs) job.getJobArgs();
+					final OpenOrders openOrders = ExchangeMonitor.this.exchange.getOpenOrders( jobArgs.currencyPair );
+					workTask = new Runnable() {
+						@Override
+						@SuppressWarnings( "unchecked" )
+						public void run() {
+							try {
+								((Job<OpenOrders>) job).succeeded( openOrders );
+							}
+							catch ( final Throwable t ) {
+								ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
+							}
+
 						}
-						case GET_BALANCES: {
-							final Balances balances = ExchangeMonitor.this.exchange.getBalances();
-							workTask = new Runnable() {
-								@Override
-								@SuppressWarnings( "unchecked" )
-								public void run() {
-									try {
-										((Job<Balances>) job).callback.succeeded( balances );
-									}
-									catch ( final Throwable t ) {
-										ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
-									}
-								}
-							};
-							break;
+					};
+					break;
+				}
+				case PLACE_BUY_ORDER: {
+					final BuyOrderJobArgs jobArgs = (BuyOrderJobArgs) job.getJobArgs();
+					final BuyOrder buyOrder = ExchangeMonitor.this.exchange.placeBuyOrder( jobArgs.currencyPair, jobArgs.quantity, jobArgs.rate );
+					workTask = new Runnable() {
+						@Override
+						@SuppressWarnings( "unchecked" )
+						public void run() {
+							try {
+								((Job<BuyOrder>) job).succeeded( buyOrder );
+							}
+							catch ( final Throwable t ) {
+								ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
+							}
 						}
-						case CANCEL_ORDER: {
-							final CancelOrderJobArgs jobArgs = (CancelOrderJobArgs) job.getJobArgs();
-							final CancelOrder cancelOrder = ExchangeMonitor.this.exchange.cancelOpenOrder( jobArgs.orderID );
-							workTask = new Runnable() {
-								@Override
-								@SuppressWarnings( "unchecked" )
-								public void run() {
-									try {
-										((Job<CancelOrder>) job).callback.succeeded( cancelOrder );
-									}
-									catch ( final Throwable t ) {
-										ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
-									}
-								}
-							};
-							break;
+					};
+					break;
+				}
+				case PLACE_SELL_ORDER: {
+					final SellOrderJobArgs jobArgs = (SellOrderJobArgs) job.getJobArgs();
+					final SellOrder sellOrder = ExchangeMonitor.this.exchange.placeSellOrder( jobArgs.currencyPair, jobArgs.quantity, jobArgs.rate );
+					workTask = new Runnable() {
+						@Override
+						@SuppressWarnings( "unchecked" )
+						public void run() {
+							try {
+								((Job<SellOrder>) job).succeeded( sellOrder );
+							}
+							catch ( final Throwable t ) {
+								ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
+							}
 						}
-						default: {
-							job.callback.error( new Exception( "JobID was not found" ) );
-							break;
+					};
+					break;
+				}
+				case GET_BALANCES: {
+					final Balances balances = ExchangeMonitor.this.exchange.getBalances();
+					workTask = new Runnable() {
+						@Override
+						@SuppressWarnings( "unchecked" )
+						public void run() {
+							try {
+								((Job<Balances>) job).succeeded( balances );
+							}
+							catch ( final Throwable t ) {
+								ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
+							}
 						}
-					}
-
-					/* Submit worker thread */
-					if ( workTask != null ) {
-						ResourceManager.sumbitLightRunnable( workTask );
-					}
+					};
+					break;
+				}
+				case CANCEL_ORDER: {
+					final CancelOrderJobArgs jobArgs = (CancelOrderJobArgs) job.getJobArgs();
+					final CancelOrder cancelOrder = ExchangeMonitor.this.exchange.cancelOpenOrder( jobArgs.orderID );
+					workTask = new Runnable() {
+						@Override
+						@SuppressWarnings( "unchecked" )
+						public void run() {
+							try {
+								((Job<CancelOrder>) job).succeeded( cancelOrder );
+							}
+							catch ( final Throwable t ) {
+								ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
+							}
+						}
+					};
+					break;
 				}
-				catch ( final Exception e ) {
-					job.callback.error( e );
+				default: {
+					job.error( new Exception( "JobID was not found" ) );
+					break;
 				}
 			}
 
-			/* End timestamp */
-			final long endTS = System.currentTimeMillis();
+			this.complete( job );
 
-			/* Sleep if job took less than interval */
-			final long elapsedTime = endTS - startTS;
-			if ( elapsedTime < interval ) {
-				try {
-					Thread.sleep( interval - elapsedTime );
-				}
-				catch ( final Throwable t ) {
-				}
+			/* Submit worker thread */
+			if ( workTask != null ) {
+				ResourceManager.sumbitLightRunnable( workTask );
 			}
 		}
+		catch ( final Exception e ) {
+			this.complete( job );
+			job.error( e );
+		}
 	}
 
 	public static class Job<T> {
@@ -314,38 +731,149 @@ public class ExchangeMonitor extends Thread {
 		private final Return<T> callback;
 		private final long count;
 		private final JobArgs jobArgs;
-		private final JobPriority priority;
+		private final JobClass jobClass;
+		private long deadline = 0;
+
+		/* Set by the monitor when the job is queued */
+		private long submitNanos;
+		private double finishTag;
+
+		/* Identical jobs sharing the response of this one, guarded by the monitor */
+		private List<Job<T>> followers = null;
+
+		public Job( final JobID jobID, final JobArgs jobArgs, final Return<T> callback ) {
+			this( jobID, jobID.getJobClass(), jobArgs, callback );
+		}
 
-		public Job( final JobID jobID, final JobPriority priority, final JobArgs jobArgs, final Return<T> callback ) {
+		public Job( final JobID jobID, final JobClass jobClass, final JobArgs jobArgs, final Return<T> callback ) {
 			this.jobID = jobID;
 			this.callback = callback;
 			this.jobArgs = jobArgs;
 			this.count = Job.counter.incrementAndGet();
-			this.priority = priority;
+			this.jobClass = jobClass;
 		}
 
 		public JobID getJobID() {
 			return this.jobID;
 		}
 
+		public JobClass getJobClass() {
+			return this.jobClass;
+		}
+
 		public Return<T> getCallback() {
 			return this.callback;
 		}
 
+		@SuppressWarnings( "unchecked" )
+		private void addFollower( final Job<?> job ) {
+			if ( this.followers == null ) {
+				this.followers = new ArrayList<Job<T>>( 2 );
+			}
+
+			this.followers.add( (Job<T>) job );
+		}
+
+		/**
+		 * @return Jobs with equal keys send the same request
+		 */
+		public Object getCoalescingKey() {
+			return Arrays.asList( this.jobID, this.jobArgs );
+		}
+
+		/**
+		 * Hands the response to the callback of this job and of every job that
+		 * was coalesced into it
+		 */
+		void succeeded( final T rv ) {
+			this.callback.succeeded( rv );
+
+			if ( this.followers != null ) {
+				for ( final Job<T> follower : this.followers ) {
+					try {
+						follower.callback.succeeded( rv );
+					}
+					catch ( final Throwable t ) {
+						ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
+					}
+				}
+			}
+		}
+
+		void error( final Throwable error ) {
+			this.callback.error( error );
+
+			if ( this.followers != null ) {
+				for ( final Job<T> follower : this.followers ) {
+					try {
+						follower.callback.error( error );
+					}
+					catch ( final Throwable t ) {
+						ExchangeMonitor.LOGGER.warn( "Throwable: " + t.getClass().getSimpleName() + " " + t.getMessage() );
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return Time in milliseconds since epoch the job must be sent by, 0
+		 *         if the job has no deadline
+		 */
+		public long getDeadline() {
+			return this.deadline;
+		}
+
+		/**
+		 * Jobs that are still queued after the deadline fail with a
+		 * {@link TimeoutException} instead of being sent. Jobs without a
+		 * deadline get the timeout of their class when submitted.
+		 *
+		 * @param deadline
+		 *            - Time in milliseconds since epoch, 0 for no deadline
+		 */
+		public void setDeadline( final long deadline ) {
+			this.deadline = deadline;
+		}
+
 		public enum JobID {
-			GET_TICKERS,
-			GET_24_HOUR_VOLUME,
-			GET_ORDER_BOOK,
-			GET_TRADE_HISTORY,
-			GET_CHART_DATA,
-			GET_CURRENCIES,
-			GET_LOAN_ORDERS,
-			GET_OPEN_ORDER,
-			GET_OPEN_ORDERS,
-			PLACE_BUY_ORDER,
-			PLACE_SELL_ORDER,
-			GET_BALANCES,
-			CANCEL_ORDER
+			GET_TICKERS( JobClass.MARKET_DATA, true ),
+			GET_24_HOUR_VOLUME( JobClass.MARKET_DATA, true ),
+			GET_ORDER_BOOK( JobClass.MARKET_DATA, true ),
+			GET_TRADE_HISTORY( JobClass.BULK_HISTORY, true ),
+			GET_CHART_DATA( JobClass.BULK_HISTORY, true ),
+			GET_CURRENCIES( JobClass.BULK_HISTORY, true ),
+			GET_LOAN_ORDERS( JobClass.BULK_HISTORY, true ),
+			GET_OPEN_ORDER( JobClass.ORDER_STATUS, true ),
+			GET_OPEN_ORDERS( JobClass.ORDER_STATUS, true ),
+			PLACE_BUY_ORDER( JobClass.ORDER_CRITICAL, false ),
+			PLACE_SELL_ORDER( JobClass.ORDER_CRITICAL, false ),
+			GET_BALANCES( JobClass.ORDER_STATUS, false ),
+			CANCEL_ORDER( JobClass.ORDER_CRITICAL, false );
+
+			private final JobClass jobClass;
+			private final boolean coalescable;
+
+			private JobID( final JobClass jobClass, final boolean coalescable ) {
+				this.jobClass = jobClass;
+				this.coalescable = coalescable;
+			}
+
+			/**
+			 * @return True if identical jobs can share one request. Only
+			 *         requests that do not change anything can, and balances
+			 *         are always requested fresh since they change with
+			 *         every order.
+			 */
+			public boolean isCoalescable() {
+				return this.coalescable;
+			}
+
+			/**
+			 * @return The class jobs with this id are queued in by default
+			 */
+			public JobClass getJobClass() {
+				return this.jobClass;
+			}
 		}
 
 		public JobArgs getJobArgs() {
@@ -360,9 +888,53 @@ public class ExchangeMonitor extends Thread {
 		public static abstract class JobArgs {
 		}
 
-		enum JobPriority {
-			NORMAL,
-			HIGH
+		/**
+		 * Classes of jobs that are queued separately. When every class has
+		 * jobs waiting, each class gets a share of the requests proportional
+		 * to its weight.
+		 *
+		 * @author Evan
+		 *
+		 */
+		public enum JobClass {
+			ORDER_CRITICAL( 16 ),
+			ORDER_STATUS( 8 ),
+			MARKET_DATA( 4 ),
+			BULK_HISTORY( 1 );
+
+			private final int weight;
+
+			private JobClass( final int weight ) {
+				this.weight = weight;
+			}
+
+			public int getWeight() {
+				return this.weight;
+			}
+		}
+	}
+
+	/**
+	 * Queue and statistics of a single {@link JobClass}. Guarded by the
+	 * monitor's queue lock.
+	 *
+	 * @author Evan
+	 *
+	 */
+	private static class JobClassQueue {
+		private final Queue<Job<?>> queue = new ArrayDeque<Job<?>>();
+		private final JobClass jobClass;
+		private final double cost;
+		private double lastFinishTag = 0.0;
+		private long timeoutMillis = 0;
+		private long amountOfDispatchedJobs = 0;
+		private long amountOfExpiredJobs = 0;
+		private long totalWaitNanos = 0;
+		private long maxWaitNanos = 0;
+
+		private JobClassQueue( final JobClass jobClass ) {
+			this.jobClass = jobClass;
+			this.cost = 1.0 / jobClass.getWeight();
 		}
 	}
 }
@@ -0,0 +1,39 @@
+package coin.trader.exchange;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sends signed requests one at a time, each with a nonce greater than the
+ * last, so they reach the exchange in nonce order. A {@link ReentrantLock}
+ * is used rather than a monitor so that a virtual thread waiting for the
+ * request in flight unmounts from its carrier instead of pinning it
+ * 
+ * @author Evan
+ *
+ */
+public class NonceSequencer {
+	private final ReentrantLock lock = new ReentrantLock();
+	private long lastNonce = 0;
+
+	/**
+	 * A request signed with the nonce it is given
+	 */
+	public interface Request<T> {
+		public T send( long nonce ) throws Exception;
+	}
+
+	/**
+	 * Sends the request with the next nonce, after every request sent before it
+	 * has completed
+	 */
+	public <T> T send( final Request<T> request ) throws Exception {
+		this.lock.lock();
+		try {
+			this.lastNonce = java.lang.Math.max( System.currentTimeMillis(), this.lastNonce + 1 );
+			return request.send( this.lastNonce );
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+}
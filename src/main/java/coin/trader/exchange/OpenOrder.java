@@ -7,11 +7,32 @@ public interface OpenOrder {
 
 	public boolean isPartiallyFilled();
 
+	public String getID();
+
+	public boolean isBuy();
+
+	/**
+	 * @return The quantity the order was placed with
+	 */
+	public double getQuantity();
+
+	public double getRate();
+
 	public static class OpenOrderJobArgs extends JobArgs {
 		String orderID;
 
 		public OpenOrderJobArgs( final String orderID ) {
 			this.orderID = orderID;
 		}
+
+		@Override
+		public boolean equals( final Object obj ) {
+			return obj instanceof OpenOrderJobArgs && this.orderID.equals( ((OpenOrderJobArgs) obj).orderID );
+		}
+
+		@Override
+		public int hashCode() {
+			return this.orderID.hashCode();
+		}
 	}
 }
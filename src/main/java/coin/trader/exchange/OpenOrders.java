@@ -13,5 +13,15 @@ public interface OpenOrders {
 		public OpenOrdersJobArgs( final CurrencyPair currencyPair ) {
 			this.currencyPair = currencyPair;
 		}
+
+		@Override
+		public boolean equals( final Object obj ) {
+			return obj instanceof OpenOrdersJobArgs && this.currencyPair.equals( ((OpenOrdersJobArgs) obj).currencyPair );
+		}
+
+		@Override
+		public int hashCode() {
+			return this.currencyPair.hashCode();
+		}
 	}
 }
@@ -17,5 +17,20 @@ public interface OrderBook {
 			this.currencyPair = currencyPair;
 			this.depth = depth;
 		}
+
+		@Override
+		public boolean equals( final Object obj ) {
+			if ( !(obj instanceof OrderBookJobArgs) ) {
+				return false;
+			}
+
+			final OrderBookJobArgs jobArgs = (OrderBookJobArgs) obj;
+			return this.currencyPair.equals( jobArgs.currencyPair ) && this.depth == jobArgs.depth;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.currencyPair.hashCode() * 31 + this.depth;
+		}
 	}
 }
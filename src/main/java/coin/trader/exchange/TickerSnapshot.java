@@ -0,0 +1,283 @@
+package coin.trader.exchange;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * The tickers of one poll, stored as one primitive column per field indexed
+ * by {@link CurrencyPair#getID()}. The snapshot is reused for every poll, so
+ * after the first poll updating it and looping over it allocates nothing.
+ *
+ * Only one thread may update the snapshot. {@link #getTicker(int)} returns
+ * the same view of a pair every time, which always reads the latest values,
+ * so it is only consistent on the thread updating the snapshot until the next
+ * poll. A ticker kept past the poll, or read by other threads, must be a
+ * {@link #copyTicker(int)}.
+ *
+ * @author Evan
+ *
+ */
+public class TickerSnapshot {
+	private long timestamp = 0;
+	private int generation = 0;
+	private int size = 0;
+	private int[] pairIDs;
+	private int[] generations;
+	private double[] lasts;
+	private double[] asks;
+	private double[] bids;
+	private double[] baseVolumes;
+	private double[] quoteVolumes;
+	private CurrencyPair[] currencyPairs;
+	private SnapshotTicker[] tickers;
+
+	public TickerSnapshot() {
+		this( 256 );
+	}
+
+	public TickerSnapshot( final int capacity ) {
+		this.pairIDs = new int[capacity];
+		this.generations = new int[capacity];
+		this.lasts = new double[capacity];
+		this.asks = new double[capacity];
+		this.bids = new double[capacity];
+		this.baseVolumes = new double[capacity];
+		this.quoteVolumes = new double[capacity];
+		this.currencyPairs = new CurrencyPair[capacity];
+		this.tickers = new SnapshotTicker[capacity];
+	}
+
+	/**
+	 * Replaces the snapshot with the tickers of a new poll
+	 */
+	public void update( final long timestamp, final Map<CurrencyPair, Ticker> tickers ) {
+		this.clear( timestamp );
+
+		for ( final Entry<CurrencyPair, Ticker> pair : tickers.entrySet() ) {
+			final Ticker ticker = pair.getValue();
+			this.set( pair.getKey(), ticker.getLast(), ticker.getAsk(), ticker.getBid(), ticker.getBaseVolume(), ticker.getQuoteVolume() );
+		}
+	}
+
+	/**
+	 * Empties the snapshot for a new poll, the columns are kept
+	 */
+	public void clear( final long timestamp ) {
+		this.timestamp = timestamp;
+		this.size = 0;
+		this.generation++;
+	}
+
+	public void set( final CurrencyPair currencyPair, final double last, final double ask, final double bid, final double baseVolume, final double quoteVolume ) {
+		final int pairID = currencyPair.getID();
+
+		if ( pairID >= this.lasts.length ) {
+			this.resize( java.lang.Math.max( pairID + 1, this.lasts.length * 2 ) );
+		}
+
+		if ( this.generations[pairID] != this.generation ) {
+			this.generations[pairID] = this.generation;
+			this.pairIDs[this.size++] = pairID;
+		}
+
+		/*
+		 * The pair of the exchange is kept, it formats the pair the way the
+		 * exchange expects it
+		 */
+		if ( this.currencyPairs[pairID] == null ) {
+			this.currencyPairs[pairID] = currencyPair;
+		}
+
+		this.lasts[pairID] = last;
+		this.asks[pairID] = ask;
+		this.bids[pairID] = bid;
+		this.baseVolumes[pairID] = baseVolume;
+		this.quoteVolumes[pairID] = quoteVolume;
+	}
+
+	private void resize( final int capacity ) {
+		this.pairIDs = Arrays.copyOf( this.pairIDs, capacity );
+		this.generations = Arrays.copyOf( this.generations, capacity );
+		this.lasts = Arrays.copyOf( this.lasts, capacity );
+		this.asks = Arrays.copyOf( this.asks, capacity );
+		this.bids = Arrays.copyOf( this.bids, capacity );
+		this.baseVolumes = Arrays.copyOf( this.baseVolumes, capacity );
+		this.quoteVolumes = Arrays.copyOf( this.quoteVolumes, capacity );
+		this.currencyPairs = Arrays.copyOf( this.currencyPairs, capacity );
+		this.tickers = Arrays.copyOf( this.tickers, capacity );
+	}
+
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	/**
+	 * @return The amount of pairs in the snapshot
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @param index
+	 *            - Between 0 and {@link #size()}
+	 * @return The id of the pair at the index, in the order they were set
+	 */
+	public int getPairID( final int index ) {
+		return this.pairIDs[index];
+	}
+
+	public boolean contains( final int pairID ) {
+		return pairID < this.generations.length && this.generations[pairID] == this.generation;
+	}
+
+	public CurrencyPair getCurrencyPair( final int pairID ) {
+		return this.currencyPairs[pairID];
+	}
+
+	public double getLast( final int pairID ) {
+		return this.lasts[pairID];
+	}
+
+	public double getAsk( final int pairID ) {
+		return this.asks[pairID];
+	}
+
+	public double getBid( final int pairID ) {
+		return this.bids[pairID];
+	}
+
+	public double getBaseVolume( final int pairID ) {
+		return this.baseVolumes[pairID];
+	}
+
+	public double getQuoteVolume( final int pairID ) {
+		return this.quoteVolumes[pairID];
+	}
+
+	/**
+	 * @return The view of the pair, created the first time it is asked for
+	 */
+	public Ticker getTicker( final int pairID ) {
+		SnapshotTicker ticker = this.tickers[pairID];
+
+		if ( ticker == null ) {
+			ticker = new SnapshotTicker( this, pairID );
+			this.tickers[pairID] = ticker;
+		}
+
+		return ticker;
+	}
+
+	/**
+	 * @return The values of the pair in this poll, which the next poll does
+	 *         not change
+	 */
+	public Ticker copyTicker( final int pairID ) {
+		return new TickerCopy( this.currencyPairs[pairID], this.lasts[pairID], this.asks[pairID], this.bids[pairID], this.baseVolumes[pairID],
+				this.quoteVolumes[pairID] );
+	}
+
+	/**
+	 * Values of one pair in one poll
+	 *
+	 * @author Evan
+	 *
+	 */
+	private static final class TickerCopy implements Ticker {
+		private final CurrencyPair currencyPair;
+		private final double last;
+		private final double ask;
+		private final double bid;
+		private final double baseVolume;
+		private final double quoteVolume;
+
+		private TickerCopy( final CurrencyPair currencyPair, final double last, final double ask, final double bid, final double baseVolume,
+				final double quoteVolume ) {
+			this.currencyPair = currencyPair;
+			this.last = last;
+			this.ask = ask;
+			this.bid = bid;
+			this.baseVolume = baseVolume;
+			this.quoteVolume = quoteVolume;
+		}
+
+		@Override
+		public CurrencyPair getCurrencyPair() {
+			return this.currencyPair;
+		}
+
+		@Override
+		public double getLast() {
+			return this.last;
+		}
+
+		@Override
+		public double getAsk() {
+			return this.ask;
+		}
+
+		@Override
+		public double getBid() {
+			return this.bid;
+		}
+
+		@Override
+		public double getBaseVolume() {
+			return this.baseVolume;
+		}
+
+		@Override
+		public double getQuoteVolume() {
+			return this.quoteVolume;
+		}
+	}
+
+	/**
+	 * View of one pair in the snapshot
+	 *
+	 * @author Evan
+	 *
+	 */
+	private static class SnapshotTicker implements Ticker {
+		private final TickerSnapshot snapshot;
+		private final int pairID;
+
+		private SnapshotTicker( final TickerSnapshot snapshot, final int pairID ) {
+			this.snapshot = snapshot;
+			this.pairID = pairID;
+		}
+
+		/* The columns are read through the snapshot since they are replaced when it grows */
+		@Override
+		public CurrencyPair getCurrencyPair() {
+			return this.snapshot.currencyPairs[this.pairID];
+		}
+
+		@Override
+		public double getLast() {
+			return this.snapshot.lasts[this.pairID];
+		}
+
+		@Override
+		public double getAsk() {
+			return this.snapshot.asks[this.pairID];
+		}
+
+		@Override
+		public double getBid() {
+			return this.snapshot.bids[this.pairID];
+		}
+
+		@Override
+		public double getBaseVolume() {
+			return this.snapshot.baseVolumes[this.pairID];
+		}
+
+		@Override
+		public double getQuoteVolume() {
+			return this.snapshot.quoteVolumes[this.pairID];
+		}
+	}
+}
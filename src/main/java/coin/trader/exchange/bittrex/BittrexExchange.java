@@ -1,10 +1,10 @@
 package coin.trader.exchange.bittrex;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
 
-import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
 import coin.trader.config.Config;
@@ -16,6 +16,7 @@ import coin.trader.exchange.ChartData.DataPoint;
 import coin.trader.exchange.Currency;
 import coin.trader.exchange.CurrencyPair;
 import coin.trader.exchange.Exchange;
+import coin.trader.exchange.NonceSequencer;
 import coin.trader.exchange.OpenOrder;
 import coin.trader.exchange.OpenOrders;
 import coin.trader.exchange.OrderBook;
@@ -24,6 +25,7 @@ import coin.trader.exchange.Ticker;
 import coin.trader.exchange.Volumes;
 import coin.trader.exchange.bittrex.BittrexOpenOrder.BittrexOpenOrderResponse;
 import coin.trader.logger.Logger;
+import coin.trader.utilities.Utils;
 
 public class BittrexExchange extends Exchange {
 	private static final Logger LOGGER = new Logger( BittrexExchange.class.getSimpleName() );
@@ -35,18 +37,19 @@ public class BittrexExchange extends Exchange {
 	private static final String BASE_URL_MARKET = BittrexExchange.BASE_URL + "market/";
 	private static final double TRANSACTION_FEE = 0.0025;
 
+	private final NonceSequencer privateSequencer = new NonceSequencer();
+
 	private BittrexExchange() {
 	}
 
 	@Override
 	protected Map<CurrencyPair, Ticker> getTickers() throws Exception {
 
-		final String jsonStr = this.sendCommandPublic( "getmarketsummaries?" );
-		final Type listType = new TypeToken<BittrexTickers>() {
-		}.getType();
-		final Gson gson = new Gson();
-		final BittrexTickers tickers = gson.fromJson( jsonStr, listType );
-		if ( tickers.success ) {
+		final BittrexTickers tickers = HTTPRequest.sendHTTPRequest( BittrexExchange.BASE_URL_PUBLIC + "getmarketsummaries?", BittrexTickers.PARSER );
+		if ( tickers == null ) {
+			throw new IOException( "Bittrex request failed: getmarketsummaries" );
+		}
+		else if ( tickers.success ) {
 			return tickers.toMap();
 		}
 		else {
@@ -65,8 +68,7 @@ public class BittrexExchange extends Exchange {
 		final String jsonStr = this.sendCommandPublic( "getorderbook?market=" + currencyPair + "&type=both" );
 		final Type listType = new TypeToken<BittrexOrderBook>() {
 		}.getType();
-		final Gson gson = new Gson();
-		final BittrexOrderBook orderBook = gson.fromJson( jsonStr, listType );
+		final BittrexOrderBook orderBook = Utils.GSON.fromJson( jsonStr, listType );
 		if ( orderBook.success ) {
 			return orderBook;
 		}
@@ -80,8 +82,7 @@ public class BittrexExchange extends Exchange {
 		final String jsonStr = this.sendCommandAccount( "getbalances?" );
 		final Type listType = new TypeToken<BittrexBalances>() {
 		}.getType();
-		final Gson gson = new Gson();
-		final BittrexBalances balances = gson.fromJson( jsonStr, listType );
+		final BittrexBalances balances = Utils.GSON.fromJson( jsonStr, listType );
 		if ( balances.success ) {
 			return balances;
 		}
@@ -116,8 +117,7 @@ public class BittrexExchange extends Exchange {
 		final String jsonStr = this.sendCommandAccount( "getorder?uuid=" + orderID );
 		final Type listType = new TypeToken<BittrexOpenOrderResponse>() {
 		}.getType();
-		final Gson gson = new Gson();
-		final BittrexOpenOrderResponse openOrder = gson.fromJson( jsonStr, listType );
+		final BittrexOpenOrderResponse openOrder = Utils.GSON.fromJson( jsonStr, listType );
 		if ( openOrder.success ) {
 			return openOrder.toOpenOrder();
 		}
@@ -131,8 +131,7 @@ public class BittrexExchange extends Exchange {
 		final String jsonStr = this.sendCommandMarket( "getopenorders?market=" + currencyPair );
 		final Type listType = new TypeToken<BittrexOpenOrders>() {
 		}.getType();
-		final Gson gson = new Gson();
-		final BittrexOpenOrders openOrders = gson.fromJson( jsonStr, listType );
+		final BittrexOpenOrders openOrders = Utils.GSON.fromJson( jsonStr, listType );
 		if ( openOrders.success ) {
 			return openOrders;
 		}
@@ -146,8 +145,7 @@ public class BittrexExchange extends Exchange {
 		final String jsonStr = this.sendCommandMarket( "buylimit?market=" + currencyPair + "&quantity=" + quantity + "&rate=" + rate );
 		final Type listType = new TypeToken<BittrexBuyOrder>() {
 		}.getType();
-		final Gson gson = new Gson();
-		final BittrexBuyOrder buyOrder = gson.fromJson( jsonStr, listType );
+		final BittrexBuyOrder buyOrder = Utils.GSON.fromJson( jsonStr, listType );
 		if ( buyOrder.success ) {
 			return buyOrder;
 		}
@@ -162,8 +160,7 @@ public class BittrexExchange extends Exchange {
 		final String jsonStr = this.sendCommandMarket( "selllimit?market=" + currencyPair + "&quantity=" + quantity + "&rate=" + rate );
 		final Type listType = new TypeToken<BittrexSellOrder>() {
 		}.getType();
-		final Gson gson = new Gson();
-		final BittrexSellOrder buyOrder = gson.fromJson( jsonStr, listType );
+		final BittrexSellOrder buyOrder = Utils.GSON.fromJson( jsonStr, listType );
 		if ( buyOrder.success ) {
 			return buyOrder;
 		}
@@ -178,8 +175,7 @@ public class BittrexExchange extends Exchange {
 		final String jsonStr = this.sendCommandMarket( "cancel?uuid=" + orderID );
 		final Type listType = new TypeToken<BittrexCancelOrder>() {
 		}.getType();
-		final Gson gson = new Gson();
-		final BittrexCancelOrder cancelOrder = gson.fromJson( jsonStr, listType );
+		final BittrexCancelOrder cancelOrder = Utils.GSON.fromJson( jsonStr, listType );
 		if ( cancelOrder.success ) {
 			return cancelOrder;
 		}
@@ -206,16 +202,26 @@ public class BittrexExchange extends Exchange {
 		return HTTPRequest.sendHTTPRequest( BittrexExchange.BASE_URL_PUBLIC + queryString );
 	}
 
+	/*
+	 * Requests are sent concurrently, but signed requests are sent one at a
+	 * time so they reach Bittrex in nonce order
+	 */
 	private String sendCommandAccount( final String queryString ) throws Exception {
-		return HTTPRequest.sendHTTPRequestWithHMAC_SHA_512(
-				BittrexExchange.BASE_URL_ACCOUNT + queryString + "&apikey=" + Config.BittrexConfig.API_KEY_PUBLIC.getValue() + "&nonce=" + System.currentTimeMillis(),
-				Config.BittrexConfig.API_KEY_PRIVATE.getValue().getBytes() );
+		return this.sendCommandSigned( BittrexExchange.BASE_URL_ACCOUNT + queryString );
 	}
 
 	private String sendCommandMarket( final String queryString ) throws Exception {
-		return HTTPRequest.sendHTTPRequestWithHMAC_SHA_512(
-				BittrexExchange.BASE_URL_MARKET + queryString + "&apikey=" + Config.BittrexConfig.API_KEY_PUBLIC.getValue() + "&nonce=" + System.currentTimeMillis(),
-				Config.BittrexConfig.API_KEY_PRIVATE.getValue().getBytes() );
+		return this.sendCommandSigned( BittrexExchange.BASE_URL_MARKET + queryString );
+	}
+
+	private String sendCommandSigned( final String url ) throws Exception {
+		return this.privateSequencer.send( new NonceSequencer.Request<String>() {
+			@Override
+			public String send( final long nonce ) throws Exception {
+				return HTTPRequest.sendHTTPRequestWithHMAC_SHA_512( url + "&apikey=" + Config.BittrexConfig.API_KEY_PUBLIC.getValue() + "&nonce=" + nonce,
+						Config.BittrexConfig.API_KEY_PRIVATE.getValue().getBytes() );
+			}
+		} );
 	}
 
 	@Override
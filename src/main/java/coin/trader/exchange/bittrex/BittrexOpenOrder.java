@@ -35,6 +35,27 @@ public class BittrexOpenOrder implements OpenOrder, Serializable {
 		return this.Quantity != this.QuantityRemaining;
 	}
 
+	@Override
+	public String getID() {
+		/* Open order lists name the id OrderUuid, single orders Uuid */
+		return this.OrderUuid != null ? this.OrderUuid : this.Uuid;
+	}
+
+	@Override
+	public boolean isBuy() {
+		return this.OrderType != null && this.OrderType.endsWith( "BUY" );
+	}
+
+	@Override
+	public double getQuantity() {
+		return this.Quantity;
+	}
+
+	@Override
+	public double getRate() {
+		return this.Limit;
+	}
+
 	public static class BittrexOpenOrderResponse implements Serializable {
 		private static final long serialVersionUID = 3482289112369786015L;
 
@@ -75,6 +96,7 @@ public class BittrexOpenOrder implements OpenOrder, Serializable {
 			final BittrexOpenOrder openOrder = new BittrexOpenOrder();
 			openOrder.Uuid = this.result.OrderUuid;
 			openOrder.Exchange = this.result.Exchange;
+			openOrder.OrderType = this.result.Type;
 			openOrder.Quantity = this.result.Quantity;
 			openOrder.QuantityRemaining = this.result.QuantityRemaining;
 			openOrder.Limit = this.result.Limit;
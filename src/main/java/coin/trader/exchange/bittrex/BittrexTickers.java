@@ -1,21 +1,133 @@
 package coin.trader.exchange.bittrex;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import coin.trader.connection.ResponseParser;
 import coin.trader.exchange.CurrencyPair;
 import coin.trader.exchange.Ticker;
 import coin.trader.exchange.Tickers;
+import coin.trader.utilities.Utils;
 
 public class BittrexTickers implements Tickers, Serializable {
 	private static final long serialVersionUID = 97576816398726350L;
+
+	static final ResponseParser<BittrexTickers> PARSER = new ResponseParser<BittrexTickers>() {
+		@Override
+		public BittrexTickers parse( final JsonReader reader ) throws IOException {
+			return BittrexTickers.parse( reader );
+		}
+	};
+
 	private List<BittrexTicker> result;
 
 	boolean success;
 	String message;
 
+	BittrexTickers() {
+	}
+
+	/**
+	 * Streams the getmarketsummaries response, only the fields of
+	 * {@link BittrexTicker} that are used are kept
+	 */
+	public static BittrexTickers parse( final JsonReader reader ) throws IOException {
+		final BittrexTickers rv = new BittrexTickers();
+
+		reader.beginObject();
+		while ( reader.hasNext() ) {
+			switch ( reader.nextName() ) {
+				case "success":
+					rv.success = reader.nextBoolean();
+					break;
+				case "message":
+					rv.message = BittrexTickers.nextString( reader );
+					break;
+				case "result":
+					if ( reader.peek() == JsonToken.NULL ) {
+						reader.nextNull();
+					}
+					else {
+						rv.result = BittrexTickers.parseResult( reader );
+					}
+					break;
+				default:
+					reader.skipValue();
+					break;
+			}
+		}
+		reader.endObject();
+
+		return rv;
+	}
+
+	private static List<BittrexTicker> parseResult( final JsonReader reader ) throws IOException {
+		final List<BittrexTicker> result = new ArrayList<BittrexTicker>( 256 );
+
+		reader.beginArray();
+		while ( reader.hasNext() ) {
+			final BittrexTicker ticker = new BittrexTicker();
+
+			reader.beginObject();
+			while ( reader.hasNext() ) {
+				switch ( reader.nextName() ) {
+					case "MarketName":
+						ticker.MarketName = BittrexTickers.nextString( reader );
+						break;
+					case "High":
+						ticker.High = Utils.nextDouble( reader );
+						break;
+					case "Low":
+						ticker.Low = Utils.nextDouble( reader );
+						break;
+					case "Volume":
+						ticker.Volume = Utils.nextDouble( reader );
+						break;
+					case "Last":
+						ticker.Last = Utils.nextDouble( reader );
+						break;
+					case "BaseVolume":
+						ticker.BaseVolume = Utils.nextDouble( reader );
+						break;
+					case "Bid":
+						ticker.Bid = Utils.nextDouble( reader );
+						break;
+					case "Ask":
+						ticker.Ask = Utils.nextDouble( reader );
+						break;
+					case "PrevDay":
+						ticker.PrevDay = Utils.nextDouble( reader );
+						break;
+					default:
+						reader.skipValue();
+						break;
+				}
+			}
+			reader.endObject();
+
+			result.add( ticker );
+		}
+		reader.endArray();
+
+		return result;
+	}
+
+	private static String nextString( final JsonReader reader ) throws IOException {
+		if ( reader.peek() == JsonToken.NULL ) {
+			reader.nextNull();
+			return null;
+		}
+
+		return reader.nextString();
+	}
+
 	@Override
 	public List<? extends Ticker> getTickers() {
 		return this.result;
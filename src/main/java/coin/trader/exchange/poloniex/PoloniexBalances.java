@@ -7,12 +7,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
 import coin.trader.exchange.Balance;
 import coin.trader.exchange.Balances;
 import coin.trader.exchange.Currency;
+import coin.trader.utilities.Utils;
 
 public class PoloniexBalances implements Balances {
 
@@ -22,8 +22,7 @@ public class PoloniexBalances implements Balances {
 	PoloniexBalances( final String jsonStr ) {
 		final Type listType = new TypeToken<Map<String, Double>>() {
 		}.getType();
-		final Gson gson = new Gson();
-		this.balanceMap = gson.fromJson( jsonStr, listType );
+		this.balanceMap = Utils.GSON.fromJson( jsonStr, listType );
 		this.balances = new ArrayList<Balance>( 128 );
 
 		final Iterator<Entry<String, Double>> iterator = this.balanceMap.entrySet().iterator();
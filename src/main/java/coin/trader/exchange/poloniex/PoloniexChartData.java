@@ -1,77 +1,126 @@
 package coin.trader.exchange.poloniex;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.util.List;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
+import coin.trader.connection.ResponseParser;
 import coin.trader.exchange.ChartData;
+import coin.trader.exchange.DataPointColumns;
+import coin.trader.utilities.Utils;
 
+/**
+ * Candles of returnChartData, streamed from the response straight into
+ * {@link DataPointColumns}
+ *
+ * @author Evan
+ *
+ */
 public class PoloniexChartData implements ChartData {
-	final List<DataPoint> dataPoints;
+	final DataPointColumns dataPoints;
 
-	PoloniexChartData( final String jsonStr ) {
-		final Type listType = new TypeToken<List<PoloniexDataPoint>>() {
-		}.getType();
-		final Gson gson = new Gson();
-		this.dataPoints = gson.fromJson( jsonStr, listType );
+	private PoloniexChartData( final DataPointColumns dataPoints ) {
+		this.dataPoints = dataPoints;
 	}
 
-	static class PoloniexDataPoint implements DataPoint {
-		long date;
-		double high;
-		double low;
-		double open;
-		double close;
-		double volume;
-		double quoteVolume;
-		double weightedAverage;
-
-		@Override
-		public double getDate() {
-			// TODO Auto-generated method stub
-			return 0;
-		}
+	/**
+	 * @param expectedSize
+	 *            - Amount of candles expected, so the columns are only
+	 *            allocated once
+	 */
+	static ResponseParser<PoloniexChartData> parser( final int expectedSize ) {
+		return new ResponseParser<PoloniexChartData>() {
+			@Override
+			public PoloniexChartData parse( final JsonReader reader ) throws IOException {
+				return PoloniexChartData.parse( reader, expectedSize );
+			}
+		};
+	}
 
-		@Override
-		public double getHigh() {
-			return this.high;
-		}
+	public static PoloniexChartData parse( final JsonReader reader ) throws IOException {
+		return PoloniexChartData.parse( reader, 64 );
+	}
 
-		@Override
-		public double getLow() {
-			return this.low;
-		}
+	public static PoloniexChartData parse( final JsonReader reader, final int expectedSize ) throws IOException {
+		/* Errors are returned as an object instead of an array */
+		if ( reader.peek() == JsonToken.BEGIN_OBJECT ) {
+			String error = null;
+			reader.beginObject();
+			while ( reader.hasNext() ) {
+				if ( "error".equals( reader.nextName() ) ) {
+					error = reader.nextString();
+				}
+				else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
 
-		@Override
-		public double getOpen() {
-			return this.open;
+			throw new IOException( "returnChartData failed: " + error );
 		}
 
-		@Override
-		public double getClose() {
-			return this.close;
-		}
+		final DataPointColumns dataPoints = new DataPointColumns( java.lang.Math.max( 1, expectedSize ) );
 
-		@Override
-		public double getVolume() {
-			return this.volume;
-		}
+		reader.beginArray();
+		while ( reader.hasNext() ) {
+			long date = 0;
+			double high = 0.0;
+			double low = 0.0;
+			double open = 0.0;
+			double close = 0.0;
+			double volume = 0.0;
+			double quoteVolume = 0.0;
+			double weightedAverage = 0.0;
 
-		@Override
-		public double getQuoteVolume() {
-			return this.quoteVolume;
-		}
+			reader.beginObject();
+			while ( reader.hasNext() ) {
+				switch ( reader.nextName() ) {
+					case "date":
+						date = (long) Utils.nextDouble( reader );
+						break;
+					case "high":
+						high = Utils.nextDouble( reader );
+						break;
+					case "low":
+						low = Utils.nextDouble( reader );
+						break;
+					case "open":
+						open = Utils.nextDouble( reader );
+						break;
+					case "close":
+						close = Utils.nextDouble( reader );
+						break;
+					case "volume":
+						volume = Utils.nextDouble( reader );
+						break;
+					case "quoteVolume":
+						quoteVolume = Utils.nextDouble( reader );
+						break;
+					case "weightedAverage":
+						weightedAverage = Utils.nextDouble( reader );
+						break;
+					default:
+						reader.skipValue();
+						break;
+				}
+			}
+			reader.endObject();
 
-		@Override
-		public double getWeightedAverage() {
-			return this.weightedAverage;
+			dataPoints.add( date, high, low, open, close, volume, quoteVolume, weightedAverage );
 		}
+		reader.endArray();
+
+		return new PoloniexChartData( dataPoints );
 	}
 
 	@Override
 	public List<? extends DataPoint> getDataPoints() {
 		return this.dataPoints;
 	}
+
+	public DataPointColumns getColumns() {
+		return this.dataPoints;
+	}
 }
@@ -1,14 +1,16 @@
 package coin.trader.exchange.poloniex;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
 import coin.trader.config.Config;
 import coin.trader.connection.HTTPRequest;
+import coin.trader.connection.ResponseParser;
 import coin.trader.exchange.Balances;
 import coin.trader.exchange.BuyOrder;
 import coin.trader.exchange.CancelOrder;
@@ -16,6 +18,7 @@ import coin.trader.exchange.ChartData.DataPoint;
 import coin.trader.exchange.Currency;
 import coin.trader.exchange.CurrencyPair;
 import coin.trader.exchange.Exchange;
+import coin.trader.exchange.NonceSequencer;
 import coin.trader.exchange.OpenOrder;
 import coin.trader.exchange.OpenOrders;
 import coin.trader.exchange.OrderBook;
@@ -23,6 +26,7 @@ import coin.trader.exchange.SellOrder;
 import coin.trader.exchange.Ticker;
 import coin.trader.exchange.Volumes;
 import coin.trader.logger.Logger;
+import coin.trader.utilities.Utils;
 
 public class PoloniexExchange extends Exchange {
 	private static final Logger LOGGER = new Logger( PoloniexExchange.class.getSimpleName() );
@@ -32,6 +36,9 @@ public class PoloniexExchange extends Exchange {
 	private static final String BASE_URL_TRADING = PoloniexExchange.BASE_URL + "tradingApi?";
 	private static final int MAX_REQUESTS_PER_SECOND = 6;
 	private static final double TRANSACTION_FEE = 0.0025;
+	private static final long MAX_EXPECTED_CANDLES = 16384;
+
+	private final NonceSequencer tradingSequencer = new NonceSequencer();
 
 	private PoloniexExchange() {
 	}
@@ -42,8 +49,7 @@ public class PoloniexExchange extends Exchange {
 
 	@Override
 	protected Map<CurrencyPair, Ticker> getTickers() throws Exception {
-		final String jsonStr = this.sendCommandPublic( "command=returnTicker" );
-		return new PoloniexTickers( jsonStr ).toMap();
+		return this.sendCommandPublic( "command=returnTicker", PoloniexTickers.PARSER ).toMap();
 	}
 
 	@Override
@@ -66,8 +72,15 @@ public class PoloniexExchange extends Exchange {
 
 	@Override
 	protected List<? extends DataPoint> getChartData( final CurrencyPair currencyPair, final long start, final long end, final int period ) throws Exception {
-		final String jsonStr = this.sendCommandPublic( "command=returnChartData&currencyPair=" + currencyPair + "&start=" + start + "&end=" + end + "&period=" + period );
-		return new PoloniexChartData( jsonStr ).getDataPoints();
+		/*
+		 * end may be far in the future to mean now, no candle exists after now,
+		 * so a tail fetch only allocates for the few candles it gets. The
+		 * columns grow past the cap if needed.
+		 */
+		final long last = java.lang.Math.min( end, System.currentTimeMillis() / 1000 );
+		final long expectedSize = java.lang.Math.min( PoloniexExchange.MAX_EXPECTED_CANDLES, java.lang.Math.max( 0, last - start ) / period + 1 );
+		return this.sendCommandPublic( "command=returnChartData&currencyPair=" + currencyPair + "&start=" + start + "&end=" + end + "&period=" + period,
+				PoloniexChartData.parser( (int) expectedSize ) ).getDataPoints();
 
 	}
 
@@ -91,13 +104,34 @@ public class PoloniexExchange extends Exchange {
 
 	}
 
+	/*
+	 * returnOpenOrders with all currency pairs already returns every open
+	 * order, so any amount of ids can be looked up with one request
+	 */
+	@Override
+	protected Map<String, OpenOrder> getOpenOrders( final List<String> orderIDs ) throws Exception {
+		final String jsonStr = this.sendCommandTrading( "command=returnOpenOrders&currencyPair=all" );
+		final PoloniexOpenOrders openOrders = new PoloniexOpenOrders( jsonStr );
+		final Map<String, OpenOrder> rv = new HashMap<String, OpenOrder>( orderIDs.size() * 2 );
+
+		for ( final String orderID : orderIDs ) {
+			rv.put( orderID, openOrders.getOpenOrder( orderID ) );
+		}
+
+		return rv;
+	}
+
+	@Override
+	public boolean canBatchOpenOrders() {
+		return true;
+	}
+
 	@Override
 	protected CancelOrder cancelOpenOrder( final String orderID ) throws Exception {
 		final String jsonStr = this.sendCommandTrading( "command=cancelOrder" );
 		final Type listType = new TypeToken<PoloniexCancelOrder>() {
 		}.getType();
-		final Gson gson = new Gson();
-		return gson.fromJson( jsonStr, listType );
+		return Utils.GSON.fromJson( jsonStr, listType );
 
 	}
 
@@ -113,8 +147,7 @@ public class PoloniexExchange extends Exchange {
 		final String jsonStr = this.sendCommandTrading( "command=buy&currencyPair=" + currencyPair + "amount=" + quantity + "rate=" + rate );
 		final Type listType = new TypeToken<PoloniexBuyOrder>() {
 		}.getType();
-		final Gson gson = new Gson();
-		return gson.fromJson( jsonStr, listType );
+		return Utils.GSON.fromJson( jsonStr, listType );
 
 	}
 
@@ -123,8 +156,7 @@ public class PoloniexExchange extends Exchange {
 		final String jsonStr = this.sendCommandTrading( "command=buy&currencyPair=" + currencyPair + "amount=" + quantity + "rate=" + rate );
 		final Type listType = new TypeToken<PoloniexSellOrder>() {
 		}.getType();
-		final Gson gson = new Gson();
-		return gson.fromJson( jsonStr, listType );
+		return Utils.GSON.fromJson( jsonStr, listType );
 
 	}
 
@@ -139,9 +171,28 @@ public class PoloniexExchange extends Exchange {
 		return HTTPRequest.sendHTTPRequest( PoloniexExchange.BASE_URL_PUBLIC + queryString );
 	}
 
+	private <T> T sendCommandPublic( final String queryString, final ResponseParser<T> parser ) throws Exception {
+		final T rv = HTTPRequest.sendHTTPRequest( PoloniexExchange.BASE_URL_PUBLIC + queryString, parser );
+
+		if ( rv == null ) {
+			throw new IOException( "Poloniex request failed: " + queryString );
+		}
+
+		return rv;
+	}
+
+	/*
+	 * Requests are sent concurrently, but trading requests must reach Poloniex
+	 * in nonce order, so they are sent one at a time
+	 */
 	private String sendCommandTrading( final String queryString ) throws Exception {
-		return HTTPRequest.sendHTTPRequestWithHMAC_SHA_512POST( PoloniexExchange.BASE_URL_TRADING, queryString + "&nonce=" + System.currentTimeMillis(),
-				Config.PoloniexConfig.API_KEY_PRIVATE.getValue().getBytes() );
+		return this.tradingSequencer.send( new NonceSequencer.Request<String>() {
+			@Override
+			public String send( final long nonce ) throws Exception {
+				return HTTPRequest.sendHTTPRequestWithHMAC_SHA_512POST( PoloniexExchange.BASE_URL_TRADING, queryString + "&nonce=" + nonce,
+						Config.PoloniexConfig.API_KEY_PRIVATE.getValue().getBytes() );
+			}
+		} );
 	}
 
 	@Override
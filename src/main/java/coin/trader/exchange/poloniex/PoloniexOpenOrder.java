@@ -11,6 +11,7 @@ public class PoloniexOpenOrder implements Serializable, OpenOrder {
 	String type = "";
 	double rate = 0.0;
 	double amount = 0.0;
+	double startingAmount = 0.0;
 	double total = 0.0;
 
 	@Override
@@ -22,4 +23,25 @@ public class PoloniexOpenOrder implements Serializable, OpenOrder {
 	public boolean isPartiallyFilled() {
 		return this.total > 0.0;
 	}
+
+	@Override
+	public String getID() {
+		return this.orderNumber;
+	}
+
+	@Override
+	public boolean isBuy() {
+		return "buy".equals( this.type );
+	}
+
+	@Override
+	public double getQuantity() {
+		/* amount is what is left of the order */
+		return this.startingAmount > 0.0 ? this.startingAmount : this.amount;
+	}
+
+	@Override
+	public double getRate() {
+		return this.rate;
+	}
 }
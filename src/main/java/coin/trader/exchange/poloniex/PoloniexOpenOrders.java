@@ -7,11 +7,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
 import coin.trader.exchange.OpenOrder;
 import coin.trader.exchange.OpenOrders;
+import coin.trader.utilities.Utils;
 
 public class PoloniexOpenOrders implements OpenOrders {
 
@@ -20,8 +20,7 @@ public class PoloniexOpenOrders implements OpenOrders {
 	PoloniexOpenOrders( final String jsonStr ) {
 		final Type listType = new TypeToken<Map<String, PoloniexOpenOrder>>() {
 		}.getType();
-		final Gson gson = new Gson();
-		final Map<String, PoloniexOpenOrder> openOrdersMap = gson.fromJson( jsonStr, listType );
+		final Map<String, PoloniexOpenOrder> openOrdersMap = Utils.GSON.fromJson( jsonStr, listType );
 		this.openOrders = new ArrayList<PoloniexOpenOrder>( 128 );
 
 		final Iterator<Entry<String, PoloniexOpenOrder>> iterator = openOrdersMap.entrySet().iterator();
@@ -1,34 +1,87 @@
 package coin.trader.exchange.poloniex;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 
+import coin.trader.connection.ResponseParser;
 import coin.trader.exchange.CurrencyPair;
 import coin.trader.exchange.Ticker;
 import coin.trader.exchange.Tickers;
+import coin.trader.utilities.Utils;
 
 public class PoloniexTickers implements Tickers {
+	static final ResponseParser<PoloniexTickers> PARSER = new ResponseParser<PoloniexTickers>() {
+		@Override
+		public PoloniexTickers parse( final JsonReader reader ) throws IOException {
+			return PoloniexTickers.parse( reader );
+		}
+	};
+
 	final private List<PoloniexTicker> tickers;
 	final private Map<CurrencyPair, Ticker> tickerMap;
 
-	public PoloniexTickers( final String jsonStr ) {
-		final Type listType = new TypeToken<Map<String, PoloniexTicker>>() {
-		}.getType();
-		final Gson gson = new Gson();
-		final Map<String, PoloniexTicker> tickersMap = gson.fromJson( jsonStr, listType );
+	private PoloniexTickers() {
 		this.tickers = new ArrayList<PoloniexTicker>( 128 );
-		this.tickerMap = new HashMap<CurrencyPair, Ticker>();
+		this.tickerMap = new HashMap<CurrencyPair, Ticker>( 256 );
+	}
+
+	/**
+	 * Streams the returnTicker response, a map of currency pair to ticker
+	 */
+	public static PoloniexTickers parse( final JsonReader reader ) throws IOException {
+		final PoloniexTickers rv = new PoloniexTickers();
+
+		reader.beginObject();
+		while ( reader.hasNext() ) {
+			final String name = reader.nextName();
 
-		for ( final Entry<String, PoloniexTicker> pair : tickersMap.entrySet() ) {
-			this.tickerMap.put( new PoloniexCurrencyPair( pair.getKey() ), pair.getValue() );
+			/* Errors come back as { "error": "..." } */
+			if ( "error".equals( name ) ) {
+				throw new IOException( "returnTicker failed: " + reader.nextString() );
+			}
+
+			final PoloniexTicker ticker = new PoloniexTicker();
+			ticker.currencyPair = new PoloniexCurrencyPair( name );
+
+			reader.beginObject();
+			while ( reader.hasNext() ) {
+				switch ( reader.nextName() ) {
+					case "last":
+						ticker.last = Utils.nextDouble( reader );
+						break;
+					case "lowestAsk":
+						ticker.lowestAsk = Utils.nextDouble( reader );
+						break;
+					case "highestBid":
+						ticker.highestBid = Utils.nextDouble( reader );
+						break;
+					case "percentChange":
+						ticker.percentChange = Utils.nextDouble( reader );
+						break;
+					case "baseVolume":
+						ticker.baseVolume = Utils.nextDouble( reader );
+						break;
+					case "quoteVolume":
+						ticker.quoteVolume = Utils.nextDouble( reader );
+						break;
+					default:
+						reader.skipValue();
+						break;
+				}
+			}
+			reader.endObject();
+
+			rv.tickers.add( ticker );
+			rv.tickerMap.put( ticker.currencyPair, ticker );
 		}
+		reader.endObject();
+
+		return rv;
 	}
 
 	@Override
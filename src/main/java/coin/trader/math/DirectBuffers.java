@@ -0,0 +1,115 @@
+package coin.trader.math;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Allocates and releases direct buffers. The JVM only releases a direct buffer
+ * once the garbage collector finds it, so the memory is released explicitly
+ * when the running JVM allows it. Aligning and releasing use methods that
+ * depend on the JVM version, they are looked up when this class loads, without
+ * them buffers are not aligned and are left to the garbage collector.
+ *
+ * @author Evan
+ *
+ */
+final class DirectBuffers {
+	/** Cache line size, buffers start on a cache line when possible */
+	static final int ALIGNMENT = 64;
+
+	/* Java 9 and later */
+	private static final Method ALIGNED_SLICE;
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Method alignedSlice = null;
+
+		try {
+			alignedSlice = ByteBuffer.class.getMethod( "alignedSlice", int.class );
+		}
+		catch ( final Throwable t ) {
+			/* Java 8 */
+		}
+
+		Object unsafe = null;
+		Method invokeCleaner = null;
+
+		try {
+			final Class<?> unsafeClass = Class.forName( "sun.misc.Unsafe" );
+			final Field theUnsafe = unsafeClass.getDeclaredField( "theUnsafe" );
+			theUnsafe.setAccessible( true );
+			unsafe = theUnsafe.get( null );
+			invokeCleaner = unsafeClass.getMethod( "invokeCleaner", ByteBuffer.class );
+		}
+		catch ( final Throwable t ) {
+			/* Java 8, or not allowed */
+			invokeCleaner = null;
+		}
+
+		ALIGNED_SLICE = alignedSlice;
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	private DirectBuffers() {
+	}
+
+	/**
+	 * @param bytes
+	 * @return A direct buffer with room to align the given amount of bytes,
+	 *         see {@link #align(ByteBuffer, int)}. This is the buffer to
+	 *         release.
+	 */
+	static ByteBuffer allocate( final int bytes ) {
+		/* Aligning can skip up to a cache line at the start and the end */
+		return ByteBuffer.allocateDirect( bytes + 2 * DirectBuffers.ALIGNMENT );
+	}
+
+	/**
+	 * @param buffer
+	 *            - From {@link #allocate(int)}
+	 * @param bytes
+	 * @return A view of bytes of the buffer in native byte order, starting on a
+	 *         cache line if the JVM can align it
+	 */
+	static ByteBuffer align( final ByteBuffer buffer, final int bytes ) {
+		ByteBuffer view = null;
+
+		if ( DirectBuffers.ALIGNED_SLICE != null ) {
+			try {
+				view = (ByteBuffer) DirectBuffers.ALIGNED_SLICE.invoke( buffer.duplicate(), DirectBuffers.ALIGNMENT );
+			}
+			catch ( final Throwable t ) {
+				/* Not aligned */
+			}
+		}
+
+		if ( view == null ) {
+			view = buffer.duplicate();
+		}
+
+		((Buffer) view).limit( bytes );
+		return view.slice().order( ByteOrder.nativeOrder() );
+	}
+
+	/**
+	 * Releases the memory of a buffer from {@link #allocate(int)}. The buffer,
+	 * and every view of it, must not be used afterwards.
+	 *
+	 * @param buffer
+	 */
+	static void release( final ByteBuffer buffer ) {
+		if ( DirectBuffers.INVOKE_CLEANER != null ) {
+			try {
+				DirectBuffers.INVOKE_CLEANER.invoke( DirectBuffers.UNSAFE, buffer );
+			}
+			catch ( final Throwable t ) {
+				/* Left to the garbage collector */
+			}
+		}
+	}
+}
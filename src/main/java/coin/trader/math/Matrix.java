@@ -1,9 +1,11 @@
 package coin.trader.math;
 
+import java.nio.FloatBuffer;
+
 import coin.trader.logger.Logger;
 import coin.trader.utilities.Utils;
 
-public abstract class Matrix {
+public abstract class Matrix implements AutoCloseable {
 	private static Logger LOGGER = new Logger( Matrix.class.getSimpleName() );
 	protected static final float EPSILON = 1e-7f;
 
@@ -43,7 +45,8 @@ public abstract class Matrix {
 	public enum MatrixImplemention {
 		CPU,
 		GPU_OPEN_CL,
-		GPU_JCUBLAS
+		GPU_JCUBLAS,
+		OFF_HEAP
 	}
 
 	public static void setMatrixCalculationImplementation( final MatrixImplemention v ) {
@@ -67,6 +70,9 @@ public abstract class Matrix {
 		else if ( Matrix.CALCULATION_IMPLEMENTATION.equals( MatrixImplemention.GPU_OPEN_CL ) ) {
 			return new MatrixOpenCL( rows, cols );
 		}
+		else if ( Matrix.CALCULATION_IMPLEMENTATION.equals( MatrixImplemention.OFF_HEAP ) ) {
+			return new MatrixOffHeap( rows, cols );
+		}
 		else {
 			return null;
 		}
@@ -154,12 +160,52 @@ public abstract class Matrix {
 	 */
 	public abstract Matrix applySigmoid();
 
+	/**
+	 * Sets the elements from a buffer holding them by row, starting at its
+	 * position. The position of the buffer is moved past the elements.
+	 * 
+	 * @param src
+	 */
+	public void copyFrom( final FloatBuffer src ) {
+		Utils.ASSERT( src.remaining() >= this.getNumberOfElements(), "The buffer does not have enough elements." );
+
+		for ( int i = 0; i < this.rows; i++ ) {
+			for ( int j = 0; j < this.cols; j++ ) {
+				this.set( i, j, src.get() );
+			}
+		}
+	}
+
+	/**
+	 * Writes the elements by row into a buffer, starting at its position. The
+	 * position of the buffer is moved past the elements.
+	 * 
+	 * @param dst
+	 */
+	public void copyTo( final FloatBuffer dst ) {
+		Utils.ASSERT( dst.remaining() >= this.getNumberOfElements(), "The buffer does not have room for the elements." );
+
+		for ( int i = 0; i < this.rows; i++ ) {
+			for ( int j = 0; j < this.cols; j++ ) {
+				dst.put( this.get( i, j ) );
+			}
+		}
+	}
+
 	/**
 	 * Releases any resources this matrix is using. The matrix becomes unusable
 	 * after this is called.
 	 */
 	public abstract void free();
 
+	/**
+	 * Frees the matrix, so matrices can be used with try with resources
+	 */
+	@Override
+	public void close() {
+		this.free();
+	}
+
 	public boolean isFreed() {
 		return this.isFreed;
 	}
@@ -0,0 +1,78 @@
+package coin.trader.math;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import coin.trader.utilities.Utils;
+
+/**
+ * One block of off heap memory that {@link MatrixOffHeap} matrices are
+ * created in, each starting on a cache line. Closing the arena frees all of
+ * its matrices and releases the memory at once, which suits matrices that
+ * live and die together, like the layers of a network or a training set.
+ *
+ * @author Evan
+ *
+ */
+public class MatrixArena implements AutoCloseable {
+	private final ByteBuffer memory;
+	private final ByteBuffer aligned;
+	private final List<MatrixOffHeap> matrices = new ArrayList<MatrixOffHeap>();
+	private int offset = 0;
+	private boolean isClosed = false;
+
+	/**
+	 * @param capacity
+	 *            - Floats the arena can hold, each matrix is rounded up to a
+	 *            whole cache line
+	 */
+	public MatrixArena( final int capacity ) {
+		this.memory = DirectBuffers.allocate( capacity * 4 );
+		this.aligned = DirectBuffers.align( this.memory, capacity * 4 );
+	}
+
+	public MatrixOffHeap create( final int rows, final int cols ) {
+		Utils.ASSERT( !this.isClosed, "The arena was closed." );
+
+		final int bytes = rows * cols * 4;
+		Utils.ASSERT( this.offset + bytes <= this.aligned.capacity(), "The arena does not have room for the matrix." );
+
+		final ByteBuffer view = this.aligned.duplicate();
+		((Buffer) view).position( this.offset );
+		((Buffer) view).limit( this.offset + bytes );
+
+		final MatrixOffHeap A = new MatrixOffHeap( rows, cols, view.slice().order( ByteOrder.nativeOrder() ).asFloatBuffer() );
+		this.matrices.add( A );
+
+		/* The next matrix starts on a cache line */
+		this.offset += (bytes + DirectBuffers.ALIGNMENT - 1) / DirectBuffers.ALIGNMENT * DirectBuffers.ALIGNMENT;
+
+		return A;
+	}
+
+	/**
+	 * @return Bytes used by the matrices of the arena
+	 */
+	public int getUsedBytes() {
+		return this.offset;
+	}
+
+	/**
+	 * Frees every matrix created in the arena and releases its memory
+	 */
+	@Override
+	public void close() {
+		if ( !this.isClosed ) {
+			for ( final MatrixOffHeap A : this.matrices ) {
+				A.free();
+			}
+
+			this.matrices.clear();
+			DirectBuffers.release( this.memory );
+			this.isClosed = true;
+		}
+	}
+}
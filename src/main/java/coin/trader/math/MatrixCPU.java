@@ -1,5 +1,7 @@
 package coin.trader.math;
 
+import java.nio.FloatBuffer;
+import java.util.Arrays;
 import java.util.concurrent.CountDownLatch;
 
 import coin.trader.concurrency.ResourceManager;
@@ -43,39 +45,173 @@ public class MatrixCPU extends Matrix {
 		Utils.ASSERT( B instanceof MatrixCPU, "The input matrix is not of the correct type." );
 
 		final MatrixCPU C = new MatrixCPU( this.rows, B.cols );
+		this.dot( B, C );
+		return C;
+	}
+
+	/**
+	 * C = this . B, written into C instead of a new matrix
+	 *
+	 * @param B
+	 * @param C
+	 *            - Can not be this or B
+	 */
+	public void dot( final Matrix B, final Matrix C ) {
+		/* Must make sure the matrices are fit for computations */
+		this.assertResources();
+		B.assertResources();
+		C.assertResources();
+
+		/* Check Matrices */
+		Utils.ASSERT( this.cols == B.rows, "The amount of columns is not equal to the number of rows of the input matrix." );
+		Utils.ASSERT( C.rows == this.rows && C.cols == B.cols, "The output matrix is not the correct size." );
+		Utils.ASSERT( B instanceof MatrixCPU && C instanceof MatrixCPU, "The input matrix is not of the correct type." );
+		Utils.ASSERT( C != this && C != B, "The output matrix can not be an input matrix." );
+
+		final float[] a = this.matrix;
+		final float[] b = B.matrix;
+		final float[] c = C.matrix;
+		final int n = this.cols;
+		final int m = B.cols;
+		Arrays.fill( c, 0.0f );
+
+		/* Small products are done on this thread, the rest in bands of rows */
+		final int threads = MatrixCPU.getThreads( this.rows, (long) this.rows * n * m );
+
+		if ( threads <= 1 ) {
+			MatrixMultiplication.multiply( a, b, c, n, m, 0, this.rows );
+			return;
+		}
+
+		MatrixCPU.runInBands( this.rows, threads, new RowBand() {
+			@Override
+			public void run( final int rowStart, final int rowEnd ) {
+				MatrixMultiplication.multiply( a, b, c, n, m, rowStart, rowEnd );
+			}
+		} );
+	}
+
+	/**
+	 * C = this^T . B, written into C without transposing this
+	 *
+	 * @param B
+	 * @param C
+	 *            - Can not be this or B
+	 */
+	public void transposeDot( final Matrix B, final Matrix C ) {
+		/* Must make sure the matrices are fit for computations */
+		this.assertResources();
+		B.assertResources();
+		C.assertResources();
+
+		/* Check Matrices */
+		Utils.ASSERT( this.rows == B.rows, "The amount of rows is not equal to the number of rows of the input matrix." );
+		Utils.ASSERT( C.rows == this.cols && C.cols == B.cols, "The output matrix is not the correct size." );
+		Utils.ASSERT( B instanceof MatrixCPU && C instanceof MatrixCPU, "The input matrix is not of the correct type." );
+		Utils.ASSERT( C != this && C != B, "The output matrix can not be an input matrix." );
+
+		final float[] a = this.matrix;
+		final float[] b = B.matrix;
+		final float[] c = C.matrix;
+		final int k = this.rows;
+		final int n = this.cols;
+		final int m = B.cols;
+		Arrays.fill( c, 0.0f );
+
+		final int threads = MatrixCPU.getThreads( n, (long) k * n * m );
+
+		if ( threads <= 1 ) {
+			MatrixMultiplication.multiplyTransposed( a, b, c, k, n, m, 0, n );
+			return;
+		}
+
+		MatrixCPU.runInBands( n, threads, new RowBand() {
+			@Override
+			public void run( final int rowStart, final int rowEnd ) {
+				MatrixMultiplication.multiplyTransposed( a, b, c, k, n, m, rowStart, rowEnd );
+			}
+		} );
+	}
+
+	/**
+	 * this += (X . Y^T) * scale, in place and without transposing Y
+	 *
+	 * @param scale
+	 * @param X
+	 * @param Y
+	 */
+	public void addDotTransposed( final float scale, final Matrix X, final Matrix Y ) {
+		/* Must make sure the matrices are fit for computations */
+		this.assertResources();
+		X.assertResources();
+		Y.assertResources();
+
+		/* Check Matrices */
+		Utils.ASSERT( X.cols == Y.cols, "The amount of columns of the input matrices are not equal." );
+		Utils.ASSERT( this.rows == X.rows && this.cols == Y.rows, "The input matrices are not the correct size." );
+		Utils.ASSERT( X instanceof MatrixCPU && Y instanceof MatrixCPU, "The input matrix is not of the correct type." );
+
+		final float[] x = X.matrix;
+		final float[] y = Y.matrix;
+		final float[] c = this.matrix;
+		final int b = X.cols;
+		final int m = this.cols;
+
+		final int threads = MatrixCPU.getThreads( this.rows, (long) this.rows * m * b );
+
+		if ( threads <= 1 ) {
+			MatrixMultiplication.addMultiplyTransposed( x, y, c, scale, b, m, 0, this.rows );
+			return;
+		}
+
+		MatrixCPU.runInBands( this.rows, threads, new RowBand() {
+			@Override
+			public void run( final int rowStart, final int rowEnd ) {
+				MatrixMultiplication.addMultiplyTransposed( x, y, c, scale, b, m, rowStart, rowEnd );
+			}
+		} );
+	}
+
+	/**
+	 * Threads worth using for a product over the given rows, 1 if the product
+	 * is small or this is already a heavy load thread
+	 */
+	private static int getThreads( final int rows, final long work ) {
+		/* Already on the heavy load pool, waiting on it could dead lock */
+		if ( work < MatrixMultiplication.SINGLE_THREAD_THRESHOLD || ResourceManager.isHeavyLoadThread() ) {
+			return 1;
+		}
+
+		return java.lang.Math.min( ResourceManager.OPTIMAL_NUMBER_OF_THREADS, (rows + MatrixMultiplication.ROW_BLOCK - 1) / MatrixMultiplication.ROW_BLOCK );
+	}
 
+	private static interface RowBand {
+		public void run( final int rowStart, final int rowEnd );
+	}
+
+	/**
+	 * Splits the rows into bands of whole row blocks and runs them on the heavy
+	 * load pool. The blocks are spread evenly, so bands differ by at most one
+	 * block, and the last block may be partial. There must be no more threads
+	 * than row blocks, so no band is empty.
+	 */
+	private static void runInBands( final int rows, final int threads, final RowBand band ) {
 		/* Set up the concurrency objects */
-		final Runnable[] workers = new Runnable[ResourceManager.OPTIMAL_NUMBER_OF_THREADS];
-		final CountDownLatch latch = new CountDownLatch( ResourceManager.OPTIMAL_NUMBER_OF_THREADS );
+		final Runnable[] workers = new Runnable[threads];
+		final CountDownLatch latch = new CountDownLatch( threads );
 
-		/* Threads do work across rows ( iterate through columns ) */
-		final int remainder = this.rows % ResourceManager.OPTIMAL_NUMBER_OF_THREADS;
-		final int rowsPerThread = this.rows / ResourceManager.OPTIMAL_NUMBER_OF_THREADS;
+		final int blocks = (rows + MatrixMultiplication.ROW_BLOCK - 1) / MatrixMultiplication.ROW_BLOCK;
+		Utils.ASSERT( threads <= blocks, "There are more threads than row blocks." );
 
-		for ( int i = 0; i < ResourceManager.OPTIMAL_NUMBER_OF_THREADS; i++ ) {
-			/* Last thread handles remainder */
-			final int rowStartIndex = rowsPerThread * i;
-			final int rowEndIndex = (i + 1) != ResourceManager.OPTIMAL_NUMBER_OF_THREADS ? rowsPerThread * (i + 1) : rowsPerThread * (i + 1) + remainder;
+		for ( int i = 0; i < threads; i++ ) {
+			final int rowStartIndex = (int) ((long) blocks * i / threads) * MatrixMultiplication.ROW_BLOCK;
+			final int rowEndIndex = java.lang.Math.min( rows, (int) ((long) blocks * (i + 1) / threads) * MatrixMultiplication.ROW_BLOCK );
 
 			workers[i] = new Runnable() {
 				@Override
 				public void run() {
 					try {
-						for ( int i = rowStartIndex; i < rowEndIndex; i++ ) {
-							final int in = i * MatrixCPU.this.cols;
-
-							for ( int j = 0; j < B.cols; j++ ) {
-								float sum = 0;
-
-								for ( int k = 0; k < B.rows; k++ ) {
-									final int iB = k * B.cols + j;
-									final int iA = in + k;
-									sum += MatrixCPU.this.matrix[iA] * B.matrix[iB];
-								}
-
-								C.matrix[i * B.cols + j] = sum;
-							}
-						}
+						band.run( rowStartIndex, rowEndIndex );
 					}
 					catch ( final Throwable t ) {
 
@@ -97,8 +233,6 @@ public class MatrixCPU extends Matrix {
 		catch ( final InterruptedException e ) {
 			throw new RuntimeException( e );
 		}
-
-		return C;
 	}
 
 	@Override
@@ -274,6 +408,115 @@ public class MatrixCPU extends Matrix {
 		return C;
 	}
 
+	/**
+	 * C = this - B, written into C. C can be one of the inputs.
+	 *
+	 * @param B
+	 * @param C
+	 */
+	public void subtract( final Matrix B, final Matrix C ) {
+		/* Must make sure the matrices are fit for computations */
+		this.assertResources();
+		B.assertResources();
+		C.assertResources();
+
+		/* Check the matrices */
+		Utils.ASSERT( this.rows == B.rows && this.rows == C.rows, "The amount of rows are not equal." );
+		Utils.ASSERT( this.cols == B.cols && this.cols == C.cols, "The amount of columns are not equal." );
+		Utils.ASSERT( B instanceof MatrixCPU && C instanceof MatrixCPU, "The input matrix is not of the correct type." );
+
+		final float[] a = this.matrix;
+		final float[] b = B.matrix;
+		final float[] c = C.matrix;
+
+		for ( int i = 0, len = a.length; i < len; i++ ) {
+			c[i] = a[i] - b[i];
+		}
+	}
+
+	/**
+	 * C = this + B, written into C. C can be one of the inputs.
+	 *
+	 * @param B
+	 * @param C
+	 */
+	public void add( final Matrix B, final Matrix C ) {
+		/* Must make sure the matrices are fit for computations */
+		this.assertResources();
+		B.assertResources();
+		C.assertResources();
+
+		/* Check the matrices */
+		Utils.ASSERT( this.rows == B.rows && this.rows == C.rows, "The amount of rows are not equal." );
+		Utils.ASSERT( this.cols == B.cols && this.cols == C.cols, "The amount of columns are not equal." );
+		Utils.ASSERT( B instanceof MatrixCPU && C instanceof MatrixCPU, "The input matrix is not of the correct type." );
+
+		final float[] a = this.matrix;
+		final float[] b = B.matrix;
+		final float[] c = C.matrix;
+
+		for ( int i = 0, len = a.length; i < len; i++ ) {
+			c[i] = a[i] + b[i];
+		}
+	}
+
+	/**
+	 * this += B * scale, in place
+	 *
+	 * @param scale
+	 * @param B
+	 */
+	public void addMultiplied( final float scale, final Matrix B ) {
+		/* Must make sure the matrices are fit for computations */
+		this.assertResources();
+		B.assertResources();
+
+		/* Check the matrices */
+		Utils.ASSERT( this.rows == B.rows, "The amount of rows are not equal." );
+		Utils.ASSERT( this.cols == B.cols, "The amount of columns are not equal." );
+		Utils.ASSERT( B instanceof MatrixCPU, "The input matrix is not of the correct type." );
+
+		final float[] a = this.matrix;
+		final float[] b = B.matrix;
+
+		for ( int i = 0, len = a.length; i < len; i++ ) {
+			a[i] += b[i] * scale;
+		}
+	}
+
+	/**
+	 * Copies the columns of A starting at fromCol into this, as many as this
+	 * has
+	 *
+	 * @param A
+	 * @param fromCol
+	 */
+	public void copyColumns( final Matrix A, final int fromCol ) {
+		/* Must make sure the matrices are fit for computations */
+		this.assertResources();
+		A.assertResources();
+
+		Utils.ASSERT( this.rows == A.rows, "The amount of rows are not equal." );
+		Utils.ASSERT( fromCol >= 0 && fromCol + this.cols <= A.cols, "The columns are out of the bounds of the input matrix." );
+		Utils.ASSERT( A instanceof MatrixCPU, "The input matrix is not of the correct type." );
+
+		for ( int r = 0; r < this.rows; r++ ) {
+			System.arraycopy( A.matrix, r * A.cols + fromCol, this.matrix, r * this.cols, this.cols );
+		}
+	}
+
+	/**
+	 * Sets every element to val
+	 *
+	 * @param val
+	 */
+	public void fill( final float val ) {
+		/* Must make sure this matrix is fit for computations */
+		this.assertResources();
+
+		Arrays.fill( this.matrix, val );
+	}
+
 	@Override
 	public Matrix multiply( final Matrix B ) {
 		/* Must make sure this matrix is fit for computations */
@@ -547,6 +790,74 @@ public class MatrixCPU extends Matrix {
 		return C;
 	}
 
+	/**
+	 * Applies the sigmoid function to each element, written into C. C can be
+	 * this.
+	 *
+	 * @param C
+	 */
+	public void applySigmoid( final Matrix C ) {
+		/* Must make sure the matrices are fit for computations */
+		this.assertResources();
+		C.assertResources();
+
+		Utils.ASSERT( this.rows == C.rows && this.cols == C.cols, "The output matrix is not the correct size." );
+		Utils.ASSERT( C instanceof MatrixCPU, "The output matrix is not of the correct type." );
+
+		final float[] a = this.matrix;
+		final float[] c = C.matrix;
+
+		for ( int i = 0, len = a.length; i < len; i++ ) {
+			c[i] = (float) (1.0 / (1.0 + java.lang.Math.pow( java.lang.Math.E, -1.0 * a[i] )));
+		}
+	}
+
+	/**
+	 * Treating this as the error of a sigmoid output, C = (1 - output) * (this
+	 * * output), the gradient used by back propagation. C can be this.
+	 *
+	 * @param output
+	 *            - Output of the sigmoid function
+	 * @param C
+	 */
+	public void sigmoidGradient( final Matrix output, final Matrix C ) {
+		/* Must make sure the matrices are fit for computations */
+		this.assertResources();
+		output.assertResources();
+		C.assertResources();
+
+		/* Check the matrices */
+		Utils.ASSERT( this.rows == output.rows && this.rows == C.rows, "The amount of rows are not equal." );
+		Utils.ASSERT( this.cols == output.cols && this.cols == C.cols, "The amount of columns are not equal." );
+		Utils.ASSERT( output instanceof MatrixCPU && C instanceof MatrixCPU, "The input matrix is not of the correct type." );
+
+		final float[] e = this.matrix;
+		final float[] o = output.matrix;
+		final float[] c = C.matrix;
+
+		for ( int i = 0, len = e.length; i < len; i++ ) {
+			c[i] = (1 - o[i]) * (e[i] * o[i]);
+		}
+	}
+
+	@Override
+	public void copyFrom( final FloatBuffer src ) {
+		/* Must make sure this matrix is fit for computations */
+		this.assertResources();
+
+		Utils.ASSERT( src.remaining() >= this.matrix.length, "The buffer does not have enough elements." );
+		src.get( this.matrix );
+	}
+
+	@Override
+	public void copyTo( final FloatBuffer dst ) {
+		/* Must make sure this matrix is fit for computations */
+		this.assertResources();
+
+		Utils.ASSERT( dst.remaining() >= this.matrix.length, "The buffer does not have room for the elements." );
+		dst.put( this.matrix );
+	}
+
 	@Override
 	public void free() {
 		if ( !this.isFreed ) {
@@ -0,0 +1,297 @@
+package coin.trader.math;
+
+import java.util.Arrays;
+
+/**
+ * Matrix multiplication kernels for row major float arrays. For A . B, rows
+ * of C are computed in bands of {@link #ROW_BLOCK} rows, and every row of B that is
+ * loaded is used for all of them, with the innermost loop running along a row
+ * of B and C so the JIT can vectorize it. K and the columns of B are blocked
+ * so the panel of B being used stays in cache, panels of wide matrices are
+ * packed into a contiguous buffer first.
+ *
+ * Every element of C still adds up its products in order of k, so the results
+ * are exactly the same as the straightforward i-j-k loop.
+ *
+ * @author Evan
+ *
+ */
+final class MatrixMultiplication {
+	/** Multiply-adds below which splitting the work up costs more than it saves */
+	static final long SINGLE_THREAD_THRESHOLD = 1L << 18;
+
+	/** Rows of A that share each loaded row of B */
+	static final int ROW_BLOCK = 4;
+
+	/* 128 x 512 floats, 256KB of B per panel */
+	private static final int K_BLOCK = 128;
+	private static final int COL_BLOCK = 512;
+
+	private static final ThreadLocal<float[]> PANELS = new ThreadLocal<float[]>() {
+		@Override
+		protected float[] initialValue() {
+			return new float[MatrixMultiplication.K_BLOCK * MatrixMultiplication.COL_BLOCK];
+		}
+	};
+
+	/* Grown as needed */
+	private static final ThreadLocal<float[]> TRANSPOSED = new ThreadLocal<float[]>() {
+		@Override
+		protected float[] initialValue() {
+			return new float[0];
+		}
+	};
+	private static final ThreadLocal<float[]> SUMS = new ThreadLocal<float[]>() {
+		@Override
+		protected float[] initialValue() {
+			return new float[0];
+		}
+	};
+
+	private MatrixMultiplication() {
+	}
+
+	/**
+	 * C = A . B for the rows of C from rowStart to rowEnd, C must be zeroed.
+	 *
+	 * @param n
+	 *            - Columns of A and rows of B
+	 * @param m
+	 *            - Columns of B and C
+	 * @param rowStart
+	 *            - inclusive
+	 * @param rowEnd
+	 *            - exclusive
+	 */
+	static void multiply( final float[] A, final float[] B, final float[] C, final int n, final int m, final int rowStart, final int rowEnd ) {
+		if ( m == 1 ) {
+			MatrixMultiplication.multiplyVector( A, B, C, n, rowStart, rowEnd );
+			return;
+		}
+
+		for ( int kk = 0; kk < n; kk += MatrixMultiplication.K_BLOCK ) {
+			final int kEnd = java.lang.Math.min( n, kk + MatrixMultiplication.K_BLOCK );
+
+			for ( int jj = 0; jj < m; jj += MatrixMultiplication.COL_BLOCK ) {
+				final int width = java.lang.Math.min( m, jj + MatrixMultiplication.COL_BLOCK ) - jj;
+
+				/* Narrow matrices already have their panel in one piece */
+				final float[] panel;
+				final int panelOffset;
+				final int panelStride;
+
+				if ( width == m ) {
+					panel = B;
+					panelOffset = kk * m;
+					panelStride = m;
+				}
+				else {
+					panel = MatrixMultiplication.PANELS.get();
+					panelOffset = 0;
+					panelStride = width;
+
+					for ( int k = kk; k < kEnd; k++ ) {
+						System.arraycopy( B, k * m + jj, panel, (k - kk) * width, width );
+					}
+				}
+
+				MatrixMultiplication.multiplyPanel( A, panel, panelOffset, panelStride, C, n, m, kk, kEnd, jj, width, rowStart, rowEnd );
+			}
+		}
+	}
+
+	private static void multiplyPanel( final float[] A, final float[] panel, final int panelOffset, final int panelStride, final float[] C, final int n, final int m,
+			final int kStart, final int kEnd, final int colStart, final int width, final int rowStart, final int rowEnd ) {
+		int i = rowStart;
+
+		for ( ; i + MatrixMultiplication.ROW_BLOCK <= rowEnd; i += MatrixMultiplication.ROW_BLOCK ) {
+			final int a0 = i * n;
+			final int a1 = a0 + n;
+			final int a2 = a1 + n;
+			final int a3 = a2 + n;
+			final int c0 = i * m + colStart;
+			final int c1 = c0 + m;
+			final int c2 = c1 + m;
+			final int c3 = c2 + m;
+
+			for ( int k = kStart; k < kEnd; k++ ) {
+				final float x0 = A[a0 + k];
+				final float x1 = A[a1 + k];
+				final float x2 = A[a2 + k];
+				final float x3 = A[a3 + k];
+				final int p = panelOffset + (k - kStart) * panelStride;
+
+				for ( int j = 0; j < width; j++ ) {
+					final float b = panel[p + j];
+					C[c0 + j] += x0 * b;
+					C[c1 + j] += x1 * b;
+					C[c2 + j] += x2 * b;
+					C[c3 + j] += x3 * b;
+				}
+			}
+		}
+
+		/* Remaining rows one at a time */
+		for ( ; i < rowEnd; i++ ) {
+			final int a = i * n;
+			final int c = i * m + colStart;
+
+			for ( int k = kStart; k < kEnd; k++ ) {
+				final float x = A[a + k];
+				final int p = panelOffset + (k - kStart) * panelStride;
+
+				for ( int j = 0; j < width; j++ ) {
+					C[c + j] += x * panel[p + j];
+				}
+			}
+		}
+	}
+
+	/**
+	 * C = A^T . B for the rows of C from rowStart to rowEnd, without
+	 * transposing A, C must be zeroed. A row of A is a column of A^T, so the
+	 * loops run along rows of A and C.
+	 *
+	 * @param k
+	 *            - Rows of A and B
+	 * @param n
+	 *            - Columns of A and rows of C
+	 * @param m
+	 *            - Columns of B and C
+	 */
+	static void multiplyTransposed( final float[] A, final float[] B, final float[] C, final int k, final int n, final int m, final int rowStart, final int rowEnd ) {
+		for ( int kk = 0; kk < k; kk++ ) {
+			final int a = kk * n;
+			final int b = kk * m;
+
+			if ( m == 1 ) {
+				final float x = B[kk];
+
+				for ( int i = rowStart; i < rowEnd; i++ ) {
+					C[i] += A[a + i] * x;
+				}
+			}
+			else {
+				for ( int i = rowStart; i < rowEnd; i++ ) {
+					final float x = A[a + i];
+					final int c = i * m;
+
+					for ( int j = 0; j < m; j++ ) {
+						C[c + j] += x * B[b + j];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * C += (X . Y^T) * scale for the rows of C from rowStart to rowEnd,
+	 * without transposing Y. With a single column this is the outer product
+	 * of two vectors.
+	 *
+	 * @param b
+	 *            - Columns of X and Y
+	 * @param m
+	 *            - Rows of Y and columns of C
+	 */
+	static void addMultiplyTransposed( final float[] X, final float[] Y, final float[] C, final float scale, final int b, final int m, final int rowStart,
+			final int rowEnd ) {
+		/* With more columns, Y^T and a row of sums are kept in scratch buffers so the loops run along rows */
+		final float[] transposed = b == 1 ? null : MatrixMultiplication.getScratch( MatrixMultiplication.TRANSPOSED, b * m );
+		final float[] sums = b == 1 ? null : MatrixMultiplication.getScratch( MatrixMultiplication.SUMS, m );
+
+		if ( b != 1 ) {
+			for ( int j = 0; j < m; j++ ) {
+				for ( int t = 0; t < b; t++ ) {
+					transposed[t * m + j] = Y[j * b + t];
+				}
+			}
+		}
+
+		for ( int i = rowStart; i < rowEnd; i++ ) {
+			final int c = i * m;
+
+			if ( b == 1 ) {
+				final float x = X[i];
+
+				for ( int j = 0; j < m; j++ ) {
+					C[c + j] += (x * Y[j]) * scale;
+				}
+			}
+			else {
+				final int x = i * b;
+
+				/* Add up the products of the row in order of t, then scale them */
+				Arrays.fill( sums, 0, m, 0.0f );
+
+				for ( int t = 0; t < b; t++ ) {
+					final float xt = X[x + t];
+					final int y = t * m;
+
+					for ( int j = 0; j < m; j++ ) {
+						sums[j] += xt * transposed[y + j];
+					}
+				}
+
+				for ( int j = 0; j < m; j++ ) {
+					C[c + j] += sums[j] * scale;
+				}
+			}
+		}
+	}
+
+	static float[] getScratch( final ThreadLocal<float[]> buffer, final int size ) {
+		float[] scratch = buffer.get();
+
+		if ( scratch.length < size ) {
+			scratch = new float[size];
+			buffer.set( scratch );
+		}
+
+		return scratch;
+	}
+
+	/**
+	 * B with a single column, each row of C is a dot product of a row of A
+	 * with B. Rows are done a few at a time so each element of B is loaded
+	 * once for all of them.
+	 */
+	private static void multiplyVector( final float[] A, final float[] B, final float[] C, final int n, final int rowStart, final int rowEnd ) {
+		int i = rowStart;
+
+		for ( ; i + MatrixMultiplication.ROW_BLOCK <= rowEnd; i += MatrixMultiplication.ROW_BLOCK ) {
+			final int a0 = i * n;
+			final int a1 = a0 + n;
+			final int a2 = a1 + n;
+			final int a3 = a2 + n;
+			float sum0 = 0;
+			float sum1 = 0;
+			float sum2 = 0;
+			float sum3 = 0;
+
+			for ( int k = 0; k < n; k++ ) {
+				final float b = B[k];
+				sum0 += A[a0 + k] * b;
+				sum1 += A[a1 + k] * b;
+				sum2 += A[a2 + k] * b;
+				sum3 += A[a3 + k] * b;
+			}
+
+			C[i] = sum0;
+			C[i + 1] = sum1;
+			C[i + 2] = sum2;
+			C[i + 3] = sum3;
+		}
+
+		for ( ; i < rowEnd; i++ ) {
+			final int a = i * n;
+			float sum = 0;
+
+			for ( int k = 0; k < n; k++ ) {
+				sum += A[a + k] * B[k];
+			}
+
+			C[i] = sum;
+		}
+	}
+}
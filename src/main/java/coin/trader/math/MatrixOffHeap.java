@@ -0,0 +1,285 @@
+package coin.trader.math;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import coin.trader.utilities.Utils;
+
+/**
+ * Matrix kept in a direct buffer outside of the heap, so large matrices do not
+ * add to the work of the garbage collector, and native code can use the
+ * buffer without copying it. Elements are stored by row like
+ * {@link MatrixCPU}, and the calculations add up their products in the same
+ * order, so both give the same results.
+ *
+ * The memory is released by {@link #free()} or {@link #close()}, or by the
+ * {@link MatrixArena} the matrix was created from, never by the finalizer.
+ *
+ * @author Evan
+ *
+ */
+public class MatrixOffHeap extends Matrix {
+	/* Grown as needed */
+	private static final ThreadLocal<float[]> LEFT = new ThreadLocal<float[]>() {
+		@Override
+		protected float[] initialValue() {
+			return new float[0];
+		}
+	};
+	private static final ThreadLocal<float[]> RIGHT = new ThreadLocal<float[]>() {
+		@Override
+		protected float[] initialValue() {
+			return new float[0];
+		}
+	};
+	private static final ThreadLocal<float[]> PRODUCT = new ThreadLocal<float[]>() {
+		@Override
+		protected float[] initialValue() {
+			return new float[0];
+		}
+	};
+
+	/* Null when the memory belongs to an arena */
+	private ByteBuffer memory;
+	private FloatBuffer data;
+
+	public MatrixOffHeap( final int rows, final int cols ) {
+		super( rows, cols );
+		this.memory = DirectBuffers.allocate( rows * cols * 4 );
+		this.data = DirectBuffers.align( this.memory, rows * cols * 4 ).asFloatBuffer();
+	}
+
+	MatrixOffHeap( final int rows, final int cols, final FloatBuffer data ) {
+		super( rows, cols );
+		this.memory = null;
+		this.data = data;
+	}
+
+	/**
+	 * @return A view of the elements, stored by row. It must not be used after
+	 *         the matrix is freed.
+	 */
+	public FloatBuffer getBuffer() {
+		/* Must make sure this matrix is fit for computations */
+		this.assertResources();
+
+		return this.data.duplicate();
+	}
+
+	@Override
+	public void set( final int row, final int col, final float val ) {
+		/* Must make sure this matrix is fit for computations */
+		this.assertResources();
+
+		this.data.put( this.cols * row + col, val );
+	}
+
+	@Override
+	public float get( final int row, final int col ) {
+		/* Must make sure this matrix is fit for computations */
+		this.assertResources();
+
+		return this.data.get( this.cols * row + col );
+	}
+
+	private static float[] toScratch( final ThreadLocal<float[]> buffer, final FloatBuffer src, final int length ) {
+		final float[] scratch = MatrixMultiplication.getScratch( buffer, length );
+		src.duplicate().get( scratch, 0, length );
+		return scratch;
+	}
+
+	private static MatrixOffHeap checkElementByElement( final Matrix A, final Matrix B ) {
+		/* Must make sure the matrices are fit for computations */
+		A.assertResources();
+		B.assertResources();
+
+		/* Check the matrices */
+		Utils.ASSERT( A.rows == B.rows, "The amount of rows are not equal." );
+		Utils.ASSERT( A.cols == B.cols, "The amount of columns are not equal." );
+		Utils.ASSERT( B instanceof MatrixOffHeap, "The input matrix is not of the correct type." );
+
+		return (MatrixOffHeap) B;
+	}
+
+	@Override
+	public Matrix dot( final Matrix B ) {
+		/* Must make sure this matrix is fit for computations */
+		this.assertResources();
+		B.assertResources();
+
+		/* Check Matrices */
+		Utils.ASSERT( this.cols == B.rows, "The amount of columns is not equal to the number of rows of the input matrix." );
+		Utils.ASSERT( B instanceof MatrixOffHeap, "The input matrix is not of the correct type." );
+
+		final MatrixOffHeap C = new MatrixOffHeap( this.rows, B.cols );
+		final int n = this.cols;
+		final int m = B.cols;
+
+		/* Bulk copies into scratch arrays, so the blocked kernel of the CPU can be used */
+		final float[] a = MatrixOffHeap.toScratch( MatrixOffHeap.LEFT, this.data, this.rows * n );
+		final float[] b = MatrixOffHeap.toScratch( MatrixOffHeap.RIGHT, ((MatrixOffHeap) B).data, n * m );
+		final float[] c = MatrixMultiplication.getScratch( MatrixOffHeap.PRODUCT, this.rows * m );
+
+		Arrays.fill( c, 0, this.rows * m, 0.0f );
+		MatrixMultiplication.multiply( a, b, c, n, m, 0, this.rows );
+		C.data.duplicate().put( c, 0, this.rows * m );
+
+		return C;
+	}
+
+	@Override
+	public Matrix transpose() {
+		/* Must make sure this matrix is fit for computations */
+		this.assertResources();
+
+		final MatrixOffHeap B = new MatrixOffHeap( this.cols, this.rows );
+
+		for ( int i = 0; i < this.rows; i++ ) {
+			for ( int j = 0; j < this.cols; j++ ) {
+				B.data.put( this.rows * j + i, this.data.get( this.cols * i + j ) );
+			}
+		}
+
+		return B;
+	}
+
+	@Override
+	public Matrix add( final Matrix B ) {
+		final FloatBuffer b = MatrixOffHeap.checkElementByElement( this, B ).data;
+		final MatrixOffHeap C = new MatrixOffHeap( this.rows, this.cols );
+
+		for ( int i = 0, len = this.getNumberOfElements(); i < len; i++ ) {
+			C.data.put( i, this.data.get( i ) + b.get( i ) );
+		}
+
+		return C;
+	}
+
+	@Override
+	public Matrix subtract( final Matrix B ) {
+		final FloatBuffer b = MatrixOffHeap.checkElementByElement( this, B ).data;
+		final MatrixOffHeap C = new MatrixOffHeap( this.rows, this.cols );
+
+		for ( int i = 0, len = this.getNumberOfElements(); i < len; i++ ) {
+			C.data.put( i, this.data.get( i ) - b.get( i ) );
+		}
+
+		return C;
+	}
+
+	@Override
+	public Matrix multiply( final Matrix B ) {
+		final FloatBuffer b = MatrixOffHeap.checkElementByElement( this, B ).data;
+		final MatrixOffHeap C = new MatrixOffHeap( this.rows, this.cols );
+
+		for ( int i = 0, len = this.getNumberOfElements(); i < len; i++ ) {
+			C.data.put( i, this.data.get( i ) * b.get( i ) );
+		}
+
+		return C;
+	}
+
+	@Override
+	public Matrix multiply( final float val ) {
+		/* Must make sure this matrix is fit for computations */
+		this.assertResources();
+
+		final MatrixOffHeap C = new MatrixOffHeap( this.rows, this.cols );
+
+		for ( int i = 0, len = this.getNumberOfElements(); i < len; i++ ) {
+			C.data.put( i, this.data.get( i ) * val );
+		}
+
+		return C;
+	}
+
+	@Override
+	public Matrix constantByElementSubtraction( final float val ) {
+		/* Must make sure this matrix is fit for computations */
+		this.assertResources();
+
+		final MatrixOffHeap C = new MatrixOffHeap( this.rows, this.cols );
+
+		for ( int i = 0, len = this.getNumberOfElements(); i < len; i++ ) {
+			C.data.put( i, val - this.data.get( i ) );
+		}
+
+		return C;
+	}
+
+	@Override
+	public Matrix elementByConstantSubtraction( final float val ) {
+		/* Must make sure this matrix is fit for computations */
+		this.assertResources();
+
+		final MatrixOffHeap C = new MatrixOffHeap( this.rows, this.cols );
+
+		for ( int i = 0, len = this.getNumberOfElements(); i < len; i++ ) {
+			C.data.put( i, this.data.get( i ) - val );
+		}
+
+		return C;
+	}
+
+	@Override
+	public Matrix applySigmoid() {
+		/* Must make sure this matrix is fit for computations */
+		this.assertResources();
+
+		final MatrixOffHeap C = new MatrixOffHeap( this.rows, this.cols );
+
+		for ( int i = 0, len = this.getNumberOfElements(); i < len; i++ ) {
+			C.data.put( i, (float) (1.0 / (1.0 + java.lang.Math.pow( java.lang.Math.E, -1.0 * this.data.get( i ) ))) );
+		}
+
+		return C;
+	}
+
+	@Override
+	public void copyFrom( final FloatBuffer src ) {
+		/* Must make sure this matrix is fit for computations */
+		this.assertResources();
+
+		final int length = this.getNumberOfElements();
+		Utils.ASSERT( src.remaining() >= length, "The buffer does not have enough elements." );
+
+		final FloatBuffer elements = src.duplicate();
+		((Buffer) elements).limit( elements.position() + length );
+		this.getBuffer().put( elements );
+		((Buffer) src).position( src.position() + length );
+	}
+
+	@Override
+	public void copyTo( final FloatBuffer dst ) {
+		/* Must make sure this matrix is fit for computations */
+		this.assertResources();
+
+		Utils.ASSERT( dst.remaining() >= this.getNumberOfElements(), "The buffer does not have room for the elements." );
+		dst.put( this.getBuffer() );
+	}
+
+	@Override
+	public void free() {
+		if ( !this.isFreed ) {
+			this.data = null;
+
+			if ( this.memory != null ) {
+				DirectBuffers.release( this.memory );
+				this.memory = null;
+			}
+
+			this.isFreed = true;
+		}
+	}
+
+	/**
+	 * Off heap matrices must be freed explicitly. The JVM does not register
+	 * objects with an empty finalizer, so these matrices cost the garbage
+	 * collector nothing extra.
+	 */
+	@Override
+	public void finalize() {
+	}
+}
@@ -1,170 +1,322 @@
 package coin.trader.math;
 
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Rolling window of the last samples. The window always holds sampleSize
+ * samples, it starts filled with zeros.
+ *
+ * Every statistic is updated as each sample is added, so adding a sample and
+ * every getter is O(1), except {@link #getPeriodicAverage(int)}. Samples must
+ * only be added by one thread at a time, but any thread can read without
+ * blocking the thread adding samples. Each statistic is published on its own,
+ * so two getters called one after the other may see different samples.
+ *
+ * @author Evan
+ *
+ */
 public class SampleHistory {
-	private final double[] samples;
+	private final int length;
+
+	/* Samples as raw long bits, so readers see each sample whole */
+	private final AtomicLongArray samples;
+	private int oldestSampleIndex = 0;
+	private volatile int newestSampleIndex = 0;
+	private long amountOfSamples = 0;
+
+	/* Running sums, only touched by the thread adding samples */
 	private double sum = 0;
 	private double sumSquared = 0;
-	private double average = 0;
-	private int oldestSampleIndex = 0;
-	private int newestSampleIndex = 0;
-	private final Object LOCK = new Object();
+	private double mean = 0;
+	private double m2 = 0;
+	private double gains = 0;
+	private double losses = 0;
+	private final MonotonicDeque minimums;
+	private final MonotonicDeque maximums;
+
+	/* Published statistics */
+	private volatile double publishedSum = 0;
+	private volatile double publishedSumSquared = 0;
+	private volatile double average = 0;
+	private volatile double standardDeviation = 0;
+	private volatile double rsi;
+	private volatile double newestSample = 0;
+	private volatile double oldestSample = 0;
+	private volatile double delta = 0;
+	private volatile double minimum = 0;
+	private volatile double maximum = 0;
+
+	/* Odd while a sample is being added */
+	private volatile int sequence = 0;
 
 	public SampleHistory( final int sampleSize ) {
-		this.samples = new double[sampleSize];
+		this.length = sampleSize;
+		this.samples = new AtomicLongArray( sampleSize );
+		this.minimums = new MonotonicDeque( sampleSize, false );
+		this.maximums = new MonotonicDeque( sampleSize, true );
+		this.rsi = SampleHistory.rsi( 0, 0, sampleSize );
 	}
 
 	public void addSample( final double sample ) {
-		synchronized ( this.LOCK ) {
-			/* Get the oldest sample */
-			final double oldestSampleValue = this.samples[this.oldestSampleIndex];
+		this.sequence++;
 
-			/* Remove the sample from the sums */
-			this.sum -= oldestSampleValue;
-			this.sumSquared -= oldestSampleValue * oldestSampleValue;
+		/* Get the oldest sample */
+		final double oldestSampleValue = Double.longBitsToDouble( this.samples.get( this.oldestSampleIndex ) );
+		final double previousSampleValue = Double.longBitsToDouble( this.samples.get( this.newestSampleIndex ) );
 
-			/* Add the new sample to the sums */
-			this.sum += sample;
-			this.sumSquared += sample * sample;
-			this.average = this.sum / this.samples.length;
+		/*
+		 * Replace the oldest sample in the sums. LinearRegression subtracts
+		 * these sums from each other, so keep the order of the operations.
+		 */
+		this.sum -= oldestSampleValue;
+		this.sumSquared -= oldestSampleValue * oldestSampleValue;
+		this.sum += sample;
+		this.sumSquared += sample * sample;
 
-			/* Add the new sample to the array */
-			this.samples[this.oldestSampleIndex] = sample;
+		/* Welford's update for replacing a sample in a window of fixed size */
+		final double delta = sample - oldestSampleValue;
+		final double oldMean = this.mean;
+		this.mean += delta / this.length;
+		this.m2 = java.lang.Math.max( 0.0, this.m2 + delta * (sample - this.mean + oldestSampleValue - oldMean) );
 
-			/* Update the oldest index */
-			this.newestSampleIndex = this.oldestSampleIndex;
-			this.oldestSampleIndex = (this.oldestSampleIndex + 1) % this.samples.length;
+		/* Same split as Math.getRSI, values are gains or losses by sign */
+		if ( oldestSampleValue >= 0.0 ) {
+			this.gains -= oldestSampleValue;
 		}
+		else {
+			this.losses -= oldestSampleValue;
+		}
+
+		if ( sample >= 0.0 ) {
+			this.gains += sample;
+		}
+		else {
+			this.losses += sample;
+		}
+
+		/* Add the new sample to the array */
+		this.samples.lazySet( this.oldestSampleIndex, Double.doubleToRawLongBits( sample ) );
+		this.amountOfSamples++;
+		this.minimums.add( this.amountOfSamples, sample );
+		this.maximums.add( this.amountOfSamples, sample );
+
+		/* Update the oldest index */
+		this.newestSampleIndex = this.oldestSampleIndex;
+		this.oldestSampleIndex = (this.oldestSampleIndex + 1) % this.length;
+
+		/* Publish */
+		this.publishedSum = this.sum;
+		this.publishedSumSquared = this.sumSquared;
+		this.average = this.sum / this.length;
+		this.standardDeviation = java.lang.Math.sqrt( this.m2 / this.length );
+		this.rsi = SampleHistory.rsi( this.gains, this.losses, this.length );
+		this.newestSample = sample;
+		this.oldestSample = Double.longBitsToDouble( this.samples.get( this.oldestSampleIndex ) );
+		this.delta = this.length > 1 ? sample - previousSampleValue : 0.0;
+		this.minimum = this.minimums.getFirst();
+		this.maximum = this.maximums.getFirst();
+
+		this.sequence++;
+	}
+
+	private static double rsi( final double gains, final double losses, final int length ) {
+		return (100 - (100.0 / (1 + (gains / length) / (losses / length))));
 	}
 
 	public double getSum() {
-		synchronized ( this.LOCK ) {
-			return this.sum;
-		}
+		return this.publishedSum;
 	}
 
 	public double getSumSquared() {
-		synchronized ( this.LOCK ) {
-			return this.sumSquared;
-		}
+		return this.publishedSumSquared;
 	}
 
 	public double getAverage() {
-		synchronized ( this.LOCK ) {
-			return this.average;
-		}
+		return this.average;
 	}
 
 	public double getRSI() {
-		synchronized ( this.LOCK ) {
-			return Math.getRSI( this.samples );
-		}
+		return this.rsi;
 	}
 
 	/**
 	 * Returns the newest sample
-	 * 
+	 *
 	 * @return
 	 */
 	public double getNewestSample() {
-		synchronized ( this.LOCK ) {
-			return this.samples[this.newestSampleIndex];
-		}
+		return this.newestSample;
 	}
 
 	/**
 	 * Returns the oldest sample
-	 * 
+	 *
 	 * @return
 	 */
 	public double getOldestSample() {
-		synchronized ( this.LOCK ) {
-			return this.samples[this.oldestSampleIndex];
-		}
+		return this.oldestSample;
 	}
 
 	/**
 	 * Returns the difference between the last two samples.
-	 * 
+	 *
 	 * @return
 	 */
 	public double getDelta() {
-		synchronized ( this.LOCK ) {
-			final int secondNewestIndex = (this.oldestSampleIndex + this.samples.length - 2) % this.samples.length;
-			return this.samples[this.newestSampleIndex] - this.samples[secondNewestIndex];
-		}
+		return this.delta;
 	}
 
 	/**
 	 * Returns the standard deviation of the samples
-	 * 
+	 *
 	 * @return
 	 */
 	public double getStandardDeviation() {
-		synchronized ( this.LOCK ) {
-			return Math.standardDeviation( this.samples, this.average );
-		}
+		return this.standardDeviation;
 	}
 
 	/**
 	 * Returns the average sample value as a percent of the oldest sample.
-	 * 
+	 *
 	 * @return
 	 */
 	public double getAverageToOldestRatio() {
-		synchronized ( this.LOCK ) {
-			final double oldest = this.samples[this.oldestSampleIndex];
-			final double rv = this.average / oldest;
-			return Double.isFinite( rv ) ? rv : 0;
-		}
+		final double rv = this.average / this.oldestSample;
+		return Double.isFinite( rv ) ? rv : 0;
 	}
 
 	/**
 	 * Returns the newest sample value as a percent of the average.
-	 * 
+	 *
 	 * @return
 	 */
 	public double getNewestToAverageRatio() {
-		synchronized ( this.LOCK ) {
-			final double newest = this.samples[this.newestSampleIndex];
-			final double rv = newest / this.average;
-			return Double.isFinite( rv ) ? rv : 0;
-		}
+		final double rv = this.newestSample / this.average;
+		return Double.isFinite( rv ) ? rv : 0;
 	}
 
 	/**
 	 * Returns the newest sample value as a percent of the oldest
-	 * 
+	 *
 	 * @return
 	 */
 	public double getNewestToOldestRatio() {
-		synchronized ( this.LOCK ) {
-			final double newest = this.samples[this.newestSampleIndex];
-			final double rv = newest / this.samples[this.oldestSampleIndex];
-			return Double.isFinite( rv ) ? rv : 0;
-		}
+		final double rv = this.newestSample / this.oldestSample;
+		return Double.isFinite( rv ) ? rv : 0;
 	}
 
+	/**
+	 * Averages samplesPerPeriod samples, stepping back samplesPerPeriod
+	 * samples at a time from the newest. The steps wrap around the window, so
+	 * only the samples of one cycle are read.
+	 *
+	 * @param period
+	 * @return
+	 */
 	public double getPeriodicAverage( final int period ) {
-		synchronized ( this.LOCK ) {
-			final int length = this.samples.length;
-			final int samplesPerPeriod = length / period;
-			double average = 0;
-			int index = this.newestSampleIndex;
-
-			for ( int i = 0; i < samplesPerPeriod; i++ ) {
-				average += this.samples[index];
-				index = (index - samplesPerPeriod + length) % length;
+		final int length = this.length;
+		final int samplesPerPeriod = length / period;
+
+		while ( true ) {
+			final int sequence = this.sequence;
+
+			if ( (sequence & 1) == 0 ) {
+				final int cycleLength = samplesPerPeriod == 0 ? 0 : length / SampleHistory.gcd( samplesPerPeriod, length );
+				double cycleSum = 0;
+				double partialSum = 0;
+				final int partialLength = cycleLength == 0 ? 0 : samplesPerPeriod % cycleLength;
+				int index = this.newestSampleIndex;
+
+				for ( int i = 0; i < cycleLength; i++ ) {
+					if ( i == partialLength ) {
+						partialSum = cycleSum;
+					}
+
+					cycleSum += Double.longBitsToDouble( this.samples.get( index ) );
+					index = (index - samplesPerPeriod % length + length) % length;
+				}
+
+				final double average = cycleLength == 0 ? 0 : (samplesPerPeriod / cycleLength) * cycleSum + partialSum;
+
+				/* Only return if no sample was added while reading */
+				if ( this.sequence == sequence ) {
+					return average / samplesPerPeriod;
+				}
 			}
 
-			return average / samplesPerPeriod;
+			Thread.yield();
 		}
 	}
 
+	private static int gcd( final int a, final int b ) {
+		return b == 0 ? a : SampleHistory.gcd( b, a % b );
+	}
+
 	public double getMinimum() {
-		return Math.getMinimum( this.samples );
+		return this.minimum;
 	}
 
 	public double getMaximum() {
-		return Math.getMaximum( this.samples );
+		return this.maximum;
+	}
+
+	/**
+	 * Deque of the samples that can still become the minimum, or maximum, of
+	 * the window. Each sample is added and removed once, so keeping the
+	 * extreme of a sliding window is O(1) per sample.
+	 *
+	 * @author Evan
+	 *
+	 */
+	private static class MonotonicDeque {
+		private final int windowLength;
+		private final boolean maximum;
+		private final long[] sampleNumbers;
+		private final double[] values;
+		private int head = 0;
+		private int size = 0;
+
+		private MonotonicDeque( final int windowLength, final boolean maximum ) {
+			this.windowLength = windowLength;
+			this.maximum = maximum;
+			this.sampleNumbers = new long[windowLength + 1];
+			this.values = new double[windowLength + 1];
+
+			/* The window starts filled with zeros, the newest of them stands for all */
+			this.sampleNumbers[0] = 0;
+			this.values[0] = 0.0;
+			this.size = 1;
+		}
+
+		private void add( final long sampleNumber, final double value ) {
+			final int capacity = this.values.length;
+
+			/* Drop the samples the new one outlasts and beats */
+			while ( this.size > 0 ) {
+				final double last = this.values[(this.head + this.size - 1) % capacity];
+
+				if ( this.maximum ? last <= value : last >= value ) {
+					this.size--;
+				}
+				else {
+					break;
+				}
+			}
+
+			final int tail = (this.head + this.size) % capacity;
+			this.sampleNumbers[tail] = sampleNumber;
+			this.values[tail] = value;
+			this.size++;
+
+			/* Drop the samples that left the window */
+			while ( this.sampleNumbers[this.head] <= sampleNumber - this.windowLength ) {
+				this.head = (this.head + 1) % capacity;
+				this.size--;
+			}
+		}
+
+		private double getFirst() {
+			return this.values[this.head];
+		}
 	}
 }
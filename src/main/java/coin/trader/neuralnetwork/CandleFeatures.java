@@ -0,0 +1,142 @@
+package coin.trader.neuralnetwork;
+
+import java.util.List;
+
+import coin.trader.exchange.ChartData.DataPoint;
+import coin.trader.math.Matrix;
+import coin.trader.utilities.Utils;
+
+/**
+ * Inputs of the neural network for every window of consecutive candles in a
+ * chart, extracted once. Each candle has {@link #FEATURES_PER_CANDLE} features
+ * stored next to each other, and each window has the highest high and the
+ * total volume its features are normalized by, kept while sliding over the
+ * candles. A window is only an offset into the features, so building the
+ * inputs of a window does not look at the candles again, and the features
+ * take memory per candle, not per window. The inputs are normalized while
+ * they are written into the input matrix. The total volume is added up as a
+ * double, so it can differ from a float sum in the last bits.
+ *
+ * @author Evan
+ *
+ */
+public class CandleFeatures {
+	public static final int FEATURES_PER_CANDLE = 10;
+
+	/* Index of the only feature normalized by the volume */
+	private static final int VOLUME_FEATURE = 4;
+
+	private final int windowSize;
+	private final int amountOfWindows;
+	private final double[] features;
+	private final float[] highs;
+	private final double[] volumes;
+
+	public CandleFeatures( final List<? extends DataPoint> candles, final int windowSize ) {
+		this.windowSize = windowSize;
+		this.amountOfWindows = java.lang.Math.max( 0, candles.size() - windowSize + 1 );
+		this.features = new double[candles.size() * CandleFeatures.FEATURES_PER_CANDLE];
+		this.highs = new float[this.amountOfWindows];
+		this.volumes = new double[this.amountOfWindows];
+
+		final double[] candleHighs = new double[candles.size()];
+		final double[] candleVolumes = new double[candles.size()];
+
+		for ( int i = 0, len = candles.size(); i < len; i++ ) {
+			final DataPoint dataPoint = candles.get( i );
+			final int index = i * CandleFeatures.FEATURES_PER_CANDLE;
+			this.features[index] = dataPoint.getHigh();
+			this.features[index + 1] = dataPoint.getLow();
+			this.features[index + 2] = dataPoint.getOpen();
+			this.features[index + 3] = dataPoint.getClose();
+			this.features[index + 4] = dataPoint.getVolume();
+			this.features[index + 5] = dataPoint.getHigh() - dataPoint.getOpen();
+			this.features[index + 6] = dataPoint.getHigh() - dataPoint.getClose();
+			this.features[index + 7] = dataPoint.getHigh() - dataPoint.getLow();
+			this.features[index + 8] = dataPoint.getOpen() - dataPoint.getLow();
+			this.features[index + 9] = dataPoint.getClose() - dataPoint.getLow();
+			candleHighs[i] = dataPoint.getHigh();
+			candleVolumes[i] = dataPoint.getVolume();
+		}
+
+		/*
+		 * Slide over the candles, keeping the candles that can still be the
+		 * highest of a window in a deque, and a running total of the volume
+		 */
+		final int[] deque = new int[windowSize + 1];
+		int head = 0;
+		int size = 0;
+		double volume = 0;
+
+		for ( int i = 0, len = candles.size(); i < len; i++ ) {
+			while ( size > 0 && candleHighs[deque[(head + size - 1) % deque.length]] <= candleHighs[i] ) {
+				size--;
+			}
+
+			deque[(head + size) % deque.length] = i;
+			size++;
+			volume += candleVolumes[i];
+
+			final int window = i - windowSize + 1;
+
+			if ( window >= 0 ) {
+				if ( deque[head] < window ) {
+					head = (head + 1) % deque.length;
+					size--;
+				}
+
+				this.highs[window] = (float) candleHighs[deque[head]];
+				this.volumes[window] = volume;
+				volume -= candleVolumes[window];
+			}
+		}
+	}
+
+	public int getWindowSize() {
+		return this.windowSize;
+	}
+
+	public int getAmountOfWindows() {
+		return this.amountOfWindows;
+	}
+
+	/**
+	 * Writes the normalized inputs of a window into a column of input
+	 *
+	 * @param window
+	 *            - Index of the first candle of the window
+	 * @param input
+	 * @param column
+	 */
+	public void copyWindow( final int window, final Matrix input, final int column ) {
+		final float high = this.highs[window];
+		final float volume = (float) this.volumes[window];
+		final int offset = window * CandleFeatures.FEATURES_PER_CANDLE;
+
+		for ( int i = 0, len = this.windowSize * CandleFeatures.FEATURES_PER_CANDLE; i < len; i++ ) {
+			final float denom = i % CandleFeatures.FEATURES_PER_CANDLE == CandleFeatures.VOLUME_FEATURE ? volume : high;
+			input.set( i, column, CandleFeatures.normalizeValue( this.features[offset + i], denom ) );
+		}
+	}
+
+	/**
+	 * Writes the normalized inputs of consecutive windows into the columns of
+	 * input, one window per column
+	 *
+	 * @param firstWindow
+	 *            - Window of the first column
+	 * @param input
+	 */
+	public void copyWindows( final int firstWindow, final Matrix input ) {
+		Utils.ASSERT( input.getRows() == this.windowSize * CandleFeatures.FEATURES_PER_CANDLE, "The input does not have a row per input of a window." );
+		Utils.ASSERT( firstWindow >= 0 && firstWindow + input.getCols() <= this.amountOfWindows, "There are not enough windows for the columns." );
+
+		for ( int i = 0; i < input.getCols(); i++ ) {
+			this.copyWindow( firstWindow + i, input, i );
+		}
+	}
+
+	private static float normalizeValue( final double val, final float denom ) {
+		return (float) ((val / denom) * 0.98 + 0.01);
+	}
+}
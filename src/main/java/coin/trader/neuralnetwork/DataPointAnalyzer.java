@@ -1,5 +1,7 @@
 package coin.trader.neuralnetwork;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import coin.trader.exchange.ChartData.DataPoint;
@@ -7,7 +9,7 @@ import coin.trader.math.Matrix;
 import coin.trader.utilities.Utils;
 
 public class DataPointAnalyzer {
-	private static final int PARAMS_PER_DATA_POINT = 10;
+	private static final int PARAMS_PER_DATA_POINT = CandleFeatures.FEATURES_PER_CANDLE;
 	private final NeuralNetwork neuralNetwork;
 	private final int numOfDataPoints;
 	private final int numOfInputs;
@@ -21,6 +23,43 @@ public class DataPointAnalyzer {
 		this.numOfDataPoints = numOfDataPoints;
 	}
 
+	private DataPointAnalyzer( final NeuralNetwork neuralNetwork ) {
+		Utils.ASSERT( neuralNetwork.inputNodes % DataPointAnalyzer.PARAMS_PER_DATA_POINT == 0, "The network does not take whole data points." );
+		Utils.ASSERT( neuralNetwork.outputNodes == 2, "The network does not have a buy and a sell output." );
+
+		this.neuralNetwork = neuralNetwork;
+		this.numOfInputs = neuralNetwork.inputNodes;
+		this.numOfOutputs = neuralNetwork.outputNodes;
+		this.numOfDataPoints = this.numOfInputs / DataPointAnalyzer.PARAMS_PER_DATA_POINT;
+	}
+
+	/**
+	 * Loads an analyzer saved with {@link #save(File)}
+	 *
+	 * @see NeuralNetwork#load(File)
+	 */
+	public static DataPointAnalyzer load( final File file ) throws IOException {
+		return new DataPointAnalyzer( NeuralNetwork.load( file ) );
+	}
+
+	/**
+	 * @see NeuralNetwork#save(File)
+	 */
+	public void save( final File file ) throws IOException {
+		this.neuralNetwork.save( file );
+	}
+
+	/**
+	 * @see NeuralNetwork#copy()
+	 */
+	DataPointAnalyzer copy() {
+		return new DataPointAnalyzer( this.neuralNetwork.copy() );
+	}
+
+	public int getNumberOfDataPoints() {
+		return this.numOfDataPoints;
+	}
+
 	public void train( final List<DataPoint> data, final boolean shouldBuy ) {
 		Utils.ASSERT( data.size() == this.numOfDataPoints, "The amount of data points is not equal to the expected amount." );
 
@@ -40,6 +79,41 @@ public class DataPointAnalyzer {
 		this.neuralNetwork.train( input, outputTarget );
 	}
 
+	/**
+	 * Trains on a batch of windows of the features. Window i starts at
+	 * firstWindow + i, and shouldBuy[i] is its target.
+	 *
+	 * @param features
+	 * @param firstWindow
+	 * @param shouldBuy
+	 */
+	public void train( final CandleFeatures features, final int firstWindow, final boolean[] shouldBuy ) {
+		Utils.ASSERT( features.getWindowSize() == this.numOfDataPoints, "The window size of the features is not equal to the expected amount." );
+		Utils.ASSERT( firstWindow + shouldBuy.length <= features.getAmountOfWindows(), "There are not enough windows for the batch." );
+
+		final Matrix input = Matrix.create( this.numOfInputs, shouldBuy.length );
+		final Matrix outputTarget = Matrix.create( 2, shouldBuy.length );
+
+		features.copyWindows( firstWindow, input );
+
+		for ( int i = 0; i < shouldBuy.length; i++ ) {
+			outputTarget.set( 0, i, shouldBuy[i] ? NeuralNetwork.MAX_VALUE : NeuralNetwork.MIN_VALUE );
+			outputTarget.set( 1, i, shouldBuy[i] ? NeuralNetwork.MIN_VALUE : NeuralNetwork.MAX_VALUE );
+		}
+
+		this.neuralNetwork.train( input, outputTarget );
+
+		input.free();
+		outputTarget.free();
+	}
+
+	/**
+	 * @see NeuralNetwork#setDataParallel(boolean)
+	 */
+	public void setDataParallel( final boolean dataParallel ) {
+		this.neuralNetwork.setDataParallel( dataParallel );
+	}
+
 	public boolean query( final List<DataPoint> data ) {
 		Utils.ASSERT( data.size() == this.numOfDataPoints, "The amount of data points is not equal to the expected amount." );
 
@@ -50,41 +124,27 @@ public class DataPointAnalyzer {
 		return output.get( 0, 0 ) > output.get( 1, 0 );
 	}
 
-	private Matrix candlesToMatrix( final List<DataPoint> data ) {
-		Utils.ASSERT( data.size() == this.numOfDataPoints, "The amount of data points is not equal to the expected amount." );
+	public boolean query( final CandleFeatures features, final int window ) {
+		Utils.ASSERT( features.getWindowSize() == this.numOfDataPoints, "The window size of the features is not equal to the expected amount." );
 
 		final Matrix input = Matrix.create( this.numOfInputs, 1 );
+		features.copyWindows( window, input );
 
-		float high = (float) data.get( 0 ).getHigh();
-		float totalVolume = 0.0f;
-
-		for ( int i = 0; i < this.numOfDataPoints; i++ ) {
-			final DataPoint dataPoint = data.get( i );
-			if ( dataPoint.getHigh() > high ) {
-				high = (float) dataPoint.getHigh();
-			}
-			totalVolume += dataPoint.getVolume();
-		}
+		final Matrix output = this.neuralNetwork.query( input );
+		final boolean rv = output.get( 0, 0 ) > output.get( 1, 0 );
 
-		for ( int i = 0; i < this.numOfDataPoints; i++ ) {
-			final int index = i * DataPointAnalyzer.PARAMS_PER_DATA_POINT;
-			final DataPoint dataPoint = data.get( i );
-			input.set( index, 0, DataPointAnalyzer.normalizeValue( dataPoint.getHigh(), high ) );
-			input.set( index + 1, 0, DataPointAnalyzer.normalizeValue( dataPoint.getLow(), high ) );
-			input.set( index + 2, 0, DataPointAnalyzer.normalizeValue( dataPoint.getOpen(), high ) );
-			input.set( index + 3, 0, DataPointAnalyzer.normalizeValue( dataPoint.getClose(), high ) );
-			input.set( index + 4, 0, DataPointAnalyzer.normalizeValue( dataPoint.getVolume(), totalVolume ) );
-			input.set( index + 5, 0, DataPointAnalyzer.normalizeValue( dataPoint.getHigh() - dataPoint.getOpen(), high ) );
-			input.set( index + 6, 0, DataPointAnalyzer.normalizeValue( dataPoint.getHigh() - dataPoint.getClose(), high ) );
-			input.set( index + 7, 0, DataPointAnalyzer.normalizeValue( dataPoint.getHigh() - dataPoint.getLow(), high ) );
-			input.set( index + 8, 0, DataPointAnalyzer.normalizeValue( dataPoint.getOpen() - dataPoint.getLow(), high ) );
-			input.set( index + 9, 0, DataPointAnalyzer.normalizeValue( dataPoint.getClose() - dataPoint.getLow(), high ) );
-		}
+		input.free();
+		output.free();
 
-		return input;
+		return rv;
 	}
 
-	private static float normalizeValue( final double val, final float denom ) {
-		return (float) ((val / denom) * 0.98 + 0.01);
+	private Matrix candlesToMatrix( final List<DataPoint> data ) {
+		Utils.ASSERT( data.size() == this.numOfDataPoints, "The amount of data points is not equal to the expected amount." );
+
+		final Matrix input = Matrix.create( this.numOfInputs, 1 );
+		new CandleFeatures( data, this.numOfDataPoints ).copyWindows( 0, input );
+
+		return input;
 	}
 }
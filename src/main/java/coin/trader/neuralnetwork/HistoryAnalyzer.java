@@ -1,112 +1,172 @@
 package coin.trader.neuralnetwork;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import coin.trader.exchange.ChartData.DataPoint;
 import coin.trader.exchange.CurrencyPair;
 import coin.trader.exchange.Exchange;
 import coin.trader.logger.Logger;
+import coin.trader.storage.CandleCache;
 import coin.trader.utilities.Callback.Return;
+import coin.trader.utilities.Utils;
 
 public class HistoryAnalyzer extends Thread {
 	private static final Logger LOGGER = new Logger( HistoryAnalyzer.class.getSimpleName(), Logger.Level.INFO );
 	private static final int EPOCH = 20000;
 	private final int numOfDataPoints;
-	private final Exchange exchange;
+	private final CandleCache candleCache;
 	private final CurrencyPair currencyPair;
 	private final int period;
+	private final File checkpoint;
+	private int batchSize = 1;
 
 	public HistoryAnalyzer( final Exchange exchange, final CurrencyPair currencyPair, final int numOfDataPoints, final int period ) {
+		this( exchange, currencyPair, numOfDataPoints, period, null );
+	}
+
+	/**
+	 * @param checkpoint
+	 *            - If the file exists the trained network is loaded from it
+	 *            instead of training, otherwise the network is saved to it
+	 *            after training. Can be null.
+	 */
+	public HistoryAnalyzer( final Exchange exchange, final CurrencyPair currencyPair, final int numOfDataPoints, final int period, final File checkpoint ) {
 		this.numOfDataPoints = numOfDataPoints;
-		this.exchange = exchange;
+		this.candleCache = CandleCache.getInstance( exchange );
 		this.period = period;
 		this.currencyPair = currencyPair;
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * Trains on batches of windows instead of one window at a time. The
+	 * weights are updated once per batch with the average gradient, so an
+	 * epoch makes batchSize times fewer updates; the amount of epochs or the
+	 * learning rate has to make up for it. Batches are split between the
+	 * heavy load threads.
+	 *
+	 * @param batchSize
+	 *            - 1 trains one window at a time, which is the default
+	 */
+	public void setBatchSize( final int batchSize ) {
+		Utils.ASSERT( batchSize > 0, "The batch size must be positive." );
+		this.batchSize = batchSize;
 	}
 
 	@Override
 	public void run() {
-		HistoryAnalyzer.LOGGER.info( "Getting chart data..." );
 		/* Get data from a long time ago */
 		final long ts = System.currentTimeMillis() / 1000;
 		final long startT = ts - (60 * 60 * 24 * 90 * 1);
 		final long midT = ts - (60 * 60 * 24 * 30 * 1);
-		this.exchange.getChartData( this.currencyPair, startT, midT, this.period, new Return<List<? extends DataPoint>>() {
-			@Override
-			public void succeeded( final List<? extends DataPoint> chartData ) {
-				HistoryAnalyzer.LOGGER.info( "Chart Data acquired. Training Neural Network..." );
-				final DataPointAnalyzer analyzer = new DataPointAnalyzer( HistoryAnalyzer.this.numOfDataPoints );
 
-				final int lim = chartData.size() - HistoryAnalyzer.this.numOfDataPoints - 1;
+		if ( this.checkpoint != null && this.checkpoint.exists() ) {
+			try {
+				final DataPointAnalyzer analyzer = DataPointAnalyzer.load( this.checkpoint );
+				Utils.ASSERT( analyzer.getNumberOfDataPoints() == this.numOfDataPoints, this.checkpoint + " was trained on a different amount of data points." );
 
-				/*
-				 * Train the neural network EPOCH amount of times with the same
-				 * data
-				 */
-				for ( int e = 0; e < HistoryAnalyzer.EPOCH; e++ ) {
-					HistoryAnalyzer.LOGGER.info( "Training epoch: " + e + " of " + HistoryAnalyzer.EPOCH );
-
-					for ( int i = 0; i < lim; i++ ) {
-						final List<DataPoint> input = new ArrayList<DataPoint>( HistoryAnalyzer.this.numOfDataPoints );
-
-						/* Grab a subset of sequential candles */
-						for ( int j = i; j < i + HistoryAnalyzer.this.numOfDataPoints; j++ ) {
-							input.add( chartData.get( j ) );
-						}
+				HistoryAnalyzer.LOGGER.info( "Neural Network loaded from " + this.checkpoint + ". Getting more chart data." );
+				this.evaluate( analyzer, midT, ts );
+				return;
+			}
+			catch ( final IOException e ) {
+				HistoryAnalyzer.LOGGER.error( "Could not load " + this.checkpoint + ", training instead.", e );
+			}
+		}
 
-						final DataPoint lastDataPoint = chartData.get( i + HistoryAnalyzer.this.numOfDataPoints - 1 );
-						final DataPoint postDataPoint = chartData.get( i + HistoryAnalyzer.this.numOfDataPoints );
+		HistoryAnalyzer.LOGGER.info( "Getting chart data..." );
+		this.candleCache.getChartData( this.currencyPair, startT, midT, this.period, new Return<List<? extends DataPoint>>() {
+			@Override
+			public void succeeded( final List<? extends DataPoint> chartData ) {
+				HistoryAnalyzer.LOGGER.info( "Chart Data acquired. Training Neural Network..." );
+				final DataPointAnalyzer analyzer = HistoryAnalyzer.this.train( chartData );
 
-						/* Train the neural network */
-						analyzer.train( input, lastDataPoint.getLow() < postDataPoint.getLow() );
+				if ( HistoryAnalyzer.this.checkpoint != null ) {
+					try {
+						analyzer.save( HistoryAnalyzer.this.checkpoint );
+						HistoryAnalyzer.LOGGER.info( "Neural Network saved to " + HistoryAnalyzer.this.checkpoint );
+					}
+					catch ( final IOException e ) {
+						HistoryAnalyzer.LOGGER.error( "Could not save " + HistoryAnalyzer.this.checkpoint, e );
 					}
 				}
 
 				HistoryAnalyzer.LOGGER.info( "Neural Network trained. Getting more chart data." );
+				HistoryAnalyzer.this.evaluate( analyzer, midT, ts );
+			}
 
-				HistoryAnalyzer.this.exchange.getChartData( HistoryAnalyzer.this.currencyPair, midT, ts, HistoryAnalyzer.this.period, new Return<List<? extends DataPoint>>() {
-					@Override
-					public void succeeded( final List<? extends DataPoint> chartData ) {
-						HistoryAnalyzer.LOGGER.info( "More chart data acquired. Quering neural network..." );
-						final DataPointAnalyzer analyzer = new DataPointAnalyzer( HistoryAnalyzer.this.numOfDataPoints );
+			@Override
+			public void error( final Throwable t ) {
+				// TODO Auto-generated method stub
 
-						final int lim = chartData.size() - HistoryAnalyzer.this.numOfDataPoints - 1;
+			}
+		} );
+	}
 
-						int correct = 0;
-						int total = 0;
+	private DataPointAnalyzer train( final List<? extends DataPoint> chartData ) {
+		final DataPointAnalyzer analyzer = new DataPointAnalyzer( this.numOfDataPoints );
+		analyzer.setDataParallel( this.batchSize > 1 );
+
+		/* The features of every window are extracted once for all of the epochs */
+		final CandleFeatures features = new CandleFeatures( chartData, this.numOfDataPoints );
+		final int lim = chartData.size() - this.numOfDataPoints - 1;
+
+		/*
+		 * Train the neural network EPOCH amount of times with the same data, in
+		 * batches of windows of sequential candles, one window per batch
+		 * unless a batch size was set
+		 */
+		for ( int e = 0; e < HistoryAnalyzer.EPOCH; e++ ) {
+			HistoryAnalyzer.LOGGER.info( "Training epoch: " + e + " of " + HistoryAnalyzer.EPOCH );
+
+			for ( int i = 0; i < lim; i += this.batchSize ) {
+				final boolean[] shouldBuy = new boolean[java.lang.Math.min( this.batchSize, lim - i )];
+
+				for ( int j = 0; j < shouldBuy.length; j++ ) {
+					final DataPoint lastDataPoint = chartData.get( i + j + this.numOfDataPoints - 1 );
+					final DataPoint postDataPoint = chartData.get( i + j + this.numOfDataPoints );
+					shouldBuy[j] = lastDataPoint.getLow() < postDataPoint.getLow();
+				}
 
-						for ( int i = 0; i < lim; i++ ) {
-							final List<DataPoint> input = new ArrayList<DataPoint>( HistoryAnalyzer.this.numOfDataPoints );
+				/* Train the neural network */
+				analyzer.train( features, i, shouldBuy );
+			}
+		}
 
-							/* Grab a subset of sequential candles */
-							for ( int j = i; j < i + HistoryAnalyzer.this.numOfDataPoints; j++ ) {
-								input.add( chartData.get( j ) );
-							}
+		return analyzer;
+	}
 
-							final DataPoint lastDataPoint = chartData.get( i + HistoryAnalyzer.this.numOfDataPoints - 1 );
-							final DataPoint postDataPoint = chartData.get( i + HistoryAnalyzer.this.numOfDataPoints );
+	private void evaluate( final DataPointAnalyzer analyzer, final long start, final long end ) {
+		this.candleCache.getChartData( this.currencyPair, start, end, this.period, new Return<List<? extends DataPoint>>() {
+			@Override
+			public void succeeded( final List<? extends DataPoint> chartData ) {
+				HistoryAnalyzer.LOGGER.info( "More chart data acquired. Quering neural network..." );
 
-							final boolean shouldBuy = lastDataPoint.getLow() < postDataPoint.getLow();
+				final CandleFeatures features = new CandleFeatures( chartData, HistoryAnalyzer.this.numOfDataPoints );
+				final int lim = chartData.size() - HistoryAnalyzer.this.numOfDataPoints - 1;
 
-							final boolean answer = analyzer.query( input );
+				int correct = 0;
+				int total = 0;
 
-							/* Check the neural networks correctness */
-							total++;
-							if ( shouldBuy == answer ) {
-								correct++;
-							}
-						}
+				for ( int i = 0; i < lim; i++ ) {
+					final DataPoint lastDataPoint = chartData.get( i + HistoryAnalyzer.this.numOfDataPoints - 1 );
+					final DataPoint postDataPoint = chartData.get( i + HistoryAnalyzer.this.numOfDataPoints );
 
-						HistoryAnalyzer.LOGGER.info( "Neural Network Statistics: Correct: " + correct + ", Total: " + total + ", Accuracy: " + (double) correct / (double) total );
-						System.exit( 0 );
-					}
+					final boolean shouldBuy = lastDataPoint.getLow() < postDataPoint.getLow();
 
-					@Override
-					public void error( final Throwable t ) {
-						// TODO Auto-generated method stub
+					final boolean answer = analyzer.query( features, i );
 
+					/* Check the neural networks correctness */
+					total++;
+					if ( shouldBuy == answer ) {
+						correct++;
 					}
-				} );
+				}
+
+				HistoryAnalyzer.LOGGER.info( "Neural Network Statistics: Correct: " + correct + ", Total: " + total + ", Accuracy: " + (double) correct / (double) total );
+				System.exit( 0 );
 			}
 
 			@Override
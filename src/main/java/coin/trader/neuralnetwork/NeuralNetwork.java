@@ -1,6 +1,17 @@
 package coin.trader.neuralnetwork;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import coin.trader.concurrency.ResourceManager;
 import coin.trader.math.Matrix;
+import coin.trader.math.MatrixCPU;
+import coin.trader.math.MatrixOffHeap;
+import coin.trader.utilities.Utils;
 
 /* TODO(EMU): Optimize this */
 public class NeuralNetwork {
@@ -15,25 +26,19 @@ public class NeuralNetwork {
 
 	final Matrix[] layers;
 
-	public NeuralNetwork( final int inputNodes, final int hiddenNodes, final int outputNodes, final int numOfHiddenLayers, final float learningRate ) {
-		this.inputNodes = inputNodes;
-		this.hiddenNodes = hiddenNodes;
-		this.outputNodes = outputNodes;
-		this.learningRate = learningRate;
-		this.numOfHiddenLayers = numOfHiddenLayers;
-
-		this.layers = new Matrix[1 + numOfHiddenLayers];
+	/* Created by the first training step on the CPU */
+	private TrainingWorkspace workspace;
+	private TrainingWorkspace[] shards;
+	private int shardColumns;
+	private boolean dataParallel = false;
 
-		/* Input to first hidden layer */
-		this.layers[0] = Matrix.create( this.hiddenNodes, this.inputNodes );
+	/* Heap copies of off heap layers, and of a batch that is off heap */
+	private MatrixCPU[] heapLayers;
+	private MatrixCPU heapInput;
+	private MatrixCPU heapTarget;
 
-		/* Last hidden to the output layer */
-		this.layers[this.layers.length - 1] = Matrix.create( this.outputNodes, this.hiddenNodes );
-
-		/* Add additional hidden layers */
-		for ( int i = 1; i < numOfHiddenLayers; i++ ) {
-			this.layers[i] = Matrix.create( this.hiddenNodes, this.hiddenNodes );
-		}
+	public NeuralNetwork( final int inputNodes, final int hiddenNodes, final int outputNodes, final int numOfHiddenLayers, final float learningRate ) {
+		this( inputNodes, hiddenNodes, outputNodes, numOfHiddenLayers, learningRate, NeuralNetwork.createLayers( inputNodes, hiddenNodes, outputNodes, numOfHiddenLayers ) );
 
 		/*
 		 * Init the values of the layers, the values are chosen from the range
@@ -52,6 +57,56 @@ public class NeuralNetwork {
 		}
 	}
 
+	NeuralNetwork( final int inputNodes, final int hiddenNodes, final int outputNodes, final int numOfHiddenLayers, final float learningRate, final Matrix[] layers ) {
+		this.inputNodes = inputNodes;
+		this.hiddenNodes = hiddenNodes;
+		this.outputNodes = outputNodes;
+		this.learningRate = learningRate;
+		this.numOfHiddenLayers = numOfHiddenLayers;
+		this.layers = layers;
+	}
+
+	static Matrix[] createLayers( final int inputNodes, final int hiddenNodes, final int outputNodes, final int numOfHiddenLayers ) {
+		final Matrix[] layers = new Matrix[1 + numOfHiddenLayers];
+
+		/* Input to first hidden layer */
+		layers[0] = Matrix.create( hiddenNodes, inputNodes );
+
+		/* Last hidden to the output layer */
+		layers[layers.length - 1] = Matrix.create( outputNodes, hiddenNodes );
+
+		/* Add additional hidden layers */
+		for ( int i = 1; i < numOfHiddenLayers; i++ ) {
+			layers[i] = Matrix.create( hiddenNodes, hiddenNodes );
+		}
+
+		return layers;
+	}
+
+	/**
+	 * Loads a network saved with {@link #save(File)}. The file is memory
+	 * mapped and the weights are copied in bulk, so a trained network is ready
+	 * to be queried as soon as the file is read.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static NeuralNetwork load( final File file ) throws IOException {
+		return NeuralNetworkCheckpoint.load( file );
+	}
+
+	/**
+	 * Saves the shape and the weights of the network, replacing the file
+	 * once it is completely written. Must not be called while training.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save( final File file ) throws IOException {
+		NeuralNetworkCheckpoint.save( this, file );
+	}
+
 	public Matrix query( final Matrix input ) {
 		Matrix A = input;
 
@@ -63,13 +118,268 @@ public class NeuralNetwork {
 		 * final result is the output of the neural network.
 		 */
 		for ( int i = 0, len = this.layers.length; i < len; i++ ) {
-			A = this.layers[i].dot( A ).applySigmoid();
+			final Matrix T = this.layers[i].dot( A );
+
+			/* Off heap and GPU matrices hold memory until they are freed */
+			if ( A != input ) {
+				A.free();
+			}
+
+			A = T.applySigmoid();
+			T.free();
 		}
 
 		return A;
 	}
 
+	/**
+	 * Trains the network on a batch of samples, one per column of input and
+	 * outputTarget. The weights are updated once with the average of the
+	 * gradients of the samples, so a batch of one sample is plain stochastic
+	 * gradient descent.
+	 *
+	 * On the CPU the weights are updated in place using buffers kept between
+	 * calls, so training does not allocate. Off heap layers are trained the
+	 * same way on a copy of the weights on the heap, which is written back to
+	 * them after every step. In data parallel mode the columns
+	 * of a batch are split between the threads of the heavy load pool, and
+	 * their gradients are added up before updating the weights. Training must
+	 * only be done by one thread at a time.
+	 *
+	 * @param input
+	 * @param outputTarget
+	 */
 	public void train( final Matrix input, final Matrix outputTarget ) {
+		Utils.ASSERT( input.getCols() == outputTarget.getCols(), "The input and the target do not have the same amount of samples." );
+
+		if ( input instanceof MatrixCPU && outputTarget instanceof MatrixCPU && this.layers[0] instanceof MatrixCPU ) {
+			this.trainInPlace( this.layers, (MatrixCPU) input, (MatrixCPU) outputTarget );
+		}
+		else if ( NeuralNetwork.isHostMatrix( input ) && NeuralNetwork.isHostMatrix( outputTarget ) && this.layers[0] instanceof MatrixOffHeap ) {
+			this.trainOffHeap( input, outputTarget );
+		}
+		else {
+			this.trainAllocating( input, outputTarget );
+		}
+	}
+
+	private static boolean isHostMatrix( final Matrix A ) {
+		return A instanceof MatrixCPU || A instanceof MatrixOffHeap;
+	}
+
+	private void trainInPlace( final Matrix[] layers, final MatrixCPU input, final MatrixCPU outputTarget ) {
+		final int shards = java.lang.Math.min( ResourceManager.OPTIMAL_NUMBER_OF_THREADS, input.getCols() );
+
+		if ( this.dataParallel && shards > 1 && !ResourceManager.isHeavyLoadThread() ) {
+			this.trainDataParallel( layers, input, outputTarget, shards );
+		}
+		else {
+			this.trainCPU( layers, input, outputTarget );
+		}
+	}
+
+	/**
+	 * Off heap layers are only changed by training, so their heap copies are
+	 * made once and the trained weights are copied back in bulk after each
+	 * step, where queries and checkpoints read them
+	 */
+	private void trainOffHeap( final Matrix input, final Matrix outputTarget ) {
+		if ( this.heapLayers == null ) {
+			this.heapLayers = new MatrixCPU[this.layers.length];
+
+			for ( int i = 0; i < this.layers.length; i++ ) {
+				this.heapLayers[i] = new MatrixCPU( this.layers[i].getRows(), this.layers[i].getCols() );
+				this.heapLayers[i].copyFrom( ((MatrixOffHeap) this.layers[i]).getBuffer() );
+			}
+		}
+
+		final MatrixCPU heapInput;
+		if ( input instanceof MatrixCPU ) {
+			heapInput = (MatrixCPU) input;
+		}
+		else {
+			this.heapInput = NeuralNetwork.reuse( this.heapInput, input );
+			this.heapInput.copyFrom( ((MatrixOffHeap) input).getBuffer() );
+			heapInput = this.heapInput;
+		}
+
+		final MatrixCPU heapTarget;
+		if ( outputTarget instanceof MatrixCPU ) {
+			heapTarget = (MatrixCPU) outputTarget;
+		}
+		else {
+			this.heapTarget = NeuralNetwork.reuse( this.heapTarget, outputTarget );
+			this.heapTarget.copyFrom( ((MatrixOffHeap) outputTarget).getBuffer() );
+			heapTarget = this.heapTarget;
+		}
+
+		this.trainInPlace( this.heapLayers, heapInput, heapTarget );
+
+		for ( int i = 0; i < this.layers.length; i++ ) {
+			this.heapLayers[i].copyTo( ((MatrixOffHeap) this.layers[i]).getBuffer() );
+		}
+	}
+
+	/* The buffer if it has the shape of A, otherwise a new one */
+	private static MatrixCPU reuse( final MatrixCPU buffer, final Matrix A ) {
+		if ( buffer != null && buffer.getRows() == A.getRows() && buffer.getCols() == A.getCols() ) {
+			return buffer;
+		}
+
+		if ( buffer != null ) {
+			buffer.free();
+		}
+
+		return new MatrixCPU( A.getRows(), A.getCols() );
+	}
+
+	/**
+	 * Data parallel mode splits the samples of each batch between the threads
+	 * of the heavy load pool. It only pays off for batches of a few samples
+	 * per thread.
+	 *
+	 * @param dataParallel
+	 */
+	public void setDataParallel( final boolean dataParallel ) {
+		this.dataParallel = dataParallel;
+	}
+
+	private void trainCPU( final Matrix[] layers, final MatrixCPU input, final MatrixCPU outputTarget ) {
+		if ( this.workspace == null || this.workspace.columns != input.getCols() ) {
+			if ( this.workspace != null ) {
+				this.workspace.free();
+			}
+
+			this.workspace = new TrainingWorkspace( layers, input.getCols() );
+		}
+
+		final MatrixCPU[] outputs = this.workspace.outputs;
+		final MatrixCPU[] errors = this.workspace.errors;
+		final float rate = this.learningRate / input.getCols();
+
+		this.backPropagate( layers, input, outputTarget, this.workspace );
+
+		/* Update the weights with the gradient of each layer */
+		for ( int i = layers.length - 1; i >= 0; i-- ) {
+			final MatrixCPU layerInput = i == 0 ? input : outputs[i - 1];
+			((MatrixCPU) layers[i]).addDotTransposed( rate, errors[i], layerInput );
+		}
+	}
+
+	/**
+	 * Queries the network keeping each layers output, then back propagates
+	 * the error. The errors are not needed afterwards, so they are replaced by
+	 * the gradients of the sigmoid outputs.
+	 */
+	private void backPropagate( final Matrix[] layers, final MatrixCPU input, final MatrixCPU outputTarget, final TrainingWorkspace workspace ) {
+		final MatrixCPU[] outputs = workspace.outputs;
+		final MatrixCPU[] errors = workspace.errors;
+		final int last = layers.length - 1;
+
+		/* Query the network */
+		MatrixCPU A = input;
+		for ( int i = 0; i <= last; i++ ) {
+			((MatrixCPU) layers[i]).dot( A, outputs[i] );
+			outputs[i].applySigmoid( outputs[i] );
+			A = outputs[i];
+		}
+
+		/* Calculate error from target, then back propagate it */
+		outputTarget.subtract( outputs[last], errors[last] );
+
+		for ( int i = last - 1; i >= 0; i-- ) {
+			((MatrixCPU) layers[i + 1]).transposeDot( errors[i + 1], errors[i] );
+		}
+
+		for ( int i = last; i >= 0; i-- ) {
+			errors[i].sigmoidGradient( outputs[i], errors[i] );
+		}
+	}
+
+	private void trainDataParallel( final Matrix[] layers, final MatrixCPU input, final MatrixCPU outputTarget, final int shards ) {
+		final int columns = input.getCols();
+
+		if ( this.shards == null || this.shards.length != shards || this.shardColumns != columns ) {
+			this.freeShards();
+			this.shards = new TrainingWorkspace[shards];
+			this.shardColumns = columns;
+
+			/* The first shards take the remainder */
+			for ( int s = 0; s < shards; s++ ) {
+				this.shards[s] = new TrainingWorkspace( layers, columns / shards + (s < columns % shards ? 1 : 0), true );
+			}
+		}
+
+		/* Set up the concurrency objects */
+		final CountDownLatch latch = new CountDownLatch( shards );
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		int fromCol = 0;
+		for ( int s = 0; s < shards; s++ ) {
+			final TrainingWorkspace shard = this.shards[s];
+			final int shardFromCol = fromCol;
+			fromCol += shard.columns;
+
+			ResourceManager.sumbitHeavyRunnable( new Runnable() {
+				@Override
+				public void run() {
+					try {
+						shard.input.copyColumns( input, shardFromCol );
+						shard.target.copyColumns( outputTarget, shardFromCol );
+						NeuralNetwork.this.backPropagate( layers, shard.input, shard.target, shard );
+
+						for ( int i = 0; i < shard.gradients.length; i++ ) {
+							final MatrixCPU layerInput = i == 0 ? shard.input : shard.outputs[i - 1];
+							shard.gradients[i].fill( 0.0f );
+							shard.gradients[i].addDotTransposed( 1.0f, shard.errors[i], layerInput );
+						}
+					}
+					catch ( final Throwable t ) {
+						failure.compareAndSet( null, t );
+					}
+					finally {
+						latch.countDown();
+					}
+				}
+			} );
+		}
+
+		try {
+			latch.await();
+		}
+		catch ( final InterruptedException e ) {
+			throw new RuntimeException( e );
+		}
+
+		if ( failure.get() != null ) {
+			throw new RuntimeException( "Training a shard of the batch failed.", failure.get() );
+		}
+
+		/* Add up the gradients of the shards and update the weights */
+		final float rate = this.learningRate / columns;
+
+		for ( int i = 0; i < layers.length; i++ ) {
+			final MatrixCPU gradient = this.shards[0].gradients[i];
+
+			for ( int s = 1; s < shards; s++ ) {
+				gradient.add( this.shards[s].gradients[i], gradient );
+			}
+
+			((MatrixCPU) layers[i]).addMultiplied( rate, gradient );
+		}
+	}
+
+	private void freeShards() {
+		if ( this.shards != null ) {
+			for ( final TrainingWorkspace shard : this.shards ) {
+				shard.free();
+			}
+
+			this.shards = null;
+		}
+	}
+
+	private void trainAllocating( final Matrix input, final Matrix outputTarget ) {
 		/*
 		 * Each layers input and output needs to be recorded for the back
 		 * propagation of the error later on
@@ -116,7 +426,7 @@ public class NeuralNetwork {
 			final Matrix temp3 = temp1.multiply( temp2 );
 			final Matrix temp4 = layerInput.transpose();
 			final Matrix temp5 = temp3.dot( temp4 );
-			final Matrix temp6 = temp5.multiply( this.learningRate );
+			final Matrix temp6 = temp5.multiply( this.learningRate / input.getCols() );
 
 			this.setLayer( i, this.layers[i].add( temp6 ) );
 
@@ -150,9 +460,56 @@ public class NeuralNetwork {
 		this.layers[i] = A;
 	}
 
+	/**
+	 * @return A network with a copy of the weights, it can be queried while
+	 *         this one keeps training
+	 */
+	NeuralNetwork copy() {
+		final Matrix[] layers = NeuralNetwork.createLayers( this.inputNodes, this.hiddenNodes, this.outputNodes, this.numOfHiddenLayers );
+
+		for ( int i = 0; i < layers.length; i++ ) {
+			final FloatBuffer weights = FloatBuffer.allocate( this.layers[i].getNumberOfElements() );
+			this.layers[i].copyTo( weights );
+			((Buffer) weights).flip();
+			layers[i].copyFrom( weights );
+		}
+
+		return new NeuralNetwork( this.inputNodes, this.hiddenNodes, this.outputNodes, this.numOfHiddenLayers, this.learningRate, layers );
+	}
+
+	public Matrix getLayer( final int i ) {
+		return this.layers[i];
+	}
+
+	public int getNumberOfLayers() {
+		return this.layers.length;
+	}
+
 	public void free() {
 		for ( final Matrix A : this.layers ) {
 			A.free();
 		}
+
+		if ( this.workspace != null ) {
+			this.workspace.free();
+		}
+
+		this.freeShards();
+
+		if ( this.heapLayers != null ) {
+			for ( final MatrixCPU A : this.heapLayers ) {
+				A.free();
+			}
+
+			this.heapLayers = null;
+		}
+
+		if ( this.heapInput != null ) {
+			this.heapInput.free();
+		}
+
+		if ( this.heapTarget != null ) {
+			this.heapTarget.free();
+		}
 	}
 }
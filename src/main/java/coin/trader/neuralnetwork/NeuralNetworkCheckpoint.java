@@ -0,0 +1,194 @@
+package coin.trader.neuralnetwork;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import coin.trader.math.Matrix;
+import coin.trader.utilities.Utils;
+
+/**
+ * Binary checkpoint of the weights of a {@link NeuralNetwork}, so a network
+ * trained once can be queried right away by another process.
+ *
+ * Layout, little endian: a 64 byte header with the shape of the network, the
+ * rows and columns of each layer (8 bytes per layer), then the weights of each
+ * layer by row (4 bytes per weight), the weights start on a 64 byte boundary.
+ *
+ * Loading maps the file and copies the weights in bulk into the layers, so it
+ * costs about as much as reading the file. Saving writes a temporary file next
+ * to the checkpoint and moves it over the checkpoint, so a checkpoint being
+ * loaded is never half written.
+ *
+ * @author Evan
+ *
+ */
+final class NeuralNetworkCheckpoint {
+	static final int MAGIC = 0x4E4E4554;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+
+	private static final int MAGIC_OFFSET = 0;
+	private static final int VERSION_OFFSET = 4;
+	private static final int INPUT_NODES_OFFSET = 8;
+	private static final int HIDDEN_NODES_OFFSET = 12;
+	private static final int OUTPUT_NODES_OFFSET = 16;
+	private static final int HIDDEN_LAYERS_OFFSET = 20;
+	private static final int LEARNING_RATE_OFFSET = 24;
+	private static final int LAYERS_OFFSET = 28;
+
+	private NeuralNetworkCheckpoint() {
+	}
+
+	private static int weightsOffset( final int numberOfLayers ) {
+		final int shapesEnd = NeuralNetworkCheckpoint.HEADER_SIZE + numberOfLayers * 8;
+		return (shapesEnd + NeuralNetworkCheckpoint.HEADER_SIZE - 1) / NeuralNetworkCheckpoint.HEADER_SIZE * NeuralNetworkCheckpoint.HEADER_SIZE;
+	}
+
+	static void save( final NeuralNetwork network, final File file ) throws IOException {
+		final Matrix[] layers = network.layers;
+		final int weightsOffset = NeuralNetworkCheckpoint.weightsOffset( layers.length );
+		long size = weightsOffset;
+
+		for ( final Matrix layer : layers ) {
+			size += (long) layer.getNumberOfElements() * 4;
+		}
+
+		Utils.ASSERT( size <= Integer.MAX_VALUE, "The network is too large for a checkpoint." );
+
+		final ByteBuffer buffer = ByteBuffer.allocate( (int) size ).order( ByteOrder.LITTLE_ENDIAN );
+		buffer.putInt( NeuralNetworkCheckpoint.MAGIC_OFFSET, NeuralNetworkCheckpoint.MAGIC );
+		buffer.putInt( NeuralNetworkCheckpoint.VERSION_OFFSET, NeuralNetworkCheckpoint.VERSION );
+		buffer.putInt( NeuralNetworkCheckpoint.INPUT_NODES_OFFSET, network.inputNodes );
+		buffer.putInt( NeuralNetworkCheckpoint.HIDDEN_NODES_OFFSET, network.hiddenNodes );
+		buffer.putInt( NeuralNetworkCheckpoint.OUTPUT_NODES_OFFSET, network.outputNodes );
+		buffer.putInt( NeuralNetworkCheckpoint.HIDDEN_LAYERS_OFFSET, network.numOfHiddenLayers );
+		buffer.putFloat( NeuralNetworkCheckpoint.LEARNING_RATE_OFFSET, network.learningRate );
+		buffer.putInt( NeuralNetworkCheckpoint.LAYERS_OFFSET, layers.length );
+
+		for ( int i = 0; i < layers.length; i++ ) {
+			buffer.putInt( NeuralNetworkCheckpoint.HEADER_SIZE + i * 8, layers[i].getRows() );
+			buffer.putInt( NeuralNetworkCheckpoint.HEADER_SIZE + i * 8 + 4, layers[i].getCols() );
+		}
+
+		((Buffer) buffer).position( weightsOffset );
+		final FloatBuffer weights = buffer.asFloatBuffer();
+
+		for ( final Matrix layer : layers ) {
+			layer.copyTo( weights );
+		}
+
+		/* Write next to the checkpoint, then replace it */
+		final File parent = file.getAbsoluteFile().getParentFile();
+		final File temp = File.createTempFile( file.getName(), ".tmp", parent );
+
+		try {
+			try ( final RandomAccessFile raf = new RandomAccessFile( temp, "rw" ); final FileChannel channel = raf.getChannel() ) {
+				((Buffer) buffer).clear();
+
+				while ( buffer.hasRemaining() ) {
+					channel.write( buffer );
+				}
+
+				channel.force( true );
+			}
+
+			try {
+				Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			}
+			catch ( final IOException e ) {
+				/* The file system cannot move atomically */
+				Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+			}
+		}
+		finally {
+			temp.delete();
+		}
+	}
+
+	static NeuralNetwork load( final File file ) throws IOException {
+		try ( final RandomAccessFile raf = new RandomAccessFile( file, "r" ); final FileChannel channel = raf.getChannel() ) {
+			if ( channel.size() < NeuralNetworkCheckpoint.HEADER_SIZE ) {
+				throw new IOException( "Unexpected end of checkpoint " + file );
+			}
+
+			final MappedByteBuffer buffer = channel.map( MapMode.READ_ONLY, 0, channel.size() );
+			buffer.order( ByteOrder.LITTLE_ENDIAN );
+
+			if ( buffer.getInt( NeuralNetworkCheckpoint.MAGIC_OFFSET ) != NeuralNetworkCheckpoint.MAGIC ) {
+				throw new IOException( file + " is not a neural network checkpoint." );
+			}
+
+			if ( buffer.getInt( NeuralNetworkCheckpoint.VERSION_OFFSET ) != NeuralNetworkCheckpoint.VERSION ) {
+				throw new IOException( file + " has an unsupported version." );
+			}
+
+			final int inputNodes = buffer.getInt( NeuralNetworkCheckpoint.INPUT_NODES_OFFSET );
+			final int hiddenNodes = buffer.getInt( NeuralNetworkCheckpoint.HIDDEN_NODES_OFFSET );
+			final int outputNodes = buffer.getInt( NeuralNetworkCheckpoint.OUTPUT_NODES_OFFSET );
+			final int numOfHiddenLayers = buffer.getInt( NeuralNetworkCheckpoint.HIDDEN_LAYERS_OFFSET );
+			final float learningRate = buffer.getFloat( NeuralNetworkCheckpoint.LEARNING_RATE_OFFSET );
+			final int numberOfLayers = buffer.getInt( NeuralNetworkCheckpoint.LAYERS_OFFSET );
+
+			if ( inputNodes <= 0 || hiddenNodes <= 0 || outputNodes <= 0 || numOfHiddenLayers <= 0 ) {
+				throw new IOException( file + " has a network without nodes." );
+			}
+
+			if ( numberOfLayers != 1 + numOfHiddenLayers ) {
+				throw new IOException( file + " has the wrong amount of layers." );
+			}
+
+			/* Checked before the offset is computed, so it cannot overflow */
+			if ( numberOfLayers > (channel.size() - NeuralNetworkCheckpoint.HEADER_SIZE) / 8 ) {
+				throw new IOException( "Unexpected end of checkpoint " + file );
+			}
+
+			final int weightsOffset = NeuralNetworkCheckpoint.weightsOffset( numberOfLayers );
+			long size = weightsOffset;
+
+			if ( channel.size() < size ) {
+				throw new IOException( "Unexpected end of checkpoint " + file );
+			}
+
+			for ( int i = 0; i < numberOfLayers; i++ ) {
+				final int rows = buffer.getInt( NeuralNetworkCheckpoint.HEADER_SIZE + i * 8 );
+				final int cols = buffer.getInt( NeuralNetworkCheckpoint.HEADER_SIZE + i * 8 + 4 );
+
+				if ( rows != (i == numberOfLayers - 1 ? outputNodes : hiddenNodes) ) {
+					throw new IOException( file + " has a layer with the wrong amount of rows." );
+				}
+
+				if ( cols != (i == 0 ? inputNodes : hiddenNodes) ) {
+					throw new IOException( file + " has a layer with the wrong amount of columns." );
+				}
+
+				size += (long) rows * cols * 4;
+			}
+
+			if ( channel.size() < size ) {
+				throw new IOException( "Unexpected end of checkpoint " + file );
+			}
+
+			final NeuralNetwork network = new NeuralNetwork( inputNodes, hiddenNodes, outputNodes, numOfHiddenLayers, learningRate,
+					NeuralNetwork.createLayers( inputNodes, hiddenNodes, outputNodes, numOfHiddenLayers ) );
+
+			((Buffer) buffer).position( weightsOffset );
+			final FloatBuffer weights = buffer.asFloatBuffer();
+
+			for ( final Matrix layer : network.layers ) {
+				layer.copyFrom( weights );
+			}
+
+			return network;
+		}
+	}
+}
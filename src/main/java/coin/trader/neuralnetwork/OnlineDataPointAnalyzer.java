@@ -0,0 +1,178 @@
+package coin.trader.neuralnetwork;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import coin.trader.concurrency.ResourceManager;
+import coin.trader.exchange.ChartData.DataPoint;
+import coin.trader.logger.Logger;
+import coin.trader.utilities.Utils;
+
+/**
+ * Keeps training a {@link DataPointAnalyzer} on candles as they close, so the
+ * network follows the market without retraining it from scratch.
+ *
+ * Candles are handed over with {@link #addCandles(List)}, which returns right
+ * away. Training is done on the heavy load pool, one update at a time, and
+ * only on the newest candles handed over, older ones that were not trained on
+ * yet are dropped. Each window of candles whose next candle has closed is
+ * trained on once, for a bounded amount of steps. After each update a copy of
+ * the weights is published, queries only use the published copy, so they never
+ * wait for training and never see half updated weights.
+ *
+ * The newest candle of the candles handed over is still forming, so it is
+ * left out.
+ *
+ * @author Evan
+ *
+ */
+public class OnlineDataPointAnalyzer {
+	private static final Logger LOGGER = new Logger( OnlineDataPointAnalyzer.class.getSimpleName() );
+
+	private final DataPointAnalyzer trainer;
+	private final int numOfDataPoints;
+	private final int stepsPerUpdate;
+	private final int maxWindowsPerUpdate;
+
+	private final AtomicReference<DataPointAnalyzer> published;
+	private final AtomicReference<List<? extends DataPoint>> pending = new AtomicReference<List<? extends DataPoint>>();
+	private final AtomicBoolean scheduled = new AtomicBoolean( false );
+	private final AtomicLong amountOfUpdates = new AtomicLong( 0 );
+
+	/* Only touched by the update being run */
+	private double lastLabeledDate = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * @param analyzer
+	 *            - Trained further, it must not be used by anything else
+	 * @param stepsPerUpdate
+	 *            - Training steps over the new windows of each update
+	 * @param maxWindowsPerUpdate
+	 *            - Only the newest windows are trained on when more candles
+	 *            closed since the last update
+	 */
+	public OnlineDataPointAnalyzer( final DataPointAnalyzer analyzer, final int stepsPerUpdate, final int maxWindowsPerUpdate ) {
+		this.trainer = analyzer;
+		this.numOfDataPoints = analyzer.getNumberOfDataPoints();
+		this.stepsPerUpdate = stepsPerUpdate;
+		this.maxWindowsPerUpdate = maxWindowsPerUpdate;
+		this.published = new AtomicReference<DataPointAnalyzer>( analyzer.copy() );
+	}
+
+	/**
+	 * Hands over the latest candles, ordered by date. Candles that were
+	 * already trained on are skipped, so the same candles can be handed over
+	 * every time new ones are fetched.
+	 *
+	 * @param candles
+	 *            - Must not be changed afterwards
+	 */
+	public void addCandles( final List<? extends DataPoint> candles ) {
+		this.pending.set( candles );
+
+		if ( this.scheduled.compareAndSet( false, true ) ) {
+			ResourceManager.sumbitHeavyRunnable( new Runnable() {
+				@Override
+				public void run() {
+					OnlineDataPointAnalyzer.this.drain();
+				}
+			} );
+		}
+	}
+
+	private void drain() {
+		while ( true ) {
+			final List<? extends DataPoint> candles = this.pending.getAndSet( null );
+
+			if ( candles == null ) {
+				this.scheduled.set( false );
+
+				/* Candles handed over after the check above would be left waiting */
+				if ( this.pending.get() == null || !this.scheduled.compareAndSet( false, true ) ) {
+					return;
+				}
+			}
+			else {
+				try {
+					this.update( candles );
+				}
+				catch ( final Throwable t ) {
+					OnlineDataPointAnalyzer.LOGGER.warn( "Training on the latest candles failed", t );
+				}
+			}
+		}
+	}
+
+	private void update( final List<? extends DataPoint> candles ) {
+		/* Leave out the candle that is still forming */
+		final List<? extends DataPoint> closed = candles.subList( 0, java.lang.Math.max( 0, candles.size() - 1 ) );
+
+		/* Candle c is the next candle of the window that ends right before it */
+		int first = closed.size();
+		while ( first > this.numOfDataPoints && closed.get( first - 1 ).getDate() > this.lastLabeledDate ) {
+			first--;
+		}
+
+		first = java.lang.Math.max( first, closed.size() - this.maxWindowsPerUpdate );
+
+		if ( first >= closed.size() ) {
+			return;
+		}
+
+		final boolean[] shouldBuy = new boolean[closed.size() - first];
+
+		for ( int c = first; c < closed.size(); c++ ) {
+			shouldBuy[c - first] = closed.get( c - 1 ).getLow() < closed.get( c ).getLow();
+		}
+
+		/* Only the candles of the new windows are needed */
+		final int firstCandle = first - this.numOfDataPoints;
+		final CandleFeatures features = new CandleFeatures( closed.subList( firstCandle, closed.size() - 1 ), this.numOfDataPoints );
+
+		for ( int s = 0; s < this.stepsPerUpdate; s++ ) {
+			this.trainer.train( features, 0, shouldBuy );
+		}
+
+		this.lastLabeledDate = closed.get( closed.size() - 1 ).getDate();
+		this.published.set( this.trainer.copy() );
+		this.amountOfUpdates.incrementAndGet();
+	}
+
+	/**
+	 * Queries the published weights with the newest closed candles
+	 *
+	 * @param candles
+	 *            - Ordered by date, the newest candle is still forming
+	 * @return True if the network expects the next candle to have a higher
+	 *         low
+	 */
+	public boolean query( final List<? extends DataPoint> candles ) {
+		final List<? extends DataPoint> closed = candles.subList( 0, java.lang.Math.max( 0, candles.size() - 1 ) );
+		Utils.ASSERT( closed.size() >= this.numOfDataPoints, "There are not enough closed candles for a window." );
+
+		final int firstCandle = java.lang.Math.max( 0, closed.size() - this.numOfDataPoints );
+
+		return this.published.get().query( new CandleFeatures( closed.subList( firstCandle, closed.size() ), this.numOfDataPoints ), 0 );
+	}
+
+	/**
+	 * @return The analyzer with the weights of the last update. It must only
+	 *         be queried.
+	 */
+	public DataPointAnalyzer getAnalyzer() {
+		return this.published.get();
+	}
+
+	public int getNumberOfDataPoints() {
+		return this.numOfDataPoints;
+	}
+
+	/**
+	 * @return The amount of updates that trained on new candles
+	 */
+	public long getAmountOfUpdates() {
+		return this.amountOfUpdates.get();
+	}
+}
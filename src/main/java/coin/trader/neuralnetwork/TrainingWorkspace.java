@@ -0,0 +1,72 @@
+package coin.trader.neuralnetwork;
+
+import coin.trader.math.Matrix;
+import coin.trader.math.MatrixCPU;
+
+/**
+ * Buffers for training a network on the CPU, one output and one error matrix
+ * per layer, each with a column per sample. They are allocated once and
+ * written over by every training step.
+ *
+ * A shard of a data parallel batch also has its own copy of its columns of
+ * the batch, and a gradient per layer to be added up with the other shards.
+ *
+ * @author Evan
+ *
+ */
+final class TrainingWorkspace {
+	final int columns;
+	final MatrixCPU[] outputs;
+	final MatrixCPU[] errors;
+
+	/* Only for shards */
+	final MatrixCPU input;
+	final MatrixCPU target;
+	final MatrixCPU[] gradients;
+
+	TrainingWorkspace( final Matrix[] layers, final int columns ) {
+		this( layers, columns, false );
+	}
+
+	TrainingWorkspace( final Matrix[] layers, final int columns, final boolean shard ) {
+		this.columns = columns;
+		this.outputs = new MatrixCPU[layers.length];
+		this.errors = new MatrixCPU[layers.length];
+
+		for ( int i = 0; i < layers.length; i++ ) {
+			this.outputs[i] = new MatrixCPU( layers[i].getRows(), columns );
+			this.errors[i] = new MatrixCPU( layers[i].getRows(), columns );
+		}
+
+		if ( shard ) {
+			this.input = new MatrixCPU( layers[0].getCols(), columns );
+			this.target = new MatrixCPU( layers[layers.length - 1].getRows(), columns );
+			this.gradients = new MatrixCPU[layers.length];
+
+			for ( int i = 0; i < layers.length; i++ ) {
+				this.gradients[i] = new MatrixCPU( layers[i].getRows(), layers[i].getCols() );
+			}
+		}
+		else {
+			this.input = null;
+			this.target = null;
+			this.gradients = null;
+		}
+	}
+
+	void free() {
+		for ( int i = 0; i < this.outputs.length; i++ ) {
+			this.outputs[i].free();
+			this.errors[i].free();
+		}
+
+		if ( this.gradients != null ) {
+			this.input.free();
+			this.target.free();
+
+			for ( int i = 0; i < this.gradients.length; i++ ) {
+				this.gradients[i].free();
+			}
+		}
+	}
+}
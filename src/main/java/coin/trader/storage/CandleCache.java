@@ -0,0 +1,208 @@
+package coin.trader.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import coin.trader.Info;
+import coin.trader.concurrency.Futures;
+import coin.trader.concurrency.ResourceManager;
+import coin.trader.exchange.ChartData.DataPoint;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.Exchange;
+import coin.trader.logger.Logger;
+import coin.trader.utilities.Callback.Return;
+import coin.trader.utilities.Clock;
+import coin.trader.utilities.Utils;
+
+/**
+ * Caches the chart data of an exchange on disk. Each currency pair and period
+ * is kept in its own {@link CandleSeries} file, and
+ * {@link Exchange#getChartData(CurrencyPair, long, long, int, Return)} is only
+ * asked for the candles that are not stored yet. Most requests end at the
+ * current time, so after the first request only the newest candles are
+ * fetched, and no request is made until a new candle has started.
+ *
+ * @author Evan
+ *
+ */
+public class CandleCache {
+	private static final Logger LOGGER = new Logger( CandleCache.class.getSimpleName() );
+	private static final Map<Exchange, CandleCache> INSTANCES = new HashMap<Exchange, CandleCache>();
+
+	private final Exchange exchange;
+	private final File directory;
+	private final Clock clock;
+	private final Map<String, CandleSeries> series = new HashMap<String, CandleSeries>();
+	private final AtomicLong amountOfRequests = new AtomicLong();
+	private final AtomicLong amountOfHits = new AtomicLong();
+
+	public CandleCache( final Exchange exchange, final File directory ) {
+		this( exchange, directory, Clock.SYSTEM );
+	}
+
+	public CandleCache( final Exchange exchange, final File directory, final Clock clock ) {
+		Utils.ASSERT_Param( exchange != null, "The exchange cannot be null." );
+
+		this.exchange = exchange;
+		this.directory = directory;
+		this.clock = clock;
+	}
+
+	/**
+	 * @return The cache of the exchange stored in the default directory
+	 */
+	public static CandleCache getInstance( final Exchange exchange ) {
+		synchronized ( CandleCache.INSTANCES ) {
+			CandleCache cache = CandleCache.INSTANCES.get( exchange );
+
+			if ( cache == null ) {
+				cache = new CandleCache( exchange, new File( Info.CANDLE_CACHE_PATH + exchange.getName() ) );
+				CandleCache.INSTANCES.put( exchange, cache );
+			}
+
+			return cache;
+		}
+	}
+
+	/**
+	 * Same as
+	 * {@link Exchange#getChartData(CurrencyPair, long, long, int, Return)},
+	 * but served from the cache when possible
+	 *
+	 * @param currencyPair
+	 * @param start
+	 *            - Unix Timestamp in seconds since epoch
+	 * @param end
+	 *            - Unix Timestamp in seconds since epoch
+	 * @param period
+	 *            - in seconds
+	 * @param callback
+	 */
+	public void getChartData( final CurrencyPair currencyPair, final long start, final long end, final int period, final Return<List<? extends DataPoint>> callback ) {
+		final CandleSeries candleSeries;
+
+		try {
+			candleSeries = this.getSeries( currencyPair, period );
+		}
+		catch ( final Throwable t ) {
+			ResourceManager.sumbitLightRunnable( new Runnable() {
+				@Override
+				public void run() {
+					callback.error( t );
+				}
+			} );
+			return;
+		}
+
+		final long fetchStart;
+		final long fetchEnd;
+
+		synchronized ( candleSeries ) {
+			this.amountOfRequests.incrementAndGet();
+
+			if ( candleSeries.isMissingHead( start ) ) {
+				fetchStart = start;
+				fetchEnd = candleSeries.getHeadEnd( end );
+			}
+			else if ( candleSeries.isMissingTail( end, this.clock.currentTimeMillis() / 1000 ) ) {
+				fetchStart = java.lang.Math.max( start, candleSeries.getTailStart() );
+				fetchEnd = end;
+			}
+			else {
+				this.amountOfHits.incrementAndGet();
+				final List<DataPoint> dataPoints = candleSeries.slice( start, end );
+
+				ResourceManager.sumbitLightRunnable( new Runnable() {
+					@Override
+					public void run() {
+						callback.succeeded( dataPoints );
+					}
+				} );
+				return;
+			}
+		}
+
+		CandleCache.LOGGER.trace( "Fetching " + currencyPair + " candles from " + fetchStart + " to " + fetchEnd );
+
+		this.exchange.getChartData( currencyPair, fetchStart, fetchEnd, period, new Return<List<? extends DataPoint>>() {
+			@Override
+			public void succeeded( final List<? extends DataPoint> chartData ) {
+				final List<DataPoint> dataPoints;
+
+				synchronized ( candleSeries ) {
+					final int changedIndex = candleSeries.merge( chartData, fetchStart );
+
+					try {
+						candleSeries.save( changedIndex );
+					}
+					catch ( final IOException e ) {
+						CandleCache.LOGGER.warn( "Failed to save " + currencyPair + " candles", e );
+					}
+
+					dataPoints = candleSeries.slice( start, end );
+				}
+
+				callback.succeeded( dataPoints );
+			}
+
+			@Override
+			public void error( final Throwable t ) {
+				callback.error( t );
+			}
+		} );
+	}
+
+	/**
+	 * Same as
+	 * {@link #getChartData(CurrencyPair, long, long, int, Return)}, but
+	 * returns a future
+	 */
+	public CompletableFuture<List<? extends DataPoint>> getChartDataAsync( final CurrencyPair currencyPair, final long start, final long end, final int period ) {
+		final CompletableFuture<List<? extends DataPoint>> future = new CompletableFuture<List<? extends DataPoint>>();
+		this.getChartData( currencyPair, start, end, period, Futures.complete( future ) );
+		return future;
+	}
+
+	private CandleSeries getSeries( final CurrencyPair currencyPair, final int period ) throws IOException {
+		final String name = currencyPair.getBase().getName() + "_" + currencyPair.getQuote().getName() + "-" + period;
+
+		synchronized ( this.series ) {
+			CandleSeries candleSeries = this.series.get( name );
+
+			if ( candleSeries == null ) {
+				if ( !this.directory.isDirectory() && !this.directory.mkdirs() ) {
+					throw new IOException( "Could not create candle cache directory " + this.directory );
+				}
+
+				candleSeries = CandleSeries.load( new File( this.directory, name + ".candles" ), period );
+				this.series.put( name, candleSeries );
+			}
+
+			return candleSeries;
+		}
+	}
+
+	public Exchange getExchange() {
+		return this.exchange;
+	}
+
+	/**
+	 * @return The amount of chart data requests made to the cache
+	 */
+	public long getAmountOfRequests() {
+		return this.amountOfRequests.get();
+	}
+
+	/**
+	 * @return The amount of requests that were answered without asking the
+	 *         exchange
+	 */
+	public long getAmountOfHits() {
+		return this.amountOfHits.get();
+	}
+}
@@ -0,0 +1,371 @@
+package coin.trader.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+import coin.trader.exchange.ChartData.DataPoint;
+import coin.trader.exchange.DataPointColumns;
+import coin.trader.utilities.Utils;
+
+/**
+ * Candles of a single currency pair and period, kept in memory as one
+ * primitive array per field and mirrored to a file with the same columnar
+ * layout.
+ *
+ * Layout: a 64 byte header followed by the date column (8 bytes per candle)
+ * and the high, low, open, close, volume, quote volume and weighted average
+ * columns (8 bytes per candle each). Every column is allocated for the
+ * capacity in the header so new candles can be written in place, the file is
+ * only rewritten when the capacity grows or older candles are merged in.
+ *
+ * This class is not thread safe, callers synchronize on the series.
+ *
+ * @author Evan
+ *
+ */
+class CandleSeries {
+	static final int MAGIC = 0x43414E44;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+	static final int AMOUNT_OF_COLUMNS = 8;
+
+	private static final int MAGIC_OFFSET = 0;
+	private static final int VERSION_OFFSET = 4;
+	private static final int PERIOD_OFFSET = 8;
+	private static final int CAPACITY_OFFSET = 12;
+	private static final int COUNT_OFFSET = 16;
+	private static final int COVERED_FROM_OFFSET = 24;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final File file;
+	private final int period;
+	private long[] dates;
+	private double[] highs;
+	private double[] lows;
+	private double[] opens;
+	private double[] closes;
+	private double[] volumes;
+	private double[] quoteVolumes;
+	private double[] weightedAverages;
+	private int count = 0;
+	private int fileCapacity = 0;
+
+	/* Earliest start that has been requested from the exchange */
+	private long coveredFrom = Long.MAX_VALUE;
+
+	private CandleSeries( final File file, final int period, final int capacity ) {
+		this.file = file;
+		this.period = period;
+		this.allocate( capacity );
+	}
+
+	private void allocate( final int capacity ) {
+		this.dates = new long[capacity];
+		this.highs = new double[capacity];
+		this.lows = new double[capacity];
+		this.opens = new double[capacity];
+		this.closes = new double[capacity];
+		this.volumes = new double[capacity];
+		this.quoteVolumes = new double[capacity];
+		this.weightedAverages = new double[capacity];
+	}
+
+	private int getCapacity() {
+		return this.dates.length;
+	}
+
+	private static long columnOffset( final int capacity, final int column ) {
+		return CandleSeries.HEADER_SIZE + (long) column * capacity * 8;
+	}
+
+	/**
+	 * Reads the series from the file, or creates an empty one if the file does
+	 * not exist yet
+	 */
+	static CandleSeries load( final File file, final int period ) throws IOException {
+		if ( !file.exists() ) {
+			return new CandleSeries( file, period, CandleSeries.INITIAL_CAPACITY );
+		}
+
+		try ( final RandomAccessFile raf = new RandomAccessFile( file, "r" ); final FileChannel channel = raf.getChannel() ) {
+			final ByteBuffer header = CandleSeries.readFully( channel, 0, CandleSeries.HEADER_SIZE );
+
+			Utils.ASSERT( header.getInt( CandleSeries.MAGIC_OFFSET ) == CandleSeries.MAGIC, file + " is not a candle file." );
+			Utils.ASSERT( header.getInt( CandleSeries.VERSION_OFFSET ) == CandleSeries.VERSION, file + " has an unsupported version." );
+			Utils.ASSERT( header.getInt( CandleSeries.PERIOD_OFFSET ) == period, file + " has a different period." );
+
+			final int capacity = header.getInt( CandleSeries.CAPACITY_OFFSET );
+			final int count = header.getInt( CandleSeries.COUNT_OFFSET );
+			final CandleSeries series = new CandleSeries( file, period, capacity );
+
+			series.count = count;
+			series.fileCapacity = capacity;
+			series.coveredFrom = header.getLong( CandleSeries.COVERED_FROM_OFFSET );
+
+			CandleSeries.readFully( channel, CandleSeries.columnOffset( capacity, 0 ), count * 8 ).asLongBuffer().get( series.dates, 0, count );
+			final double[][] columns = series.getDoubleColumns();
+			for ( int i = 0; i < columns.length; i++ ) {
+				CandleSeries.readFully( channel, CandleSeries.columnOffset( capacity, i + 1 ), count * 8 ).asDoubleBuffer().get( columns[i], 0, count );
+			}
+
+			return series;
+		}
+	}
+
+	private static ByteBuffer readFully( final FileChannel channel, final long position, final int length ) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate( length ).order( ByteOrder.nativeOrder() );
+
+		while ( buffer.hasRemaining() ) {
+			if ( channel.read( buffer, position + buffer.position() ) < 0 ) {
+				throw new IOException( "Unexpected end of candle file" );
+			}
+		}
+
+		buffer.flip();
+		return buffer;
+	}
+
+	private double[][] getDoubleColumns() {
+		return new double[][] { this.highs, this.lows, this.opens, this.closes, this.volumes, this.quoteVolumes, this.weightedAverages };
+	}
+
+	int getPeriod() {
+		return this.period;
+	}
+
+	int size() {
+		return this.count;
+	}
+
+	long getDate( final int index ) {
+		return this.dates[index];
+	}
+
+	/**
+	 * @return True if candles before start have never been requested
+	 */
+	boolean isMissingHead( final long start ) {
+		return start < this.coveredFrom;
+	}
+
+	/**
+	 * Only the range from the earliest requested start onwards is covered, so
+	 * a request for the missing head has to reach it, or the candles between
+	 * the two would be considered covered without being fetched
+	 *
+	 * @param end
+	 *            - Requested end in seconds since epoch
+	 * @return The end to request the missing head up to
+	 */
+	long getHeadEnd( final long end ) {
+		return this.coveredFrom == Long.MAX_VALUE ? end : java.lang.Math.max( end, this.coveredFrom );
+	}
+
+	/**
+	 * The last candle is usually still open, so the tail is only considered
+	 * missing once a candle after it has started.
+	 *
+	 * @param end
+	 *            - Requested end in seconds since epoch
+	 * @param now
+	 *            - Current time in seconds since epoch
+	 */
+	boolean isMissingTail( final long end, final long now ) {
+		return this.count == 0 || java.lang.Math.min( end, now ) >= this.dates[this.count - 1] + this.period;
+	}
+
+	/**
+	 * @return The date to request the tail from. The last stored candle is
+	 *         requested again since it might not have been closed when it was
+	 *         stored. Without candles, everything covered is requested again.
+	 */
+	long getTailStart() {
+		return this.count == 0 ? this.coveredFrom : this.dates[this.count - 1];
+	}
+
+	/**
+	 * Binary search for the first candle at or after the date
+	 */
+	int findIndex( final long date ) {
+		int low = 0;
+		int high = this.count;
+
+		while ( low < high ) {
+			final int mid = (low + high) >>> 1;
+
+			if ( this.dates[mid] < date ) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Merges candles fetched from the exchange. Fetched candles replace any
+	 * stored candles in the range they cover.
+	 *
+	 * @param dataPoints
+	 *            - Candles sorted by date, may be null or empty
+	 * @param requestedStart
+	 *            - Start of the request the candles came from
+	 * @return The index of the first candle that changed
+	 */
+	int merge( final List<? extends DataPoint> dataPoints, final long requestedStart ) {
+		this.coveredFrom = java.lang.Math.min( this.coveredFrom, requestedStart );
+
+		/* Poloniex returns a single candle with a zero date when there is no data */
+		int first = 0;
+		int last = dataPoints == null ? 0 : dataPoints.size();
+		while ( first < last && (long) dataPoints.get( first ).getDate() <= 0 ) {
+			first++;
+		}
+
+		if ( first == last ) {
+			return this.count;
+		}
+
+		final long firstDate = (long) dataPoints.get( first ).getDate();
+		final long lastDate = (long) dataPoints.get( last - 1 ).getDate();
+		final int from = this.findIndex( firstDate );
+		final int to = this.findIndex( lastDate + 1 );
+		final int tail = this.count - to;
+		final int newCount = from + (last - first) + tail;
+
+		if ( newCount > this.getCapacity() ) {
+			int capacity = this.getCapacity();
+			while ( capacity < newCount ) {
+				capacity *= 2;
+			}
+			this.grow( capacity );
+		}
+
+		/* Shift any newer stored candles past the merged range */
+		if ( tail > 0 ) {
+			final int newTo = from + (last - first);
+			System.arraycopy( this.dates, to, this.dates, newTo, tail );
+			for ( final double[] column : this.getDoubleColumns() ) {
+				System.arraycopy( column, to, column, newTo, tail );
+			}
+		}
+
+		if ( dataPoints instanceof DataPointColumns ) {
+			/* Copy column to column without creating a data point per candle */
+			final DataPointColumns columns = (DataPointColumns) dataPoints;
+
+			for ( int i = first; i < last; i++ ) {
+				final int index = from + i - first;
+
+				this.dates[index] = columns.getDate( i );
+				this.highs[index] = columns.getHigh( i );
+				this.lows[index] = columns.getLow( i );
+				this.opens[index] = columns.getOpen( i );
+				this.closes[index] = columns.getClose( i );
+				this.volumes[index] = columns.getVolume( i );
+				this.quoteVolumes[index] = columns.getQuoteVolume( i );
+				this.weightedAverages[index] = columns.getWeightedAverage( i );
+			}
+		}
+		else {
+			for ( int i = first; i < last; i++ ) {
+				final DataPoint dataPoint = dataPoints.get( i );
+				final int index = from + i - first;
+
+				this.dates[index] = (long) dataPoint.getDate();
+				this.highs[index] = dataPoint.getHigh();
+				this.lows[index] = dataPoint.getLow();
+				this.opens[index] = dataPoint.getOpen();
+				this.closes[index] = dataPoint.getClose();
+				this.volumes[index] = dataPoint.getVolume();
+				this.quoteVolumes[index] = dataPoint.getQuoteVolume();
+				this.weightedAverages[index] = dataPoint.getWeightedAverage();
+			}
+		}
+
+		this.count = newCount;
+
+		return from;
+	}
+
+	private void grow( final int capacity ) {
+		this.dates = Arrays.copyOf( this.dates, capacity );
+		this.highs = Arrays.copyOf( this.highs, capacity );
+		this.lows = Arrays.copyOf( this.lows, capacity );
+		this.opens = Arrays.copyOf( this.opens, capacity );
+		this.closes = Arrays.copyOf( this.closes, capacity );
+		this.volumes = Arrays.copyOf( this.volumes, capacity );
+		this.quoteVolumes = Arrays.copyOf( this.quoteVolumes, capacity );
+		this.weightedAverages = Arrays.copyOf( this.weightedAverages, capacity );
+	}
+
+	/**
+	 * Writes the candles from the index onwards and the header. The whole
+	 * file is rewritten if the capacity changed since the last save.
+	 */
+	void save( final int fromIndex ) throws IOException {
+		final int capacity = this.getCapacity();
+		final int from = capacity == this.fileCapacity ? fromIndex : 0;
+		final int length = this.count - from;
+
+		try ( final RandomAccessFile raf = new RandomAccessFile( this.file, "rw" ); final FileChannel channel = raf.getChannel() ) {
+			if ( capacity != this.fileCapacity ) {
+				raf.setLength( CandleSeries.columnOffset( capacity, CandleSeries.AMOUNT_OF_COLUMNS ) );
+			}
+
+			if ( length > 0 ) {
+				final ByteBuffer buffer = ByteBuffer.allocate( length * 8 ).order( ByteOrder.nativeOrder() );
+
+				buffer.asLongBuffer().put( this.dates, from, length );
+				CandleSeries.writeFully( channel, buffer, CandleSeries.columnOffset( capacity, 0 ) + from * 8L );
+
+				final double[][] columns = this.getDoubleColumns();
+				for ( int i = 0; i < columns.length; i++ ) {
+					buffer.clear();
+					buffer.asDoubleBuffer().put( columns[i], from, length );
+					CandleSeries.writeFully( channel, buffer, CandleSeries.columnOffset( capacity, i + 1 ) + from * 8L );
+				}
+			}
+
+			/* Header last so a partial write leaves the old count in place */
+			final ByteBuffer header = ByteBuffer.allocate( CandleSeries.HEADER_SIZE ).order( ByteOrder.nativeOrder() );
+			header.putInt( CandleSeries.MAGIC_OFFSET, CandleSeries.MAGIC );
+			header.putInt( CandleSeries.VERSION_OFFSET, CandleSeries.VERSION );
+			header.putInt( CandleSeries.PERIOD_OFFSET, this.period );
+			header.putInt( CandleSeries.CAPACITY_OFFSET, capacity );
+			header.putInt( CandleSeries.COUNT_OFFSET, this.count );
+			header.putLong( CandleSeries.COVERED_FROM_OFFSET, this.coveredFrom );
+			CandleSeries.writeFully( channel, header, 0 );
+		}
+
+		this.fileCapacity = capacity;
+	}
+
+	private static void writeFully( final FileChannel channel, final ByteBuffer buffer, final long position ) throws IOException {
+		buffer.rewind();
+
+		while ( buffer.hasRemaining() ) {
+			channel.write( buffer, position + buffer.position() );
+		}
+	}
+
+	/**
+	 * Copies the candles between start and end, inclusive, into a list that
+	 * does not change when the series is merged into later
+	 */
+	List<DataPoint> slice( final long start, final long end ) {
+		final int from = this.findIndex( start );
+		final int to = end == Long.MAX_VALUE ? this.count : this.findIndex( end + 1 );
+
+		return DataPointColumns.copyOf( this.dates, this.highs, this.lows, this.opens, this.closes, this.volumes, this.quoteVolumes, this.weightedAverages, from,
+				java.lang.Math.max( from, to ) );
+	}
+}
@@ -0,0 +1,144 @@
+package coin.trader.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import coin.trader.utilities.Utils;
+
+/**
+ * A fixed capacity, memory mapped segment of a {@link TickStore}. Each field
+ * is stored as its own column so scanning one field (like the timestamps for a
+ * seek) only touches the pages of that column.
+ * 
+ * Layout: a 64 byte header followed by the timestamp, last, bid, ask, base
+ * volume and quote volume columns (8 bytes per record each) and the pair id
+ * column (4 bytes per record).
+ * 
+ * @author Evan
+ *
+ */
+class TickSegment {
+	static final int MAGIC = 0x5449434B;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+	static final int RECORD_SIZE = 6 * 8 + 4;
+
+	private static final int MAGIC_OFFSET = 0;
+	private static final int VERSION_OFFSET = 4;
+	private static final int CAPACITY_OFFSET = 8;
+	private static final int COUNT_OFFSET = 12;
+
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+	private final int timestampOffset;
+	private final int lastOffset;
+	private final int bidOffset;
+	private final int askOffset;
+	private final int baseVolumeOffset;
+	private final int quoteVolumeOffset;
+	private final int pairIDOffset;
+	private int count;
+
+	private TickSegment( final MappedByteBuffer buffer, final int capacity, final int count ) {
+		this.buffer = buffer;
+		this.capacity = capacity;
+		this.count = count;
+		this.timestampOffset = TickSegment.HEADER_SIZE;
+		this.lastOffset = this.timestampOffset + capacity * 8;
+		this.bidOffset = this.lastOffset + capacity * 8;
+		this.askOffset = this.bidOffset + capacity * 8;
+		this.baseVolumeOffset = this.askOffset + capacity * 8;
+		this.quoteVolumeOffset = this.baseVolumeOffset + capacity * 8;
+		this.pairIDOffset = this.quoteVolumeOffset + capacity * 8;
+	}
+
+	static long fileSize( final int capacity ) {
+		return TickSegment.HEADER_SIZE + (long) capacity * TickSegment.RECORD_SIZE;
+	}
+
+	/**
+	 * Maps an existing segment file or creates a new empty one
+	 */
+	static TickSegment open( final File file, final int capacity ) throws IOException {
+		final boolean exists = file.exists();
+
+		try ( final RandomAccessFile raf = new RandomAccessFile( file, "rw" ); final FileChannel channel = raf.getChannel() ) {
+			final MappedByteBuffer buffer = channel.map( MapMode.READ_WRITE, 0, TickSegment.fileSize( capacity ) );
+			buffer.order( ByteOrder.nativeOrder() );
+
+			if ( exists ) {
+				Utils.ASSERT( buffer.getInt( TickSegment.MAGIC_OFFSET ) == TickSegment.MAGIC, file + " is not a tick segment." );
+				Utils.ASSERT( buffer.getInt( TickSegment.VERSION_OFFSET ) == TickSegment.VERSION, file + " has an unsupported version." );
+				Utils.ASSERT( buffer.getInt( TickSegment.CAPACITY_OFFSET ) == capacity, file + " has a different capacity than the store." );
+				return new TickSegment( buffer, capacity, buffer.getInt( TickSegment.COUNT_OFFSET ) );
+			}
+			else {
+				buffer.putInt( TickSegment.MAGIC_OFFSET, TickSegment.MAGIC );
+				buffer.putInt( TickSegment.VERSION_OFFSET, TickSegment.VERSION );
+				buffer.putInt( TickSegment.CAPACITY_OFFSET, capacity );
+				buffer.putInt( TickSegment.COUNT_OFFSET, 0 );
+				return new TickSegment( buffer, capacity, 0 );
+			}
+		}
+	}
+
+	boolean isFull() {
+		return this.count == this.capacity;
+	}
+
+	int getCount() {
+		return this.count;
+	}
+
+	void append( final long timestamp, final int pairID, final double last, final double bid, final double ask, final double baseVolume, final double quoteVolume ) {
+		final int i = this.count;
+		this.buffer.putLong( this.timestampOffset + i * 8, timestamp );
+		this.buffer.putDouble( this.lastOffset + i * 8, last );
+		this.buffer.putDouble( this.bidOffset + i * 8, bid );
+		this.buffer.putDouble( this.askOffset + i * 8, ask );
+		this.buffer.putDouble( this.baseVolumeOffset + i * 8, baseVolume );
+		this.buffer.putDouble( this.quoteVolumeOffset + i * 8, quoteVolume );
+		this.buffer.putInt( this.pairIDOffset + i * 4, pairID );
+
+		/* Publish the record after its columns are written */
+		this.count = i + 1;
+		this.buffer.putInt( TickSegment.COUNT_OFFSET, this.count );
+	}
+
+	long getTimestamp( final int i ) {
+		return this.buffer.getLong( this.timestampOffset + i * 8 );
+	}
+
+	double getLast( final int i ) {
+		return this.buffer.getDouble( this.lastOffset + i * 8 );
+	}
+
+	double getBid( final int i ) {
+		return this.buffer.getDouble( this.bidOffset + i * 8 );
+	}
+
+	double getAsk( final int i ) {
+		return this.buffer.getDouble( this.askOffset + i * 8 );
+	}
+
+	double getBaseVolume( final int i ) {
+		return this.buffer.getDouble( this.baseVolumeOffset + i * 8 );
+	}
+
+	double getQuoteVolume( final int i ) {
+		return this.buffer.getDouble( this.quoteVolumeOffset + i * 8 );
+	}
+
+	int getPairID( final int i ) {
+		return this.buffer.getInt( this.pairIDOffset + i * 4 );
+	}
+
+	void flush() {
+		this.buffer.force();
+	}
+}
@@ -0,0 +1,267 @@
+package coin.trader.storage;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import coin.trader.exchange.Currency;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.Ticker;
+import coin.trader.logger.Logger;
+import coin.trader.utilities.Utils;
+
+/**
+ * Append only store of ticker snapshots. Records are fixed width and written
+ * straight into memory mapped {@link TickSegment} files, so recording a
+ * snapshot does not allocate, and the timestamps are kept in order so any
+ * point in time can be found with a binary search.
+ * 
+ * Currency pairs are stored as an integer id. The ids are assigned in the
+ * order pairs are first seen and saved in the pairs file next to the segments.
+ * 
+ * This class is not thread safe, there should be a single writer.
+ * 
+ * @author Evan
+ *
+ */
+public class TickStore implements Closeable {
+	private static final Logger LOGGER = new Logger( TickStore.class.getSimpleName() );
+	public static final int DEFAULT_SEGMENT_CAPACITY = 1 << 18;
+	private static final String PAIRS_FILE_NAME = "pairs.txt";
+	private static final String SEGMENT_FILE_FORMAT = "segment-%08d.ticks";
+
+	private final File directory;
+	private final int segmentCapacity;
+	private final List<TickSegment> segments = new ArrayList<TickSegment>();
+	private final List<CurrencyPair> currencyPairs = new ArrayList<CurrencyPair>();
+	private final Map<CurrencyPair, Integer> currencyPairIDs = new HashMap<CurrencyPair, Integer>( 256 );
+	private long size = 0;
+
+	public TickStore( final File directory ) throws IOException {
+		this( directory, TickStore.DEFAULT_SEGMENT_CAPACITY );
+	}
+
+	public TickStore( final File directory, final int segmentCapacity ) throws IOException {
+		Utils.ASSERT_Param( segmentCapacity > 0 && TickSegment.fileSize( segmentCapacity ) <= Integer.MAX_VALUE, "The segment capacity is out of range." );
+
+		this.directory = directory;
+		this.segmentCapacity = segmentCapacity;
+
+		if ( !directory.isDirectory() && !directory.mkdirs() ) {
+			throw new IOException( "Could not create tick store directory " + directory );
+		}
+
+		this.loadCurrencyPairs();
+		this.loadSegments();
+
+		TickStore.LOGGER.config( "Opened tick store " + directory + " with " + this.size + " records in " + this.segments.size() + " segments" );
+	}
+
+	private void loadCurrencyPairs() throws IOException {
+		final File pairsFile = new File( this.directory, TickStore.PAIRS_FILE_NAME );
+
+		if ( pairsFile.exists() ) {
+			try ( final BufferedReader br = new BufferedReader( new FileReader( pairsFile ) ) ) {
+				String line = br.readLine();
+
+				while ( line != null ) {
+					if ( !line.isEmpty() ) {
+						final String[] split = line.split( " " );
+						final CurrencyPair currencyPair = new CurrencyPair( new Currency( split[0] ), new Currency( split[1] ) );
+						this.currencyPairIDs.put( currencyPair, this.currencyPairs.size() );
+						this.currencyPairs.add( currencyPair );
+					}
+
+					line = br.readLine();
+				}
+			}
+		}
+	}
+
+	private void loadSegments() throws IOException {
+		File segmentFile = this.getSegmentFile( 0 );
+
+		while ( segmentFile.exists() ) {
+			final TickSegment segment = TickSegment.open( segmentFile, this.segmentCapacity );
+			this.segments.add( segment );
+			this.size += segment.getCount();
+
+			/* Only the last segment is allowed to be partially filled */
+			if ( !segment.isFull() ) {
+				break;
+			}
+
+			segmentFile = this.getSegmentFile( this.segments.size() );
+		}
+	}
+
+	private File getSegmentFile( final int segmentIndex ) {
+		return new File( this.directory, String.format( TickStore.SEGMENT_FILE_FORMAT, segmentIndex ) );
+	}
+
+	/**
+	 * Returns the id of the currency pair, assigning a new one if this pair has
+	 * not been recorded before
+	 */
+	public int getCurrencyPairID( final CurrencyPair currencyPair ) throws IOException {
+		final Integer id = this.currencyPairIDs.get( currencyPair );
+
+		if ( id != null ) {
+			return id;
+		}
+
+		final int newID = this.currencyPairs.size();
+		try ( final BufferedWriter bw = new BufferedWriter( new FileWriter( new File( this.directory, TickStore.PAIRS_FILE_NAME ), true ) ) ) {
+			bw.write( currencyPair.getBase().getName() + " " + currencyPair.getQuote().getName() );
+			bw.newLine();
+		}
+
+		this.currencyPairIDs.put( currencyPair, newID );
+		this.currencyPairs.add( currencyPair );
+
+		return newID;
+	}
+
+	public CurrencyPair getCurrencyPair( final int id ) {
+		return this.currencyPairs.get( id );
+	}
+
+	public int getAmountOfCurrencyPairs() {
+		return this.currencyPairs.size();
+	}
+
+	/**
+	 * Records every ticker in the snapshot with the same timestamp
+	 * 
+	 * @param timestamp
+	 *            - Time of the snapshot in milliseconds since epoch, must not
+	 *            be older than the last recorded snapshot
+	 * @param tickers
+	 * @throws IOException
+	 */
+	public void append( final long timestamp, final Map<CurrencyPair, Ticker> tickers ) throws IOException {
+		for ( final Entry<CurrencyPair, Ticker> pair : tickers.entrySet() ) {
+			this.append( timestamp, this.getCurrencyPairID( pair.getKey() ), pair.getValue() );
+		}
+	}
+
+	public void append( final long timestamp, final int currencyPairID, final Ticker ticker ) throws IOException {
+		Utils.ASSERT_Param( this.size == 0 || timestamp >= this.getLastTimestamp(), "Ticks must be appended in time order." );
+
+		TickSegment segment = this.segments.isEmpty() ? null : this.segments.get( this.segments.size() - 1 );
+
+		if ( segment == null || segment.isFull() ) {
+			segment = TickSegment.open( this.getSegmentFile( this.segments.size() ), this.segmentCapacity );
+			this.segments.add( segment );
+		}
+
+		segment.append( timestamp, currencyPairID, ticker.getLast(), ticker.getBid(), ticker.getAsk(), ticker.getBaseVolume(), ticker.getQuoteVolume() );
+		this.size++;
+	}
+
+	/**
+	 * @return The amount of records in the store
+	 */
+	public long size() {
+		return this.size;
+	}
+
+	public long getFirstTimestamp() {
+		return this.getTimestamp( 0 );
+	}
+
+	public long getLastTimestamp() {
+		return this.getTimestamp( this.size - 1 );
+	}
+
+	/**
+	 * Binary search for the first record at or after the timestamp
+	 * 
+	 * @param timestamp
+	 * @return Index of the record, or {@link #size()} if every record is older
+	 */
+	public long findIndex( final long timestamp ) {
+		long low = 0;
+		long high = this.size;
+
+		while ( low < high ) {
+			final long mid = (low + high) >>> 1;
+
+			if ( this.getTimestamp( mid ) < timestamp ) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	public long getTimestamp( final long index ) {
+		return this.getSegment( index ).getTimestamp( this.getSegmentOffset( index ) );
+	}
+
+	public int getCurrencyPairID( final long index ) {
+		return this.getSegment( index ).getPairID( this.getSegmentOffset( index ) );
+	}
+
+	public double getLast( final long index ) {
+		return this.getSegment( index ).getLast( this.getSegmentOffset( index ) );
+	}
+
+	public double getBid( final long index ) {
+		return this.getSegment( index ).getBid( this.getSegmentOffset( index ) );
+	}
+
+	public double getAsk( final long index ) {
+		return this.getSegment( index ).getAsk( this.getSegmentOffset( index ) );
+	}
+
+	public double getBaseVolume( final long index ) {
+		return this.getSegment( index ).getBaseVolume( this.getSegmentOffset( index ) );
+	}
+
+	public double getQuoteVolume( final long index ) {
+		return this.getSegment( index ).getQuoteVolume( this.getSegmentOffset( index ) );
+	}
+
+	private TickSegment getSegment( final long index ) {
+		return this.segments.get( (int) (index / this.segmentCapacity) );
+	}
+
+	private int getSegmentOffset( final long index ) {
+		return (int) (index % this.segmentCapacity);
+	}
+
+	/**
+	 * Creates a feed that replays the store from the first record
+	 */
+	public TickStoreFeed createFeed() {
+		return new TickStoreFeed( this );
+	}
+
+	/**
+	 * Forces the mapped segments to be written to disk
+	 */
+	public void flush() {
+		for ( final TickSegment segment : this.segments ) {
+			segment.flush();
+		}
+	}
+
+	@Override
+	public void close() {
+		this.flush();
+		this.segments.clear();
+	}
+}
@@ -0,0 +1,89 @@
+package coin.trader.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import coin.trader.algorithm.backtest.ReplayTicker;
+import coin.trader.algorithm.backtest.TickerFeed;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.Ticker;
+
+/**
+ * Replays a {@link TickStore}. Records that share a timestamp are grouped back
+ * into the snapshot they were recorded from. The tickers are reused between
+ * snapshots, one per currency pair.
+ * 
+ * @author Evan
+ *
+ */
+public class TickStoreFeed implements TickerFeed {
+	private final TickStore tickStore;
+	private final Map<CurrencyPair, Ticker> tickers = new HashMap<CurrencyPair, Ticker>( 256 );
+	private ReplayTicker[] replayTickers = new ReplayTicker[0];
+	private long index = 0;
+	private long timestamp = 0;
+
+	TickStoreFeed( final TickStore tickStore ) {
+		this.tickStore = tickStore;
+	}
+
+	/**
+	 * Moves the feed so the next snapshot is the first one at or after the
+	 * timestamp
+	 * 
+	 * @param timestamp
+	 *            - milliseconds since epoch
+	 */
+	public void seek( final long timestamp ) {
+		this.index = this.tickStore.findIndex( timestamp );
+	}
+
+	@Override
+	public boolean next() {
+		final long size = this.tickStore.size();
+
+		if ( this.index >= size ) {
+			return false;
+		}
+
+		this.timestamp = this.tickStore.getTimestamp( this.index );
+		this.tickers.clear();
+
+		while ( this.index < size && this.tickStore.getTimestamp( this.index ) == this.timestamp ) {
+			final ReplayTicker ticker = this.getReplayTicker( this.tickStore.getCurrencyPairID( this.index ) );
+			ticker.set( this.tickStore.getLast( this.index ), this.tickStore.getBid( this.index ), this.tickStore.getAsk( this.index ),
+					this.tickStore.getBaseVolume( this.index ), this.tickStore.getQuoteVolume( this.index ) );
+			this.tickers.put( ticker.getCurrencyPair(), ticker );
+			this.index++;
+		}
+
+		return true;
+	}
+
+	private ReplayTicker getReplayTicker( final int currencyPairID ) {
+		if ( currencyPairID >= this.replayTickers.length ) {
+			final ReplayTicker[] replayTickers = new ReplayTicker[this.tickStore.getAmountOfCurrencyPairs()];
+			System.arraycopy( this.replayTickers, 0, replayTickers, 0, this.replayTickers.length );
+			this.replayTickers = replayTickers;
+		}
+
+		ReplayTicker ticker = this.replayTickers[currencyPairID];
+
+		if ( ticker == null ) {
+			ticker = new ReplayTicker( this.tickStore.getCurrencyPair( currencyPairID ) );
+			this.replayTickers[currencyPairID] = ticker;
+		}
+
+		return ticker;
+	}
+
+	@Override
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	@Override
+	public Map<CurrencyPair, Ticker> getTickers() {
+		return this.tickers;
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * 
+ */
+/**
+ * @author Evan
+ *
+ */
+package coin.trader.storage;
\ No newline at end of file
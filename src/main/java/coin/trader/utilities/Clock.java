@@ -0,0 +1,64 @@
+package coin.trader.utilities;
+
+import java.util.concurrent.TimeUnit;
+
+import coin.trader.Info;
+
+/**
+ * Source of time for anything that needs to timestamp samples. Live trading
+ * uses {@link Clock#SYSTEM}, backtests use a {@link SimulatedClock} so replays
+ * are deterministic and not bound to wall clock time.
+ *
+ * @author Evan
+ *
+ */
+public abstract class Clock {
+	public static final Clock SYSTEM = new Clock() {
+		@Override
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+
+		@Override
+		public long getStartTimeMillis() {
+			return Info.START_TIME_STAMP;
+		}
+
+		@Override
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+	};
+
+	/**
+	 * @return The current time in milliseconds since epoch
+	 */
+	public abstract long currentTimeMillis();
+
+	/**
+	 * @return The time in milliseconds since epoch that this clock started at
+	 */
+	public abstract long getStartTimeMillis();
+
+	/**
+	 * @return Time in nanoseconds for measuring how long something took, only
+	 *         meaningful compared to another call
+	 */
+	public long nanoTime() {
+		return TimeUnit.MILLISECONDS.toNanos( this.currentTimeMillis() );
+	}
+
+	/**
+	 * Waits until the clock has moved by the amount of nanoseconds
+	 */
+	public void sleepNanos( final long nanos ) throws InterruptedException {
+		TimeUnit.NANOSECONDS.sleep( nanos );
+	}
+
+	/**
+	 * @return The amount of milliseconds since the clock started
+	 */
+	public long getElapsedTimeMillis() {
+		return this.currentTimeMillis() - this.getStartTimeMillis();
+	}
+}
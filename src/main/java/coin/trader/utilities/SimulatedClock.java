@@ -0,0 +1,46 @@
+package coin.trader.utilities;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock that only moves when told to. The first time set becomes the start
+ * time of the clock. Sleeping on it moves it forward instead of waiting.
+ *
+ * @author Evan
+ *
+ */
+public class SimulatedClock extends Clock {
+	private volatile long currentTimeNanos = 0;
+	private volatile long startTimeMillis = -1;
+
+	public SimulatedClock() {
+	}
+
+	public synchronized void setTimeMillis( final long timeMillis ) {
+		if ( this.startTimeMillis < 0 ) {
+			this.startTimeMillis = timeMillis;
+		}
+
+		this.currentTimeNanos = TimeUnit.MILLISECONDS.toNanos( timeMillis );
+	}
+
+	@Override
+	public long currentTimeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis( this.currentTimeNanos );
+	}
+
+	@Override
+	public long getStartTimeMillis() {
+		return this.startTimeMillis < 0 ? this.currentTimeMillis() : this.startTimeMillis;
+	}
+
+	@Override
+	public long nanoTime() {
+		return this.currentTimeNanos;
+	}
+
+	@Override
+	public synchronized void sleepNanos( final long nanos ) {
+		this.currentTimeNanos += nanos;
+	}
+}
@@ -1,6 +1,15 @@
 package coin.trader.utilities;
 
+import java.io.IOException;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
 public class Utils {
+	/* Gson is thread safe and caches its type adapters, so one is shared */
+	public static final Gson GSON = new Gson();
+
 	public static void ASSERT( final boolean eval, final String reason ) {
 		if ( !eval ) {
 			throw new RuntimeException( reason );
@@ -16,4 +25,16 @@ public class Utils {
 	public static long getUnixTimestamp() {
 		return System.currentTimeMillis() / 1000L;
 	}
+
+	/**
+	 * Reads a number that may be quoted or null, null is read as 0
+	 */
+	public static double nextDouble( final JsonReader reader ) throws IOException {
+		if ( reader.peek() == JsonToken.NULL ) {
+			reader.nextNull();
+			return 0.0;
+		}
+
+		return reader.nextDouble();
+	}
 }
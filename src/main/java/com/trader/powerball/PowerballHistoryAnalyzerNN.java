@@ -14,16 +14,49 @@ import coin.trader.math.Matrix;
 import coin.trader.neuralnetwork.NeuralNetwork;
 
 public class PowerballHistoryAnalyzerNN {
+	private final int batchSize;
 
 	public PowerballHistoryAnalyzerNN() {
+		this( 1 );
+	}
+
+	/**
+	 * @param batchSize
+	 *            - Amount of drawings trained on per weight update. The
+	 *            weights are updated with the average gradient of a batch, so
+	 *            larger batches make fewer updates per epoch and need more
+	 *            epochs or a higher learning rate. 1 trains one drawing at a
+	 *            time.
+	 */
+	public PowerballHistoryAnalyzerNN( final int batchSize ) {
+		this.batchSize = batchSize;
 	}
 
 	public Matrix analyze( final String startDate, final String endDate ) {
+		return this.analyze( startDate, endDate, null );
+	}
+
+	/**
+	 * @param checkpoint
+	 *            - If the file exists the trained network is loaded from it
+	 *            instead of training, otherwise the network is saved to it
+	 *            after training. Can be null.
+	 */
+	public Matrix analyze( final String startDate, final String endDate, final File checkpoint ) {
 		final Drawing[] drawings = PowerballHistoryAnalyzerNN.getDrawings( startDate, endDate );
+		final Matrix[] matrices = toMatrices( drawings );
 
-		final NeuralNetwork neuralNetwork = new NeuralNetwork( 13, 9, 9, 5, 0.01f );
+		if ( checkpoint != null && checkpoint.exists() ) {
+			try {
+				return NeuralNetwork.load( checkpoint ).query( matrices[0] );
+			}
+			catch ( final IOException e ) {
+				Main.LOGGER.error( "Could not load " + checkpoint + ", training instead.", e );
+			}
+		}
 
-		final Matrix[] matrices = toMatrices( drawings );
+		final NeuralNetwork neuralNetwork = new NeuralNetwork( 13, 9, 9, 5, 0.01f );
+		neuralNetwork.setDataParallel( this.batchSize > 1 );
 
 		for ( int e = 0; e < 5; e++ ) {
 
@@ -31,8 +64,27 @@ public class PowerballHistoryAnalyzerNN {
 				Main.LOGGER.info( "e: " + e );
 			}
 
-			for ( int i = matrices.length - 1; i > 0; i-- ) {
-				neuralNetwork.train( matrices[i], drawings[i - 1].toMatrix() );
+			/* Each drawing is trained to predict the next one, in batches */
+			for ( int i = matrices.length - 1; i > 0; i -= this.batchSize ) {
+				final int batchSize = java.lang.Math.min( this.batchSize, i );
+				final Matrix input = Matrix.create( 13, batchSize );
+				final Matrix target = Matrix.create( 9, batchSize );
+
+				for ( int b = 0; b < batchSize; b++ ) {
+					PowerballHistoryAnalyzerNN.setColumn( input, b, matrices[i - b] );
+					PowerballHistoryAnalyzerNN.setColumn( target, b, drawings[i - b - 1].toMatrix() );
+				}
+
+				neuralNetwork.train( input, target );
+			}
+		}
+
+		if ( checkpoint != null ) {
+			try {
+				neuralNetwork.save( checkpoint );
+			}
+			catch ( final IOException e ) {
+				Main.LOGGER.error( "Could not save " + checkpoint, e );
 			}
 		}
 
@@ -40,6 +92,12 @@ public class PowerballHistoryAnalyzerNN {
 		return output;
 	}
 
+	private static void setColumn( final Matrix A, final int col, final Matrix column ) {
+		for ( int r = 0; r < A.getRows(); r++ ) {
+			A.set( r, col, column.get( r, 0 ) );
+		}
+	}
+
 	private Matrix[] toMatrices( final Drawing[] drawings ) {
 
 		final Matrix[] matrices = new Matrix[drawings.length];
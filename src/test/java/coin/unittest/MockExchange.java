@@ -0,0 +1,375 @@
+package coin.unittest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import coin.trader.exchange.Balances;
+import coin.trader.exchange.BuyOrder;
+import coin.trader.exchange.CancelOrder;
+import coin.trader.exchange.ChartData.DataPoint;
+import coin.trader.exchange.Currency;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.Exchange;
+import coin.trader.exchange.OpenOrder;
+import coin.trader.exchange.OpenOrders;
+import coin.trader.exchange.OrderBook;
+import coin.trader.exchange.SellOrder;
+import coin.trader.exchange.Ticker;
+import coin.trader.exchange.Volumes;
+import coin.trader.utilities.Clock;
+
+/**
+ * Exchange that answers chart data requests with generated candles, places
+ * every order, and records the requests it was sent
+ * 
+ * @author Evan
+ *
+ */
+public class MockExchange extends Exchange {
+	public final List<long[]> chartDataRequests = new ArrayList<long[]>();
+	public Clock clock = Clock.SYSTEM;
+	public int requestsPerSecondLimit = 1000;
+	/* 0 for the default of the exchange */
+	public int maxRequestsInFlight = 0;
+	public long latencyMillis = 0;
+	public boolean batchOpenOrders = false;
+	public final List<List<String>> openOrderRequests = new ArrayList<List<String>>();
+	/* Chart data requests waiting on their response, and the most there have been */
+	public final AtomicInteger chartDataRequestsInFlight = new AtomicInteger();
+	public final AtomicInteger maxChartDataRequestsInFlight = new AtomicInteger();
+	public volatile Map<CurrencyPair, Ticker> tickers = null;
+	public final AtomicInteger amountOfTickerRequests = new AtomicInteger();
+	public final AtomicInteger amountOfPlacedOrders = new AtomicInteger();
+	public final AtomicInteger amountOfCanceledOrders = new AtomicInteger();
+	/* The amount of cancels that fail before they succeed */
+	public final AtomicInteger amountOfFailingCancels = new AtomicInteger();
+	/* The amount of placements that are rejected, and that are placed but then fail */
+	public final AtomicInteger amountOfRejectedPlacements = new AtomicInteger();
+	public final AtomicInteger amountOfFailingPlacements = new AtomicInteger();
+	/* The orders placed and not canceled */
+	public final Map<String, MockOpenOrder> placedOrders = new ConcurrentHashMap<String, MockOpenOrder>();
+	/* The orders reported as closed */
+	public final Set<String> filledOrders = ConcurrentHashMap.newKeySet();
+
+	public MockExchange() {
+	}
+
+	@Override
+	protected List<? extends DataPoint> getChartData( final CurrencyPair currencyPair, final long start, final long end, final int period ) throws Exception {
+		synchronized ( this.chartDataRequests ) {
+			this.chartDataRequests.add( new long[] { start, end } );
+		}
+
+		final int inFlight = this.chartDataRequestsInFlight.incrementAndGet();
+		int max = this.maxChartDataRequestsInFlight.get();
+		while ( inFlight > max && !this.maxChartDataRequestsInFlight.compareAndSet( max, inFlight ) ) {
+			max = this.maxChartDataRequestsInFlight.get();
+		}
+
+		try {
+			if ( this.latencyMillis > 0 ) {
+				Thread.sleep( this.latencyMillis );
+			}
+		}
+		finally {
+			this.chartDataRequestsInFlight.decrementAndGet();
+		}
+
+		final List<MockDataPoint> dataPoints = new ArrayList<MockDataPoint>();
+		final long last = java.lang.Math.min( end, this.clock.currentTimeMillis() / 1000 );
+
+		for ( long date = ((start + period - 1) / period) * period; date <= last; date += period ) {
+			final MockDataPoint dataPoint = new MockDataPoint();
+			dataPoint.date = date;
+			dataPoint.open = date;
+			dataPoint.close = date + 1;
+			dataPoint.high = date + 2;
+			dataPoint.low = date - 1;
+			dataPoint.volume = 1;
+			dataPoint.quoteVolume = 1;
+			dataPoint.weightedAverage = date;
+			dataPoints.add( dataPoint );
+		}
+
+		return dataPoints;
+	}
+
+	public int getAmountOfChartDataRequests() {
+		synchronized ( this.chartDataRequests ) {
+			return this.chartDataRequests.size();
+		}
+	}
+
+	@Override
+	protected Map<CurrencyPair, Ticker> getTickers() throws Exception {
+		this.amountOfTickerRequests.incrementAndGet();
+		return this.tickers;
+	}
+
+	@Override
+	protected Volumes get24HourVolume() throws Exception {
+		return null;
+	}
+
+	@Override
+	protected OrderBook getOrderBook( final CurrencyPair currencyPair, final int depth ) throws Exception {
+		return null;
+	}
+
+	@Override
+	protected String getTraderHistory( final CurrencyPair currencyPair, final long start, final long end ) throws Exception {
+		return null;
+	}
+
+	@Override
+	protected String getCurrencies() throws Exception {
+		return null;
+	}
+
+	@Override
+	protected String getLoanOrders( final Currency currency ) throws Exception {
+		return null;
+	}
+
+	@Override
+	protected OpenOrders getOpenOrders( final CurrencyPair currencyPair ) throws Exception {
+		final List<MockOpenOrder> openOrders = new ArrayList<MockOpenOrder>();
+		for ( final MockOpenOrder openOrder : this.placedOrders.values() ) {
+			if ( openOrder.currencyPair.equals( currencyPair ) && !this.filledOrders.contains( openOrder.orderID ) ) {
+				openOrders.add( openOrder );
+			}
+		}
+
+		return new OpenOrders() {
+			@Override
+			public List<? extends OpenOrder> getOpenOrders() {
+				return openOrders;
+			}
+		};
+	}
+
+	@Override
+	protected OpenOrder getOpenOrder( final String orderID ) throws Exception {
+		final List<String> orderIDs = new ArrayList<String>();
+		orderIDs.add( orderID );
+		return this.getOpenOrders( orderIDs ).get( orderID );
+	}
+
+	@Override
+	protected Map<String, OpenOrder> getOpenOrders( final List<String> orderIDs ) throws Exception {
+		synchronized ( this.openOrderRequests ) {
+			this.openOrderRequests.add( new ArrayList<String>( orderIDs ) );
+		}
+
+		final Map<String, OpenOrder> openOrders = new HashMap<String, OpenOrder>();
+		for ( final String orderID : orderIDs ) {
+			final MockOpenOrder openOrder = new MockOpenOrder();
+			openOrder.orderID = orderID;
+			openOrder.closed = this.filledOrders.contains( orderID );
+			openOrders.put( orderID, openOrder );
+		}
+
+		return openOrders;
+	}
+
+	@Override
+	public boolean canBatchOpenOrders() {
+		return this.batchOpenOrders;
+	}
+
+	@Override
+	protected BuyOrder placeBuyOrder( final CurrencyPair currencyPair, final double quantity, final double rate ) throws Exception {
+		return this.placeOrder( currencyPair, true, quantity, rate );
+	}
+
+	@Override
+	protected SellOrder placeSellOrder( final CurrencyPair currencyPair, final double quantity, final double rate ) throws Exception {
+		return this.placeOrder( currencyPair, false, quantity, rate );
+	}
+
+	private MockOrder placeOrder( final CurrencyPair currencyPair, final boolean buy, final double quantity, final double rate ) throws Exception {
+		final MockOrder order = new MockOrder();
+
+		if ( this.amountOfRejectedPlacements.getAndDecrement() > 0 ) {
+			order.placed = false;
+			return order;
+		}
+
+		order.orderID = "order-" + this.amountOfPlacedOrders.incrementAndGet();
+
+		final MockOpenOrder openOrder = new MockOpenOrder();
+		openOrder.orderID = order.orderID;
+		openOrder.currencyPair = currencyPair;
+		openOrder.buy = buy;
+		openOrder.quantity = quantity;
+		openOrder.rate = rate;
+		this.placedOrders.put( order.orderID, openOrder );
+
+		if ( this.amountOfFailingPlacements.getAndDecrement() > 0 ) {
+			throw new Exception( "Placed " + order.orderID + " but the response was lost" );
+		}
+
+		return order;
+	}
+
+	@Override
+	protected CancelOrder cancelOpenOrder( final String orderID ) throws Exception {
+		if ( this.amountOfFailingCancels.getAndDecrement() > 0 ) {
+			throw new Exception( "Cancel of " + orderID + " failed" );
+		}
+
+		this.amountOfCanceledOrders.incrementAndGet();
+		this.placedOrders.remove( orderID );
+		return new CancelOrder() {
+			@Override
+			public boolean isCanceled() {
+				return true;
+			}
+		};
+	}
+
+	@Override
+	protected Balances getBalances() throws Exception {
+		return null;
+	}
+
+	@Override
+	public int getRequestsPerSecondLimit() {
+		return this.requestsPerSecondLimit;
+	}
+
+	@Override
+	public int getMaxRequestsInFlight() {
+		return this.maxRequestsInFlight > 0 ? this.maxRequestsInFlight : super.getMaxRequestsInFlight();
+	}
+
+	@Override
+	public String getName() {
+		return "Mock";
+	}
+
+	@Override
+	public double getFee() {
+		return 0.0025;
+	}
+
+	@Override
+	public boolean checkConfig() {
+		return true;
+	}
+
+	public static class MockOrder implements BuyOrder, SellOrder {
+		public String orderID;
+		public boolean placed = true;
+
+		@Override
+		public boolean isPlaced() {
+			return this.placed;
+		}
+
+		@Override
+		public boolean isFilled() {
+			return false;
+		}
+
+		@Override
+		public String getID() {
+			return this.orderID;
+		}
+	}
+
+	public static class MockOpenOrder implements OpenOrder {
+		public String orderID;
+		public boolean closed = false;
+		public CurrencyPair currencyPair;
+		public boolean buy;
+		public double quantity;
+		public double rate;
+
+		@Override
+		public boolean isClosed() {
+			return this.closed;
+		}
+
+		@Override
+		public boolean isPartiallyFilled() {
+			return false;
+		}
+
+		@Override
+		public String getID() {
+			return this.orderID;
+		}
+
+		@Override
+		public boolean isBuy() {
+			return this.buy;
+		}
+
+		@Override
+		public double getQuantity() {
+			return this.quantity;
+		}
+
+		@Override
+		public double getRate() {
+			return this.rate;
+		}
+	}
+
+	public static class MockDataPoint implements DataPoint {
+		public long date;
+		public double high;
+		public double low;
+		public double open;
+		public double close;
+		public double volume;
+		public double quoteVolume;
+		public double weightedAverage;
+
+		@Override
+		public double getDate() {
+			return this.date;
+		}
+
+		@Override
+		public double getHigh() {
+			return this.high;
+		}
+
+		@Override
+		public double getLow() {
+			return this.low;
+		}
+
+		@Override
+		public double getOpen() {
+			return this.open;
+		}
+
+		@Override
+		public double getClose() {
+			return this.close;
+		}
+
+		@Override
+		public double getVolume() {
+			return this.volume;
+		}
+
+		@Override
+		public double getQuoteVolume() {
+			return this.quoteVolume;
+		}
+
+		@Override
+		public double getWeightedAverage() {
+			return this.weightedAverage;
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package coin.unittest;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import coin.trader.algorithm.MarketDataBus;
+import coin.trader.algorithm.SampleListenerManager.SampleListener;
+import coin.trader.algorithm.TickerIndicator;
+import coin.trader.algorithm.TickerIndicatorFactory;
+import coin.trader.algorithm.TickerLastMonitorThread;
+import coin.trader.algorithm.TickerMonitorThread;
+import coin.trader.exchange.Currency;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.Exchange;
+import coin.trader.exchange.Ticker;
+
+public class TestMarketDataBus {
+	private static final int AMOUNT_OF_POLLS = 5;
+
+	/**
+	 * Two strategies on the same exchange must share each poll, while keeping
+	 * their own indicators
+	 */
+	@Test
+	public void testStrategiesSharePolls() throws Exception {
+		final MockExchange exchange = new MockExchange();
+		exchange.tickers = TestMarketDataBus.createTickers( 3 );
+
+		final MarketDataBus bus = new MarketDataBus( exchange );
+		final CountingFactory factory1 = new CountingFactory();
+		final CountingFactory factory2 = new CountingFactory();
+		final TickerLastMonitorThread strategy1 = new TickerLastMonitorThread( exchange, factory1, bus );
+		final TickerLastMonitorThread strategy2 = new TickerLastMonitorThread( exchange, factory2, bus );
+
+		final CountDownLatch latch = new CountDownLatch( 2 );
+		final AtomicInteger polls1 = TestMarketDataBus.countPolls( strategy1, latch );
+		final AtomicInteger polls2 = TestMarketDataBus.countPolls( strategy2, latch );
+
+		strategy1.start();
+		strategy2.start();
+		Assert.assertTrue( "The strategies did not get their polls", latch.await( 10, TimeUnit.SECONDS ) );
+
+		strategy1.shutdown();
+		strategy2.shutdown();
+
+		/* Let the poll in progress finish */
+		int requests = exchange.amountOfTickerRequests.get();
+		while ( true ) {
+			Thread.sleep( 100 );
+
+			if ( requests == exchange.amountOfTickerRequests.get() ) {
+				break;
+			}
+
+			requests = exchange.amountOfTickerRequests.get();
+		}
+
+		exchange.shutdown();
+
+		/* Let the listeners catch up, they run on their own threads */
+		final long deadline = System.currentTimeMillis() + 10000;
+		while ( strategy1.getSampleListenerManager().getLag() > 0 || strategy2.getSampleListenerManager().getLag() > 0 ) {
+			Assert.assertTrue( "The listeners did not catch up", System.currentTimeMillis() < deadline );
+			Thread.sleep( 10 );
+		}
+
+		/* Each strategy got every poll since it subscribed, other than the one in progress */
+		Assert.assertTrue( "The strategies did not share the polls: " + requests + " requests for " + polls1.get() + " and " + polls2.get() + " polls",
+				requests <= java.lang.Math.min( polls1.get(), polls2.get() ) + 2 );
+
+		Assert.assertEquals( "Each strategy must have its own indicator for each pair", 3, factory1.amountOfIndicators.get() );
+		Assert.assertEquals( "Each strategy must have its own indicator for each pair", 3, factory2.amountOfIndicators.get() );
+		Assert.assertEquals( "Every poll must update the indicators", polls1.get() * 3, factory1.amountOfSamples.get() );
+		Assert.assertEquals( "Every poll must update the indicators", polls2.get() * 3, factory2.amountOfSamples.get() );
+	}
+
+	private static AtomicInteger countPolls( final TickerMonitorThread strategy, final CountDownLatch latch ) {
+		final AtomicInteger polls = new AtomicInteger();
+
+		strategy.getSampleListenerManager().addSampleListener( new SampleListener() {
+			@Override
+			public void onNewSample( final List<TickerIndicator> indicators ) {
+				if ( polls.incrementAndGet() == TestMarketDataBus.AMOUNT_OF_POLLS ) {
+					latch.countDown();
+				}
+			}
+		} );
+
+		return polls;
+	}
+
+	private static Map<CurrencyPair, Ticker> createTickers( final int amount ) {
+		final Map<CurrencyPair, Ticker> tickers = new HashMap<CurrencyPair, Ticker>();
+
+		for ( int i = 0; i < amount; i++ ) {
+			final MockTicker ticker = new MockTicker();
+			ticker.currencyPair = new CurrencyPair( new Currency( "BTC" ), new Currency( "BUS" + i ) );
+			ticker.last = i + 1;
+			tickers.put( ticker.currencyPair, ticker );
+		}
+
+		return tickers;
+	}
+
+	private static class CountingFactory implements TickerIndicatorFactory {
+		private final AtomicInteger amountOfIndicators = new AtomicInteger();
+		private final AtomicInteger amountOfSamples = new AtomicInteger();
+
+		@Override
+		public TickerIndicator createTickerIndicator() {
+			this.amountOfIndicators.incrementAndGet();
+
+			return new TickerIndicator() {
+				private Ticker ticker;
+
+				@Override
+				public void addSample( final Ticker ticker ) {
+					this.ticker = ticker;
+					CountingFactory.this.amountOfSamples.incrementAndGet();
+				}
+
+				@Override
+				public boolean shouldBuy() {
+					return false;
+				}
+
+				@Override
+				public boolean shouldSell( final double buyPrice, final double fee ) {
+					return false;
+				}
+
+				@Override
+				public Ticker getTicker() {
+					return this.ticker;
+				}
+
+				@Override
+				public double getCandidacyWeight() {
+					return 0;
+				}
+			};
+		}
+
+		@Override
+		public TickerMonitorThread getTickerMonitorThread( final Exchange exchange ) {
+			return new TickerLastMonitorThread( exchange, this );
+		}
+
+		@Override
+		public String getAlgorithmName() {
+			return "Counting";
+		}
+
+		@Override
+		public int getAmountOfSamples() {
+			return 1;
+		}
+	}
+}
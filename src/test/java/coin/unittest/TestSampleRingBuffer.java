@@ -0,0 +1,190 @@
+package coin.unittest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import coin.trader.algorithm.SampleListenerManager;
+import coin.trader.algorithm.SampleListenerManager.SampleListener;
+import coin.trader.algorithm.SampleRingBuffer;
+import coin.trader.algorithm.TickerIndicator;
+
+public class TestSampleRingBuffer {
+	/**
+	 * A consumer that fell behind by more than the ring skips to the oldest
+	 * event still in it
+	 */
+	@Test
+	public void testConsumerSkipsWhenLapped() throws Exception {
+		final SampleRingBuffer ring = new SampleRingBuffer( 4 );
+		final SampleRingBuffer.Consumer consumer = new SampleRingBuffer.Consumer( ring );
+
+		for ( int i = 1; i <= 10; i++ ) {
+			ring.publish( i, TestSampleRingBuffer.indicators( i ) );
+		}
+
+		Assert.assertEquals( "Lag must count every event not read", 10, consumer.getLag() );
+
+		for ( int i = 7; i <= 10; i++ ) {
+			Assert.assertTrue( "The consumer is not closed", consumer.next() );
+			Assert.assertEquals( "Wrong event", i, consumer.getTimestamp() );
+			Assert.assertEquals( "Wrong event", i, consumer.getIndicators().size() );
+		}
+
+		Assert.assertEquals( "Events overwritten must be counted as dropped", 6, consumer.getAmountOfDropped() );
+		Assert.assertEquals( "The event being handled must count as lag", 1, consumer.getLag() );
+
+		consumer.close();
+		Assert.assertFalse( "A closed consumer with nothing left to read must stop", consumer.next() );
+		Assert.assertEquals( "Every event was handled", 0, consumer.getLag() );
+	}
+
+	/**
+	 * A listener that blocks must not hold up broadcasting, and gets the latest
+	 * samples once it is done
+	 */
+	@Test
+	public void testSlowListenerDoesNotStallBroadcast() throws Exception {
+		final SampleListenerManager manager = new SampleListenerManager( "TestSampleRingBuffer", 4 );
+		final CountDownLatch entered = new CountDownLatch( 1 );
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final List<Integer> sizes = Collections.synchronizedList( new ArrayList<Integer>() );
+
+		manager.addSampleListener( new SampleListener() {
+			@Override
+			public void onNewSample( final List<TickerIndicator> indicators ) {
+				sizes.add( indicators.size() );
+				entered.countDown();
+
+				try {
+					release.await();
+				}
+				catch ( final InterruptedException e ) {
+				}
+			}
+		} );
+
+		manager.broadcast( TestSampleRingBuffer.indicators( 1 ) );
+		Assert.assertTrue( "The listener was not called", entered.await( 10, TimeUnit.SECONDS ) );
+
+		/* Returns while the listener is blocked */
+		for ( int i = 2; i <= 20; i++ ) {
+			manager.broadcast( TestSampleRingBuffer.indicators( i ) );
+		}
+
+		Assert.assertEquals( "Lag must count the samples the listener is not done with", 20, manager.getLag() );
+
+		release.countDown();
+		TestSampleRingBuffer.awaitCaughtUp( manager );
+		manager.shutdown();
+
+		Assert.assertEquals( "The listener must skip to the oldest sample in the ring", 15, manager.getAmountOfDroppedSamples() );
+		Assert.assertEquals( "The listener must get the samples in order", Arrays.asList( 1, 17, 18, 19, 20 ), sizes );
+	}
+
+	/**
+	 * A failing listener must not keep the others from their samples, and a
+	 * listener can remove itself while it is called
+	 */
+	@Test
+	public void testListenersSurviveFailures() throws Exception {
+		final SampleListenerManager manager = new SampleListenerManager( "TestSampleRingBuffer", 64 );
+		final List<Integer> sizes = Collections.synchronizedList( new ArrayList<Integer>() );
+		final List<Integer> removedSizes = Collections.synchronizedList( new ArrayList<Integer>() );
+
+		manager.addSampleListener( new SampleListener() {
+			@Override
+			public void onNewSample( final List<TickerIndicator> indicators ) {
+				throw new IllegalStateException( "Failing listener" );
+			}
+		} );
+
+		manager.addSampleListener( new SampleListener() {
+			@Override
+			public void onNewSample( final List<TickerIndicator> indicators ) {
+				removedSizes.add( indicators.size() );
+				manager.removeSampleListener( this );
+			}
+		} );
+
+		manager.addSampleListener( new SampleListener() {
+			@Override
+			public void onNewSample( final List<TickerIndicator> indicators ) {
+				sizes.add( indicators.size() );
+			}
+		} );
+
+		for ( int i = 1; i <= 10; i++ ) {
+			manager.broadcast( TestSampleRingBuffer.indicators( i ) );
+		}
+
+		TestSampleRingBuffer.awaitCaughtUp( manager );
+		manager.shutdown();
+
+		Assert.assertEquals( "Every sample must be delivered", Arrays.asList( 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 ), sizes );
+		Assert.assertEquals( "A removed listener must not be called again", Arrays.asList( 1 ), removedSizes );
+		Assert.assertEquals( "No sample must be skipped", 0, manager.getAmountOfDroppedSamples() );
+	}
+
+	/**
+	 * Every listener reads the ring on its own thread, so a blocked listener
+	 * does not keep the others from their samples
+	 */
+	@Test
+	public void testSlowListenerDoesNotStallOthers() throws Exception {
+		final SampleListenerManager manager = new SampleListenerManager( "TestSampleRingBuffer", 64 );
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final CountDownLatch delivered = new CountDownLatch( 10 );
+
+		manager.addSampleListener( new SampleListener() {
+			@Override
+			public void onNewSample( final List<TickerIndicator> indicators ) {
+				try {
+					release.await();
+				}
+				catch ( final InterruptedException e ) {
+				}
+			}
+		} );
+
+		manager.addSampleListener( new SampleListener() {
+			@Override
+			public void onNewSample( final List<TickerIndicator> indicators ) {
+				delivered.countDown();
+			}
+		} );
+
+		for ( int i = 1; i <= 10; i++ ) {
+			manager.broadcast( TestSampleRingBuffer.indicators( i ) );
+		}
+
+		try {
+			Assert.assertTrue( "A blocked listener held up the others", delivered.await( 10, TimeUnit.SECONDS ) );
+		}
+		finally {
+			release.countDown();
+		}
+
+		TestSampleRingBuffer.awaitCaughtUp( manager );
+		manager.shutdown();
+	}
+
+	private static void awaitCaughtUp( final SampleListenerManager manager ) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 10000;
+
+		while ( manager.getLag() > 0 ) {
+			Assert.assertTrue( "The listeners did not catch up", System.currentTimeMillis() < deadline );
+			Thread.sleep( 10 );
+		}
+	}
+
+	private static List<TickerIndicator> indicators( final int amount ) {
+		return Collections.nCopies( amount, (TickerIndicator) null );
+	}
+}
@@ -0,0 +1,96 @@
+package coin.unittest.backtest;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import coin.trader.algorithm.SampleListenerManager.SampleListener;
+import coin.trader.algorithm.TickerIndicator;
+import coin.trader.algorithm.backtest.BacktestEngine;
+import coin.trader.algorithm.backtest.ListTickerFeed;
+import coin.trader.algorithm.backtest.SimulatedTrader;
+import coin.trader.algorithm.reaction.ReactionTickerIndicatorFactory;
+import coin.trader.exchange.Currency;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.Ticker;
+import coin.trader.utilities.SimulatedClock;
+import coin.unittest.MockTicker;
+
+public class TestBacktestEngine {
+	private static final double delta = 0.0000001;
+	private static final long START_TIME = 1500000000000L;
+
+	@Test
+	public void testClockFollowsSnapshots() throws Exception {
+		final ListTickerFeed feed = TestBacktestEngine.createFeed( 10, 3 );
+		final SimulatedClock clock = new SimulatedClock();
+		final BacktestEngine engine = new BacktestEngine( new ReactionTickerIndicatorFactory( 1, clock ), clock );
+		final long[] lastTime = new long[1];
+		final int[] lastSize = new int[1];
+
+		engine.getSampleListenerManager().addSampleListener( new SampleListener() {
+			@Override
+			public void onNewSample( final List<TickerIndicator> indicators ) {
+				lastTime[0] = clock.currentTimeMillis();
+				lastSize[0] = indicators.size();
+			}
+		} );
+
+		Assert.assertEquals( "Not all snapshots were replayed", 10, engine.replay( feed ) );
+		Assert.assertEquals( "The clock was not moved to the last snapshot", TestBacktestEngine.START_TIME + 9000, lastTime[0] );
+		Assert.assertEquals( "Not all pairs were broadcast", 3, lastSize[0] );
+		Assert.assertEquals( "Not all samples were added", 30, engine.getAmountOfSamples() );
+	}
+
+	@Test
+	public void testReplayIsDeterministic() throws Exception {
+		final ListTickerFeed feed = TestBacktestEngine.createFeed( 2000, 5 );
+
+		final SimulatedTrader trader1 = TestBacktestEngine.runBacktest( feed );
+		feed.rewind();
+		final SimulatedTrader trader2 = TestBacktestEngine.runBacktest( feed );
+
+		Assert.assertTrue( "The backtest never traded", trader1.getTransactions().size() > 0 );
+		Assert.assertEquals( "The amount of transactions differed", trader1.getTransactions().size(), trader2.getTransactions().size() );
+		Assert.assertEquals( "The wallets differed", trader1.getWallet(), trader2.getWallet(), TestBacktestEngine.delta );
+	}
+
+	private static SimulatedTrader runBacktest( final ListTickerFeed feed ) throws Exception {
+		final SimulatedClock clock = new SimulatedClock();
+		final ReactionTickerIndicatorFactory factory = new ReactionTickerIndicatorFactory( 1, clock );
+		final BacktestEngine engine = new BacktestEngine( factory, clock );
+		final SimulatedTrader trader = new SimulatedTrader( 0.0025, factory.getAmountOfSamples(), 1.0 );
+		engine.getSampleListenerManager().addSampleListener( trader );
+		engine.replay( feed );
+		return trader;
+	}
+
+	/**
+	 * Creates a feed of 1 second snapshots with prices that rise and fall
+	 */
+	private static ListTickerFeed createFeed( final int amountOfSnapshots, final int amountOfPairs ) {
+		final ListTickerFeed feed = new ListTickerFeed();
+		final MockTicker[] tickers = new MockTicker[amountOfPairs];
+		final Map<CurrencyPair, Ticker> snapshot = new HashMap<CurrencyPair, Ticker>();
+
+		for ( int p = 0; p < amountOfPairs; p++ ) {
+			tickers[p] = new MockTicker();
+			tickers[p].baseVolume = 1000;
+			tickers[p].currencyPair = new CurrencyPair( new Currency( "BTC" ), new Currency( "C" + p ) );
+			snapshot.put( tickers[p].currencyPair, tickers[p] );
+		}
+
+		for ( int i = 0; i < amountOfSnapshots; i++ ) {
+			for ( int p = 0; p < amountOfPairs; p++ ) {
+				tickers[p].last = 1.0 + 0.1 * java.lang.Math.sin( (i + 37 * p) / 60.0 );
+			}
+
+			feed.add( TestBacktestEngine.START_TIME + i * 1000L, snapshot );
+		}
+
+		return feed;
+	}
+}
@@ -0,0 +1,49 @@
+package coin.unittest.concurrency;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import coin.trader.concurrency.ResourceManager;
+
+public class TestResourceManager {
+	/**
+	 * Threads for waiting work must run, and be virtual only when the pools
+	 * use virtual threads
+	 */
+	@Test
+	public void testNewThread() throws Exception {
+		final CountDownLatch latch = new CountDownLatch( 1 );
+		final AtomicReference<Thread> ranOn = new AtomicReference<Thread>();
+
+		final Thread thread = ResourceManager.newThread( new Runnable() {
+			@Override
+			public void run() {
+				ranOn.set( Thread.currentThread() );
+				latch.countDown();
+			}
+		}, "TestResourceManager" );
+
+		Assert.assertFalse( "The thread must not be started yet", thread.isAlive() );
+		thread.start();
+
+		Assert.assertTrue( "The thread did not run", latch.await( 10, TimeUnit.SECONDS ) );
+		Assert.assertSame( "The runnable must run on the new thread", thread, ranOn.get() );
+		Assert.assertEquals( "The thread must have its name", "TestResourceManager", thread.getName() );
+
+		/* Only JVMs with virtual threads can tell */
+		boolean isVirtual = false;
+		try {
+			final Method method = Thread.class.getMethod( "isVirtual" );
+			isVirtual = ((Boolean) method.invoke( thread )).booleanValue();
+		}
+		catch ( final NoSuchMethodException e ) {
+		}
+
+		Assert.assertEquals( "The thread must be virtual only when virtual threads are used", ResourceManager.isUsingVirtualThreads(), isVirtual );
+	}
+}
@@ -0,0 +1,127 @@
+package coin.unittest.connection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.stream.JsonReader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import coin.trader.connection.HTTPRequest;
+import coin.trader.connection.LatencyHistogram;
+import coin.trader.connection.ResponseParser;
+
+public class TestHTTPRequest {
+	private static final String BODY = "{\"BTC_ETH\":{\"last\":\"0.07\"}}";
+
+	private HttpServer server;
+	private final Set<String> connections = ConcurrentHashMap.<String> newKeySet();
+
+	@Before
+	public void startServer() throws IOException {
+		this.server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+		this.server.createContext( "/public", new HttpHandler() {
+			@Override
+			public void handle( final HttpExchange exchange ) throws IOException {
+				TestHTTPRequest.this.connections.add( exchange.getRemoteAddress().toString() );
+
+				final String acceptEncoding = exchange.getRequestHeaders().getFirst( "Accept-Encoding" );
+				final boolean gzip = acceptEncoding != null && acceptEncoding.contains( "gzip" );
+				if ( gzip ) {
+					exchange.getResponseHeaders().set( "Content-Encoding", "gzip" );
+				}
+
+				exchange.sendResponseHeaders( 200, 0 );
+				try ( final OutputStream os = gzip ? new GZIPOutputStream( exchange.getResponseBody() ) : exchange.getResponseBody() ) {
+					os.write( TestHTTPRequest.BODY.getBytes( StandardCharsets.UTF_8 ) );
+				}
+			}
+		} );
+		this.server.start();
+	}
+
+	@After
+	public void stopServer() {
+		this.server.stop( 0 );
+	}
+
+	@Test
+	public void testCompressedResponsesOnOneConnection() throws Exception {
+		final String url = "http://127.0.0.1:" + this.server.getAddress().getPort() + "/public?command=returnTicker";
+
+		for ( int i = 0; i < 10; i++ ) {
+			Assert.assertEquals( "The response was not decompressed", TestHTTPRequest.BODY, HTTPRequest.sendHTTPRequest( url ) );
+		}
+
+		Assert.assertEquals( "The connection was not reused", 1, this.connections.size() );
+
+		LatencyHistogram histogram = null;
+		for ( final LatencyHistogram latencyHistogram : HTTPRequest.getLatencyHistograms() ) {
+			if ( latencyHistogram.getName().equals( "127.0.0.1/public?command=returnTicker" ) ) {
+				histogram = latencyHistogram;
+			}
+		}
+
+		Assert.assertNotNull( "The endpoint has no latency histogram", histogram );
+		Assert.assertEquals( "The amount of recorded requests was wrong", 10, histogram.getCount() );
+	}
+
+	@Test
+	public void testStreamedResponsesOnOneConnection() throws Exception {
+		final String url = "http://127.0.0.1:" + this.server.getAddress().getPort() + "/public?command=returnOrderBook";
+
+		for ( int i = 0; i < 10; i++ ) {
+			final String last = HTTPRequest.sendHTTPRequest( url, new ResponseParser<String>() {
+				@Override
+				public String parse( final JsonReader reader ) throws IOException {
+					reader.beginObject();
+					reader.nextName();
+					reader.beginObject();
+					reader.nextName();
+					return reader.nextString();
+				}
+			} );
+
+			Assert.assertEquals( "The streamed response was wrong", "0.07", last );
+		}
+
+		Assert.assertEquals( "The connection was not reused after a partial parse", 1, this.connections.size() );
+	}
+
+	@Test
+	public void testSignature() throws Exception {
+		final Random random = new Random( 7 );
+		final byte[] secretBytes = new byte[64];
+		random.nextBytes( secretBytes );
+
+		final Mac mac = Mac.getInstance( "HmacSHA512" );
+		mac.init( new SecretKeySpec( secretBytes, "HmacSHA512" ) );
+
+		for ( int i = 0; i < 5; i++ ) {
+			final String message = "command=returnBalances&nonce=" + (1500000000000L + i);
+			final byte[] bytes = mac.doFinal( message.getBytes( StandardCharsets.UTF_8 ) );
+
+			final StringBuilder sb = new StringBuilder();
+			for ( final byte b : bytes ) {
+				sb.append( String.format( "%02x", b ) );
+			}
+
+			Assert.assertEquals( "The signature was wrong", sb.toString(), HTTPRequest.signHMAC_SHA_512( message, secretBytes ) );
+		}
+	}
+}
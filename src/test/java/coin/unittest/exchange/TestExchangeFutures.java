@@ -0,0 +1,130 @@
+package coin.unittest.exchange;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import coin.trader.concurrency.Futures;
+import coin.trader.exchange.ChartData.DataPoint;
+import coin.trader.exchange.Currency;
+import coin.trader.exchange.CurrencyPair;
+import coin.unittest.MockExchange;
+
+public class TestExchangeFutures {
+	private static final CurrencyPair CURRENCY_PAIR = new CurrencyPair( new Currency( "BTC" ), new Currency( "ETH" ) );
+
+	/**
+	 * Many chart data requests must be joined in the order they were made
+	 */
+	@Test
+	public void testFanOutChartData() throws Exception {
+		final MockExchange exchange = new MockExchange();
+		final int amountOfRequests = 200;
+		final List<CompletableFuture<List<? extends DataPoint>>> futures = new ArrayList<CompletableFuture<List<? extends DataPoint>>>();
+
+		for ( int i = 0; i < amountOfRequests; i++ ) {
+			futures.add( Futures.withTimeout( exchange.getChartDataAsync( TestExchangeFutures.CURRENCY_PAIR, i * 300, i * 300, 300 ), 10, TimeUnit.SECONDS ) );
+		}
+
+		final List<List<? extends DataPoint>> results = Futures.allAsList( futures ).get( 10, TimeUnit.SECONDS );
+		exchange.shutdown();
+
+		Assert.assertEquals( "Every request must have a result", amountOfRequests, results.size() );
+
+		for ( int i = 0; i < amountOfRequests; i++ ) {
+			Assert.assertEquals( "Result " + i + " must belong to request " + i, i * 300, (long) results.get( i ).get( 0 ).getDate() );
+		}
+	}
+
+	/**
+	 * A failure must fail the joined future without waiting for the futures
+	 * that are still running
+	 */
+	@Test
+	public void testAllAsListFailsFast() throws Exception {
+		final List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+		futures.add( new CompletableFuture<String>() );
+		futures.add( new CompletableFuture<String>() );
+
+		final CompletableFuture<List<String>> all = Futures.allAsList( futures );
+		futures.get( 1 ).completeExceptionally( new IllegalStateException( "Failed request" ) );
+
+		Assert.assertTrue( "The failure must not wait for the other future", all.isCompletedExceptionally() );
+
+		try {
+			all.get( 10, TimeUnit.SECONDS );
+			Assert.fail( "One of the futures failed" );
+		}
+		catch ( final ExecutionException e ) {
+			Assert.assertTrue( "Expected the failure of the future, got " + e.getCause(), e.getCause() instanceof IllegalStateException );
+		}
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		final CompletableFuture<String> future = Futures.withTimeout( new CompletableFuture<String>(), 50, TimeUnit.MILLISECONDS );
+
+		try {
+			future.get( 10, TimeUnit.SECONDS );
+			Assert.fail( "A future that never completes must time out" );
+		}
+		catch ( final ExecutionException e ) {
+			Assert.assertTrue( "Expected a timeout, got " + e.getCause(), e.getCause() instanceof TimeoutException );
+		}
+	}
+
+	@Test
+	public void testRetry() throws Exception {
+		final AtomicInteger attempts = new AtomicInteger();
+
+		final CompletableFuture<Integer> future = Futures.retry( new Supplier<CompletableFuture<Integer>>() {
+			@Override
+			public CompletableFuture<Integer> get() {
+				final CompletableFuture<Integer> attempt = new CompletableFuture<Integer>();
+
+				if ( attempts.incrementAndGet() < 3 ) {
+					attempt.completeExceptionally( new IllegalStateException( "Failed attempt" ) );
+				}
+				else {
+					attempt.complete( attempts.get() );
+				}
+
+				return attempt;
+			}
+		}, 5, 10, TimeUnit.MILLISECONDS );
+
+		Assert.assertEquals( "The third attempt must succeed", 3, future.get( 10, TimeUnit.SECONDS ).intValue() );
+		Assert.assertEquals( "No attempt must be made after one succeeded", 3, attempts.get() );
+	}
+
+	@Test
+	public void testRetryGivesUp() throws Exception {
+		final AtomicInteger attempts = new AtomicInteger();
+
+		final CompletableFuture<Integer> future = Futures.retry( new Supplier<CompletableFuture<Integer>>() {
+			@Override
+			public CompletableFuture<Integer> get() {
+				attempts.incrementAndGet();
+				return Futures.withTimeout( new CompletableFuture<Integer>(), 10, TimeUnit.MILLISECONDS );
+			}
+		}, 3, 10, TimeUnit.MILLISECONDS );
+
+		try {
+			future.get( 10, TimeUnit.SECONDS );
+			Assert.fail( "Every attempt timed out" );
+		}
+		catch ( final ExecutionException e ) {
+			Assert.assertTrue( "Expected the failure of the last attempt, got " + e.getCause(), e.getCause() instanceof TimeoutException );
+		}
+
+		Assert.assertEquals( "Every attempt must be made", 3, attempts.get() );
+	}
+}
@@ -0,0 +1,316 @@
+package coin.unittest.exchange;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import coin.trader.concurrency.TokenBucket;
+import coin.trader.exchange.BuyOrder;
+import coin.trader.exchange.ChartData.DataPoint;
+import coin.trader.exchange.Currency;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.ExchangeMonitor.Job.JobClass;
+import coin.trader.exchange.OpenOrder;
+import coin.trader.utilities.Callback.Return;
+import coin.trader.utilities.SimulatedClock;
+import coin.unittest.MockExchange;
+import coin.unittest.MockExchange.MockOpenOrder;
+
+public class TestExchangeMonitor {
+	private static final CurrencyPair CURRENCY_PAIR = new CurrencyPair( new Currency( "BTC" ), new Currency( "ETH" ) );
+
+	@Test
+	public void testTokenBucketRate() throws Exception {
+		final SimulatedClock clock = new SimulatedClock();
+		final TokenBucket tokenBucket = new TokenBucket( 50, 1, clock );
+
+		for ( int i = 0; i < 26; i++ ) {
+			tokenBucket.acquire();
+		}
+		final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis( clock.nanoTime() );
+
+		/* The first token is already in the bucket, the other 25 take 20 ms each */
+		Assert.assertEquals( "Tokens were not handed out at the rate", 500, elapsedMillis );
+		Assert.assertFalse( "The bucket should be empty", tokenBucket.tryAcquire() );
+	}
+
+	@Test
+	public void testSlowResponsesDoNotLimitThroughput() throws Exception {
+		final SimulatedClock clock = new SimulatedClock();
+		final MockExchange exchange = new MockExchange();
+		exchange.requestsPerSecondLimit = 10;
+		exchange.latencyMillis = 500;
+		exchange.getMonitor().setClock( clock );
+
+		final int amountOfRequests = 10;
+		final CountDownLatch latch = new CountDownLatch( amountOfRequests );
+
+		for ( int i = 0; i < amountOfRequests; i++ ) {
+			exchange.getChartData( TestExchangeMonitor.CURRENCY_PAIR, i, 0, 300, new Return<List<? extends DataPoint>>() {
+				@Override
+				public void succeeded( final List<? extends DataPoint> rv ) {
+					latch.countDown();
+				}
+
+				@Override
+				public void error( final Throwable t ) {
+				}
+			} );
+		}
+
+		Assert.assertTrue( "The requests did not finish", latch.await( 10, TimeUnit.SECONDS ) );
+		exchange.shutdown();
+
+		/*
+		 * The monitor only waits for tokens on the simulated clock, the first
+		 * is in the bucket and the other 9 take 100 ms each
+		 */
+		Assert.assertEquals( "The rate limit was not respected", 900, TimeUnit.NANOSECONDS.toMillis( clock.nanoTime() ) );
+		Assert.assertTrue( "The requests were not sent concurrently: " + exchange.maxChartDataRequestsInFlight.get(), exchange.maxChartDataRequestsInFlight.get() > 1 );
+	}
+
+	/**
+	 * With every other request in flight taken by slow chart data, an order
+	 * still has a request of its own
+	 */
+	@Test
+	public void testOrderHasReservedRequest() throws Exception {
+		final MockExchange exchange = new MockExchange();
+		exchange.maxRequestsInFlight = 2;
+		exchange.latencyMillis = 500;
+		exchange.getMonitor().setClock( new SimulatedClock() );
+
+		final int amountOfRequests = 3;
+		final AtomicInteger amountOfChartData = new AtomicInteger();
+		final AtomicInteger chartDataBeforeOrder = new AtomicInteger( -1 );
+		final CountDownLatch latch = new CountDownLatch( amountOfRequests + 1 );
+
+		for ( int i = 0; i < amountOfRequests; i++ ) {
+			exchange.getChartData( TestExchangeMonitor.CURRENCY_PAIR, i, 0, 300, new Return<List<? extends DataPoint>>() {
+				@Override
+				public void succeeded( final List<? extends DataPoint> rv ) {
+					amountOfChartData.incrementAndGet();
+					latch.countDown();
+				}
+
+				@Override
+				public void error( final Throwable t ) {
+				}
+			} );
+		}
+
+		exchange.placeBuyOrder( TestExchangeMonitor.CURRENCY_PAIR, 1, 1, new Return<BuyOrder>() {
+			@Override
+			public void succeeded( final BuyOrder rv ) {
+				chartDataBeforeOrder.set( amountOfChartData.get() );
+				latch.countDown();
+			}
+
+			@Override
+			public void error( final Throwable t ) {
+			}
+		} );
+
+		Assert.assertTrue( "The requests did not finish", latch.await( 10, TimeUnit.SECONDS ) );
+		exchange.shutdown();
+
+		Assert.assertEquals( "The order waited for the chart data", 0, chartDataBeforeOrder.get() );
+		Assert.assertEquals( "The chart data used the request kept for orders", 1, exchange.maxChartDataRequestsInFlight.get() );
+	}
+
+	@Test
+	public void testOrdersAreNotStarvedByHistory() throws Exception {
+		final MockExchange exchange = new MockExchange();
+		exchange.requestsPerSecondLimit = 20;
+
+		final int amountOfRequests = 30;
+		final AtomicInteger amountOfChartData = new AtomicInteger();
+		final AtomicInteger chartDataBeforeOrder = new AtomicInteger( -1 );
+		final CountDownLatch latch = new CountDownLatch( amountOfRequests + 1 );
+
+		for ( int i = 0; i < amountOfRequests; i++ ) {
+			exchange.getChartData( TestExchangeMonitor.CURRENCY_PAIR, i, 0, 300, new Return<List<? extends DataPoint>>() {
+				@Override
+				public void succeeded( final List<? extends DataPoint> rv ) {
+					amountOfChartData.incrementAndGet();
+					latch.countDown();
+				}
+
+				@Override
+				public void error( final Throwable t ) {
+				}
+			} );
+		}
+
+		exchange.placeBuyOrder( TestExchangeMonitor.CURRENCY_PAIR, 1, 1, new Return<BuyOrder>() {
+			@Override
+			public void succeeded( final BuyOrder rv ) {
+				chartDataBeforeOrder.set( amountOfChartData.get() );
+				latch.countDown();
+			}
+
+			@Override
+			public void error( final Throwable t ) {
+			}
+		} );
+
+		Assert.assertTrue( "The requests did not finish", latch.await( 10, TimeUnit.SECONDS ) );
+		exchange.shutdown();
+
+		Assert.assertTrue( "The order waited behind the chart data: " + chartDataBeforeOrder.get(), chartDataBeforeOrder.get() <= 5 );
+		Assert.assertEquals( "The amount of sent chart data jobs was wrong", amountOfRequests, exchange.getMonitor().getAmountOfDispatchedJobs( JobClass.BULK_HISTORY ) );
+		Assert.assertEquals( "The queue should be empty", 0, exchange.getMonitor().getQueueDepth( JobClass.BULK_HISTORY ) );
+		Assert.assertTrue( "The order should have waited less than the chart data",
+				exchange.getMonitor().getMaxWaitMillis( JobClass.ORDER_CRITICAL ) < exchange.getMonitor().getMaxWaitMillis( JobClass.BULK_HISTORY ) );
+	}
+
+	@Test
+	public void testExpiredJobsFail() throws Exception {
+		final SimulatedClock clock = new SimulatedClock();
+		clock.setTimeMillis( 1500000000000L );
+		final MockExchange exchange = new MockExchange();
+		exchange.requestsPerSecondLimit = 5;
+		exchange.getMonitor().setClock( clock );
+		exchange.getMonitor().setTimeout( JobClass.BULK_HISTORY, 100 );
+
+		final int amountOfRequests = 5;
+		final AtomicInteger amountOfTimeouts = new AtomicInteger();
+		final CountDownLatch latch = new CountDownLatch( amountOfRequests );
+
+		for ( int i = 0; i < amountOfRequests; i++ ) {
+			exchange.getChartData( TestExchangeMonitor.CURRENCY_PAIR, i, 0, 300, new Return<List<? extends DataPoint>>() {
+				@Override
+				public void succeeded( final List<? extends DataPoint> rv ) {
+					latch.countDown();
+				}
+
+				@Override
+				public void error( final Throwable t ) {
+					if ( t instanceof TimeoutException ) {
+						amountOfTimeouts.incrementAndGet();
+					}
+					latch.countDown();
+				}
+			} );
+		}
+
+		Assert.assertTrue( "The requests did not finish", latch.await( 10, TimeUnit.SECONDS ) );
+		exchange.shutdown();
+
+		/*
+		 * Only the first job can be sent within 100 ms at 5 requests per
+		 * second, the others fail without taking a token
+		 */
+		Assert.assertEquals( "The amount of expired jobs was wrong", amountOfRequests - 1, amountOfTimeouts.get() );
+		Assert.assertEquals( "The expired jobs were not counted", amountOfRequests - 1, exchange.getMonitor().getAmountOfExpiredJobs( JobClass.BULK_HISTORY ) );
+		Assert.assertEquals( "A token was taken for an expired job", 1500000000000L, clock.currentTimeMillis() );
+	}
+
+	/**
+	 * A deadline given to an async call must fail the request if it can not
+	 * be sent in time
+	 */
+	@Test
+	public void testAsyncDeadline() throws Exception {
+		final SimulatedClock clock = new SimulatedClock();
+		clock.setTimeMillis( 1500000000000L );
+		final MockExchange exchange = new MockExchange();
+		exchange.requestsPerSecondLimit = 5;
+		exchange.getMonitor().setClock( clock );
+
+		final CompletableFuture<List<? extends DataPoint>> first = exchange.getChartDataAsync( TestExchangeMonitor.CURRENCY_PAIR, 0, 0, 300 );
+		final CompletableFuture<List<? extends DataPoint>> late = exchange.getChartDataAsync( TestExchangeMonitor.CURRENCY_PAIR, 300, 300, 300,
+				clock.currentTimeMillis() + 100 );
+
+		Assert.assertNotNull( "The first request must be sent", first.get( 10, TimeUnit.SECONDS ) );
+
+		try {
+			late.get( 10, TimeUnit.SECONDS );
+			Assert.fail( "The second request can not be sent within 100 ms at 5 requests per second" );
+		}
+		catch ( final ExecutionException e ) {
+			Assert.assertTrue( "Expected a timeout, got " + e.getCause(), e.getCause() instanceof TimeoutException );
+		}
+		finally {
+			exchange.shutdown();
+		}
+	}
+
+	@Test
+	public void testIdenticalJobsAreCoalesced() throws Exception {
+		final MockExchange exchange = new MockExchange();
+		exchange.latencyMillis = 200;
+
+		final int amountOfRequests = 5;
+		final List<List<? extends DataPoint>> responses = new CopyOnWriteArrayList<List<? extends DataPoint>>();
+		final CountDownLatch latch = new CountDownLatch( amountOfRequests + 1 );
+		final Return<List<? extends DataPoint>> callback = new Return<List<? extends DataPoint>>() {
+			@Override
+			public void succeeded( final List<? extends DataPoint> rv ) {
+				responses.add( rv );
+				latch.countDown();
+			}
+
+			@Override
+			public void error( final Throwable t ) {
+			}
+		};
+
+		for ( int i = 0; i < amountOfRequests; i++ ) {
+			exchange.getChartData( TestExchangeMonitor.CURRENCY_PAIR, 0, 600, 300, callback );
+		}
+
+		/* Different arguments are a different request */
+		exchange.getChartData( TestExchangeMonitor.CURRENCY_PAIR, 0, 900, 300, callback );
+
+		Assert.assertTrue( "The requests did not finish", latch.await( 10, TimeUnit.SECONDS ) );
+		exchange.shutdown();
+
+		Assert.assertEquals( "Identical jobs should have shared a request", 2, exchange.getAmountOfChartDataRequests() );
+		Assert.assertEquals( "The amount of coalesced jobs was wrong", amountOfRequests - 1, exchange.getMonitor().getAmountOfCoalescedJobs() );
+		Assert.assertEquals( "Every callback should have been called", amountOfRequests + 1, responses.size() );
+	}
+
+	@Test
+	public void testOpenOrdersAreBatched() throws Exception {
+		final MockExchange exchange = new MockExchange();
+		exchange.requestsPerSecondLimit = 5;
+		exchange.batchOpenOrders = true;
+
+		final int amountOfRequests = 5;
+		final ConcurrentHashMap<String, String> responses = new ConcurrentHashMap<String, String>();
+		final CountDownLatch latch = new CountDownLatch( amountOfRequests );
+
+		for ( int i = 0; i < amountOfRequests; i++ ) {
+			final String orderID = "order" + i;
+			exchange.getOpenOrder( orderID, new Return<OpenOrder>() {
+				@Override
+				public void succeeded( final OpenOrder rv ) {
+					responses.put( orderID, ((MockOpenOrder) rv).orderID );
+					latch.countDown();
+				}
+
+				@Override
+				public void error( final Throwable t ) {
+				}
+			} );
+		}
+
+		Assert.assertTrue( "The requests did not finish", latch.await( 10, TimeUnit.SECONDS ) );
+		exchange.shutdown();
+
+		Assert.assertTrue( "The open orders were not batched: " + exchange.openOrderRequests.size(), exchange.openOrderRequests.size() <= 2 );
+		for ( int i = 0; i < amountOfRequests; i++ ) {
+			Assert.assertEquals( "The open order was given to the wrong callback", "order" + i, responses.get( "order" + i ) );
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package coin.unittest.exchange;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.DataPointColumns;
+import coin.trader.exchange.Ticker;
+import coin.trader.exchange.bittrex.BittrexTickers;
+import coin.trader.exchange.poloniex.PoloniexChartData;
+import coin.trader.exchange.poloniex.PoloniexCurrencyPair;
+import coin.trader.exchange.poloniex.PoloniexTickers;
+import coin.trader.utilities.Utils;
+
+public class TestJsonParsing {
+	private static final int AMOUNT_OF_CANDLES = 2000;
+
+	private static byte[] createChartData( final int amountOfCandles ) {
+		final StringBuilder sb = new StringBuilder( "[" );
+
+		for ( int i = 0; i < amountOfCandles; i++ ) {
+			if ( i > 0 ) {
+				sb.append( ',' );
+			}
+
+			sb.append( "{\"date\":" ).append( 1500000000L + i * 300L );
+			sb.append( ",\"high\":" ).append( 0.071 + i * 0.0001 );
+			sb.append( ",\"low\":" ).append( 0.069 + i * 0.0001 );
+			sb.append( ",\"open\":" ).append( 0.0695 + i * 0.0001 );
+			sb.append( ",\"close\":" ).append( 0.0705 + i * 0.0001 );
+			sb.append( ",\"volume\":" ).append( 12.5 + i );
+			sb.append( ",\"quoteVolume\":" ).append( 178.25 + i );
+			sb.append( ",\"weightedAverage\":" ).append( 0.07 + i * 0.0001 ).append( '}' );
+		}
+
+		return sb.append( ']' ).toString().getBytes( StandardCharsets.UTF_8 );
+	}
+
+	private static JsonReader reader( final byte[] body ) {
+		return new JsonReader( new InputStreamReader( new ByteArrayInputStream( body ), StandardCharsets.UTF_8 ) );
+	}
+
+	@Test
+	public void testChartData() throws IOException {
+		final DataPointColumns columns = PoloniexChartData.parse( TestJsonParsing.reader( TestJsonParsing.createChartData( 3 ) ) ).getColumns();
+
+		Assert.assertEquals( "Every candle is parsed", 3, columns.size() );
+		Assert.assertEquals( "Dates are read", 1500000600L, columns.getDate( 2 ) );
+		Assert.assertEquals( "Prices are read", 0.0711, columns.getHigh( 1 ), 1e-12 );
+		Assert.assertEquals( "Volumes are read", 180.25, columns.getQuoteVolume( 2 ), 1e-12 );
+		Assert.assertEquals( "Data points are views of the columns", 0.0707, columns.get( 2 ).getClose(), 1e-12 );
+	}
+
+	@Test( expected = IOException.class )
+	public void testChartDataError() throws IOException {
+		PoloniexChartData.parse( TestJsonParsing.reader( "{\"error\":\"Invalid currency pair.\"}".getBytes( StandardCharsets.UTF_8 ) ) );
+	}
+
+	@Test
+	public void testTickers() throws IOException {
+		final String json = "{\"BTC_ETH\":{\"id\":148,\"last\":\"0.07\",\"lowestAsk\":\"0.0701\",\"highestBid\":\"0.0699\",\"percentChange\":\"0.01\","
+				+ "\"baseVolume\":\"1500.5\",\"quoteVolume\":\"21000\",\"isFrozen\":\"0\"},\"BTC_LTC\":{\"last\":\"0.01\"}}";
+		final Map<CurrencyPair, Ticker> tickers = PoloniexTickers.parse( TestJsonParsing.reader( json.getBytes( StandardCharsets.UTF_8 ) ) ).toMap();
+
+		Assert.assertEquals( "Every ticker is parsed", 2, tickers.size() );
+
+		final Ticker ticker = tickers.get( new PoloniexCurrencyPair( "BTC_ETH" ) );
+		Assert.assertEquals( "Tickers know their pair", "BTC_ETH", ticker.getCurrencyPair().toString() );
+		Assert.assertEquals( "Quoted numbers are read", 0.0701, ticker.getAsk(), 1e-12 );
+		Assert.assertEquals( "Quoted numbers are read", 21000.0, ticker.getQuoteVolume(), 1e-12 );
+	}
+
+	@Test
+	public void testBittrexTickers() throws IOException {
+		final String json = "{\"success\":true,\"message\":\"\",\"result\":[{\"MarketName\":\"BTC-ETH\",\"High\":0.072,\"Low\":0.068,\"Volume\":21000.0,"
+				+ "\"Last\":0.07,\"BaseVolume\":1500.5,\"TimeStamp\":\"2017-07-01T00:00:00\",\"Bid\":0.0699,\"Ask\":0.0701,\"OpenBuyOrders\":10,"
+				+ "\"OpenSellOrders\":12,\"PrevDay\":0.069,\"Created\":\"2015-08-14T09:02:24.817\",\"DisplayMarketName\":null}]}";
+		final List<? extends Ticker> tickers = BittrexTickers.parse( TestJsonParsing.reader( json.getBytes( StandardCharsets.UTF_8 ) ) ).getTickers();
+
+		Assert.assertEquals( "Every ticker is parsed", 1, tickers.size() );
+		Assert.assertEquals( "Tickers know their pair", "BTC-ETH", tickers.get( 0 ).getCurrencyPair().toString() );
+		Assert.assertEquals( "Numbers are read", 0.0699, tickers.get( 0 ).getBid(), 1e-12 );
+	}
+
+	/**
+	 * Streaming into the columns must read the same candles as reading the
+	 * response into a String and mapping it with Gson, also when the columns
+	 * have to grow past the expected size. How much less it allocates is
+	 * measured by JsonParsingBenchmark.
+	 */
+	@Test
+	public void testStreamingMatchesGson() throws IOException {
+		final byte[] body = TestJsonParsing.createChartData( TestJsonParsing.AMOUNT_OF_CANDLES );
+		final Type listType = new TypeToken<List<StringDataPoint>>() {
+		}.getType();
+
+		final List<StringDataPoint> expected = Utils.GSON.fromJson( new String( body, StandardCharsets.UTF_8 ), listType );
+		final DataPointColumns columns = PoloniexChartData.parse( TestJsonParsing.reader( body ), 1 ).getColumns();
+
+		Assert.assertEquals( "Every candle is parsed", expected.size(), columns.size() );
+
+		for ( int i = 0; i < expected.size(); i++ ) {
+			final StringDataPoint dataPoint = expected.get( i );
+			Assert.assertEquals( "The date was wrong", dataPoint.date, columns.getDate( i ) );
+			Assert.assertEquals( "The high was wrong", dataPoint.high, columns.getHigh( i ), 0.0 );
+			Assert.assertEquals( "The low was wrong", dataPoint.low, columns.getLow( i ), 0.0 );
+			Assert.assertEquals( "The open was wrong", dataPoint.open, columns.getOpen( i ), 0.0 );
+			Assert.assertEquals( "The close was wrong", dataPoint.close, columns.getClose( i ), 0.0 );
+			Assert.assertEquals( "The volume was wrong", dataPoint.volume, columns.getVolume( i ), 0.0 );
+			Assert.assertEquals( "The quote volume was wrong", dataPoint.quoteVolume, columns.getQuoteVolume( i ), 0.0 );
+			Assert.assertEquals( "The weighted average was wrong", dataPoint.weightedAverage, columns.getWeightedAverage( i ), 0.0 );
+		}
+	}
+
+	/**
+	 * How the candles were parsed before they were streamed
+	 */
+	static class StringDataPoint {
+		long date;
+		double high;
+		double low;
+		double open;
+		double close;
+		double volume;
+		double quoteVolume;
+		double weightedAverage;
+	}
+}
@@ -0,0 +1,153 @@
+package coin.unittest.exchange;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import coin.trader.exchange.NonceSequencer;
+
+public class TestNonceSequencer {
+	private static final int AMOUNT_OF_THREADS = 8;
+	private static final int REQUESTS_PER_THREAD = 50;
+
+	/**
+	 * Concurrent requests must be sent one at a time with increasing nonces
+	 */
+	@Test
+	public void testRequestsInNonceOrder() throws Exception {
+		final NonceSequencer sequencer = new NonceSequencer();
+		final AtomicLong lastNonce = new AtomicLong( 0 );
+		final AtomicBoolean inFlight = new AtomicBoolean( false );
+		final AtomicBoolean failed = new AtomicBoolean( false );
+		final ExecutorService executor = Executors.newFixedThreadPool( TestNonceSequencer.AMOUNT_OF_THREADS );
+		final CountDownLatch done = new CountDownLatch( TestNonceSequencer.AMOUNT_OF_THREADS );
+
+		for ( int i = 0; i < TestNonceSequencer.AMOUNT_OF_THREADS; i++ ) {
+			executor.execute( new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for ( int j = 0; j < TestNonceSequencer.REQUESTS_PER_THREAD; j++ ) {
+							sequencer.send( new NonceSequencer.Request<Void>() {
+								@Override
+								public Void send( final long nonce ) throws Exception {
+									if ( !inFlight.compareAndSet( false, true ) || nonce <= lastNonce.get() ) {
+										failed.set( true );
+									}
+
+									lastNonce.set( nonce );
+									inFlight.set( false );
+									return null;
+								}
+							} );
+						}
+					}
+					catch ( final Exception e ) {
+						failed.set( true );
+					}
+					finally {
+						done.countDown();
+					}
+				}
+			} );
+		}
+
+		Assert.assertTrue( "The requests did not complete", done.await( 10, TimeUnit.SECONDS ) );
+		executor.shutdown();
+		Assert.assertFalse( "Requests must be sent one at a time with increasing nonces", failed.get() );
+	}
+
+	/**
+	 * Virtual threads waiting for the request in flight must not pin their
+	 * carriers. Only runs on JVMs with virtual threads
+	 */
+	@Test
+	public void testWaitingDoesNotPinVirtualThreads() throws Exception {
+		Method newVirtualExecutor = null;
+		try {
+			Thread.class.getMethod( "ofVirtual" );
+			newVirtualExecutor = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+		}
+		catch ( final NoSuchMethodException e ) {
+		}
+
+		Assume.assumeNotNull( newVirtualExecutor );
+
+		final ExecutorService executor = (ExecutorService) newVirtualExecutor.invoke( null );
+		final NonceSequencer sequencer = new NonceSequencer();
+		final CountDownLatch sending = new CountDownLatch( 1 );
+		final CountDownLatch release = new CountDownLatch( 1 );
+
+		/* One request stays in flight until released */
+		executor.execute( new Runnable() {
+			@Override
+			public void run() {
+				try {
+					sequencer.send( new NonceSequencer.Request<Void>() {
+						@Override
+						public Void send( final long nonce ) throws Exception {
+							sending.countDown();
+							release.await();
+							return null;
+						}
+					} );
+				}
+				catch ( final Exception e ) {
+				}
+			}
+		} );
+
+		Assert.assertTrue( "The first request was not sent", sending.await( 10, TimeUnit.SECONDS ) );
+
+		/* More waiters than there are carriers */
+		final int waiters = Runtime.getRuntime().availableProcessors() * 4;
+		final CountDownLatch waitersDone = new CountDownLatch( waiters );
+		for ( int i = 0; i < waiters; i++ ) {
+			executor.execute( new Runnable() {
+				@Override
+				public void run() {
+					try {
+						sequencer.send( new NonceSequencer.Request<Void>() {
+							@Override
+							public Void send( final long nonce ) {
+								return null;
+							}
+						} );
+					}
+					catch ( final Exception e ) {
+					}
+					finally {
+						waitersDone.countDown();
+					}
+				}
+			} );
+		}
+
+		/* Unrelated work must still get a carrier */
+		final CountDownLatch other = new CountDownLatch( 1 );
+		executor.execute( new Runnable() {
+			@Override
+			public void run() {
+				other.countDown();
+			}
+		} );
+
+		try {
+			Assert.assertTrue( "Virtual threads waiting for a request pinned every carrier", other.await( 10, TimeUnit.SECONDS ) );
+		}
+		finally {
+			release.countDown();
+		}
+
+		Assert.assertTrue( "The waiting requests did not complete", waitersDone.await( 10, TimeUnit.SECONDS ) );
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,106 @@
+package coin.unittest.exchange;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import coin.trader.exchange.Currency;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.CurrencyPairRegistry;
+import coin.trader.exchange.Ticker;
+import coin.trader.exchange.TickerSnapshot;
+import coin.trader.exchange.poloniex.PoloniexCurrencyPair;
+import coin.unittest.MockTicker;
+
+public class TestTickerSnapshot {
+	private static Map<CurrencyPair, Ticker> createTickers( final int amountOfPairs, final double last ) {
+		final Map<CurrencyPair, Ticker> tickers = new HashMap<CurrencyPair, Ticker>();
+
+		for ( int i = 0; i < amountOfPairs; i++ ) {
+			final MockTicker ticker = new MockTicker();
+			ticker.currencyPair = new PoloniexCurrencyPair( "SNAP_C" + i );
+			ticker.last = last + i;
+			ticker.highestBid = last + i - 0.5;
+			ticker.lowestAsk = last + i + 0.5;
+			tickers.put( ticker.currencyPair, ticker );
+		}
+
+		return tickers;
+	}
+
+	@Test
+	public void testCurrencyPairIDs() {
+		final int size = CurrencyPairRegistry.size();
+		final CurrencyPair pair = new PoloniexCurrencyPair( "IDS_A" );
+		final int id = pair.getID();
+
+		Assert.assertEquals( "New pairs get the next id", size, id );
+		Assert.assertEquals( "Equal pairs get the same id", id, new CurrencyPair( new Currency( "IDS" ), new Currency( "A" ) ).getID() );
+		Assert.assertEquals( "Other pairs get a new id", id + 1, new PoloniexCurrencyPair( "IDS_B" ).getID() );
+		Assert.assertEquals( "Ids map back to the pair", pair, CurrencyPairRegistry.getCurrencyPair( id ) );
+	}
+
+	@Test
+	public void testUpdate() {
+		final TickerSnapshot snapshot = new TickerSnapshot( 1 );
+		snapshot.update( 1000, TestTickerSnapshot.createTickers( 50, 10.0 ) );
+
+		Assert.assertEquals( "Every pair is in the snapshot", 50, snapshot.size() );
+
+		final CurrencyPair pair = new PoloniexCurrencyPair( "SNAP_C7" );
+		final Ticker ticker = snapshot.getTicker( pair.getID() );
+		final Ticker copy = snapshot.copyTicker( pair.getID() );
+		Assert.assertTrue( "The pair is in the snapshot", snapshot.contains( pair.getID() ) );
+		Assert.assertEquals( "The last price was wrong", 17.0, ticker.getLast(), 0.0 );
+		Assert.assertEquals( "The bid was wrong", 16.5, snapshot.getBid( pair.getID() ), 0.0 );
+		Assert.assertEquals( "The exchange's pair is kept", "SNAP_C7", ticker.getCurrencyPair().toString() );
+
+		/* A smaller poll replaces the snapshot and the views show the new values */
+		snapshot.update( 2000, TestTickerSnapshot.createTickers( 10, 20.0 ) );
+		Assert.assertEquals( "Only the new pairs are in the snapshot", 10, snapshot.size() );
+		Assert.assertEquals( "Views always show the latest values", 27.0, ticker.getLast(), 0.0 );
+		Assert.assertFalse( "Missing pairs are not in the snapshot", snapshot.contains( new PoloniexCurrencyPair( "SNAP_C30" ).getID() ) );
+		Assert.assertSame( "Views are reused", ticker, snapshot.getTicker( pair.getID() ) );
+
+		/* Copies keep the values of their poll */
+		Assert.assertEquals( "Copies must not change with the next poll", 17.0, copy.getLast(), 0.0 );
+		Assert.assertEquals( "Copies must not change with the next poll", 17.5, copy.getAsk(), 0.0 );
+		Assert.assertEquals( "Copies must not change with the next poll", 16.5, copy.getBid(), 0.0 );
+		Assert.assertEquals( "Copies keep the exchange's pair", "SNAP_C7", copy.getCurrencyPair().toString() );
+	}
+
+	@Test
+	public void testFanOutDoesNotAllocate() {
+		final java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		Assert.assertTrue( "Allocation counting is supported", threadBean instanceof com.sun.management.ThreadMXBean );
+		final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+		final long threadID = Thread.currentThread().getId();
+
+		final TickerSnapshot snapshot = new TickerSnapshot();
+		snapshot.update( 1000, TestTickerSnapshot.createTickers( 100, 1.0 ) );
+
+		double sum = TestTickerSnapshot.fanOut( snapshot );
+		final long start = bean.getThreadAllocatedBytes( threadID );
+		for ( int i = 0; i < 1000; i++ ) {
+			sum += TestTickerSnapshot.fanOut( snapshot );
+		}
+		final long allocated = bean.getThreadAllocatedBytes( threadID ) - start;
+
+		Assert.assertTrue( "The sum was wrong", sum > 0.0 );
+		/* A single object per loop would be at least 16 KB, the rest is noise from measuring */
+		Assert.assertTrue( "Looping over the snapshot allocated " + allocated + " bytes", allocated < 4096 );
+	}
+
+	private static double fanOut( final TickerSnapshot snapshot ) {
+		double sum = 0.0;
+
+		for ( int i = 0, size = snapshot.size(); i < size; i++ ) {
+			sum += snapshot.getTicker( snapshot.getPairID( i ) ).getLast();
+		}
+
+		return sum;
+	}
+}
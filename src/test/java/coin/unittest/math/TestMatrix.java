@@ -110,6 +110,46 @@ public class TestMatrix {
 		}
 	}
 
+	@Test
+	public void testMatrixMult_Blocked() {
+		/* Shapes around the row, k and column blocks, vectors and outer products, and few row blocks per thread */
+		final int[][] shapes = { { 1, 1, 1 }, { 7, 3, 1 }, { 101, 257, 1 }, { 9, 1, 700 }, { 13, 130, 515 }, { 64, 300, 64 }, { 302, 211, 3 }, { 10, 256, 128 },
+				{ 21, 100, 200 } };
+		final java.util.Random random = new java.util.Random( 7 );
+
+		for ( final int[] shape : shapes ) {
+			final Matrix A = new MatrixCPU( shape[0], shape[1] );
+			final Matrix B = new MatrixCPU( shape[1], shape[2] );
+
+			for ( int i = 0; i < A.getRows(); i++ ) {
+				for ( int j = 0; j < A.getCols(); j++ ) {
+					A.set( i, j, random.nextFloat() - 0.5f );
+				}
+			}
+
+			for ( int i = 0; i < B.getRows(); i++ ) {
+				for ( int j = 0; j < B.getCols(); j++ ) {
+					B.set( i, j, random.nextFloat() - 0.5f );
+				}
+			}
+
+			final Matrix C = A.dot( B );
+
+			/* Same order of additions as the blocked kernel, so the results are exact */
+			for ( int i = 0; i < A.getRows(); i++ ) {
+				for ( int j = 0; j < B.getCols(); j++ ) {
+					float sum = 0;
+
+					for ( int k = 0; k < A.getCols(); k++ ) {
+						sum += A.get( i, k ) * B.get( k, j );
+					}
+
+					Assert.assertEquals( "Element [ " + i + ", " + j + " ] of " + java.util.Arrays.toString( shape ) + " was wrong", sum, C.get( i, j ), 0.0f );
+				}
+			}
+		}
+	}
+
 	@Test
 	public void testMatrixTranspose() {
 		/* Initialize JCublas */
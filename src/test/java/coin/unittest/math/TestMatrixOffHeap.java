@@ -0,0 +1,191 @@
+package coin.unittest.math;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import coin.trader.math.Matrix;
+import coin.trader.math.MatrixArena;
+import coin.trader.math.MatrixCPU;
+import coin.trader.math.MatrixOffHeap;
+
+public class TestMatrixOffHeap {
+	private static void fill( final Matrix cpu, final Matrix offHeap, final Random random ) {
+		for ( int i = 0; i < cpu.getRows(); i++ ) {
+			for ( int j = 0; j < cpu.getCols(); j++ ) {
+				final float val = random.nextFloat() * 2.0f - 1.0f;
+				cpu.set( i, j, val );
+				offHeap.set( i, j, val );
+			}
+		}
+	}
+
+	private static void assertSame( final String message, final Matrix expected, final Matrix actual ) {
+		Assert.assertEquals( message + ", rows", expected.getRows(), actual.getRows() );
+		Assert.assertEquals( message + ", columns", expected.getCols(), actual.getCols() );
+
+		for ( int i = 0; i < expected.getRows(); i++ ) {
+			for ( int j = 0; j < expected.getCols(); j++ ) {
+				Assert.assertEquals( message, expected.get( i, j ), actual.get( i, j ), 0.0f );
+			}
+		}
+	}
+
+	@Test
+	public void testOperationsMatchCPU() {
+		final Random random = new Random( 17 );
+		final MatrixCPU A = new MatrixCPU( 13, 37 );
+		final MatrixCPU B = new MatrixCPU( 37, 9 );
+		final MatrixCPU C = new MatrixCPU( 13, 37 );
+		final MatrixOffHeap offHeapA = new MatrixOffHeap( 13, 37 );
+		final MatrixOffHeap offHeapB = new MatrixOffHeap( 37, 9 );
+		final MatrixOffHeap offHeapC = new MatrixOffHeap( 13, 37 );
+		TestMatrixOffHeap.fill( A, offHeapA, random );
+		TestMatrixOffHeap.fill( B, offHeapB, random );
+		TestMatrixOffHeap.fill( C, offHeapC, random );
+
+		TestMatrixOffHeap.assertSame( "Dot product was wrong", A.dot( B ), offHeapA.dot( offHeapB ) );
+		TestMatrixOffHeap.assertSame( "Transpose was wrong", A.transpose(), offHeapA.transpose() );
+		TestMatrixOffHeap.assertSame( "Addition was wrong", A.add( C ), offHeapA.add( offHeapC ) );
+		TestMatrixOffHeap.assertSame( "Subtraction was wrong", A.subtract( C ), offHeapA.subtract( offHeapC ) );
+		TestMatrixOffHeap.assertSame( "Multiplication was wrong", A.multiply( C ), offHeapA.multiply( offHeapC ) );
+		TestMatrixOffHeap.assertSame( "Constant multiplication was wrong", A.multiply( 0.3f ), offHeapA.multiply( 0.3f ) );
+		TestMatrixOffHeap.assertSame( "Constant by element subtraction was wrong", A.constantByElementSubtraction( 1.0f ),
+				offHeapA.constantByElementSubtraction( 1.0f ) );
+		TestMatrixOffHeap.assertSame( "Element by constant subtraction was wrong", A.elementByConstantSubtraction( 1.0f ),
+				offHeapA.elementByConstantSubtraction( 1.0f ) );
+		TestMatrixOffHeap.assertSame( "Sigmoid was wrong", A.applySigmoid(), offHeapA.applySigmoid() );
+	}
+
+	@Test
+	public void testCreate() {
+		final Matrix.MatrixImplemention previous = Matrix.getMatrixCalculationImplementation();
+
+		try {
+			Matrix.setMatrixCalculationImplementation( Matrix.MatrixImplemention.OFF_HEAP );
+			final Matrix A = Matrix.create( 3, 4 );
+			Assert.assertTrue( "The matrix was not off heap", A instanceof MatrixOffHeap );
+			A.free();
+		}
+		finally {
+			Matrix.setMatrixCalculationImplementation( previous );
+		}
+	}
+
+	@Test
+	public void testBufferIsShared() {
+		final MatrixOffHeap A = new MatrixOffHeap( 2, 3 );
+		A.set( 1, 2, 5.0f );
+
+		Assert.assertEquals( "The buffer is not stored by row", 5.0f, A.getBuffer().get( 5 ), 0.0f );
+		Assert.assertTrue( "The buffer is not direct", A.getBuffer().isDirect() );
+		A.free();
+	}
+
+	@Test
+	public void testCopy() {
+		final Random random = new Random( 3 );
+		final MatrixCPU A = new MatrixCPU( 5, 7 );
+		final MatrixOffHeap B = new MatrixOffHeap( 5, 7 );
+		final MatrixOffHeap C = new MatrixOffHeap( 5, 7 );
+		final MatrixCPU D = new MatrixCPU( 5, 7 );
+		TestMatrixOffHeap.fill( A, C, random );
+
+		/* Through a buffer with other elements around the matrix */
+		final FloatBuffer buffer = FloatBuffer.allocate( 40 );
+		buffer.put( -1.0f );
+		A.copyTo( buffer );
+		Assert.assertEquals( "The position was not moved past the elements", 36, buffer.position() );
+
+		((Buffer) buffer).position( 1 );
+		B.copyFrom( buffer );
+		Assert.assertEquals( "The position was not moved past the elements", 36, buffer.position() );
+		TestMatrixOffHeap.assertSame( "Copying into an off heap matrix was wrong", A, B );
+
+		((Buffer) buffer).position( 1 );
+		B.copyTo( buffer );
+		((Buffer) buffer).position( 1 );
+		D.copyFrom( buffer );
+		TestMatrixOffHeap.assertSame( "Copying out of an off heap matrix was wrong", A, D );
+	}
+
+	@Test
+	public void testClose() {
+		final MatrixOffHeap A;
+
+		try ( final MatrixOffHeap B = new MatrixOffHeap( 4, 4 ) ) {
+			B.set( 0, 0, 1.0f );
+			A = B;
+		}
+
+		Assert.assertTrue( "The matrix was not freed", A.isFreed() );
+
+		try {
+			A.get( 0, 0 );
+			Assert.fail( "A freed matrix was used" );
+		}
+		catch ( final RuntimeException e ) {
+			/* Expected */
+		}
+
+		/* Freeing twice does nothing */
+		A.free();
+	}
+
+	@Test
+	public void testArena() {
+		final MatrixArena arena = new MatrixArena( 1024 );
+		final MatrixOffHeap A = arena.create( 3, 5 );
+		final MatrixOffHeap B = arena.create( 5, 2 );
+
+		Assert.assertEquals( "Matrices do not start on a cache line", 128, arena.getUsedBytes() );
+
+		for ( int i = 0; i < 3; i++ ) {
+			for ( int j = 0; j < 5; j++ ) {
+				A.set( i, j, i + j );
+			}
+		}
+
+		for ( int i = 0; i < 5; i++ ) {
+			for ( int j = 0; j < 2; j++ ) {
+				B.set( i, j, i * j );
+			}
+		}
+
+		/* Writing B must not overwrite A */
+		Assert.assertEquals( "Matrices of the arena overlap", 6.0f, A.get( 2, 4 ), 0.0f );
+
+		final Matrix C = A.dot( B );
+		Assert.assertEquals( "Dot product was wrong", 40.0f, C.get( 1, 1 ), 0.0f );
+		C.free();
+
+		arena.close();
+		Assert.assertTrue( "The arena did not free its matrices", A.isFreed() && B.isFreed() );
+
+		try {
+			arena.create( 1, 1 );
+			Assert.fail( "A closed arena created a matrix" );
+		}
+		catch ( final RuntimeException e ) {
+			/* Expected */
+		}
+	}
+
+	@Test
+	public void testArenaCapacity() {
+		try ( final MatrixArena arena = new MatrixArena( 16 ) ) {
+			arena.create( 4, 4 );
+
+			try {
+				arena.create( 1, 1 );
+				Assert.fail( "The arena went over its capacity" );
+			}
+			catch ( final RuntimeException e ) {
+				/* Expected */
+			}
+		}
+	}
+}
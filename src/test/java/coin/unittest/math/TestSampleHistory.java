@@ -0,0 +1,117 @@
+package coin.unittest.math;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import coin.trader.math.Math;
+import coin.trader.math.SampleHistory;
+
+public class TestSampleHistory {
+	private static final double delta = 0.000001;
+
+	/**
+	 * How the periodic average was calculated by scanning the samples
+	 */
+	private static double periodicAverage( final double[] samples, final int newestIndex, final int period ) {
+		final int length = samples.length;
+		final int samplesPerPeriod = length / period;
+		double average = 0;
+		int index = newestIndex;
+
+		for ( int i = 0; i < samplesPerPeriod; i++ ) {
+			average += samples[index];
+			index = (index - samplesPerPeriod + length) % length;
+		}
+
+		return average / samplesPerPeriod;
+	}
+
+	@Test
+	public void testStatisticsMatchScanning() {
+		final int SIZE = 12;
+		final Random random = new Random( 11 );
+		final SampleHistory history = new SampleHistory( SIZE );
+		final double[] window = new double[SIZE];
+
+		for ( int i = 0; i < 500; i++ ) {
+			/* Mostly positive, with some negative values so the RSI has losses */
+			final double sample = random.nextDouble() * 100.0 - 10.0;
+			final int index = i % SIZE;
+			final double previous = window[(index + SIZE - 1) % SIZE];
+			window[index] = sample;
+			history.addSample( sample );
+
+			Assert.assertEquals( "The average was incorrect", Math.average( window ), history.getAverage(), TestSampleHistory.delta );
+			Assert.assertEquals( "The standard deviation was incorrect", Math.standardDeviation( window ), history.getStandardDeviation(), TestSampleHistory.delta );
+			Assert.assertEquals( "The minimum was incorrect", Math.getMinimum( window ), history.getMinimum(), 0.0 );
+			Assert.assertEquals( "The maximum was incorrect", Math.getMaximum( window ), history.getMaximum(), 0.0 );
+			Assert.assertEquals( "The oldest sample was incorrect", window[(index + 1) % SIZE], history.getOldestSample(), 0.0 );
+			Assert.assertEquals( "The delta was incorrect", sample - previous, history.getDelta(), TestSampleHistory.delta );
+
+			final double rsi = Math.getRSI( window );
+			if ( Double.isFinite( rsi ) ) {
+				Assert.assertEquals( "The RSI was incorrect", rsi, history.getRSI(), TestSampleHistory.delta );
+			}
+
+			for ( final int period : new int[] { 1, 2, 3, 5, 12 } ) {
+				Assert.assertEquals( "The periodic average was incorrect", TestSampleHistory.periodicAverage( window, index, period ),
+						history.getPeriodicAverage( period ), TestSampleHistory.delta );
+			}
+		}
+	}
+
+	@Test
+	public void testZerosUntilFull() {
+		final SampleHistory history = new SampleHistory( 4 );
+		history.addSample( 5.0 );
+		history.addSample( 7.0 );
+
+		Assert.assertEquals( "The unfilled window counts as zeros", 0.0, history.getMinimum(), 0.0 );
+		Assert.assertEquals( "The maximum was incorrect", 7.0, history.getMaximum(), 0.0 );
+
+		history.addSample( 6.0 );
+		history.addSample( 8.0 );
+		Assert.assertEquals( "The zeros left the window", 5.0, history.getMinimum(), 0.0 );
+	}
+
+	@Test
+	public void testReadersDoNotBlockWriter() throws InterruptedException {
+		final SampleHistory history = new SampleHistory( 64 );
+		final AtomicBoolean done = new AtomicBoolean( false );
+		final AtomicReference<String> failure = new AtomicReference<String>();
+
+		for ( int i = 0; i < 64; i++ ) {
+			history.addSample( 3.0 );
+		}
+
+		/* All samples are equal, so every consistent read sees that value */
+		final Thread reader = new Thread() {
+			@Override
+			public void run() {
+				while ( !done.get() ) {
+					final double periodicAverage = history.getPeriodicAverage( 4 );
+					final double maximum = history.getMaximum();
+
+					if ( periodicAverage != 3.0 || maximum != 3.0 ) {
+						failure.set( "Read a torn value: " + periodicAverage + ", " + maximum );
+					}
+				}
+			}
+		};
+		reader.start();
+
+		for ( int i = 0; i < 200000; i++ ) {
+			history.addSample( 3.0 );
+		}
+
+		done.set( true );
+		reader.join();
+
+		Assert.assertNull( failure.get(), failure.get() );
+		Assert.assertEquals( "The average was incorrect", 3.0, history.getAverage(), TestSampleHistory.delta );
+	}
+}
@@ -0,0 +1,111 @@
+package coin.unittest.neuralnetwork;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import coin.trader.exchange.ChartData.DataPoint;
+import coin.trader.exchange.DataPointColumns;
+import coin.trader.math.Matrix;
+import coin.trader.math.MatrixCPU;
+import coin.trader.neuralnetwork.CandleFeatures;
+
+public class TestCandleFeatures {
+	private static final int WINDOW_SIZE = 20;
+
+	/**
+	 * Every window must have the inputs DataPointAnalyzer built from the
+	 * candles of the window
+	 */
+	@Test
+	public void testWindowsMatchCandles() {
+		final DataPointColumns candles = TestCandleFeatures.createCandles( 500 );
+		final CandleFeatures features = new CandleFeatures( candles, TestCandleFeatures.WINDOW_SIZE );
+
+		Assert.assertEquals( "Amount of windows", 500 - TestCandleFeatures.WINDOW_SIZE + 1, features.getAmountOfWindows() );
+
+		final Matrix input = new MatrixCPU( TestCandleFeatures.WINDOW_SIZE * CandleFeatures.FEATURES_PER_CANDLE, 3 );
+
+		for ( int window = 0; window < features.getAmountOfWindows(); window++ ) {
+			features.copyWindow( window, input, 1 );
+
+			float high = (float) candles.getHigh( window );
+			double totalVolume = 0;
+
+			for ( int i = window; i < window + TestCandleFeatures.WINDOW_SIZE; i++ ) {
+				if ( candles.getHigh( i ) > high ) {
+					high = (float) candles.getHigh( i );
+				}
+
+				totalVolume += candles.getVolume( i );
+			}
+
+			for ( int i = 0; i < TestCandleFeatures.WINDOW_SIZE; i++ ) {
+				final DataPoint dataPoint = candles.get( window + i );
+				final double[] expected = { dataPoint.getHigh(), dataPoint.getLow(), dataPoint.getOpen(), dataPoint.getClose(), dataPoint.getVolume(),
+						dataPoint.getHigh() - dataPoint.getOpen(), dataPoint.getHigh() - dataPoint.getClose(), dataPoint.getHigh() - dataPoint.getLow(),
+						dataPoint.getOpen() - dataPoint.getLow(), dataPoint.getClose() - dataPoint.getLow() };
+
+				for ( int f = 0; f < expected.length; f++ ) {
+					final float denom = f == 4 ? (float) totalVolume : high;
+					final float value = (float) ((expected[f] / denom) * 0.98 + 0.01);
+
+					Assert.assertEquals( "Feature " + f + " of candle " + i + " in window " + window, value,
+							input.get( i * CandleFeatures.FEATURES_PER_CANDLE + f, 1 ), 1e-6 );
+				}
+			}
+		}
+	}
+
+	/**
+	 * A batch, and a single window, must have the same inputs as the windows
+	 * copied one column at a time
+	 */
+	@Test
+	public void testCopyWindows() {
+		final CandleFeatures features = new CandleFeatures( TestCandleFeatures.createCandles( 100 ), TestCandleFeatures.WINDOW_SIZE );
+		final int inputs = TestCandleFeatures.WINDOW_SIZE * CandleFeatures.FEATURES_PER_CANDLE;
+
+		final Matrix batch = new MatrixCPU( inputs, 4 );
+		final Matrix single = new MatrixCPU( inputs, 1 );
+		final Matrix expected = new MatrixCPU( inputs, 1 );
+		features.copyWindows( 30, batch );
+
+		for ( int col = 0; col < batch.getCols(); col++ ) {
+			features.copyWindow( 30 + col, expected, 0 );
+			features.copyWindows( 30 + col, single );
+
+			for ( int i = 0; i < inputs; i++ ) {
+				Assert.assertEquals( "Input " + i + " of column " + col + " in the batch", expected.get( i, 0 ), batch.get( i, col ), 0.0f );
+				Assert.assertEquals( "Input " + i + " of window " + (30 + col), expected.get( i, 0 ), single.get( i, 0 ), 0.0f );
+			}
+		}
+	}
+
+	@Test
+	public void testFewerCandlesThanWindow() {
+		final CandleFeatures features = new CandleFeatures( TestCandleFeatures.createCandles( 5 ), TestCandleFeatures.WINDOW_SIZE );
+
+		Assert.assertEquals( "Amount of windows", 0, features.getAmountOfWindows() );
+	}
+
+	private static DataPointColumns createCandles( final int amount ) {
+		final Random random = new Random( 5 );
+		final DataPointColumns candles = new DataPointColumns( amount );
+		double price = 100;
+
+		for ( int i = 0; i < amount; i++ ) {
+			final double open = price;
+			price *= 1 + (random.nextDouble() - 0.5) * 0.05;
+			final double close = price;
+			final double high = java.lang.Math.max( open, close ) * (1 + random.nextDouble() * 0.01);
+			final double low = java.lang.Math.min( open, close ) * (1 - random.nextDouble() * 0.01);
+			final double volume = random.nextDouble() * 1000;
+
+			candles.add( i * 300L, high, low, open, close, volume, volume / price, (open + close) / 2 );
+		}
+
+		return candles;
+	}
+}
@@ -1,12 +1,27 @@
 package coin.unittest.neuralnetwork;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+
+import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import coin.trader.math.Matrix;
+import coin.trader.math.MatrixCPU;
+import coin.trader.math.MatrixOffHeap;
 import coin.trader.neuralnetwork.NeuralNetwork;
 import coin.trader.utilities.StopWatch;
 
 public class TestNeuralNetwork {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Test
 	public void testNeuralNetwork() throws Exception {
 		final NeuralNetwork network = new NeuralNetwork( 2, 3, 2, 1, 0.01f );
@@ -43,6 +58,411 @@ public class TestNeuralNetwork {
 		System.out.println( "Time (ms): " + timeElapsed );
 	}
 
+	/**
+	 * The in place training on the CPU must update the weights exactly like
+	 * training with the allocating matrix operations
+	 */
+	@Test
+	public void testCPUTrainingMatchesMatrixOperations() {
+		Matrix.setMatrixCalculationImplementation( Matrix.MatrixImplemention.CPU );
+
+		final float learningRate = 0.1f;
+		final NeuralNetwork network = new NeuralNetwork( 13, 7, 3, 2, learningRate );
+		final Matrix[] layers = new Matrix[network.getNumberOfLayers()];
+
+		for ( int i = 0; i < layers.length; i++ ) {
+			layers[i] = TestNeuralNetwork.copy( network.getLayer( i ) );
+		}
+
+		final java.util.Random random = new java.util.Random( 11 );
+		final Matrix input = new MatrixCPU( 13, 1 );
+		final Matrix target = new MatrixCPU( 3, 1 );
+
+		for ( int step = 0; step < 20; step++ ) {
+			for ( int i = 0; i < input.getRows(); i++ ) {
+				input.set( i, 0, random.nextFloat() );
+			}
+
+			for ( int i = 0; i < target.getRows(); i++ ) {
+				target.set( i, 0, random.nextBoolean() ? NeuralNetwork.MAX_VALUE : NeuralNetwork.MIN_VALUE );
+			}
+
+			network.train( input, target );
+			TestNeuralNetwork.train( layers, input, target, learningRate );
+		}
+
+		for ( int i = 0; i < layers.length; i++ ) {
+			Assert.assertEquals( "Layer " + i + " was trained differently", layers[i], network.getLayer( i ) );
+		}
+	}
+
+	/**
+	 * A batch updates the weights once with the average of the gradients of
+	 * its samples
+	 */
+	@Test
+	public void testBatchTrainingMatchesMatrixOperations() {
+		Matrix.setMatrixCalculationImplementation( Matrix.MatrixImplemention.CPU );
+
+		final float learningRate = 0.1f;
+		final NeuralNetwork network = new NeuralNetwork( 13, 7, 3, 2, learningRate );
+		final Matrix[] layers = new Matrix[network.getNumberOfLayers()];
+
+		for ( int i = 0; i < layers.length; i++ ) {
+			layers[i] = TestNeuralNetwork.copy( network.getLayer( i ) );
+		}
+
+		final java.util.Random random = new java.util.Random( 13 );
+
+		for ( int step = 0; step < 10; step++ ) {
+			final Matrix input = TestNeuralNetwork.randomInput( 13, 5, random );
+			final Matrix target = TestNeuralNetwork.randomTarget( 3, 5, random );
+
+			network.train( input, target );
+			TestNeuralNetwork.train( layers, input, target, learningRate );
+		}
+
+		for ( int i = 0; i < layers.length; i++ ) {
+			Assert.assertEquals( "Layer " + i + " was trained differently", layers[i], network.getLayer( i ) );
+		}
+	}
+
+	/**
+	 * Data parallel training only adds up the gradients in a different order
+	 */
+	@Test
+	public void testDataParallelTrainingMatchesBatch() {
+		Matrix.setMatrixCalculationImplementation( Matrix.MatrixImplemention.CPU );
+
+		final NeuralNetwork network = new NeuralNetwork( 40, 21, 2, 2, 0.1f );
+		final NeuralNetwork parallelNetwork = new NeuralNetwork( 40, 21, 2, 2, 0.1f );
+		parallelNetwork.setDataParallel( true );
+
+		for ( int i = 0; i < network.getNumberOfLayers(); i++ ) {
+			final Matrix A = network.getLayer( i );
+
+			for ( int r = 0; r < A.getRows(); r++ ) {
+				for ( int c = 0; c < A.getCols(); c++ ) {
+					parallelNetwork.getLayer( i ).set( r, c, A.get( r, c ) );
+				}
+			}
+		}
+
+		final java.util.Random random = new java.util.Random( 17 );
+
+		for ( int step = 0; step < 10; step++ ) {
+			final Matrix input = TestNeuralNetwork.randomInput( 40, 9, random );
+			final Matrix target = TestNeuralNetwork.randomTarget( 2, 9, random );
+
+			network.train( input, target );
+			parallelNetwork.train( input, target );
+		}
+
+		for ( int i = 0; i < network.getNumberOfLayers(); i++ ) {
+			final Matrix A = network.getLayer( i );
+			final Matrix B = parallelNetwork.getLayer( i );
+
+			for ( int r = 0; r < A.getRows(); r++ ) {
+				for ( int c = 0; c < A.getCols(); c++ ) {
+					Assert.assertEquals( "Weight [ " + r + ", " + c + " ] of layer " + i, A.get( r, c ), B.get( r, c ), 1e-5 );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Off heap networks are trained in place on the heap, they must end up
+	 * with exactly the weights of a network trained on the CPU
+	 */
+	@Test
+	public void testOffHeapTrainingMatchesCPU() {
+		Matrix.setMatrixCalculationImplementation( Matrix.MatrixImplemention.CPU );
+		final NeuralNetwork network = new NeuralNetwork( 13, 7, 3, 2, 0.1f );
+
+		final NeuralNetwork offHeapNetwork;
+		try {
+			Matrix.setMatrixCalculationImplementation( Matrix.MatrixImplemention.OFF_HEAP );
+			offHeapNetwork = new NeuralNetwork( 13, 7, 3, 2, 0.1f );
+		}
+		finally {
+			Matrix.setMatrixCalculationImplementation( Matrix.MatrixImplemention.CPU );
+		}
+
+		for ( int i = 0; i < network.getNumberOfLayers(); i++ ) {
+			final Matrix A = network.getLayer( i );
+
+			for ( int r = 0; r < A.getRows(); r++ ) {
+				for ( int c = 0; c < A.getCols(); c++ ) {
+					offHeapNetwork.getLayer( i ).set( r, c, A.get( r, c ) );
+				}
+			}
+		}
+
+		final java.util.Random random = new java.util.Random( 19 );
+		final MatrixOffHeap offHeapInput = new MatrixOffHeap( 13, 3 );
+
+		for ( int step = 0; step < 10; step++ ) {
+			final Matrix input = TestNeuralNetwork.randomInput( 13, 3, random );
+			final Matrix target = TestNeuralNetwork.randomTarget( 3, 3, random );
+
+			/* The batch may be off heap as well */
+			final FloatBuffer elements = FloatBuffer.allocate( input.getNumberOfElements() );
+			input.copyTo( elements );
+			((Buffer) elements).flip();
+			offHeapInput.copyFrom( elements );
+
+			network.train( input, target );
+			offHeapNetwork.train( offHeapInput, target );
+		}
+
+		for ( int i = 0; i < network.getNumberOfLayers(); i++ ) {
+			final Matrix A = network.getLayer( i );
+			final Matrix B = offHeapNetwork.getLayer( i );
+			Assert.assertTrue( "Layer " + i + " must stay off heap", B instanceof MatrixOffHeap );
+
+			for ( int r = 0; r < A.getRows(); r++ ) {
+				for ( int c = 0; c < A.getCols(); c++ ) {
+					Assert.assertEquals( "Weight [ " + r + ", " + c + " ] of layer " + i, A.get( r, c ), B.get( r, c ), 0.0f );
+				}
+			}
+		}
+
+		final Matrix expected = network.query( TestNeuralNetwork.copy( offHeapInput ) );
+		final Matrix actual = offHeapNetwork.query( offHeapInput );
+
+		for ( int r = 0; r < expected.getRows(); r++ ) {
+			for ( int c = 0; c < expected.getCols(); c++ ) {
+				Assert.assertEquals( "The off heap network answered differently", expected.get( r, c ), actual.get( r, c ), 0.0f );
+			}
+		}
+
+		Assert.assertFalse( "The input of a query must not be freed", offHeapInput.isFreed() );
+		actual.free();
+		offHeapInput.free();
+		offHeapNetwork.free();
+	}
+
+	private static Matrix randomInput( final int rows, final int cols, final java.util.Random random ) {
+		final Matrix A = new MatrixCPU( rows, cols );
+
+		for ( int r = 0; r < rows; r++ ) {
+			for ( int c = 0; c < cols; c++ ) {
+				A.set( r, c, random.nextFloat() );
+			}
+		}
+
+		return A;
+	}
+
+	private static Matrix randomTarget( final int rows, final int cols, final java.util.Random random ) {
+		final Matrix A = new MatrixCPU( rows, cols );
+
+		for ( int r = 0; r < rows; r++ ) {
+			for ( int c = 0; c < cols; c++ ) {
+				A.set( r, c, random.nextBoolean() ? NeuralNetwork.MAX_VALUE : NeuralNetwork.MIN_VALUE );
+			}
+		}
+
+		return A;
+	}
+
+	@Test
+	public void testCPUTrainingDoesNotAllocate() {
+		Matrix.setMatrixCalculationImplementation( Matrix.MatrixImplemention.CPU );
+
+		final java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		Assert.assertTrue( "Allocation counting is supported", threadBean instanceof com.sun.management.ThreadMXBean );
+		final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+		final long threadID = Thread.currentThread().getId();
+
+		/* Shaped like DataPointAnalyzer with 10 candles */
+		final NeuralNetwork network = new NeuralNetwork( 100, 51, 2, 2, NeuralNetwork.DEFAULT_LEARNING_RATE );
+		final Matrix input = new MatrixCPU( 100, 1 );
+		TestNeuralNetwork.set( input, NeuralNetwork.MIN_VALUE );
+		final Matrix target = new MatrixCPU( 2, 1 );
+		TestNeuralNetwork.set( target, NeuralNetwork.MAX_VALUE );
+
+		/* Warm up so the workspace and class loading are not counted */
+		for ( int i = 0; i < 100; i++ ) {
+			network.train( input, target );
+		}
+
+		final long before = bean.getThreadAllocatedBytes( threadID );
+		for ( int i = 0; i < 1000; i++ ) {
+			network.train( input, target );
+		}
+		final long allocated = bean.getThreadAllocatedBytes( threadID ) - before;
+
+		Assert.assertTrue( "Training allocated " + allocated + " bytes", allocated < 1024 );
+	}
+
+	@Test
+	public void testCheckpoint() throws IOException {
+		Matrix.setMatrixCalculationImplementation( Matrix.MatrixImplemention.CPU );
+
+		final java.util.Random random = new java.util.Random( 5 );
+		final NeuralNetwork network = new NeuralNetwork( 11, 6, 2, 3, 0.1f );
+		network.train( TestNeuralNetwork.randomInput( 11, 4, random ), TestNeuralNetwork.randomTarget( 2, 4, random ) );
+
+		final File file = new File( this.folder.getRoot(), "network.bin" );
+		network.save( file );
+		final NeuralNetwork loaded = NeuralNetwork.load( file );
+
+		Assert.assertEquals( "The amount of layers was not saved", network.getNumberOfLayers(), loaded.getNumberOfLayers() );
+
+		for ( int i = 0; i < network.getNumberOfLayers(); i++ ) {
+			final Matrix expected = network.getLayer( i );
+			final Matrix actual = loaded.getLayer( i );
+
+			Assert.assertEquals( "The rows of the layer were not saved", expected.getRows(), actual.getRows() );
+			Assert.assertEquals( "The columns of the layer were not saved", expected.getCols(), actual.getCols() );
+
+			for ( int r = 0; r < expected.getRows(); r++ ) {
+				for ( int c = 0; c < expected.getCols(); c++ ) {
+					Assert.assertEquals( "The weights were not saved", expected.get( r, c ), actual.get( r, c ), 0.0f );
+				}
+			}
+		}
+
+		/* Both keep training the same way */
+		final Matrix input = TestNeuralNetwork.randomInput( 11, 4, random );
+		final Matrix target = TestNeuralNetwork.randomTarget( 2, 4, random );
+		network.train( input, target );
+		loaded.train( input, target );
+
+		final Matrix expected = network.query( input );
+		final Matrix actual = loaded.query( input );
+
+		for ( int r = 0; r < expected.getRows(); r++ ) {
+			for ( int c = 0; c < expected.getCols(); c++ ) {
+				Assert.assertEquals( "The loaded network trained differently", expected.get( r, c ), actual.get( r, c ), 0.0f );
+			}
+		}
+
+		/* Saving again replaces the checkpoint */
+		network.save( file );
+		Assert.assertEquals( "The checkpoint was not replaced", 1, this.folder.getRoot().list().length );
+	}
+
+	@Test
+	public void testCheckpointRejectsOtherFiles() throws IOException {
+		Matrix.setMatrixCalculationImplementation( Matrix.MatrixImplemention.CPU );
+
+		final File file = new File( this.folder.getRoot(), "network.bin" );
+		new NeuralNetwork( 11, 6, 2, 1, 0.1f ).save( file );
+
+		/* Cut off the last weight */
+		try ( final RandomAccessFile raf = new RandomAccessFile( file, "rw" ) ) {
+			raf.setLength( raf.length() - 4 );
+		}
+
+		try {
+			NeuralNetwork.load( file );
+			Assert.fail( "A truncated checkpoint was loaded" );
+		}
+		catch ( final IOException e ) {
+			/* Expected */
+		}
+
+		try ( final RandomAccessFile raf = new RandomAccessFile( file, "rw" ) ) {
+			raf.writeInt( 0 );
+		}
+
+		try {
+			NeuralNetwork.load( file );
+			Assert.fail( "A file without the checkpoint header was loaded" );
+		}
+		catch ( final IOException e ) {
+			/* Expected */
+		}
+	}
+
+	/**
+	 * A stale or corrupt checkpoint must fail with an IOException, so callers
+	 * can fall back to training
+	 */
+	@Test
+	public void testCheckpointRejectsStaleFiles() throws IOException {
+		Matrix.setMatrixCalculationImplementation( Matrix.MatrixImplemention.CPU );
+
+		final File file = new File( this.folder.getRoot(), "network.bin" );
+
+		/* Version, little endian like the rest of the header */
+		new NeuralNetwork( 11, 6, 2, 1, 0.1f ).save( file );
+		TestNeuralNetwork.writeHeaderInt( file, 4, 2 );
+		TestNeuralNetwork.assertLoadFails( file, "A checkpoint with another version was loaded" );
+
+		/* Rows of the first layer */
+		new NeuralNetwork( 11, 6, 2, 1, 0.1f ).save( file );
+		TestNeuralNetwork.writeHeaderInt( file, 64, 7 );
+		TestNeuralNetwork.assertLoadFails( file, "A checkpoint with the wrong layer shape was loaded" );
+
+		/* Amount of layers */
+		new NeuralNetwork( 11, 6, 2, 1, 0.1f ).save( file );
+		TestNeuralNetwork.writeHeaderInt( file, 28, Integer.MAX_VALUE );
+		TestNeuralNetwork.assertLoadFails( file, "A checkpoint with the wrong amount of layers was loaded" );
+
+		/* Only the header is left */
+		new NeuralNetwork( 11, 6, 2, 1, 0.1f ).save( file );
+		try ( final RandomAccessFile raf = new RandomAccessFile( file, "rw" ) ) {
+			raf.setLength( 64 );
+		}
+		TestNeuralNetwork.assertLoadFails( file, "A checkpoint without its layers was loaded" );
+	}
+
+	private static void writeHeaderInt( final File file, final int offset, final int value ) throws IOException {
+		try ( final RandomAccessFile raf = new RandomAccessFile( file, "rw" ) ) {
+			raf.seek( offset );
+			raf.writeInt( Integer.reverseBytes( value ) );
+		}
+	}
+
+	private static void assertLoadFails( final File file, final String message ) {
+		try {
+			NeuralNetwork.load( file );
+			Assert.fail( message );
+		}
+		catch ( final IOException e ) {
+			/* Expected */
+		}
+	}
+
+	private static Matrix copy( final Matrix A ) {
+		final Matrix B = new MatrixCPU( A.getRows(), A.getCols() );
+
+		for ( int i = 0; i < A.getRows(); i++ ) {
+			for ( int j = 0; j < A.getCols(); j++ ) {
+				B.set( i, j, A.get( i, j ) );
+			}
+		}
+
+		return B;
+	}
+
+	/* Back propagation the way NeuralNetwork used to do it */
+	private static void train( final Matrix[] layers, final Matrix input, final Matrix target, final float learningRate ) {
+		final Matrix[] inputs = new Matrix[layers.length];
+		final Matrix[] outputs = new Matrix[layers.length];
+		final Matrix[] errors = new Matrix[layers.length];
+
+		Matrix A = input;
+		for ( int i = 0; i < layers.length; i++ ) {
+			inputs[i] = A;
+			A = layers[i].dot( A ).applySigmoid();
+			outputs[i] = A;
+		}
+
+		errors[layers.length - 1] = target.subtract( A );
+		for ( int i = layers.length - 2; i >= 0; i-- ) {
+			errors[i] = layers[i + 1].transpose().dot( errors[i + 1] );
+		}
+
+		for ( int i = layers.length - 1; i >= 0; i-- ) {
+			final Matrix gradient = outputs[i].constantByElementSubtraction( 1 ).multiply( errors[i].multiply( outputs[i] ) );
+			layers[i] = layers[i].add( gradient.dot( inputs[i].transpose() ).multiply( learningRate / input.getCols() ) );
+		}
+	}
+
 	public static void set( final Matrix A, final float val ) {
 		for ( int i = 0; i < A.getRows(); i++ ) {
 			for ( int j = 0; j < A.getCols(); j++ ) {
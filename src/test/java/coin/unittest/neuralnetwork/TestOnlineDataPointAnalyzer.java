@@ -0,0 +1,131 @@
+package coin.unittest.neuralnetwork;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import coin.trader.exchange.DataPointColumns;
+import coin.trader.math.Matrix;
+import coin.trader.neuralnetwork.CandleFeatures;
+import coin.trader.neuralnetwork.DataPointAnalyzer;
+import coin.trader.neuralnetwork.OnlineDataPointAnalyzer;
+
+public class TestOnlineDataPointAnalyzer {
+	private static final int WINDOW_SIZE = 20;
+	private static final int STEPS_PER_UPDATE = 3;
+	private static final int MAX_WINDOWS_PER_UPDATE = 16;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Each update must train on the windows whose next candle closed since the
+	 * last update, and publish the weights
+	 */
+	@Test
+	public void testTrainsOnClosedCandlesOnce() throws Exception {
+		Matrix.setMatrixCalculationImplementation( Matrix.MatrixImplemention.CPU );
+
+		final File initial = this.folder.newFile( "initial.bin" );
+		new DataPointAnalyzer( TestOnlineDataPointAnalyzer.WINDOW_SIZE ).save( initial );
+
+		final OnlineDataPointAnalyzer online = new OnlineDataPointAnalyzer( DataPointAnalyzer.load( initial ), TestOnlineDataPointAnalyzer.STEPS_PER_UPDATE,
+				TestOnlineDataPointAnalyzer.MAX_WINDOWS_PER_UPDATE );
+		final DataPointAnalyzer expected = DataPointAnalyzer.load( initial );
+		final DataPointColumns candles = TestOnlineDataPointAnalyzer.createCandles( 51 );
+
+		/* 40 closed candles, only the newest windows are trained on */
+		online.addCandles( candles.subList( 0, 41 ) );
+		TestOnlineDataPointAnalyzer.awaitUpdates( online, 1 );
+		TestOnlineDataPointAnalyzer.train( expected, candles, 40 - TestOnlineDataPointAnalyzer.MAX_WINDOWS_PER_UPDATE, 40 );
+		this.assertSameWeights( "The first update trained on the wrong windows", expected, online.getAnalyzer() );
+
+		/* The same candles again do not train, the next ten closed candles do */
+		online.addCandles( candles.subList( 0, 41 ) );
+		online.addCandles( candles );
+		TestOnlineDataPointAnalyzer.awaitUpdates( online, 2 );
+		TestOnlineDataPointAnalyzer.train( expected, candles, 40, 50 );
+		this.assertSameWeights( "The second update trained on the wrong windows", expected, online.getAnalyzer() );
+
+		Thread.sleep( 100 );
+		Assert.assertEquals( "Candles were trained on twice", 2, online.getAmountOfUpdates() );
+		Assert.assertEquals( "The query did not use the published weights", expected.query( new CandleFeatures( candles.subList( 30, 50 ), 20 ), 0 ),
+				online.query( candles ) );
+	}
+
+	@Test
+	public void testTooFewCandles() throws Exception {
+		Matrix.setMatrixCalculationImplementation( Matrix.MatrixImplemention.CPU );
+
+		final OnlineDataPointAnalyzer online = new OnlineDataPointAnalyzer( new DataPointAnalyzer( TestOnlineDataPointAnalyzer.WINDOW_SIZE ), 1, 1 );
+
+		/* Without the next candle of a window there is nothing to train on */
+		online.addCandles( TestOnlineDataPointAnalyzer.createCandles( TestOnlineDataPointAnalyzer.WINDOW_SIZE + 1 ) );
+		Thread.sleep( 100 );
+		Assert.assertEquals( "Trained without a closed next candle", 0, online.getAmountOfUpdates() );
+
+		online.addCandles( TestOnlineDataPointAnalyzer.createCandles( TestOnlineDataPointAnalyzer.WINDOW_SIZE + 2 ) );
+		TestOnlineDataPointAnalyzer.awaitUpdates( online, 1 );
+	}
+
+	/* Trains on the windows followed by the candles from firstNext to lastNext */
+	private static void train( final DataPointAnalyzer analyzer, final DataPointColumns candles, final int firstNext, final int lastNext ) {
+		final boolean[] shouldBuy = new boolean[lastNext - firstNext];
+
+		for ( int c = firstNext; c < lastNext; c++ ) {
+			shouldBuy[c - firstNext] = candles.getLow( c - 1 ) < candles.getLow( c );
+		}
+
+		final CandleFeatures features = new CandleFeatures( candles.subList( firstNext - TestOnlineDataPointAnalyzer.WINDOW_SIZE, lastNext - 1 ),
+				TestOnlineDataPointAnalyzer.WINDOW_SIZE );
+
+		for ( int s = 0; s < TestOnlineDataPointAnalyzer.STEPS_PER_UPDATE; s++ ) {
+			analyzer.train( features, 0, shouldBuy );
+		}
+	}
+
+	private void assertSameWeights( final String message, final DataPointAnalyzer expected, final DataPointAnalyzer actual ) throws IOException {
+		final File expectedFile = this.folder.newFile();
+		final File actualFile = this.folder.newFile();
+		expected.save( expectedFile );
+		actual.save( actualFile );
+
+		Assert.assertTrue( message, Arrays.equals( Files.readAllBytes( expectedFile.toPath() ), Files.readAllBytes( actualFile.toPath() ) ) );
+	}
+
+	private static void awaitUpdates( final OnlineDataPointAnalyzer online, final long amount ) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 10000;
+
+		while ( online.getAmountOfUpdates() < amount && System.currentTimeMillis() < deadline ) {
+			Thread.sleep( 1 );
+		}
+
+		Assert.assertEquals( "The update did not finish", amount, online.getAmountOfUpdates() );
+	}
+
+	private static DataPointColumns createCandles( final int amount ) {
+		final Random random = new Random( 9 );
+		final DataPointColumns candles = new DataPointColumns( amount );
+		double price = 100;
+
+		for ( int i = 0; i < amount; i++ ) {
+			final double open = price;
+			price *= 1 + (random.nextDouble() - 0.5) * 0.05;
+			final double close = price;
+			final double high = java.lang.Math.max( open, close ) * (1 + random.nextDouble() * 0.01);
+			final double low = java.lang.Math.min( open, close ) * (1 - random.nextDouble() * 0.01);
+			final double volume = random.nextDouble() * 1000;
+
+			candles.add( i * 300L, high, low, open, close, volume, volume / price, (open + close) / 2 );
+		}
+
+		return candles;
+	}
+}
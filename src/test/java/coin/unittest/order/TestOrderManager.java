@@ -0,0 +1,207 @@
+package coin.unittest.order;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import coin.trader.algorithm.order.ManagedOrder;
+import coin.trader.algorithm.order.OrderManager;
+import coin.trader.algorithm.order.OrderState;
+import coin.trader.exchange.Currency;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.utilities.SimulatedClock;
+import coin.unittest.MockExchange;
+
+public class TestOrderManager {
+	private static final CurrencyPair CURRENCY_PAIR = new CurrencyPair( new Currency( "BTC" ), new Currency( "ETH" ) );
+
+	/**
+	 * Dozens of orders at once must all be supervised until they fill
+	 */
+	@Test
+	public void testManyOrdersFill() throws Exception {
+		final MockExchange exchange = new MockExchange();
+		final OrderManager manager = new OrderManager( exchange, 20 );
+		final int amountOfOrders = 50;
+		final List<ManagedOrder> orders = new ArrayList<ManagedOrder>();
+
+		for ( int i = 1; i <= amountOfOrders; i++ ) {
+			exchange.filledOrders.add( "order-" + i );
+		}
+
+		for ( int i = 0; i < amountOfOrders; i++ ) {
+			if ( i % 2 == 0 ) {
+				orders.add( manager.placeBuyOrder( TestOrderManager.CURRENCY_PAIR, 1, i, 60000 ) );
+			}
+			else {
+				orders.add( manager.placeSellOrder( TestOrderManager.CURRENCY_PAIR, 1, i, 60000 ) );
+			}
+		}
+
+		for ( final ManagedOrder order : orders ) {
+			order.getCompletion().get( 10, TimeUnit.SECONDS );
+			Assert.assertEquals( "The order should have filled: " + order, OrderState.FILLED, order.getState() );
+			Assert.assertNotNull( "A filled order must have an id", order.getOrderID() );
+		}
+
+		manager.shutdown();
+		exchange.shutdown();
+
+		Assert.assertEquals( "Every order must be placed once", amountOfOrders, exchange.amountOfPlacedOrders.get() );
+		Assert.assertEquals( "No order should have been canceled", 0, exchange.amountOfCanceledOrders.get() );
+		Assert.assertEquals( "No order should be active", 0, manager.getAmountOfActiveOrders() );
+	}
+
+	@Test
+	public void testTimeoutCancels() throws Exception {
+		final MockExchange exchange = new MockExchange();
+		final OrderManager manager = new OrderManager( exchange, 20 );
+		final SimulatedClock clock = new SimulatedClock();
+		clock.setTimeMillis( 1000000 );
+		manager.setClock( clock );
+
+		final ManagedOrder order = manager.placeBuyOrder( TestOrderManager.CURRENCY_PAIR, 1, 1, 50 );
+		Assert.assertNotNull( "The order was not placed", TestOrderManager.awaitOrderID( order ) );
+		Assert.assertEquals( "The order must stay open until it times out", OrderState.PLACED, order.getState() );
+
+		clock.setTimeMillis( 1000000 + 100 );
+		order.getCompletion().get( 10, TimeUnit.SECONDS );
+
+		manager.shutdown();
+		exchange.shutdown();
+
+		Assert.assertEquals( "An order that never fills must be canceled", OrderState.CANCELED, order.getState() );
+		Assert.assertEquals( "The order must be canceled once", 1, exchange.amountOfCanceledOrders.get() );
+	}
+
+	/**
+	 * A cancel that fails must be tried again, for a timeout and for an
+	 * explicit cancel
+	 */
+	@Test
+	public void testFailedCancelIsRetried() throws Exception {
+		final MockExchange exchange = new MockExchange();
+		exchange.amountOfFailingCancels.set( 2 );
+		final OrderManager manager = new OrderManager( exchange, 20 );
+
+		final ManagedOrder timedOut = manager.placeBuyOrder( TestOrderManager.CURRENCY_PAIR, 1, 1, 50 );
+		timedOut.getCompletion().get( 10, TimeUnit.SECONDS );
+		Assert.assertEquals( "The order must be canceled once the cancel goes through", OrderState.CANCELED, timedOut.getState() );
+
+		exchange.amountOfFailingCancels.set( 2 );
+		final ManagedOrder canceled = manager.placeSellOrder( TestOrderManager.CURRENCY_PAIR, 1, 1, 60000 );
+		manager.cancel( canceled );
+		canceled.getCompletion().get( 10, TimeUnit.SECONDS );
+
+		manager.shutdown();
+		exchange.shutdown();
+
+		Assert.assertEquals( "The explicit cancel must not be dropped", OrderState.CANCELED, canceled.getState() );
+		Assert.assertEquals( "Each order must be canceled once", 2, exchange.amountOfCanceledOrders.get() );
+	}
+
+	/**
+	 * A rejected order must be placed again, but an order whose placement
+	 * failed after the exchange placed it must not be placed twice
+	 */
+	@Test
+	public void testPlacementFailures() throws Exception {
+		final MockExchange exchange = new MockExchange();
+		final OrderManager manager = new OrderManager( exchange, 20 );
+
+		exchange.amountOfRejectedPlacements.set( 2 );
+		final ManagedOrder rejected = manager.placeBuyOrder( TestOrderManager.CURRENCY_PAIR, 1, 1, 60000 );
+		final String rejectedID = TestOrderManager.awaitOrderID( rejected );
+		Assert.assertEquals( "The rejected order must be placed once it is accepted", "order-1", rejectedID );
+
+		exchange.amountOfFailingPlacements.set( 1 );
+		final ManagedOrder lost = manager.placeBuyOrder( TestOrderManager.CURRENCY_PAIR, 1, 1, 60000 );
+		final String lostID = TestOrderManager.awaitOrderID( lost );
+		Assert.assertEquals( "The order placed without an answer must be found among the open orders", "order-2", lostID );
+		Assert.assertEquals( "No order must be placed twice", 2, exchange.amountOfPlacedOrders.get() );
+
+		exchange.filledOrders.add( rejectedID );
+		exchange.filledOrders.add( lostID );
+		rejected.getCompletion().get( 10, TimeUnit.SECONDS );
+		lost.getCompletion().get( 10, TimeUnit.SECONDS );
+
+		manager.shutdown();
+		exchange.shutdown();
+
+		Assert.assertEquals( "The rejected order should have filled", OrderState.FILLED, rejected.getState() );
+		Assert.assertEquals( "The lost order should have filled", OrderState.FILLED, lost.getState() );
+	}
+
+	private static void awaitStatusRequests( final OrderManager manager, final long amountOfStatusRequests ) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 10000;
+		while ( manager.getAmountOfStatusRequests() < amountOfStatusRequests ) {
+			Assert.assertTrue( "The orders were not polled once the interval passed", System.currentTimeMillis() < deadline );
+			Thread.sleep( 5 );
+		}
+	}
+
+	private static String awaitOrderID( final ManagedOrder order ) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 10000;
+		while ( order.getOrderID() == null && System.currentTimeMillis() < deadline ) {
+			Thread.sleep( 5 );
+		}
+
+		return order.getOrderID();
+	}
+
+	/**
+	 * Open orders must be asked about at most once per poll interval, and can
+	 * still be canceled from outside. The intervals are passed on a simulated
+	 * clock, so the amount of polls does not depend on how fast the test runs.
+	 */
+	@Test
+	public void testBoundedPolling() throws Exception {
+		final MockExchange exchange = new MockExchange();
+		final long pollIntervalMillis = 50;
+		final OrderManager manager = new OrderManager( exchange, pollIntervalMillis );
+		final SimulatedClock clock = new SimulatedClock();
+		clock.setTimeMillis( 1000000 );
+		manager.setClock( clock );
+		final int amountOfOrders = 30;
+		final int amountOfPolls = 10;
+		final List<ManagedOrder> orders = new ArrayList<ManagedOrder>();
+
+		for ( int i = 0; i < amountOfOrders; i++ ) {
+			orders.add( manager.placeBuyOrder( TestOrderManager.CURRENCY_PAIR, 1, i, 60000 ) );
+		}
+
+		for ( final ManagedOrder order : orders ) {
+			Assert.assertNotNull( "The order was not placed: " + order, TestOrderManager.awaitOrderID( order ) );
+		}
+
+		Assert.assertEquals( "No status must be asked for before an interval passed", 0, manager.getAmountOfStatusRequests() );
+
+		for ( int poll = 0; poll < amountOfPolls; poll++ ) {
+			final long before = manager.getAmountOfStatusRequests();
+			clock.setTimeMillis( clock.currentTimeMillis() + pollIntervalMillis );
+			TestOrderManager.awaitStatusRequests( manager, before + 1 );
+		}
+
+		final long amountOfStatusRequests = manager.getAmountOfStatusRequests();
+
+		Assert.assertEquals( "Every order should be active", amountOfOrders, manager.getAmountOfActiveOrders() );
+		Assert.assertTrue( "Too many status requests: " + amountOfStatusRequests, amountOfStatusRequests <= amountOfOrders * amountOfPolls );
+
+		for ( final ManagedOrder order : orders ) {
+			manager.cancel( order );
+		}
+
+		for ( final ManagedOrder order : orders ) {
+			order.getCompletion().get( 10, TimeUnit.SECONDS );
+			Assert.assertEquals( "The order should have been canceled: " + order, OrderState.CANCELED, order.getState() );
+		}
+
+		manager.shutdown();
+		exchange.shutdown();
+
+		Assert.assertEquals( "No order should be active", 0, manager.getAmountOfActiveOrders() );
+	}
+}
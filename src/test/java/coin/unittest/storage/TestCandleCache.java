@@ -0,0 +1,149 @@
+package coin.unittest.storage;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import coin.trader.exchange.ChartData.DataPoint;
+import coin.trader.exchange.Currency;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.storage.CandleCache;
+import coin.trader.utilities.Callback.Return;
+import coin.trader.utilities.SimulatedClock;
+import coin.unittest.MockExchange;
+
+public class TestCandleCache {
+	private static final double delta = 0.0000001;
+	private static final int PERIOD = 300;
+	private static final long NOW = 1500000000L;
+	private static final long END = Long.MAX_VALUE;
+	private static final CurrencyPair CURRENCY_PAIR = new CurrencyPair( new Currency( "BTC" ), new Currency( "ETH" ) );
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testOnlyTailIsFetched() throws Exception {
+		final SimulatedClock clock = new SimulatedClock();
+		clock.setTimeMillis( TestCandleCache.NOW * 1000 );
+
+		final MockExchange exchange = new MockExchange();
+		exchange.clock = clock;
+
+		final CandleCache cache = new CandleCache( exchange, this.folder.newFolder( "candles" ), clock );
+		final long start = TestCandleCache.NOW - 100 * TestCandleCache.PERIOD;
+
+		final List<? extends DataPoint> first = TestCandleCache.getChartData( cache, start );
+		Assert.assertEquals( "The first request should go to the exchange", 1, exchange.getAmountOfChartDataRequests() );
+		Assert.assertEquals( "The amount of candles was wrong", 101, first.size() );
+
+		/* Nothing new has started, so the cache should answer */
+		clock.setTimeMillis( (TestCandleCache.NOW + TestCandleCache.PERIOD / 2) * 1000 );
+		final List<? extends DataPoint> second = TestCandleCache.getChartData( cache, start );
+		Assert.assertEquals( "The cache should not have asked the exchange", 1, exchange.getAmountOfChartDataRequests() );
+		Assert.assertEquals( "The cached candles were different", first.size(), second.size() );
+		Assert.assertEquals( "A request should have been a hit", 1, cache.getAmountOfHits() );
+
+		/* Three more candles have started, only the tail should be requested */
+		clock.setTimeMillis( (TestCandleCache.NOW + 3 * TestCandleCache.PERIOD) * 1000 );
+		final List<? extends DataPoint> third = TestCandleCache.getChartData( cache, start );
+		Assert.assertEquals( "The tail should have been requested", 2, exchange.getAmountOfChartDataRequests() );
+		Assert.assertEquals( "The tail should start at the last stored candle", (long) first.get( first.size() - 1 ).getDate(), exchange.chartDataRequests.get( 1 )[0] );
+		Assert.assertEquals( "The amount of candles after the merge was wrong", 104, third.size() );
+
+		for ( int i = 0; i < third.size(); i++ ) {
+			Assert.assertEquals( "The candles were not in order", start + i * TestCandleCache.PERIOD, third.get( i ).getDate(), TestCandleCache.delta );
+			Assert.assertEquals( "The close was wrong", third.get( i ).getDate() + 1, third.get( i ).getClose(), TestCandleCache.delta );
+		}
+	}
+
+	@Test
+	public void testCandlesAreReloaded() throws Exception {
+		final File directory = this.folder.newFolder( "candles" );
+		final SimulatedClock clock = new SimulatedClock();
+		clock.setTimeMillis( TestCandleCache.NOW * 1000 );
+
+		final MockExchange exchange = new MockExchange();
+		exchange.clock = clock;
+
+		/* Enough candles to grow the file past its initial capacity */
+		final long start = TestCandleCache.NOW - 3000 * TestCandleCache.PERIOD;
+		final List<? extends DataPoint> before = TestCandleCache.getChartData( new CandleCache( exchange, directory, clock ), start );
+
+		final List<? extends DataPoint> after = TestCandleCache.getChartData( new CandleCache( exchange, directory, clock ), start + 1000 * TestCandleCache.PERIOD );
+		Assert.assertEquals( "The reopened cache should not have asked the exchange", 1, exchange.getAmountOfChartDataRequests() );
+		Assert.assertEquals( "The amount of reloaded candles was wrong", 2001, after.size() );
+
+		for ( int i = 0; i < after.size(); i++ ) {
+			final DataPoint expected = before.get( i + 1000 );
+			final DataPoint actual = after.get( i );
+			Assert.assertEquals( "The date was not reloaded", expected.getDate(), actual.getDate(), TestCandleCache.delta );
+			Assert.assertEquals( "The high was not reloaded", expected.getHigh(), actual.getHigh(), TestCandleCache.delta );
+			Assert.assertEquals( "The low was not reloaded", expected.getLow(), actual.getLow(), TestCandleCache.delta );
+			Assert.assertEquals( "The weighted average was not reloaded", expected.getWeightedAverage(), actual.getWeightedAverage(), TestCandleCache.delta );
+		}
+	}
+
+	/**
+	 * A request that ends before the covered range must fetch up to it, or
+	 * the candles in between are never fetched
+	 */
+	@Test
+	public void testHeadReachesCoveredRange() throws Exception {
+		final SimulatedClock clock = new SimulatedClock();
+		clock.setTimeMillis( TestCandleCache.NOW * 1000 );
+
+		final MockExchange exchange = new MockExchange();
+		exchange.clock = clock;
+
+		final CandleCache cache = new CandleCache( exchange, this.folder.newFolder( "candles" ), clock );
+		final long coveredFrom = TestCandleCache.NOW - 100 * TestCandleCache.PERIOD;
+		final long start = TestCandleCache.NOW - 300 * TestCandleCache.PERIOD;
+
+		TestCandleCache.getChartData( cache, coveredFrom );
+		final List<? extends DataPoint> head = TestCandleCache.getChartData( cache, start, TestCandleCache.NOW - 200 * TestCandleCache.PERIOD );
+		Assert.assertEquals( "The head should have been requested up to the covered range", coveredFrom, exchange.chartDataRequests.get( 1 )[1] );
+		Assert.assertEquals( "Only the requested candles should be returned", 101, head.size() );
+
+		final List<? extends DataPoint> all = TestCandleCache.getChartData( cache, start );
+		Assert.assertEquals( "The cache should have answered", 2, exchange.getAmountOfChartDataRequests() );
+		Assert.assertEquals( "No candle should be missing", 301, all.size() );
+
+		for ( int i = 0; i < all.size(); i++ ) {
+			Assert.assertEquals( "The candles were not contiguous", start + i * TestCandleCache.PERIOD, all.get( i ).getDate(), TestCandleCache.delta );
+		}
+	}
+
+	private static List<? extends DataPoint> getChartData( final CandleCache cache, final long start ) throws Exception {
+		return TestCandleCache.getChartData( cache, start, TestCandleCache.END );
+	}
+
+	private static List<? extends DataPoint> getChartData( final CandleCache cache, final long start, final long end ) throws Exception {
+		final CountDownLatch latch = new CountDownLatch( 1 );
+		final AtomicReference<List<? extends DataPoint>> result = new AtomicReference<List<? extends DataPoint>>();
+
+		cache.getChartData( TestCandleCache.CURRENCY_PAIR, start, end, TestCandleCache.PERIOD, new Return<List<? extends DataPoint>>() {
+			@Override
+			public void succeeded( final List<? extends DataPoint> rv ) {
+				result.set( rv );
+				latch.countDown();
+			}
+
+			@Override
+			public void error( final Throwable t ) {
+				latch.countDown();
+			}
+		} );
+
+		Assert.assertTrue( "The chart data request timed out", latch.await( 10, TimeUnit.SECONDS ) );
+		Assert.assertNotNull( "The chart data request failed", result.get() );
+		return result.get();
+	}
+}
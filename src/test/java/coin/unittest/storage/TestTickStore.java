@@ -0,0 +1,98 @@
+package coin.unittest.storage;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import coin.trader.exchange.Currency;
+import coin.trader.exchange.CurrencyPair;
+import coin.trader.exchange.Ticker;
+import coin.trader.storage.TickStore;
+import coin.trader.storage.TickStoreFeed;
+import coin.unittest.MockTicker;
+
+public class TestTickStore {
+	private static final double delta = 0.0000001;
+	private static final long START_TIME = 1500000000000L;
+	private static final int AMOUNT_OF_PAIRS = 3;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testAppendAndReopen() throws Exception {
+		final File directory = this.folder.newFolder( "ticks" );
+
+		/* Small segments so the records span multiple files */
+		try ( final TickStore tickStore = new TickStore( directory, 7 ) ) {
+			TestTickStore.record( tickStore, 10 );
+			Assert.assertEquals( "The amount of records was wrong", 10 * TestTickStore.AMOUNT_OF_PAIRS, tickStore.size() );
+		}
+
+		try ( final TickStore tickStore = new TickStore( directory, 7 ) ) {
+			Assert.assertEquals( "The amount of records was wrong after reopening", 10 * TestTickStore.AMOUNT_OF_PAIRS, tickStore.size() );
+			Assert.assertEquals( "The first timestamp was wrong", TestTickStore.START_TIME, tickStore.getFirstTimestamp() );
+			Assert.assertEquals( "The last timestamp was wrong", TestTickStore.START_TIME + 9000, tickStore.getLastTimestamp() );
+			Assert.assertEquals( "The currency pairs were not reloaded", TestTickStore.AMOUNT_OF_PAIRS, tickStore.getAmountOfCurrencyPairs() );
+		}
+	}
+
+	@Test
+	public void testSeekAndReplay() throws Exception {
+		try ( final TickStore tickStore = new TickStore( this.folder.newFolder( "ticks" ), 5 ) ) {
+			TestTickStore.record( tickStore, 20 );
+
+			Assert.assertEquals( "Seeking before the first record", 0, tickStore.findIndex( 0 ) );
+			Assert.assertEquals( "Seeking past the last record", tickStore.size(), tickStore.findIndex( Long.MAX_VALUE ) );
+			Assert.assertEquals( "Seeking between snapshots", 6 * TestTickStore.AMOUNT_OF_PAIRS, tickStore.findIndex( TestTickStore.START_TIME + 5500 ) );
+
+			final TickStoreFeed feed = tickStore.createFeed();
+			feed.seek( TestTickStore.START_TIME + 12000 );
+
+			int snapshots = 0;
+			while ( feed.next() ) {
+				final long i = (feed.getTimestamp() - TestTickStore.START_TIME) / 1000;
+				Assert.assertEquals( "Snapshot was not regrouped", TestTickStore.AMOUNT_OF_PAIRS, feed.getTickers().size() );
+
+				for ( final Ticker ticker : feed.getTickers().values() ) {
+					final int p = Integer.parseInt( ticker.getCurrencyPair().getQuote().getName().substring( 1 ) );
+					Assert.assertEquals( "The last price was wrong", TestTickStore.price( i, p ), ticker.getLast(), TestTickStore.delta );
+					Assert.assertEquals( "The volume was wrong", 100.0 + p, ticker.getBaseVolume(), TestTickStore.delta );
+				}
+
+				snapshots++;
+			}
+
+			Assert.assertEquals( "The amount of snapshots after seeking was wrong", 8, snapshots );
+		}
+	}
+
+	private static void record( final TickStore tickStore, final int amountOfSnapshots ) throws Exception {
+		final Map<CurrencyPair, Ticker> snapshot = new HashMap<CurrencyPair, Ticker>();
+		final MockTicker[] tickers = new MockTicker[TestTickStore.AMOUNT_OF_PAIRS];
+
+		for ( int p = 0; p < TestTickStore.AMOUNT_OF_PAIRS; p++ ) {
+			tickers[p] = new MockTicker();
+			tickers[p].baseVolume = 100.0 + p;
+			tickers[p].currencyPair = new CurrencyPair( new Currency( "BTC" ), new Currency( "C" + p ) );
+			snapshot.put( tickers[p].currencyPair, tickers[p] );
+		}
+
+		for ( int i = 0; i < amountOfSnapshots; i++ ) {
+			for ( int p = 0; p < TestTickStore.AMOUNT_OF_PAIRS; p++ ) {
+				tickers[p].last = TestTickStore.price( i, p );
+			}
+
+			tickStore.append( TestTickStore.START_TIME + i * 1000L, snapshot );
+		}
+	}
+
+	private static double price( final long i, final int p ) {
+		return i * 10.0 + p;
+	}
+}